@@ -0,0 +1,66 @@
+package org.billFarber.marklogicadminproxy;
+
+/**
+ * A Management API response held in memory so it can be handed out more than
+ * once, by the response cache and by request coalescing.
+ */
+
+import okhttp3.Headers;
+import okhttp3.MediaType;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.BufferedSource;
+
+import java.io.IOException;
+
+record BufferedResponse(int code, String message, Protocol protocol, Headers headers, MediaType contentType,
+        byte[] body) {
+
+    /**
+     * Reads the whole body of the response if it is no larger than maxBytes.
+     *
+     * @param response the upstream response; closed when the body is read
+     * @param maxBytes largest body to buffer
+     * @return the buffered response, or null when the response has no body or a
+     *         larger one, in which case the response is left open and unread
+     */
+    static BufferedResponse read(Response response, long maxBytes) throws IOException {
+        ResponseBody responseBody = response.body();
+        if (responseBody == null) {
+            return null;
+        }
+        // request() returns false once the whole body is buffered within the limit
+        BufferedSource source = responseBody.source();
+        try {
+            if (source.request(maxBytes + 1)) {
+                return null;
+            }
+        } catch (IOException e) {
+            response.close();
+            throw e;
+        }
+        try (response) {
+            return new BufferedResponse(response.code(), response.message(), response.protocol(),
+                    response.headers(), responseBody.contentType(), source.readByteArray());
+        }
+    }
+
+    /**
+     * Builds a fresh response for the given request, with its own copy of the
+     * body source.
+     */
+    Response toResponse(Request request, long nowMillis) {
+        return new Response.Builder()
+                .request(request)
+                .protocol(protocol)
+                .code(code)
+                .message(message)
+                .headers(headers)
+                .body(ResponseBody.create(body, contentType))
+                .sentRequestAtMillis(nowMillis)
+                .receivedResponseAtMillis(nowMillis)
+                .build();
+    }
+}
@@ -0,0 +1,224 @@
+package org.billFarber.marklogicadminproxy;
+
+/**
+ * Controller for fetching the properties of many resources in one request.
+ *
+ * GET /manage/v2/{resource}/properties?ids=a,b,c
+ * GET /manage/v2/{resource}/properties (or ids=_all) for every item in the list
+ *
+ * Supported resources: databases, forests, hosts, groups, servers, roles, users.
+ * Servers need a group-id parameter when ids are given; with _all the group of
+ * each server is taken from the list.
+ *
+ * The proxy calls /manage/v2/{resource}/{idOrName}/properties for each id in
+ * parallel, with at most marklogic.management.bulk.max-concurrency calls in
+ * flight, and streams one JSON document whose list-items are written in the
+ * order the calls complete:
+ *
+ * {"bulk-properties":{"resource":"forests","list-items":[
+ * {"idOrName":"Documents","status":200,"properties":{...}},
+ * {"idOrName":"Missing","status":404,"error":"MarkLogic returned status: 404"}
+ * ],"list-count":2,"error-count":1}}
+ *
+ * Only format=json is supported.
+ */
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import okhttp3.HttpUrl;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import org.billFarber.marklogicadminproxy.PropertiesFanOut.Item;
+import org.billFarber.marklogicadminproxy.PropertiesFanOut.Target;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+
+@RestController
+public class BulkPropertiesController {
+    private static final Set<String> RESOURCES = Set.of("databases", "forests", "hosts", "groups", "servers",
+            "roles", "users");
+    private static final String ALL = "_all";
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final JsonFactory JSON = MAPPER.getFactory();
+
+    @Autowired
+    private OkHttpClient managementHttpClient;
+
+    @Autowired
+    private ManagementProperties managementProperties;
+
+    @Value("${marklogic.host}")
+    private String marklogicHost;
+
+    @Value("${marklogic.schema}")
+    private String marklogicSchema;
+
+    @Value("${marklogic.management.async-enabled:false}")
+    private boolean asyncEnabled;
+
+    @GetMapping("/manage/v2/{resource}/properties")
+    public CompletableFuture<ResponseEntity<StreamingResponseBody>> getBulkProperties(
+            @PathVariable String resource,
+            @RequestParam(value = "ids", required = false) List<String> ids,
+            @RequestParam(value = "group-id", required = false) String groupId,
+            @RequestParam(value = "format", required = false, defaultValue = "json") String format) {
+
+        // Validate resource and format parameters
+        if (!RESOURCES.contains(resource)) {
+            return CompletableFuture.completedFuture(ResponseEntity.status(404)
+                    .body(ProxyResponses.text("{\"error\":\"Bulk properties are not supported for '" + resource
+                            + "'\"}")));
+        }
+        if (!"json".equals(format)) {
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest()
+                    .body(ProxyResponses.text("{\"error\":\"Invalid format parameter. Must be 'json'\"}")));
+        }
+
+        if (ids == null || ids.isEmpty() || ids.contains(ALL)) {
+            return getAllProperties(resource);
+        }
+
+        // Servers are only unique within a group
+        if (resource.equals("servers") && (groupId == null || groupId.trim().isEmpty())) {
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest()
+                    .body(ProxyResponses.text("{\"error\":\"group-id parameter is required\"}")));
+        }
+
+        Set<Target> targets = new LinkedHashSet<>();
+        for (String id : ids) {
+            if (!id.trim().isEmpty()) {
+                targets.add(new Target(id.trim(), resource.equals("servers") ? groupId : null));
+            }
+        }
+        return CompletableFuture.completedFuture(bulkResponse(resource, new ArrayList<>(targets)));
+    }
+
+    private CompletableFuture<ResponseEntity<StreamingResponseBody>> getAllProperties(String resource) {
+        try {
+            HttpUrl url = HttpUrl
+                    .parse(managementUrl() + "/manage/v2/" + resource)
+                    .newBuilder()
+                    .addQueryParameter("format", "json")
+                    .build();
+            Request request = new Request.Builder()
+                    .url(url)
+                    .get()
+                    .addHeader("Accept", "application/json")
+                    .build();
+
+            return ManagementCalls.exchange(managementHttpClient, request, asyncEnabled, response -> {
+                try (response) {
+                    if (!response.isSuccessful()) {
+                        return ProxyResponses.error(response,
+                                "{\"error\":\"MarkLogic returned status: " + response.code() + "\"}");
+                    }
+                    JsonNode list = MAPPER.readTree(response.body().byteStream());
+                    return bulkResponse(resource, PropertiesFanOut.listTargets(resource, list));
+                }
+            }).exceptionally(e -> proxyError(ManagementCalls.unwrap(e)));
+        } catch (Exception e) {
+            return CompletableFuture.completedFuture(proxyError(e));
+        }
+    }
+
+    private ResponseEntity<StreamingResponseBody> bulkResponse(String resource, List<Target> targets) {
+        int maxIds = managementProperties.getBulk().getMaxIds();
+        if (targets.size() > maxIds) {
+            return ResponseEntity.badRequest()
+                    .body(ProxyResponses.text("{\"error\":\"Too many ids. At most " + maxIds
+                            + " are allowed per request\"}"));
+        }
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(outputStream -> writeBulk(resource, targets, outputStream));
+    }
+
+    private void writeBulk(String resource, List<Target> targets, OutputStream outputStream) throws IOException {
+        BlockingQueue<Item> completed = new LinkedBlockingQueue<>();
+        CompletableFuture<Void> fetches = new PropertiesFanOut(managementHttpClient, managementUrl())
+                .fetchAll(resource, targets, managementProperties.getBulk().getMaxConcurrency(), completed::add);
+
+        try (JsonGenerator json = JSON.createGenerator(outputStream, JsonEncoding.UTF8)) {
+            json.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            json.writeStartObject();
+            json.writeObjectFieldStart("bulk-properties");
+            json.writeStringField("resource", resource);
+            json.writeArrayFieldStart("list-items");
+            json.flush();
+
+            int errors = 0;
+            for (int written = 0; written < targets.size(); written++) {
+                Item item = take(completed);
+                write(json, item);
+                if (item.isError()) {
+                    errors++;
+                }
+            }
+
+            json.writeEndArray();
+            json.writeNumberField("list-count", targets.size());
+            json.writeNumberField("error-count", errors);
+            json.writeEndObject();
+            json.writeEndObject();
+        } finally {
+            // Stop the remaining calls if the client went away
+            fetches.cancel(true);
+        }
+    }
+
+    private static void write(JsonGenerator json, Item item) throws IOException {
+        json.writeStartObject();
+        json.writeStringField("idOrName", item.target().idOrName());
+        if (item.target().groupId() != null) {
+            json.writeStringField("group-id", item.target().groupId());
+        }
+        json.writeNumberField("status", item.status());
+        if (item.isError()) {
+            json.writeStringField("error", item.error());
+        } else {
+            json.writeFieldName("properties");
+            json.writeRawValue(item.properties());
+        }
+        json.writeEndObject();
+        json.flush();
+    }
+
+    private static Item take(BlockingQueue<Item> completed) throws IOException {
+        try {
+            return completed.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for bulk properties");
+        }
+    }
+
+    private ResponseEntity<StreamingResponseBody> proxyError(Throwable e) {
+        return ResponseEntity.status(502)
+                .body(ProxyResponses.text("{\"error\":\"Failed to proxy to MarkLogic: " + e.getMessage() + "\"}"));
+    }
+
+    private String managementUrl() {
+        return marklogicSchema + "://" + marklogicHost + ":8002";
+    }
+}
@@ -0,0 +1,51 @@
+package org.billFarber.marklogicadminproxy;
+
+/**
+ * Reports the Management API response cache counters.
+ *
+ * GET /proxy/cache/stats returns hits, misses, evictions and the current
+ * number of entries and bytes, how many stale entries were served while
+ * MarkLogic was failing, or enabled=false when
+ * marklogic.management.cache.enabled is off. It also reports how many requests
+ * were coalesced onto an identical in-flight request.
+ */
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+@RestController
+public class CacheStatsController {
+    @Autowired(required = false)
+    private ManagementResponseCache managementResponseCache;
+
+    @Autowired(required = false)
+    private ManagementRequestCoalescer managementRequestCoalescer;
+
+    @GetMapping("/proxy/cache/stats")
+    public ResponseEntity<Map<String, Object>> getCacheStats() {
+        Map<String, Object> body = new LinkedHashMap<>();
+        if (managementResponseCache == null) {
+            body.put("enabled", false);
+        } else {
+            ManagementResponseCache.Stats stats = managementResponseCache.stats();
+            long lookups = stats.hits() + stats.misses();
+            body.put("enabled", true);
+            body.put("hits", stats.hits());
+            body.put("misses", stats.misses());
+            body.put("hitRatio", lookups == 0 ? 0.0 : (double) stats.hits() / lookups);
+            body.put("evictions", stats.evictions());
+            body.put("stale", managementResponseCache.staleCount());
+            body.put("entries", stats.entries());
+            body.put("bytes", stats.bytes());
+        }
+        if (managementRequestCoalescer != null) {
+            body.put("coalesced", managementRequestCoalescer.coalescedCount());
+        }
+        return ResponseEntity.ok(body);
+    }
+}
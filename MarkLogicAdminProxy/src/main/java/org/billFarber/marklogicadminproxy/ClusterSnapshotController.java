@@ -0,0 +1,198 @@
+package org.billFarber.marklogicadminproxy;
+
+/**
+ * Controller for a whole-cluster snapshot in one request.
+ *
+ * GET /manage/v2/cluster-snapshot fetches the databases, forests, hosts,
+ * groups, servers, users and roles lists from the Management API concurrently
+ * and returns them in one document:
+ *
+ * {"cluster-snapshot":{"snapshot-version":1,"generated-at":"...","time-ms":84,
+ * "sections":{"databases":{"status":200,"time-ms":41,"list":{...}},
+ * "forests":{"status":502,"time-ms":12,"error":"..."}, ...}}}
+ *
+ * Each section has its own status and timing, so one failing list does not
+ * fail the snapshot. With include-properties=true the properties of every list
+ * item are fetched as well (bounded by marklogic.management.bulk.max-concurrency
+ * per section) and added to the section as properties-list, with the extra time
+ * reported as properties-time-ms.
+ *
+ * The Server-Timing header sums the upstream phases of all the calls.
+ *
+ * snapshot-version is bumped whenever the document shape changes.
+ */
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import okhttp3.HttpUrl;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import org.billFarber.marklogicadminproxy.PropertiesFanOut.Item;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+@RestController
+public class ClusterSnapshotController {
+    static final int SNAPSHOT_VERSION = 1;
+    static final List<String> SECTIONS = List.of("databases", "forests", "hosts", "groups", "servers", "users",
+            "roles");
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    @Autowired
+    private OkHttpClient managementHttpClient;
+
+    @Autowired
+    private ManagementProperties managementProperties;
+
+    @Value("${marklogic.host}")
+    private String marklogicHost;
+
+    @Value("${marklogic.schema}")
+    private String marklogicSchema;
+
+    @GetMapping("/manage/v2/cluster-snapshot")
+    public CompletableFuture<ResponseEntity<StreamingResponseBody>> getClusterSnapshot(
+            @RequestParam(value = "include-properties", required = false, defaultValue = "false") boolean includeProperties) {
+        long start = System.nanoTime();
+        Instant generatedAt = Instant.now();
+        RequestAttributes requestAttributes = RequestContextHolder.getRequestAttributes();
+
+        Map<String, CompletableFuture<ObjectNode>> sections = new LinkedHashMap<>();
+        for (String section : SECTIONS) {
+            sections.put(section, fetchSection(section, includeProperties));
+        }
+
+        return CompletableFuture.allOf(sections.values().toArray(new CompletableFuture<?>[0])).thenApply(done -> {
+            ObjectNode snapshot = MAPPER.createObjectNode();
+            ObjectNode body = snapshot.putObject("cluster-snapshot");
+            body.put("snapshot-version", SNAPSHOT_VERSION);
+            body.put("generated-at", generatedAt.toString());
+            body.put("include-properties", includeProperties);
+            ObjectNode sectionsNode = body.putObject("sections");
+            sections.forEach((name, section) -> sectionsNode.set(name, section.join()));
+            body.put("time-ms", elapsedMillis(start));
+
+            ResponseEntity.BodyBuilder response = ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON);
+            String serverTiming = ServerTiming.header(requestAttributes);
+            if (serverTiming != null) {
+                response.header(ServerTiming.HEADER, serverTiming);
+            }
+            return response.body(outputStream -> outputStream.write(MAPPER.writeValueAsBytes(snapshot)));
+        });
+    }
+
+    /**
+     * Fetches one resource list, and optionally the properties of its items.
+     * Never completes exceptionally: failures are reported in the section.
+     */
+    private CompletableFuture<ObjectNode> fetchSection(String resource, boolean includeProperties) {
+        long start = System.nanoTime();
+        ObjectNode section = MAPPER.createObjectNode();
+        try {
+            HttpUrl url = HttpUrl.parse(managementUrl() + "/manage/v2/" + resource)
+                    .newBuilder()
+                    .addQueryParameter("format", "json")
+                    .build();
+            Request request = new Request.Builder()
+                    .url(url)
+                    .get()
+                    .addHeader("Accept", "application/json")
+                    .tag(ManagementConcurrencyLimiter.Priority.class, ManagementConcurrencyLimiter.Priority.LOW)
+                    .build();
+
+            CompletableFuture<JsonNode> list = ManagementCalls.exchange(managementHttpClient, request, true,
+                    response -> {
+                        try (response) {
+                            section.put("status", response.code());
+                            if (!response.isSuccessful()) {
+                                section.put("error", "MarkLogic returned status: " + response.code());
+                                return null;
+                            }
+                            return MAPPER.readTree(response.body().byteStream());
+                        }
+                    });
+
+            return list.thenCompose(listNode -> {
+                section.put("time-ms", elapsedMillis(start));
+                if (listNode == null) {
+                    return CompletableFuture.completedFuture(section);
+                }
+                section.set("list", listNode);
+                if (!includeProperties) {
+                    return CompletableFuture.completedFuture(section);
+                }
+                return fetchProperties(resource, listNode, section);
+            }).exceptionally(e -> {
+                section.put("status", 502);
+                section.put("time-ms", elapsedMillis(start));
+                section.put("error", "Failed to proxy to MarkLogic: " + ManagementCalls.unwrap(e).getMessage());
+                return section;
+            });
+        } catch (Exception e) {
+            section.put("status", 502);
+            section.put("time-ms", elapsedMillis(start));
+            section.put("error", "Failed to proxy to MarkLogic: " + e.getMessage());
+            return CompletableFuture.completedFuture(section);
+        }
+    }
+
+    private CompletableFuture<ObjectNode> fetchProperties(String resource, JsonNode listNode, ObjectNode section) {
+        long start = System.nanoTime();
+        return new PropertiesFanOut(managementHttpClient, managementUrl())
+                .fetchAll(resource, PropertiesFanOut.listTargets(resource, listNode),
+                        managementProperties.getBulk().getMaxConcurrency())
+                .thenApply(items -> {
+                    ArrayNode properties = section.putArray("properties-list");
+                    for (Item item : items) {
+                        properties.add(propertiesEntry(item));
+                    }
+                    section.put("properties-time-ms", elapsedMillis(start));
+                    return section;
+                });
+    }
+
+    private static ObjectNode propertiesEntry(Item item) {
+        ObjectNode entry = MAPPER.createObjectNode();
+        entry.put("idOrName", item.target().idOrName());
+        if (item.target().groupId() != null) {
+            entry.put("group-id", item.target().groupId());
+        }
+        entry.put("status", item.status());
+        if (item.isError()) {
+            entry.put("error", item.error());
+            return entry;
+        }
+        try {
+            entry.set("properties", MAPPER.readTree(item.properties()));
+        } catch (Exception e) {
+            entry.put("error", "Invalid JSON from MarkLogic: " + e.getMessage());
+        }
+        return entry;
+    }
+
+    private static long elapsedMillis(long startNanos) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    }
+
+    private String managementUrl() {
+        return marklogicSchema + "://" + marklogicHost + ":8002";
+    }
+}
@@ -10,10 +10,8 @@ package org.billFarber.marklogicadminproxy;
  * MarkLogic Management API documentation.
  */
 
-import com.marklogic.client.DatabaseClient;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
-import okhttp3.Response;
 import okhttp3.HttpUrl;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
@@ -23,11 +21,14 @@ import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.util.concurrent.CompletableFuture;
 
 @RestController
 public class DatabasesController {
     @Autowired
-    private DatabaseClient databaseClient;
+    private OkHttpClient managementHttpClient;
 
     @Value("${marklogic.host}")
     private String marklogicHost;
@@ -35,14 +36,14 @@ public class DatabasesController {
     @Value("${marklogic.schema}")
     private String marklogicSchema;
 
+    @Value("${marklogic.management.async-enabled:false}")
+    private boolean asyncEnabled;
+
     @GetMapping("/manage/v2/databases")
-    public ResponseEntity<String> getDatabases(
+    public CompletableFuture<ResponseEntity<StreamingResponseBody>> getDatabases(
             @RequestParam(value = "format", required = false, defaultValue = "json") String format,
             @RequestParam(value = "view", required = false) String view) {
         try {
-            // Get the underlying OkHttpClient from the MarkLogic DatabaseClient
-            OkHttpClient okHttpClient = (OkHttpClient) databaseClient.getClientImplementation();
-
             // Build the URL for the MarkLogic management API
             HttpUrl.Builder urlBuilder = HttpUrl
                     .parse(marklogicSchema + "://" + marklogicHost + ":8002/manage/v2/databases")
@@ -60,36 +61,31 @@ public class DatabasesController {
                     .build();
 
             // Execute the request
-            Response response = okHttpClient.newCall(request).execute();
-
-            if (response.isSuccessful()) {
-                String responseBody = response.body().string();
-                return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(responseBody);
-            } else {
-                return ResponseEntity.status(response.code())
-                        .body("{\"error\":\"MarkLogic returned status: " + response.code() + "\"}");
-            }
+            return ManagementCalls.exchange(managementHttpClient, request, asyncEnabled, response -> {
+                if (response.isSuccessful()) {
+                    return ProxyResponses.stream(ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON), response);
+                } else {
+                    response.close();
+                    return ProxyResponses.error(response, "{\"error\":\"MarkLogic returned status: " + response.code() + "\"}");
+                }
+            }).exceptionally(e -> proxyError(ManagementCalls.unwrap(e)));
         } catch (Exception e) {
-            return ResponseEntity.status(502)
-                    .body("{\"error\":\"Failed to proxy to MarkLogic: " + e.getMessage() + "\"}");
+            return CompletableFuture.completedFuture(proxyError(e));
         }
     }
 
     @GetMapping("/manage/v2/databases/{idOrName}/properties")
-    public ResponseEntity<String> getDatabaseProperties(
+    public CompletableFuture<ResponseEntity<StreamingResponseBody>> getDatabaseProperties(
             @PathVariable String idOrName,
             @RequestParam(value = "format", required = false, defaultValue = "json") String format) {
 
         // Validate format parameter
         if (!format.equals("json") && !format.equals("xml")) {
-            return ResponseEntity.badRequest()
-                    .body("{\"error\":\"Invalid format parameter. Must be 'json' or 'xml'\"}");
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest()
+                    .body(ProxyResponses.text("{\"error\":\"Invalid format parameter. Must be 'json' or 'xml'\"}")));
         }
 
         try {
-            // Get the underlying OkHttpClient from the MarkLogic DatabaseClient
-            OkHttpClient okHttpClient = (OkHttpClient) databaseClient.getClientImplementation();
-
             // Build the URL for the MarkLogic management API
             HttpUrl.Builder urlBuilder = HttpUrl
                     .parse(marklogicSchema + "://" + marklogicHost + ":8002/manage/v2/databases/" + idOrName
@@ -104,20 +100,24 @@ public class DatabasesController {
                     .addHeader("Accept", format.equals("json") ? "application/json" : "application/xml")
                     .build();
 
+            MediaType contentType = format.equals("json") ? MediaType.APPLICATION_JSON : MediaType.APPLICATION_XML;
+
             // Execute the request
-            Response response = okHttpClient.newCall(request).execute();
-
-            if (response.isSuccessful()) {
-                String responseBody = response.body().string();
-                MediaType contentType = format.equals("json") ? MediaType.APPLICATION_JSON : MediaType.APPLICATION_XML;
-                return ResponseEntity.ok().contentType(contentType).body(responseBody);
-            } else {
-                return ResponseEntity.status(response.code())
-                        .body("{\"error\":\"MarkLogic returned status: " + response.code() + "\"}");
-            }
+            return ManagementCalls.exchange(managementHttpClient, request, asyncEnabled, response -> {
+                if (response.isSuccessful()) {
+                    return ProxyResponses.stream(ResponseEntity.ok().contentType(contentType), response);
+                } else {
+                    response.close();
+                    return ProxyResponses.error(response, "{\"error\":\"MarkLogic returned status: " + response.code() + "\"}");
+                }
+            }).exceptionally(e -> proxyError(ManagementCalls.unwrap(e)));
         } catch (Exception e) {
-            return ResponseEntity.status(502)
-                    .body("{\"error\":\"Failed to proxy to MarkLogic: " + e.getMessage() + "\"}");
+            return CompletableFuture.completedFuture(proxyError(e));
         }
     }
+
+    private ResponseEntity<StreamingResponseBody> proxyError(Throwable e) {
+        return ResponseEntity.status(502)
+                .body(ProxyResponses.text("{\"error\":\"Failed to proxy to MarkLogic: " + e.getMessage() + "\"}"));
+    }
 }
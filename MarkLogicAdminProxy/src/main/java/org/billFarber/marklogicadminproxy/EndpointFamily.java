@@ -0,0 +1,47 @@
+package org.billFarber.marklogicadminproxy;
+
+/**
+ * Groups of Management API endpoints that load MarkLogic differently, each
+ * with its own bulkhead and circuit breaker:
+ *
+ *   logs        /manage/v2/logs, which can scan large files
+ *   metrics     the status, metrics and counts views of any resource
+ *   properties  /manage/v2/{resource}/{id}/properties
+ *   lists       everything else: resource lists and item views
+ */
+
+import okhttp3.HttpUrl;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+enum EndpointFamily {
+    LOGS, METRICS, PROPERTIES, LISTS;
+
+    private static final Set<String> METRICS_VIEWS = Set.of("status", "metrics", "counts");
+
+    static EndpointFamily of(HttpUrl url) {
+        List<String> segments = url.pathSegments();
+        if (segments.size() >= 3 && segments.get(2).equalsIgnoreCase("logs")) {
+            return LOGS;
+        }
+        String view = url.queryParameter("view");
+        if (view != null && METRICS_VIEWS.contains(view.toLowerCase(Locale.ROOT))) {
+            return METRICS;
+        }
+        for (int i = segments.size() - 1; i >= 0; i--) {
+            if (!segments.get(i).isEmpty()) {
+                return segments.get(i).equalsIgnoreCase("properties") ? PROPERTIES : LISTS;
+            }
+        }
+        return LISTS;
+    }
+
+    /**
+     * @return the name used in properties and meter tags, e.g. properties
+     */
+    String key() {
+        return name().toLowerCase(Locale.ROOT);
+    }
+}
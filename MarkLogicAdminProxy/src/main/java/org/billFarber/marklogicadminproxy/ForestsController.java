@@ -10,11 +10,9 @@ package org.billFarber.marklogicadminproxy;
  * MarkLogic Management API documentation.
  */
 
-import com.marklogic.client.DatabaseClient;
 import okhttp3.HttpUrl;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
-import okhttp3.Response;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -26,8 +24,10 @@ import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
 
 @RestController
 @RequestMapping("/manage/v2")
@@ -36,7 +36,7 @@ public class ForestsController {
     private static final Logger logger = LoggerFactory.getLogger(ForestsController.class);
 
     @Autowired
-    private DatabaseClient databaseClient;
+    private OkHttpClient managementHttpClient;
 
     @Value("${marklogic.host}")
     private String marklogicHost;
@@ -44,8 +44,11 @@ public class ForestsController {
     @Value("${marklogic.schema}")
     private String marklogicSchema;
 
+    @Value("${marklogic.management.async-enabled:false}")
+    private boolean asyncEnabled;
+
     @GetMapping("/forests")
-    public ResponseEntity<String> getForests(
+    public CompletableFuture<ResponseEntity<StreamingResponseBody>> getForests(
             @RequestParam(value = "format", required = false) String format,
             @RequestParam(value = "view", required = false) String view,
             @RequestParam(value = "database-id", required = false) String databaseId,
@@ -59,26 +62,23 @@ public class ForestsController {
 
         // Validate format parameter
         if (format != null && !format.equals("json") && !format.equals("xml")) {
-            return ResponseEntity.badRequest()
-                    .body("{\"error\":\"Invalid format parameter. Must be 'json' or 'xml'\"}");
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest()
+                    .body(ProxyResponses.text("{\"error\":\"Invalid format parameter. Must be 'json' or 'xml'\"}")));
         }
 
         // Validate view parameter
         if (view != null && !isValidView(view)) {
-            return ResponseEntity.badRequest()
-                    .body("{\"error\":\"Invalid view parameter. Must be one of: schema, counts, storage, metrics, default, status\"}");
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest()
+                    .body(ProxyResponses.text("{\"error\":\"Invalid view parameter. Must be one of: schema, counts, storage, metrics, default, status\"}")));
         }
 
         // Validate fullrefs parameter
         if (fullrefs != null && !fullrefs.equals("true") && !fullrefs.equals("false")) {
-            return ResponseEntity.badRequest()
-                    .body("{\"error\":\"Invalid fullrefs parameter. Must be 'true' or 'false'\"}");
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest()
+                    .body(ProxyResponses.text("{\"error\":\"Invalid fullrefs parameter. Must be 'true' or 'false'\"}")));
         }
 
         try {
-            // Get the underlying OkHttpClient from the MarkLogic DatabaseClient
-            OkHttpClient okHttpClient = (OkHttpClient) databaseClient.getClientImplementation();
-
             // Build the URL for the MarkLogic Management API
             HttpUrl.Builder urlBuilder = HttpUrl
                     .parse(marklogicSchema + "://" + marklogicHost + ":8002/manage/v2/forests")
@@ -113,40 +113,35 @@ public class ForestsController {
                     .get()
                     .build();
 
-            try (Response response = okHttpClient.newCall(request).execute()) {
+            return ManagementCalls.exchange(managementHttpClient, request, asyncEnabled, response -> {
                 if (response.body() == null) {
+                    response.close();
                     logger.error("Received null response body from MarkLogic");
                     return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
-                            .body("No response from MarkLogic server");
+                            .body(ProxyResponses.text("No response from MarkLogic server"));
                 }
 
-                String responseBody = response.body().string();
                 logger.debug("MarkLogic response status: {}, body length: {}",
-                        response.code(), responseBody.length());
+                        response.code(), response.body().contentLength());
 
                 if (response.isSuccessful()) {
-                    return ResponseEntity.ok()
-                            .header("Content-Type", response.header("Content-Type", "application/json"))
-                            .body(responseBody);
-                } else {
-                    logger.error("MarkLogic returned error: {} - {}", response.code(), responseBody);
-                    return ResponseEntity.status(response.code()).body(responseBody);
+                    return ProxyResponses.stream(ResponseEntity.ok()
+                            .header("Content-Type", response.header("Content-Type", "application/json")), response);
                 }
-            }
 
-        } catch (IOException e) {
-            logger.error("Error communicating with MarkLogic", e);
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
-                    .body("Error communicating with MarkLogic: " + e.getMessage());
+                try (response) {
+                    String responseBody = response.body().string();
+                    logger.error("MarkLogic returned error: {} - {}", response.code(), responseBody);
+                    return ProxyResponses.error(response, responseBody);
+                }
+            }).exceptionally(e -> forestsError(ManagementCalls.unwrap(e)));
         } catch (Exception e) {
-            logger.error("Unexpected error in forests endpoint", e);
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
-                    .body("Unexpected error: " + e.getMessage());
+            return CompletableFuture.completedFuture(forestsError(e));
         }
     }
 
     @GetMapping("/forests/{idOrName}/properties")
-    public ResponseEntity<String> getForestProperties(
+    public CompletableFuture<ResponseEntity<StreamingResponseBody>> getForestProperties(
             @PathVariable String idOrName,
             @RequestParam(value = "format", required = false, defaultValue = "json") String format) {
 
@@ -159,14 +154,11 @@ public class ForestsController {
 
         // Validate format parameter
         if (!format.equals("json") && !format.equals("xml")) {
-            return ResponseEntity.badRequest()
-                    .body("{\"error\":\"Invalid format parameter. Must be 'json' or 'xml'\"}");
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest()
+                    .body(ProxyResponses.text("{\"error\":\"Invalid format parameter. Must be 'json' or 'xml'\"}")));
         }
 
         try {
-            // Get the underlying OkHttpClient from the MarkLogic DatabaseClient
-            OkHttpClient okHttpClient = (OkHttpClient) databaseClient.getClientImplementation();
-
             // Build the URL for the MarkLogic management API
             HttpUrl.Builder urlBuilder = HttpUrl
                     .parse(marklogicSchema + "://" + marklogicHost + ":8002/manage/v2/forests/" + idOrName
@@ -183,37 +175,54 @@ public class ForestsController {
                     .get()
                     .build();
 
-            try (Response response = okHttpClient.newCall(request).execute()) {
+            return ManagementCalls.exchange(managementHttpClient, request, asyncEnabled, response -> {
                 if (response.body() == null) {
+                    response.close();
                     logger.error("Received null response body from MarkLogic for forest: {}", idOrName);
                     return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
-                            .body("No response from MarkLogic server");
+                            .body(ProxyResponses.text("No response from MarkLogic server"));
                 }
 
-                String responseBody = response.body().string();
                 logger.debug("MarkLogic response status: {}, body length: {} for forest: {}",
-                        response.code(), responseBody.length(), idOrName);
+                        response.code(), response.body().contentLength(), idOrName);
 
                 if (response.isSuccessful()) {
-                    return ResponseEntity.ok()
-                            .header("Content-Type", response.header("Content-Type", "application/json"))
-                            .body(responseBody);
-                } else {
+                    return ProxyResponses.stream(ResponseEntity.ok()
+                            .header("Content-Type", response.header("Content-Type", "application/json")), response);
+                }
+
+                try (response) {
+                    String responseBody = response.body().string();
                     logger.error("MarkLogic returned error for forest {}: {} - {}", idOrName, response.code(),
                             responseBody);
-                    return ResponseEntity.status(response.code()).body(responseBody);
+                    return ProxyResponses.error(response, responseBody);
                 }
-            }
+            }).exceptionally(e -> forestPropertiesError(idOrName, ManagementCalls.unwrap(e)));
+        } catch (Exception e) {
+            return CompletableFuture.completedFuture(forestPropertiesError(idOrName, e));
+        }
+    }
 
-        } catch (IOException e) {
-            logger.error("Error communicating with MarkLogic for forest: {}", idOrName, e);
+    private ResponseEntity<StreamingResponseBody> forestsError(Throwable e) {
+        if (e instanceof IOException) {
+            logger.error("Error communicating with MarkLogic", e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
-                    .body("Error communicating with MarkLogic: " + e.getMessage());
-        } catch (Exception e) {
-            logger.error("Unexpected error in forest properties endpoint for forest: {}", idOrName, e);
+                    .body(ProxyResponses.text("Error communicating with MarkLogic: " + e.getMessage()));
+        }
+        logger.error("Unexpected error in forests endpoint", e);
+        return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                .body(ProxyResponses.text("Unexpected error: " + e.getMessage()));
+    }
+
+    private ResponseEntity<StreamingResponseBody> forestPropertiesError(String idOrName, Throwable e) {
+        if (e instanceof IOException) {
+            logger.error("Error communicating with MarkLogic for forest: {}", idOrName, e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
-                    .body("Unexpected error: " + e.getMessage());
+                    .body(ProxyResponses.text("Error communicating with MarkLogic: " + e.getMessage()));
         }
+        logger.error("Unexpected error in forest properties endpoint for forest: {}", idOrName, e);
+        return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                .body(ProxyResponses.text("Unexpected error: " + e.getMessage()));
     }
 
     private boolean isValidView(String view) {
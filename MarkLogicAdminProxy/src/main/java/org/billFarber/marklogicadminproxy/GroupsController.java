@@ -11,10 +11,8 @@ package org.billFarber.marklogicadminproxy;
  * MarkLogic Management API documentation.
  */
 
-import com.marklogic.client.DatabaseClient;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
-import okhttp3.Response;
 import okhttp3.HttpUrl;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
@@ -24,11 +22,14 @@ import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.util.concurrent.CompletableFuture;
 
 @RestController
 public class GroupsController {
     @Autowired
-    private DatabaseClient databaseClient;
+    private OkHttpClient managementHttpClient;
 
     @Value("${marklogic.host}")
     private String marklogicHost;
@@ -36,8 +37,11 @@ public class GroupsController {
     @Value("${marklogic.schema}")
     private String marklogicSchema;
 
+    @Value("${marklogic.management.async-enabled:false}")
+    private boolean asyncEnabled;
+
     @GetMapping("/manage/v2/groups")
-    public ResponseEntity<String> getGroups(
+    public CompletableFuture<ResponseEntity<StreamingResponseBody>> getGroups(
             @RequestParam(value = "format", required = false, defaultValue = "json") String format,
             @RequestParam(value = "view", required = false) String view) {
 
@@ -48,20 +52,17 @@ public class GroupsController {
 
         // Validate format parameter
         if (!format.equals("json") && !format.equals("xml") && !format.equals("html")) {
-            return ResponseEntity.badRequest()
-                    .body("{\"error\":\"Invalid format parameter. Must be 'json', 'xml', or 'html'\"}");
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest()
+                    .body(ProxyResponses.text("{\"error\":\"Invalid format parameter. Must be 'json', 'xml', or 'html'\"}")));
         }
 
         // Validate view parameter if provided
         if (view != null && !view.equals("schema") && !view.equals("default")) {
-            return ResponseEntity.badRequest()
-                    .body("{\"error\":\"Invalid view parameter. Must be 'schema' or 'default'\"}");
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest()
+                    .body(ProxyResponses.text("{\"error\":\"Invalid view parameter. Must be 'schema' or 'default'\"}")));
         }
 
         try {
-            // Get the underlying OkHttpClient from the MarkLogic DatabaseClient
-            OkHttpClient okHttpClient = (OkHttpClient) databaseClient.getClientImplementation();
-
             // Build the URL for the MarkLogic management API
             HttpUrl.Builder urlBuilder = HttpUrl
                     .parse(marklogicSchema + "://" + marklogicHost + ":8002/manage/v2/groups")
@@ -78,25 +79,24 @@ public class GroupsController {
                     .addHeader("Accept", getAcceptHeader(format))
                     .build();
 
+            MediaType contentType = getContentType(format);
+
             // Execute the request
-            Response response = okHttpClient.newCall(request).execute();
-
-            if (response.isSuccessful()) {
-                String responseBody = response.body().string();
-                MediaType contentType = getContentType(format);
-                return ResponseEntity.ok().contentType(contentType).body(responseBody);
-            } else {
-                return ResponseEntity.status(response.code())
-                        .body("{\"error\":\"MarkLogic returned status: " + response.code() + "\"}");
-            }
+            return ManagementCalls.exchange(managementHttpClient, request, asyncEnabled, response -> {
+                if (response.isSuccessful()) {
+                    return ProxyResponses.stream(ResponseEntity.ok().contentType(contentType), response);
+                } else {
+                    response.close();
+                    return ProxyResponses.error(response, "{\"error\":\"MarkLogic returned status: " + response.code() + "\"}");
+                }
+            }).exceptionally(e -> proxyError(ManagementCalls.unwrap(e)));
         } catch (Exception e) {
-            return ResponseEntity.status(502)
-                    .body("{\"error\":\"Failed to proxy to MarkLogic: " + e.getMessage() + "\"}");
+            return CompletableFuture.completedFuture(proxyError(e));
         }
     }
 
     @GetMapping("/manage/v2/groups/{idOrName}/properties")
-    public ResponseEntity<String> getGroupProperties(
+    public CompletableFuture<ResponseEntity<StreamingResponseBody>> getGroupProperties(
             @PathVariable String idOrName,
             @RequestParam(value = "format", required = false, defaultValue = "json") String format) {
 
@@ -107,14 +107,11 @@ public class GroupsController {
 
         // Validate format parameter
         if (!format.equals("json") && !format.equals("xml")) {
-            return ResponseEntity.badRequest()
-                    .body("{\"error\":\"Invalid format parameter. Must be 'json' or 'xml'\"}");
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest()
+                    .body(ProxyResponses.text("{\"error\":\"Invalid format parameter. Must be 'json' or 'xml'\"}")));
         }
 
         try {
-            // Get the underlying OkHttpClient from the MarkLogic DatabaseClient
-            OkHttpClient okHttpClient = (OkHttpClient) databaseClient.getClientImplementation();
-
             // Build the URL for the MarkLogic management API
             HttpUrl.Builder urlBuilder = HttpUrl
                     .parse(marklogicSchema + "://" + marklogicHost + ":8002/manage/v2/groups/" + idOrName
@@ -129,20 +126,19 @@ public class GroupsController {
                     .addHeader("Accept", format.equals("json") ? "application/json" : "application/xml")
                     .build();
 
+            MediaType contentType = format.equals("json") ? MediaType.APPLICATION_JSON : MediaType.APPLICATION_XML;
+
             // Execute the request
-            Response response = okHttpClient.newCall(request).execute();
-
-            if (response.isSuccessful()) {
-                String responseBody = response.body().string();
-                MediaType contentType = format.equals("json") ? MediaType.APPLICATION_JSON : MediaType.APPLICATION_XML;
-                return ResponseEntity.ok().contentType(contentType).body(responseBody);
-            } else {
-                return ResponseEntity.status(response.code())
-                        .body("{\"error\":\"MarkLogic returned status: " + response.code() + "\"}");
-            }
+            return ManagementCalls.exchange(managementHttpClient, request, asyncEnabled, response -> {
+                if (response.isSuccessful()) {
+                    return ProxyResponses.stream(ResponseEntity.ok().contentType(contentType), response);
+                } else {
+                    response.close();
+                    return ProxyResponses.error(response, "{\"error\":\"MarkLogic returned status: " + response.code() + "\"}");
+                }
+            }).exceptionally(e -> proxyError(ManagementCalls.unwrap(e)));
         } catch (Exception e) {
-            return ResponseEntity.status(502)
-                    .body("{\"error\":\"Failed to proxy to MarkLogic: " + e.getMessage() + "\"}");
+            return CompletableFuture.completedFuture(proxyError(e));
         }
     }
 
@@ -171,4 +167,9 @@ public class GroupsController {
                 return MediaType.APPLICATION_JSON;
         }
     }
+
+    private ResponseEntity<StreamingResponseBody> proxyError(Throwable e) {
+        return ResponseEntity.status(502)
+                .body(ProxyResponses.text("{\"error\":\"Failed to proxy to MarkLogic: " + e.getMessage() + "\"}"));
+    }
 }
@@ -0,0 +1,67 @@
+package org.billFarber.marklogicadminproxy;
+
+/**
+ * A gzip-encoded Management API body that reads as plain bytes.
+ *
+ * source(), string() and byteStream() inflate on the fly, so callers that
+ * parse the body see no difference from an uncompressed response. Callers that
+ * can forward the encoded bytes as they are (ProxyResponses, when the client
+ * accepts gzip) use compressedSource() instead and skip the inflate and
+ * re-deflate entirely. Only one of the two may be read.
+ */
+
+import okhttp3.MediaType;
+import okhttp3.ResponseBody;
+import okio.BufferedSource;
+import okio.GzipSource;
+import okio.Okio;
+
+final class GzipResponseBody extends ResponseBody {
+
+    private final ResponseBody compressed;
+    private BufferedSource inflated;
+
+    GzipResponseBody(ResponseBody compressed) {
+        this.compressed = compressed;
+    }
+
+    @Override
+    public MediaType contentType() {
+        return compressed.contentType();
+    }
+
+    /**
+     * The inflated length is not known until the body has been read.
+     */
+    @Override
+    public long contentLength() {
+        return -1;
+    }
+
+    @Override
+    public BufferedSource source() {
+        if (inflated == null) {
+            inflated = Okio.buffer(new GzipSource(compressed.source()));
+        }
+        return inflated;
+    }
+
+    /**
+     * @return the gzip bytes as received from MarkLogic
+     */
+    BufferedSource compressedSource() {
+        return compressed.source();
+    }
+
+    /**
+     * @return length of the gzip bytes, or -1 when unknown
+     */
+    long compressedLength() {
+        return compressed.contentLength();
+    }
+
+    @Override
+    public void close() {
+        compressed.close();
+    }
+}
@@ -11,11 +11,9 @@ package org.billFarber.marklogicadminproxy;
  * MarkLogic Management API documentation.
  */
 
-import com.marklogic.client.DatabaseClient;
 import okhttp3.HttpUrl;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
-import okhttp3.Response;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -28,8 +26,10 @@ import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
 
 @RestController
 @RequestMapping("/manage/v2")
@@ -38,7 +38,7 @@ public class HostsController {
     private static final Logger logger = LoggerFactory.getLogger(HostsController.class);
 
     @Autowired
-    private DatabaseClient databaseClient;
+    private OkHttpClient managementHttpClient;
 
     @Value("${marklogic.host}")
     private String marklogicHost;
@@ -46,6 +46,9 @@ public class HostsController {
     @Value("${marklogic.schema}")
     private String marklogicSchema;
 
+    @Value("${marklogic.management.async-enabled:false}")
+    private boolean asyncEnabled;
+
     /**
      * Retrieve information about the hosts in a cluster.
      * 
@@ -57,7 +60,7 @@ public class HostsController {
      * @return ResponseEntity containing the hosts information
      */
     @GetMapping("/hosts")
-    public ResponseEntity<String> getHosts(
+    public CompletableFuture<ResponseEntity<StreamingResponseBody>> getHosts(
             @RequestParam(value = "format", required = false) String format,
             @RequestParam(value = "group-id", required = false) String groupId,
             @RequestParam(value = "view", required = false) String view) {
@@ -68,20 +71,17 @@ public class HostsController {
 
         // Validate format parameter
         if (format != null && !isValidFormat(format)) {
-            return ResponseEntity.badRequest()
-                    .body("{\"error\":\"Invalid format parameter. Must be 'html', 'json', or 'xml'\"}");
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest()
+                    .body(ProxyResponses.text("{\"error\":\"Invalid format parameter. Must be 'html', 'json', or 'xml'\"}")));
         }
 
         // Validate view parameter
         if (view != null && !isValidView(view)) {
-            return ResponseEntity.badRequest()
-                    .body("{\"error\":\"Invalid view parameter. Must be one of: schema, status, metrics, default\"}");
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest()
+                    .body(ProxyResponses.text("{\"error\":\"Invalid view parameter. Must be one of: schema, status, metrics, default\"}")));
         }
 
         try {
-            // Get the underlying OkHttpClient from the MarkLogic DatabaseClient
-            OkHttpClient okHttpClient = (OkHttpClient) databaseClient.getClientImplementation();
-
             // Build the URL for the MarkLogic Management API
             HttpUrl.Builder urlBuilder = HttpUrl
                     .parse(marklogicSchema + "://" + marklogicHost + ":8002/manage/v2/hosts")
@@ -107,35 +107,30 @@ public class HostsController {
                     .get()
                     .build();
 
-            try (Response response = okHttpClient.newCall(request).execute()) {
+            return ManagementCalls.exchange(managementHttpClient, request, asyncEnabled, response -> {
                 if (response.body() == null) {
+                    response.close();
                     logger.error("Received null response body from MarkLogic");
                     return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
-                            .body("{\"error\":\"No response from MarkLogic server\"}");
+                            .body(ProxyResponses.text("{\"error\":\"No response from MarkLogic server\"}"));
                 }
 
-                String responseBody = response.body().string();
-
                 if (response.isSuccessful()) {
                     logger.debug("Successfully received response from MarkLogic: {}", response.code());
 
                     // Determine content type based on format
                     MediaType contentType = getContentType(format);
-                    return ResponseEntity.ok().contentType(contentType).body(responseBody);
-                } else {
+                    return ProxyResponses.stream(ResponseEntity.ok().contentType(contentType), response);
+                }
+
+                try (response) {
+                    String responseBody = response.body().string();
                     logger.error("MarkLogic returned error status: {} with body: {}", response.code(), responseBody);
-                    return ResponseEntity.status(response.code())
-                            .body("{\"error\":\"MarkLogic returned status: " + response.code() + "\"}");
+                    return ProxyResponses.error(response, "{\"error\":\"MarkLogic returned status: " + response.code() + "\"}");
                 }
-            }
-        } catch (IOException e) {
-            logger.error("IOException while communicating with MarkLogic", e);
-            return ResponseEntity.status(HttpStatus.BAD_GATEWAY)
-                    .body("{\"error\":\"Failed to proxy to MarkLogic: " + e.getMessage() + "\"}");
+            }).exceptionally(e -> proxyError(ManagementCalls.unwrap(e)));
         } catch (Exception e) {
-            logger.error("Unexpected error while proxying to MarkLogic", e);
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
-                    .body("{\"error\":\"Unexpected error: " + e.getMessage() + "\"}");
+            return CompletableFuture.completedFuture(proxyError(e));
         }
     }
 
@@ -148,7 +143,7 @@ public class HostsController {
      * @return ResponseEntity containing the host properties
      */
     @GetMapping("/hosts/{idOrName}/properties")
-    public ResponseEntity<String> getHostProperties(
+    public CompletableFuture<ResponseEntity<StreamingResponseBody>> getHostProperties(
             @PathVariable String idOrName,
             @RequestParam(value = "format", required = false) String format) {
 
@@ -157,14 +152,11 @@ public class HostsController {
         // Validate format parameter (only json and xml are supported for properties
         // endpoint)
         if (format != null && !format.equals("json") && !format.equals("xml")) {
-            return ResponseEntity.badRequest()
-                    .body("{\"error\":\"Invalid format parameter. Must be 'json' or 'xml'\"}");
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest()
+                    .body(ProxyResponses.text("{\"error\":\"Invalid format parameter. Must be 'json' or 'xml'\"}")));
         }
 
         try {
-            // Get the underlying OkHttpClient from the MarkLogic DatabaseClient
-            OkHttpClient okHttpClient = (OkHttpClient) databaseClient.getClientImplementation();
-
             // Build the URL for the MarkLogic Management API
             HttpUrl.Builder urlBuilder = HttpUrl
                     .parse(marklogicSchema + "://" + marklogicHost + ":8002/manage/v2/hosts/" + idOrName
@@ -187,37 +179,50 @@ public class HostsController {
                             format != null && format.equals("xml") ? "application/xml" : "application/json")
                     .build();
 
-            try (Response response = okHttpClient.newCall(request).execute()) {
+            return ManagementCalls.exchange(managementHttpClient, request, asyncEnabled, response -> {
                 if (response.body() == null) {
+                    response.close();
                     logger.error("Received null response body from MarkLogic");
                     return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
-                            .body("{\"error\":\"No response from MarkLogic server\"}");
+                            .body(ProxyResponses.text("{\"error\":\"No response from MarkLogic server\"}"));
                 }
 
-                String responseBody = response.body().string();
-
                 if (response.isSuccessful()) {
                     logger.debug("Successfully received response from MarkLogic: {}", response.code());
 
                     // Determine content type based on format (default to JSON if not specified)
                     MediaType contentType = (format != null && format.equals("xml")) ? MediaType.APPLICATION_XML
                             : MediaType.APPLICATION_JSON;
-                    return ResponseEntity.ok().contentType(contentType).body(responseBody);
-                } else {
+                    return ProxyResponses.stream(ResponseEntity.ok().contentType(contentType), response);
+                }
+
+                try (response) {
+                    String responseBody = response.body().string();
                     logger.error("MarkLogic returned error status: {} with body: {}", response.code(), responseBody);
-                    return ResponseEntity.status(response.code())
-                            .body("{\"error\":\"MarkLogic returned status: " + response.code() + "\"}");
+                    return ProxyResponses.error(response, "{\"error\":\"MarkLogic returned status: " + response.code() + "\"}");
                 }
-            }
-        } catch (IOException e) {
+            }).exceptionally(e -> proxyError(ManagementCalls.unwrap(e)));
+        } catch (Exception e) {
+            return CompletableFuture.completedFuture(proxyError(e));
+        }
+    }
+
+    /**
+     * Maps a failed call to the proxy error response: 502 when MarkLogic could
+     * not be reached, 500 for anything unexpected.
+     * 
+     * @param e the failure
+     * @return ResponseEntity describing the error
+     */
+    private ResponseEntity<StreamingResponseBody> proxyError(Throwable e) {
+        if (e instanceof IOException) {
             logger.error("IOException while communicating with MarkLogic", e);
             return ResponseEntity.status(HttpStatus.BAD_GATEWAY)
-                    .body("{\"error\":\"Failed to proxy to MarkLogic: " + e.getMessage() + "\"}");
-        } catch (Exception e) {
-            logger.error("Unexpected error while proxying to MarkLogic", e);
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
-                    .body("{\"error\":\"Unexpected error: " + e.getMessage() + "\"}");
+                    .body(ProxyResponses.text("{\"error\":\"Failed to proxy to MarkLogic: " + e.getMessage() + "\"}"));
         }
+        logger.error("Unexpected error while proxying to MarkLogic", e);
+        return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                .body(ProxyResponses.text("{\"error\":\"Unexpected error: " + e.getMessage() + "\"}"));
     }
 
     /**
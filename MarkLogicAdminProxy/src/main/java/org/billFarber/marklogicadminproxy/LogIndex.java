@@ -0,0 +1,481 @@
+package org.billFarber.marklogicadminproxy;
+
+/**
+ * Inverted index of a spooled log, for LogSearchController: every token of the
+ * log, lower-cased, mapped to the sorted numbers of the lines it occurs on.
+ *
+ * Tokens are runs of ASCII letters, digits and underscores, plus any non-ASCII
+ * bytes, so "XDMP-FORESTERR" is indexed as "xdmp" and "foresterr", and
+ * 10.0.0.1 as "10", "0", "0" and "1". A query is a list of terms, each
+ * matching a whole token or, ending in *, any token with that prefix, and of
+ * quoted phrases; a line matches when it has all of them. Phrases are looked
+ * up by their tokens and then checked against the line text.
+ *
+ * Logs grow at the end, so an index is extended rather than rebuilt when the
+ * log is spooled again: when the new file starts with the bytes the previous
+ * index covered (checked with a CRC32), its postings are kept and only the
+ * lines after them are tokenized. The last line is left out of that prefix
+ * when it had no line terminator yet, since it may have been cut mid-line.
+ *
+ * The postings live on the heap, so an index is bounded by max-index-size,
+ * estimated from its terms and posting arrays. When a log needs more, only
+ * the lines up to that size are indexed; searches read the lines after them
+ * from the spool file and tokenize them, which costs a scan of that part of
+ * the file but no memory.
+ *
+ * Lines are also found by time, for logs whose lines are in time order and
+ * start with an error log timestamp (2025-01-01 10:15:30.123) or carry an
+ * access log one ([01/Jan/2025:10:15:30 +0000], compared without its offset).
+ * A line without a timestamp has the time of the next line that has one.
+ */
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+
+class LogIndex implements AutoCloseable {
+
+    /** Longer tokens are indexed by their first MAX_TOKEN bytes. */
+    static final int MAX_TOKEN = 64;
+
+    /** Estimated heap bytes of a term besides its text and line numbers. */
+    private static final int TERM_OVERHEAD = 96;
+
+    /** How far past a line without a timestamp to look for one. */
+    private static final int TIMESTAMP_LOOKAHEAD = 1000;
+
+    private static final Pattern ERROR_TIME = Pattern.compile("^(\\d{4}-\\d{2}-\\d{2} \\d{2}:\\d{2}:\\d{2})");
+    private static final Pattern ACCESS_TIME = Pattern.compile("\\[(\\d{2}/[A-Za-z]{3}/\\d{4}:\\d{2}:\\d{2}:\\d{2})");
+    private static final DateTimeFormatter ERROR_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private static final DateTimeFormatter ACCESS_FORMAT = DateTimeFormatter.ofPattern("dd/MMM/yyyy:HH:mm:ss",
+            Locale.ENGLISH);
+
+    private final LogSpool.SpooledLog log;
+    private final TreeMap<String, Postings> terms;
+    /** End of the last line with a terminator, and the number of such lines. */
+    private final long stableBytes;
+    private final int stableLines;
+    private final long stableCrc;
+    /** Lines before this one are in the postings; later ones are scanned. */
+    private final int indexedLines;
+    private final boolean extended;
+
+    private LogIndex(LogSpool.SpooledLog log, TreeMap<String, Postings> terms, long stableBytes, int stableLines,
+            long stableCrc, int indexedLines, boolean extended) {
+        this.log = log;
+        this.terms = terms;
+        this.stableBytes = stableBytes;
+        this.stableLines = stableLines;
+        this.stableCrc = stableCrc;
+        this.indexedLines = indexedLines;
+        this.extended = extended;
+    }
+
+    /**
+     * Indexes log, starting from previous when log still begins with what
+     * previous covered. The index holds a reference to log until it is
+     * closed.
+     *
+     * @param previous the index of an earlier copy of the same log, or null
+     * @param maxBytes estimated heap size at which to stop indexing
+     */
+    static LogIndex build(LogSpool.SpooledLog log, LogIndex previous, long maxBytes) throws IOException {
+        TreeMap<String, Postings> terms = new TreeMap<>();
+        long bytes = 0;
+        long fromByte = 0;
+        int fromLine = 0;
+        boolean extended = false;
+        if (previous != null && previous.stableBytes > 0 && log.size() >= previous.stableBytes
+                && crc(log, previous.stableBytes) == previous.stableCrc) {
+            for (Map.Entry<String, Postings> entry : previous.terms.entrySet()) {
+                Postings kept = entry.getValue().before(previous.stableLines);
+                if (kept.size > 0) {
+                    terms.put(entry.getKey(), kept);
+                    bytes += termBytes(entry.getKey()) + kept.bytes();
+                }
+            }
+            fromByte = previous.stableBytes;
+            fromLine = previous.stableLines;
+            extended = true;
+        }
+
+        Tokenizer tokenizer = new Tokenizer(terms, fromByte, fromLine, bytes, maxBytes);
+        for (long position = fromByte; position < log.size() && !tokenizer.full; position += LogSpool.MAP_CHUNK) {
+            MappedByteBuffer chunk = log.map(position, Math.min(LogSpool.MAP_CHUNK, log.size() - position));
+            while (chunk.hasRemaining() && !tokenizer.full) {
+                tokenizer.accept(chunk.get());
+            }
+        }
+        int indexedLines = Integer.MAX_VALUE;
+        if (tokenizer.full) {
+            // The line being tokenized is partly in the postings; search scans it with the rest
+            indexedLines = tokenizer.stableLines;
+        } else {
+            tokenizer.flush();
+        }
+        return new LogIndex(log.retain(), terms, tokenizer.stableBytes, tokenizer.stableLines,
+                crc(log, tokenizer.stableBytes), indexedLines, extended);
+    }
+
+    LogSpool.SpooledLog log() {
+        return log;
+    }
+
+    /**
+     * @return whether this index reused the postings of the previous one
+     */
+    boolean extended() {
+        return extended;
+    }
+
+    int termCount() {
+        return terms.size();
+    }
+
+    /**
+     * @return whether max-index-size stopped indexing before the end of the log
+     */
+    boolean truncated() {
+        return indexedLines < log.lineCount();
+    }
+
+    /**
+     * Finds the lines, from firstLine (inclusive) to lastLine (exclusive), that
+     * contain all terms and phrases.
+     *
+     * @param terms   lower-case tokens, each optionally ending in * for a
+     *                prefix match
+     * @param phrases phrases matched case-insensitively within a line
+     * @return the matching line numbers in ascending order
+     */
+    int[] search(List<String> terms, List<String> phrases, int firstLine, int lastLine) throws IOException {
+        List<String> all = new ArrayList<>(terms);
+        List<String> lowerPhrases = new ArrayList<>();
+        for (String phrase : phrases) {
+            all.addAll(tokens(phrase));
+            lowerPhrases.add(phrase.toLowerCase(Locale.ROOT));
+        }
+        int[] matches = null;
+        for (String term : all) {
+            matches = intersect(matches, lookup(term));
+        }
+
+        int indexedEnd = Math.max(firstLine, Math.min(lastLine, indexedLines));
+        int from;
+        int to;
+        if (matches == null) {
+            from = firstLine;
+            to = indexedEnd;
+        } else {
+            from = lowerBound(matches, firstLine);
+            to = Math.max(from, lowerBound(matches, indexedEnd));
+        }
+        int[] result = new int[to - from + Math.max(0, lastLine - indexedEnd)];
+        int count = 0;
+        for (int i = from; i < to; i++) {
+            int line = matches == null ? i : matches[i];
+            if (lowerPhrases.isEmpty() || containsAll(log.line(line), lowerPhrases)) {
+                result[count++] = line;
+            }
+        }
+        for (int line = indexedEnd; line < lastLine; line++) {
+            String text = log.line(line);
+            if (hasTokens(text, all) && containsAll(text, lowerPhrases)) {
+                result[count++] = line;
+            }
+        }
+        return count == result.length ? result : Arrays.copyOf(result, count);
+    }
+
+    /**
+     * @return the first line whose time is at or after time (or, when after
+     *         is set, strictly after it), or the line count when there is none
+     */
+    int firstLineAt(LocalDateTime time, boolean after) throws IOException {
+        int low = 0;
+        int high = (int) log.lineCount();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            LocalDateTime lineTime = timeAt(middle);
+            boolean before = lineTime != null && (after ? !lineTime.isAfter(time) : lineTime.isBefore(time));
+            if (before) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @return the time of line, or of the next line with a timestamp, or null
+     */
+    private LocalDateTime timeAt(int line) throws IOException {
+        int last = (int) Math.min(log.lineCount(), (long) line + TIMESTAMP_LOOKAHEAD);
+        for (int i = line; i < last; i++) {
+            LocalDateTime time = timestamp(log.line(i));
+            if (time != null) {
+                return time;
+            }
+        }
+        return null;
+    }
+
+    static LocalDateTime timestamp(String line) {
+        try {
+            Matcher error = ERROR_TIME.matcher(line);
+            if (error.find()) {
+                return LocalDateTime.parse(error.group(1), ERROR_FORMAT);
+            }
+            Matcher access = ACCESS_TIME.matcher(line);
+            if (access.find()) {
+                return LocalDateTime.parse(access.group(1), ACCESS_FORMAT);
+            }
+        } catch (DateTimeParseException e) {
+            // Looked like a timestamp but was not one
+        }
+        return null;
+    }
+
+    /**
+     * Splits text into lower-case tokens the way the log is indexed.
+     */
+    static List<String> tokens(String text) {
+        List<String> tokens = new ArrayList<>();
+        Tokenizer tokenizer = new Tokenizer(new TreeMap<>(), 0, 0, 0, Long.MAX_VALUE) {
+            @Override
+            void emit(String token) {
+                tokens.add(token);
+            }
+        };
+        for (byte b : text.getBytes(StandardCharsets.UTF_8)) {
+            tokenizer.accept(b);
+        }
+        tokenizer.flush();
+        return tokens;
+    }
+
+    /**
+     * @return whether a line that is not in the postings has every term
+     */
+    private static boolean hasTokens(String line, List<String> terms) {
+        if (terms.isEmpty()) {
+            return true;
+        }
+        List<String> tokens = tokens(line);
+        for (String term : terms) {
+            boolean found = term.endsWith("*")
+                    ? tokens.stream().anyMatch(token -> token.startsWith(term.substring(0, term.length() - 1)))
+                    : tokens.contains(term);
+            if (!found) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean containsAll(String line, List<String> lowerPhrases) {
+        if (lowerPhrases.isEmpty()) {
+            return true;
+        }
+        String text = line.toLowerCase(Locale.ROOT);
+        return lowerPhrases.stream().allMatch(text::contains);
+    }
+
+    private static long termBytes(String term) {
+        return TERM_OVERHEAD + term.length();
+    }
+
+    private int[] lookup(String term) {
+        if (!term.endsWith("*")) {
+            Postings postings = terms.get(term);
+            return postings == null ? new int[0] : postings.toArray();
+        }
+        String prefix = term.substring(0, term.length() - 1);
+        NavigableMap<String, Postings> matching = prefix.isEmpty() ? terms
+                : terms.subMap(prefix, true, prefix + Character.MAX_VALUE, false);
+        BitSet lines = new BitSet();
+        for (Postings postings : matching.values()) {
+            for (int i = 0; i < postings.size; i++) {
+                lines.set(postings.lines[i]);
+            }
+        }
+        return lines.stream().toArray();
+    }
+
+    private static int[] intersect(int[] left, int[] right) {
+        if (left == null) {
+            return right;
+        }
+        int[] result = new int[Math.min(left.length, right.length)];
+        int count = 0;
+        for (int i = 0, j = 0; i < left.length && j < right.length;) {
+            if (left[i] < right[j]) {
+                i++;
+            } else if (left[i] > right[j]) {
+                j++;
+            } else {
+                result[count++] = left[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    /**
+     * @return the index of the first element of sorted that is at least value
+     */
+    private static int lowerBound(int[] sorted, int value) {
+        int index = Arrays.binarySearch(sorted, value);
+        return index >= 0 ? index : -index - 1;
+    }
+
+    private static long crc(LogSpool.SpooledLog log, long length) throws IOException {
+        CRC32 crc = new CRC32();
+        for (long position = 0; position < length; position += LogSpool.MAP_CHUNK) {
+            crc.update(log.map(position, Math.min(LogSpool.MAP_CHUNK, length - position)));
+        }
+        return crc.getValue();
+    }
+
+    @Override
+    public void close() {
+        log.close();
+    }
+
+    /**
+     * Splits a byte stream into tokens and adds them to the postings,
+     * tracking the line number as it goes.
+     */
+    private static class Tokenizer {
+
+        private final TreeMap<String, Postings> terms;
+        private final long maxBytes;
+        private final byte[] token = new byte[MAX_TOKEN];
+        private int tokenLength;
+        private boolean inToken;
+        private long position;
+        private int line;
+        private long bytes;
+        long stableBytes;
+        int stableLines;
+        /** Set once the postings reached maxBytes; nothing is added after that. */
+        boolean full;
+
+        Tokenizer(TreeMap<String, Postings> terms, long position, int line, long bytes, long maxBytes) {
+            this.terms = terms;
+            this.position = position;
+            this.line = line;
+            this.stableBytes = position;
+            this.stableLines = line;
+            this.bytes = bytes;
+            this.maxBytes = maxBytes;
+            this.full = bytes >= maxBytes;
+        }
+
+        void accept(byte b) {
+            position++;
+            if ((b >= 'a' && b <= 'z') || (b >= '0' && b <= '9') || b == '_' || b < 0) {
+                append(b);
+            } else if (b >= 'A' && b <= 'Z') {
+                append((byte) (b + ('a' - 'A')));
+            } else {
+                flush();
+                if (b == '\n') {
+                    line++;
+                    stableBytes = position;
+                    stableLines = line;
+                }
+            }
+        }
+
+        private void append(byte b) {
+            inToken = true;
+            if (tokenLength < MAX_TOKEN) {
+                token[tokenLength++] = b;
+            }
+        }
+
+        void flush() {
+            if (inToken) {
+                emit(new String(token, 0, tokenLength, StandardCharsets.UTF_8).toLowerCase(Locale.ROOT));
+                inToken = false;
+                tokenLength = 0;
+            }
+        }
+
+        void emit(String term) {
+            if (full) {
+                return;
+            }
+            Postings postings = terms.get(term);
+            if (postings == null) {
+                postings = new Postings();
+                terms.put(term, postings);
+                bytes += termBytes(term) + postings.bytes();
+            }
+            bytes += postings.add(line);
+            full = bytes >= maxBytes;
+        }
+    }
+
+    /**
+     * Sorted line numbers of one term, without duplicates.
+     */
+    private static final class Postings {
+
+        private int[] lines = new int[4];
+        private int size;
+
+        /**
+         * @return the bytes by which the line array grew
+         */
+        long add(int line) {
+            if (size > 0 && lines[size - 1] == line) {
+                return 0;
+            }
+            long grown = 0;
+            if (size == lines.length) {
+                lines = Arrays.copyOf(lines, size * 2);
+                grown = 4L * size;
+            }
+            lines[size++] = line;
+            return grown;
+        }
+
+        long bytes() {
+            return 4L * lines.length;
+        }
+
+        /**
+         * @return a copy holding only the lines before line
+         */
+        Postings before(int line) {
+            Postings copy = new Postings();
+            int found = Arrays.binarySearch(lines, 0, size, line);
+            int count = found >= 0 ? found : -found - 1;
+            copy.lines = Arrays.copyOf(lines, Math.max(4, count));
+            copy.size = count;
+            return copy;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(lines, size);
+        }
+    }
+}
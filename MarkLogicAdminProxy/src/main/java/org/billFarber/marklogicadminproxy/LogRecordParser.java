@@ -0,0 +1,365 @@
+package org.billFarber.marklogicadminproxy;
+
+/**
+ * Turns a MarkLogic log in text form into JSON Lines records, for
+ * /manage/v2/logs?format=ndjson.
+ *
+ * The log type comes from the file name:
+ * - Error logs (ErrorLog.txt, 8002_ErrorLog.txt): one record per
+ *   "2025-01-01 10:15:30.123 Level: message" line, with the lines that follow
+ *   it without a timestamp (stack traces, multi-line XML) added to its message
+ * - Access logs (8002_AccessLog.txt): one record per request, with client,
+ *   user, method, path, status and bytes. Their level is error for a 5xx,
+ *   warning for a 4xx and info otherwise
+ * - Request logs (8002_RequestLog.txt): one record per JSON line, which is
+ *   kept as request
+ * - Audit logs (AuditLog.txt): one record per "2025-01-01 10:15:30.123
+ *   event=...; success=..." line, with level warning when success=false and
+ *   info otherwise
+ * - Any other log is read like an error log; a line that starts with a
+ *   timestamp but no level starts a record without a level
+ *
+ * Every record has timestamp (in the log's own time, without offset; the
+ * offset of a request log time is dropped, not applied), level (lower case),
+ * host (the host parameter, when given), app-server (the port a per-server
+ * log belongs to) and message. Records below the minimum level
+ * or outside start and end are dropped here, before they reach the client.
+ *
+ * Lines are read one at a time from the upstream body, so only the current
+ * record is held in memory whatever the size of the log. Each line is found
+ * with indexOf('\n') in the Okio buffer. For error and audit logs the
+ * timestamp and level are parsed from the first PREFIX_BYTES bytes before
+ * the line is decoded, so a record dropped by level or time is skipped,
+ * together with its continuation lines, without decoding them. The lines that
+ * are kept are decoded into Strings and matched with regular expressions, as
+ * are all lines of access and request logs, whose time is not at the start of
+ * the line. A record holds at most MAX_RECORD_LINES lines and
+ * MAX_RECORD_CHARS characters; further continuation lines go to a new record
+ * with the same timestamp and level.
+ */
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import okio.Buffer;
+import okio.BufferedSource;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+final class LogRecordParser {
+
+    /** MarkLogic's log levels, lowest first. */
+    static final List<String> LEVELS = List.of("finest", "finer", "fine", "debug", "config", "info", "notice",
+            "warning", "error", "critical", "alert", "emergency");
+
+    /** Most lines merged into one record. */
+    static final int MAX_RECORD_LINES = 1000;
+
+    /** Most message characters merged into one record. */
+    static final int MAX_RECORD_CHARS = 1024 * 1024;
+
+    /** Enough of a line for its timestamp and level. */
+    private static final int PREFIX_BYTES = 64;
+
+    private static final Pattern PREFIX = Pattern
+            .compile("^(\\d{4}-\\d{2}-\\d{2}) (\\d{2}:\\d{2}:\\d{2}(?:\\.\\d+)?)(?: ([A-Za-z]+):)?");
+    private static final Pattern TIMESTAMP_LINE = Pattern
+            .compile("^(\\d{4}-\\d{2}-\\d{2}) (\\d{2}:\\d{2}:\\d{2}(?:\\.\\d+)?) ?(.*)$");
+    private static final Pattern AUDIT_FAILURE = Pattern.compile("(?:^|[;\\s])success=false\\b");
+    private static final Pattern ERROR_LINE = Pattern
+            .compile("^(\\d{4}-\\d{2}-\\d{2}) (\\d{2}:\\d{2}:\\d{2}(?:\\.\\d+)?) ([A-Za-z]+): ?(.*)$");
+    private static final Pattern ACCESS_LINE = Pattern
+            .compile("^(\\S+) \\S+ (\\S+) \\[([^\\]]+?)(?: [+-]\\d{4})?\\] \"(\\S+) (\\S+)[^\"]*\" (\\d{3}) (\\S+)");
+    private static final Pattern SERVER_PORT = Pattern.compile("^(\\d+)_");
+    private static final DateTimeFormatter ACCESS_FORMAT = DateTimeFormatter.ofPattern("dd/MMM/yyyy:HH:mm:ss",
+            Locale.ENGLISH);
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final JsonFactory JSON = MAPPER.getFactory();
+
+    private enum Kind {
+        ERROR, ACCESS, REQUEST, AUDIT
+    }
+
+    /** What the start of a line says about it. */
+    private enum Prefix {
+        KEEP, DROP, CONTINUATION
+    }
+
+    private final Kind kind;
+    private final String host;
+    private final String appServer;
+    private final int minLevel;
+    private final LocalDateTime start;
+    private final LocalDateTime end;
+
+    /**
+     * @param minLevel lowest level to return, one of LEVELS, or null for all
+     * @param start    earliest record time to return, or null
+     * @param end      latest record time to return, or null
+     */
+    LogRecordParser(String filename, String host, String minLevel, LocalDateTime start, LocalDateTime end) {
+        this.kind = filename.contains("AccessLog") ? Kind.ACCESS
+                : filename.contains("RequestLog") ? Kind.REQUEST
+                : filename.contains("AuditLog") ? Kind.AUDIT : Kind.ERROR;
+        this.host = host;
+        Matcher port = SERVER_PORT.matcher(filename);
+        this.appServer = port.find() ? port.group(1) : null;
+        this.minLevel = minLevel == null ? -1 : LEVELS.indexOf(minLevel.toLowerCase(Locale.ROOT));
+        this.start = start;
+        this.end = end;
+    }
+
+    /**
+     * @return whether filename is an error log, the only kind MarkLogic
+     *         filters by start and end itself
+     */
+    static boolean isErrorLog(String filename) {
+        return filename.contains("ErrorLog");
+    }
+
+    /**
+     * @return whether level is a MarkLogic log level, in any case
+     */
+    static boolean isLevel(String level) {
+        return LEVELS.contains(level.toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * Reads the log from source and writes the matching records to out, one
+     * JSON object per line.
+     */
+    void write(BufferedSource source, OutputStream out) throws IOException {
+        try (JsonGenerator json = JSON.createGenerator(out, JsonEncoding.UTF8)) {
+            json.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            json.setRootValueSeparator(null);
+            Record pending = null;
+            boolean dropping = false;
+            while (!source.exhausted()) {
+                long newline = source.indexOf((byte) '\n');
+                long length = newline == -1 ? source.getBuffer().size() : newline;
+                Prefix prefix = prefix(source.getBuffer(), length);
+                if (prefix == Prefix.DROP || (prefix == Prefix.CONTINUATION && dropping)) {
+                    dropping = true;
+                    source.skip(newline == -1 ? length : length + 1);
+                    continue;
+                }
+                dropping = false;
+                String line = source.readUtf8(length);
+                if (newline != -1) {
+                    source.skip(1);
+                }
+                if (line.endsWith("\r")) {
+                    line = line.substring(0, line.length() - 1);
+                }
+                if (line.isEmpty()) {
+                    continue;
+                }
+                Record record = parse(line);
+                if (record == null) {
+                    // An error log continuation line
+                    if (pending == null) {
+                        pending = new Record(null, null, line);
+                    } else if (pending.lines >= MAX_RECORD_LINES
+                            || pending.message.length() + line.length() >= MAX_RECORD_CHARS) {
+                        write(json, pending);
+                        pending = new Record(pending.time, pending.level, line);
+                    } else {
+                        pending.message.append('\n').append(line);
+                        pending.lines++;
+                    }
+                    continue;
+                }
+                write(json, pending);
+                pending = record;
+            }
+            write(json, pending);
+        }
+    }
+
+    /**
+     * Looks at the first bytes of the next line, of length bytes, without
+     * consuming it.
+     *
+     * @return DROP for an error or audit log record that level, start or end
+     *         rule out, CONTINUATION for an error log line without a timestamp
+     */
+    private Prefix prefix(Buffer buffer, long length) {
+        if (kind == Kind.ACCESS || kind == Kind.REQUEST) {
+            return Prefix.KEEP;
+        }
+        Buffer head = new Buffer();
+        buffer.copyTo(head, 0, Math.min(length, PREFIX_BYTES));
+        Matcher matcher = PREFIX.matcher(head.readUtf8());
+        if (!matcher.find()) {
+            // Audit lines without a timestamp are records of their own
+            return kind == Kind.AUDIT ? Prefix.KEEP : Prefix.CONTINUATION;
+        }
+        // An audit record's level depends on the rest of the line
+        String level = kind == Kind.ERROR && matcher.group(3) != null && isLevel(matcher.group(3))
+                ? matcher.group(3).toLowerCase(Locale.ROOT)
+                : null;
+        return matches(time(matcher.group(1) + "T" + matcher.group(2)), level) ? Prefix.KEEP : Prefix.DROP;
+    }
+
+    /**
+     * @return the record starting at line, or null for a continuation line
+     */
+    private Record parse(String line) {
+        switch (kind) {
+            case ACCESS:
+                return parseAccess(line);
+            case REQUEST:
+                return parseRequest(line);
+            case AUDIT:
+                return parseAudit(line);
+            default:
+                Matcher matcher = ERROR_LINE.matcher(line);
+                if (matcher.matches() && isLevel(matcher.group(3))) {
+                    return new Record(time(matcher.group(1) + "T" + matcher.group(2)),
+                            matcher.group(3).toLowerCase(Locale.ROOT), matcher.group(4));
+                }
+                Matcher timestamp = TIMESTAMP_LINE.matcher(line);
+                if (!timestamp.matches()) {
+                    return null;
+                }
+                return new Record(time(timestamp.group(1) + "T" + timestamp.group(2)), null, timestamp.group(3));
+        }
+    }
+
+    private Record parseAudit(String line) {
+        Matcher matcher = TIMESTAMP_LINE.matcher(line);
+        if (!matcher.matches()) {
+            return new Record(null, null, line);
+        }
+        String level = AUDIT_FAILURE.matcher(matcher.group(3)).find() ? "warning" : "info";
+        return new Record(time(matcher.group(1) + "T" + matcher.group(2)), level, matcher.group(3));
+    }
+
+    private Record parseAccess(String line) {
+        Matcher matcher = ACCESS_LINE.matcher(line);
+        if (!matcher.find()) {
+            return new Record(null, null, line);
+        }
+        LocalDateTime time;
+        try {
+            time = LocalDateTime.parse(matcher.group(3), ACCESS_FORMAT);
+        } catch (DateTimeParseException e) {
+            time = null;
+        }
+        int status = Integer.parseInt(matcher.group(6));
+        Record record = new Record(time, status >= 500 ? "error" : status >= 400 ? "warning" : "info",
+                matcher.group(4) + " " + matcher.group(5) + " " + status);
+        record.access = matcher;
+        return record;
+    }
+
+    private Record parseRequest(String line) {
+        try {
+            JsonNode request = MAPPER.readTree(line);
+            LocalDateTime time = null;
+            String when = request.path("time").asText(null);
+            if (when != null) {
+                try {
+                    time = OffsetDateTime.parse(when).toLocalDateTime();
+                } catch (DateTimeParseException e) {
+                    time = time(when);
+                }
+            }
+            Record record = new Record(time, "info", request.path("url").asText(""));
+            record.request = request;
+            return record;
+        } catch (IOException e) {
+            return new Record(null, null, line);
+        }
+    }
+
+    private void write(JsonGenerator json, Record record) throws IOException {
+        if (record == null || !matches(record)) {
+            return;
+        }
+        json.writeStartObject();
+        json.writeStringField("timestamp", record.time == null ? null : record.time.toString());
+        json.writeStringField("level", record.level);
+        json.writeStringField("host", host);
+        json.writeStringField("app-server", appServer);
+        json.writeStringField("message", record.message.toString());
+        if (record.access != null) {
+            Matcher access = record.access;
+            json.writeStringField("client", access.group(1));
+            json.writeStringField("user", access.group(2));
+            json.writeStringField("method", access.group(4));
+            json.writeStringField("path", access.group(5));
+            json.writeNumberField("status", Integer.parseInt(access.group(6)));
+            if (access.group(7).chars().allMatch(Character::isDigit)) {
+                json.writeNumberField("bytes", Long.parseLong(access.group(7)));
+            }
+        }
+        if (record.request != null) {
+            json.writeFieldName("request");
+            json.writeTree(record.request);
+        }
+        json.writeEndObject();
+        json.writeRaw('\n');
+    }
+
+    private boolean matches(Record record) {
+        return matches(record.time, record.level);
+    }
+
+    private boolean matches(LocalDateTime time, String level) {
+        if (minLevel >= 0 && level != null) {
+            int index = LEVELS.indexOf(level);
+            if (index >= 0 && index < minLevel) {
+                return false;
+            }
+        }
+        if (time != null) {
+            if (start != null && time.isBefore(start)) {
+                return false;
+            }
+            if (end != null && time.isAfter(end)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static LocalDateTime time(String value) {
+        try {
+            return LocalDateTime.parse(value);
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    /**
+     * One log record; message grows while continuation lines are read.
+     */
+    private static final class Record {
+
+        final LocalDateTime time;
+        final String level;
+        final StringBuilder message;
+        int lines = 1;
+        Matcher access;
+        JsonNode request;
+
+        Record(LocalDateTime time, String level, String message) {
+            this.time = time;
+            this.level = level;
+            this.message = new StringBuilder(message);
+        }
+    }
+}
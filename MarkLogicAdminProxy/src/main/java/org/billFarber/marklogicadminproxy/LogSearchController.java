@@ -0,0 +1,332 @@
+package org.billFarber.marklogicadminproxy;
+
+/**
+ * Searches MarkLogic log files through a local inverted index.
+ *
+ * GET /manage/v2/logs/search?filename=ErrorLog.txt&q=...
+ *
+ * Supported parameters:
+ * - filename: The log file to search (required); any log type
+ * - host: The host whose log to search
+ * - q: Terms and "quoted phrases" that must all occur in a line, case
+ *   insensitively; a term ending in * matches any word with that prefix
+ * - start, end: Only lines logged in this time range (yyyy-MM-ddTHH:mm:ss,
+ *   both inclusive, in the log's own time)
+ * - offset, limit: Which of the matching lines to return (default limit:
+ *   marklogic.management.log-search.default-limit, at most
+ *   marklogic.management.log-spool.max-limit)
+ *
+ * Returns {"total": n, "offset": ..., "limit": ..., "tookMillis": ...,
+ * "lines": [{"line": ..., "text": ...}]} with line numbers counted from 0 as
+ * in the paged logs endpoint. Without q, every line in the time range
+ * matches. tookMillis is the time spent in the proxy on indexing (when the
+ * index was built or extended by this request) and on matching, not the time
+ * to fetch the log from MarkLogic.
+ *
+ * The log is fetched as text into the LogSpool, shared with paged
+ * retrieval, and indexed once (see LogIndex); repeated searches only look up
+ * the index. When the spooled copy expires and the log is fetched again, the
+ * index is extended with the new lines instead of being rebuilt. The
+ * max-indexes most recently searched logs keep their index, each of at most
+ * max-index-size.
+ */
+
+import okhttp3.HttpUrl;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+@RestController
+public class LogSearchController {
+
+    private static final Logger logger = LoggerFactory.getLogger(LogSearchController.class);
+
+    private static final Pattern QUERY_PART = Pattern.compile("\"([^\"]*)\"?|(\\S+)");
+
+    @Autowired
+    private OkHttpClient managementHttpClient;
+
+    @Autowired
+    private LogSpool logSpool;
+
+    @Autowired
+    private ManagementProperties managementProperties;
+
+    @Value("${marklogic.host}")
+    private String marklogicHost;
+
+    @Value("${marklogic.schema}")
+    private String marklogicSchema;
+
+    @Value("${marklogic.management.async-enabled:false}")
+    private boolean asyncEnabled;
+
+    // Access-ordered, so iteration starts at the least recently searched log
+    private final LinkedHashMap<String, Indexed> indexes = new LinkedHashMap<>(16, 0.75f, true);
+
+    @GetMapping("/manage/v2/logs/search")
+    public CompletableFuture<ResponseEntity<Map<String, Object>>> searchLogs(
+            @RequestParam(value = "filename", required = false) String filename,
+            @RequestParam(value = "host", required = false) String host,
+            @RequestParam(value = "q", required = false) String q,
+            @RequestParam(value = "start", required = false) String start,
+            @RequestParam(value = "end", required = false) String end,
+            @RequestParam(value = "offset", required = false) Integer offset,
+            @RequestParam(value = "limit", required = false) Integer limit) {
+
+        if (filename == null || filename.trim().isEmpty()) {
+            return CompletableFuture.completedFuture(badRequest("filename is required"));
+        }
+        int maxLimit = managementProperties.getLogSpool().getMaxLimit();
+        if ((offset != null && offset < 0) || (limit != null && (limit < 1 || limit > maxLimit))) {
+            return CompletableFuture.completedFuture(
+                    badRequest("offset must be at least 0 and limit between 1 and " + maxLimit));
+        }
+        Search search;
+        try {
+            search = new Search(q, time(start), time(end), offset == null ? 0 : offset,
+                    limit == null ? managementProperties.getLogSearch().getDefaultLimit() : limit);
+        } catch (DateTimeParseException e) {
+            return CompletableFuture.completedFuture(badRequest("start and end must look like 2025-01-01T10:00:00"));
+        }
+
+        try {
+            HttpUrl.Builder urlBuilder = HttpUrl.parse(marklogicSchema + "://" + marklogicHost + ":8002/manage/v2/logs")
+                    .newBuilder()
+                    .addQueryParameter("filename", filename)
+                    .addQueryParameter("format", "text");
+            if (host != null) {
+                urlBuilder.addQueryParameter("host", host);
+            }
+            // The same URL as a paged request for the whole log, so both share the spooled copy
+            String url = urlBuilder.build().toString();
+
+            LogSpool.SpooledLog spooled = logSpool.get(url);
+            if (spooled != null) {
+                return CompletableFuture.completedFuture(search(url, spooled, search));
+            }
+
+            Request request = new Request.Builder()
+                    .url(url)
+                    .build();
+            return ManagementCalls.exchange(managementHttpClient, request, asyncEnabled, response -> {
+                if (!response.isSuccessful()) {
+                    try (response) {
+                        return error(ProxyResponses.rejectionHeaders(ResponseEntity.status(status(response.code())),
+                                response), "MarkLogic returned status: " + response.code());
+                    }
+                }
+                return search(url, logSpool.put(url, response), search);
+            }).exceptionally(e -> searchError(ManagementCalls.unwrap(e)));
+        } catch (Exception e) {
+            return CompletableFuture.completedFuture(searchError(e));
+        }
+    }
+
+    /**
+     * Runs a search on a spooled log, which is closed afterwards.
+     */
+    private ResponseEntity<Map<String, Object>> search(String key, LogSpool.SpooledLog spooled, Search search)
+            throws IOException {
+        try (spooled) {
+            long started = System.nanoTime();
+            LogIndex index = index(key, spooled);
+            int firstLine = search.start == null ? 0 : index.firstLineAt(search.start, false);
+            int lastLine = search.end == null ? (int) spooled.lineCount() : index.firstLineAt(search.end, true);
+            int[] matches = index.search(search.terms, search.phrases, firstLine, lastLine);
+
+            List<Map<String, Object>> lines = new ArrayList<>();
+            for (int i = search.offset; i < matches.length && i < (long) search.offset + search.limit; i++) {
+                Map<String, Object> line = new LinkedHashMap<>();
+                line.put("line", matches[i]);
+                line.put("text", spooled.line(matches[i]));
+                lines.add(line);
+            }
+            Map<String, Object> body = new LinkedHashMap<>();
+            body.put("total", matches.length);
+            body.put("offset", search.offset);
+            body.put("limit", search.limit);
+            body.put("tookMillis", (System.nanoTime() - started) / 1_000_000);
+            body.put("lines", lines);
+            return ResponseEntity.ok(body);
+        }
+    }
+
+    /**
+     * Returns the index of spooled, building it, or extending the one of the
+     * previous copy of the log, when there is none yet. Concurrent searches
+     * of the same copy wait for one build.
+     */
+    private LogIndex index(String key, LogSpool.SpooledLog spooled) throws IOException {
+        Indexed entry;
+        Indexed replaced = null;
+        boolean build = false;
+        synchronized (indexes) {
+            entry = indexes.get(key);
+            if (entry == null || entry.log != spooled) {
+                replaced = entry;
+                entry = new Indexed(spooled);
+                indexes.put(key, entry);
+                trim();
+                build = true;
+            }
+        }
+        if (build) {
+            try {
+                LogIndex previous = replaced == null ? null : replaced.index.getNow(null);
+                LogIndex built = LogIndex.build(spooled, previous,
+                        managementProperties.getLogSearch().getMaxIndexSize().toBytes());
+                if (built.truncated()) {
+                    logger.info("Index of {} reached log-search.max-index-size; later lines are scanned on search",
+                            key);
+                }
+                entry.index.complete(built);
+            } catch (IOException | RuntimeException e) {
+                entry.index.completeExceptionally(e);
+                synchronized (indexes) {
+                    indexes.remove(key, entry);
+                }
+                throw e;
+            } finally {
+                if (replaced != null) {
+                    replaced.close();
+                }
+            }
+        }
+        try {
+            return entry.index.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof IOException io) {
+                throw io;
+            }
+            throw e;
+        }
+    }
+
+    int indexCount() {
+        synchronized (indexes) {
+            return indexes.size();
+        }
+    }
+
+    private void trim() {
+        Iterator<Indexed> it = indexes.values().iterator();
+        while (indexes.size() > managementProperties.getLogSearch().getMaxIndexes() && it.hasNext()) {
+            Indexed evicted = it.next();
+            it.remove();
+            evicted.close();
+        }
+    }
+
+    private static LocalDateTime time(String value) {
+        return value == null || value.isBlank() ? null : LocalDateTime.parse(value.trim());
+    }
+
+    private static HttpStatus status(int code) {
+        switch (code) {
+            case 400:
+                return HttpStatus.BAD_REQUEST;
+            case 401:
+                return HttpStatus.UNAUTHORIZED;
+            case 404:
+                return HttpStatus.NOT_FOUND;
+            case 503:
+                return HttpStatus.SERVICE_UNAVAILABLE;
+            default:
+                return HttpStatus.INTERNAL_SERVER_ERROR;
+        }
+    }
+
+    private static ResponseEntity<Map<String, Object>> badRequest(String message) {
+        return error(HttpStatus.BAD_REQUEST, message);
+    }
+
+    private static ResponseEntity<Map<String, Object>> searchError(Throwable e) {
+        return error(HttpStatus.INTERNAL_SERVER_ERROR, "Failed to search logs: " + e.getMessage());
+    }
+
+    private static ResponseEntity<Map<String, Object>> error(HttpStatus status, String message) {
+        return error(ResponseEntity.status(status), message);
+    }
+
+    private static ResponseEntity<Map<String, Object>> error(ResponseEntity.BodyBuilder builder, String message) {
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("error", message);
+        return builder.body(body);
+    }
+
+    /**
+     * A parsed search request.
+     */
+    private static final class Search {
+
+        final List<String> terms = new ArrayList<>();
+        final List<String> phrases = new ArrayList<>();
+        final LocalDateTime start;
+        final LocalDateTime end;
+        final int offset;
+        final int limit;
+
+        Search(String q, LocalDateTime start, LocalDateTime end, int offset, int limit) {
+            this.start = start;
+            this.end = end;
+            this.offset = offset;
+            this.limit = limit;
+            Matcher parts = QUERY_PART.matcher(q == null ? "" : q);
+            while (parts.find()) {
+                if (parts.group(1) != null) {
+                    if (!parts.group(1).isBlank()) {
+                        phrases.add(parts.group(1));
+                    }
+                    continue;
+                }
+                // A term is split like the log, so XDMP-FORESTERR needs both of its tokens
+                String term = parts.group(2);
+                boolean prefix = term.endsWith("*");
+                List<String> tokens = LogIndex.tokens(prefix ? term.substring(0, term.length() - 1) : term);
+                for (int i = 0; i < tokens.size(); i++) {
+                    boolean last = i == tokens.size() - 1;
+                    terms.add(tokens.get(i) + (prefix && last ? "*" : ""));
+                }
+            }
+        }
+    }
+
+    /**
+     * The index of one spooled copy of a log, complete or being built.
+     */
+    private static final class Indexed {
+
+        final LogSpool.SpooledLog log;
+        final CompletableFuture<LogIndex> index = new CompletableFuture<>();
+
+        Indexed(LogSpool.SpooledLog log) {
+            this.log = log;
+        }
+
+        void close() {
+            index.thenAccept(LogIndex::close);
+        }
+    }
+}
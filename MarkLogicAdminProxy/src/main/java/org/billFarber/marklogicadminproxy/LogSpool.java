@@ -0,0 +1,332 @@
+package org.billFarber.marklogicadminproxy;
+
+/**
+ * Local spool of fetched log files, so LogsController can serve a page of a
+ * multi-million line log, and LogSearchController search one, without
+ * fetching or holding the whole file again.
+ *
+ * The first paged request for a log streams the upstream body into a file in
+ * the spool directory and, in the same pass, writes the byte offset of every
+ * line start to an index file beside it. Both are read through memory-mapped
+ * I/O: a page of lines is two index lookups and a copy of the mapped byte
+ * range to the client, so the proxy's heap use does not grow with the log.
+ *
+ * Spooled logs are keyed by the upstream URL (file, host, start, end, regex)
+ * and reused for ttl, so a UI paging through a log sees one consistent
+ * snapshot. Expired logs, and the least recently used ones when the spool
+ * holds more than max-size, are deleted once no response is still reading
+ * them.
+ */
+
+import okhttp3.Response;
+import okio.BufferedSource;
+import okio.Okio;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class LogSpool implements AutoCloseable {
+
+    /** Largest region mapped at once. */
+    static final long MAP_CHUNK = 64L * 1024 * 1024;
+
+    /** Longest line returned by SpooledLog.line(). */
+    static final int MAX_LINE = 1024 * 1024;
+
+    private final ManagementProperties.LogSpool settings;
+    private final Clock clock;
+    private final Path directory;
+
+    // Access-ordered, so iteration starts at the least recently used log
+    private final LinkedHashMap<String, SpooledLog> logs = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalBytes;
+
+    public LogSpool(ManagementProperties.LogSpool settings) {
+        this(settings, Clock.systemUTC());
+    }
+
+    LogSpool(ManagementProperties.LogSpool settings, Clock clock) {
+        this.settings = settings;
+        this.clock = clock;
+        try {
+            if (settings.getDirectory() == null || settings.getDirectory().isBlank()) {
+                this.directory = Files.createTempDirectory("marklogic-log-spool");
+            } else {
+                this.directory = Files.createDirectories(Path.of(settings.getDirectory()));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not create the log spool directory", e);
+        }
+    }
+
+    /**
+     * @return the spooled log for key, which the caller must close, or null
+     *         when there is none or it has expired
+     */
+    public synchronized SpooledLog get(String key) {
+        SpooledLog log = logs.get(key);
+        if (log == null) {
+            return null;
+        }
+        if (clock.millis() - log.spooledAt > settings.getTtl().toMillis()) {
+            evict(key);
+            return null;
+        }
+        return log.retain();
+    }
+
+    /**
+     * Spools a successful upstream log response and indexes its lines. The
+     * response is closed.
+     *
+     * @return the spooled log, which the caller must close
+     */
+    public SpooledLog put(String key, Response response) throws IOException {
+        Path data = Files.createTempFile(directory, "log", ".txt");
+        Path index = Files.createTempFile(directory, "log", ".idx");
+        SpooledLog log;
+        try (response) {
+            long lines = spool(response.body().source(), data, index);
+            log = new SpooledLog(data, index, lines, clock.millis());
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(data);
+            Files.deleteIfExists(index);
+            throw e;
+        }
+        synchronized (this) {
+            if (logs.containsKey(key)) {
+                evict(key);
+            }
+            logs.put(key, log);
+            totalBytes += log.size;
+            trim();
+            return log.retain();
+        }
+    }
+
+    synchronized int size() {
+        return logs.size();
+    }
+
+    Path directory() {
+        return directory;
+    }
+
+    @Override
+    public synchronized void close() {
+        for (String key : new ArrayList<>(logs.keySet())) {
+            evict(key);
+        }
+    }
+
+    /**
+     * Copies source to data, writing the offset of each line start to index.
+     *
+     * @return the number of lines
+     */
+    private static long spool(BufferedSource source, Path data, Path index) throws IOException {
+        long lines = 0;
+        long position = 0;
+        boolean atLineStart = true;
+        byte[] buffer = new byte[64 * 1024];
+        try (OutputStream out = Files.newOutputStream(data);
+                DataOutputStream offsets = new DataOutputStream(
+                        new BufferedOutputStream(Files.newOutputStream(index), 64 * 1024))) {
+            int read;
+            while ((read = source.read(buffer)) != -1) {
+                for (int i = 0; i < read; i++) {
+                    if (atLineStart) {
+                        offsets.writeLong(position + i);
+                        lines++;
+                    }
+                    atLineStart = buffer[i] == '\n';
+                }
+                out.write(buffer, 0, read);
+                position += read;
+            }
+        }
+        return lines;
+    }
+
+    private void trim() {
+        long now = clock.millis();
+        Iterator<Map.Entry<String, SpooledLog>> it = logs.entrySet().iterator();
+        List<String> expired = new ArrayList<>();
+        long bytes = totalBytes;
+        while (it.hasNext()) {
+            Map.Entry<String, SpooledLog> entry = it.next();
+            boolean stale = now - entry.getValue().spooledAt > settings.getTtl().toMillis();
+            // Keep the newest log even when it alone is over max-size
+            if (stale || (bytes > settings.getMaxSize().toBytes() && logs.size() - expired.size() > 1)) {
+                expired.add(entry.getKey());
+                bytes -= entry.getValue().size;
+            }
+        }
+        expired.forEach(this::evict);
+    }
+
+    private void evict(String key) {
+        SpooledLog log = logs.remove(key);
+        if (log != null) {
+            totalBytes -= log.size;
+            log.close();
+        }
+    }
+
+    /**
+     * A spooled log file and its line index. Each user (the spool itself,
+     * every response reading it and a LogIndex built on it) holds a
+     * reference and closes it when done; the files are deleted with the last
+     * one.
+     */
+    public static final class SpooledLog implements AutoCloseable {
+
+        private final Path data;
+        private final Path index;
+        private final long lines;
+        private final long size;
+        private final long spooledAt;
+        private final LongBuffer offsets;
+        private final AtomicInteger references = new AtomicInteger(1);
+        private FileChannel reader;
+
+        private SpooledLog(Path data, Path index, long lines, long spooledAt) throws IOException {
+            this.data = data;
+            this.index = index;
+            this.lines = lines;
+            this.size = Files.size(data);
+            this.spooledAt = spooledAt;
+            try (FileChannel channel = FileChannel.open(index, StandardOpenOption.READ)) {
+                // The mapping stays valid after the channel is closed
+                this.offsets = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()).asLongBuffer();
+            }
+        }
+
+        public long lineCount() {
+            return lines;
+        }
+
+        public long size() {
+            return size;
+        }
+
+        /**
+         * @return the byte offset at which line starts, or the size for the
+         *         line after the last
+         */
+        public long lineStart(long line) {
+            return line >= lines ? size : offsets.get((int) line);
+        }
+
+        /**
+         * Copies bytes first (inclusive) to last (exclusive) of the log to out.
+         */
+        public void copy(long first, long last, OutputStream out) throws IOException {
+            WritableByteChannel target = Channels.newChannel(out);
+            for (long position = first; position < last; position += MAP_CHUNK) {
+                write(map(position, Math.min(MAP_CHUNK, last - position)), target);
+            }
+            out.flush();
+        }
+
+        /**
+         * @return line n without its line terminator, cut at MAX_LINE bytes
+         */
+        public String line(long line) throws IOException {
+            long first = lineStart(line);
+            long last = Math.min(lineStart(line + 1), first + MAX_LINE);
+            ByteBuffer buffer = ByteBuffer.allocate((int) (last - first));
+            FileChannel channel = reader();
+            // Positional reads leave the channel's position alone, so concurrent readers can share it
+            while (buffer.hasRemaining() && channel.read(buffer, first + buffer.position()) >= 0) {
+                continue;
+            }
+            int length = buffer.position();
+            while (length > 0 && (buffer.get(length - 1) == '\n' || buffer.get(length - 1) == '\r')) {
+                length--;
+            }
+            return new String(buffer.array(), 0, length, StandardCharsets.UTF_8);
+        }
+
+        /**
+         * Opens the log for reading from the start; the caller closes it.
+         */
+        public BufferedSource source() throws IOException {
+            return Okio.buffer(Okio.source(data));
+        }
+
+        /**
+         * Maps length bytes of the log from position, at most MAP_CHUNK.
+         */
+        MappedByteBuffer map(long position, long length) throws IOException {
+            return reader().map(FileChannel.MapMode.READ_ONLY, position, length);
+        }
+
+        private synchronized FileChannel reader() throws IOException {
+            if (reader == null) {
+                reader = FileChannel.open(data, StandardOpenOption.READ);
+            }
+            return reader;
+        }
+
+        private static void write(ByteBuffer buffer, WritableByteChannel target) throws IOException {
+            while (buffer.hasRemaining()) {
+                target.write(buffer);
+            }
+        }
+
+        /**
+         * @return this log with one more reference, or null when its last
+         *         reference has already been closed
+         */
+        SpooledLog retain() {
+            int count;
+            do {
+                count = references.get();
+                if (count == 0) {
+                    return null;
+                }
+            } while (!references.compareAndSet(count, count + 1));
+            return this;
+        }
+
+        @Override
+        public void close() {
+            if (references.decrementAndGet() == 0) {
+                try {
+                    synchronized (this) {
+                        if (reader != null) {
+                            reader.close();
+                        }
+                    }
+                    Files.deleteIfExists(data);
+                    Files.deleteIfExists(index);
+                } catch (IOException e) {
+                    // Still mapped on platforms that lock mapped files; the OS cleans up the temp dir
+                    data.toFile().deleteOnExit();
+                    index.toFile().deleteOnExit();
+                }
+            }
+        }
+    }
+}
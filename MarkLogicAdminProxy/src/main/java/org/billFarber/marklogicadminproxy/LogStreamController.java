@@ -0,0 +1,126 @@
+package org.billFarber.marklogicadminproxy;
+
+/**
+ * Live tail of a MarkLogic log file over Server-Sent Events.
+ *
+ * GET /manage/v2/logs/stream?filename=ErrorLog.txt&host=... keeps the response
+ * open and pushes the file's new lines as "log" events (one event per poll,
+ * lines separated by newlines), upstream failures as "error" events and a
+ * comment when a poll found nothing new. See LogTail for how lines are polled.
+ * Only error logs can be tailed; other files are answered with 400, since
+ * following them would mean downloading the whole file on every poll.
+ *
+ * All subscribers to the same file on the same host share one LogTail, so the
+ * Management API is polled once per marklogic.management.log-stream.poll-interval
+ * however many browsers are watching. The tail stops when its last subscriber
+ * disconnects or its emitter times out (EventSource clients then reconnect on
+ * their own).
+ */
+
+import jakarta.annotation.PreDestroy;
+import okhttp3.HttpUrl;
+import okhttp3.OkHttpClient;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.time.Clock;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.regex.Pattern;
+
+@RestController
+public class LogStreamController {
+
+    private static final Pattern NAME = Pattern.compile("[A-Za-z0-9_.\\-]+");
+
+    @Autowired
+    private OkHttpClient managementHttpClient;
+
+    @Autowired
+    private ManagementProperties managementProperties;
+
+    @Value("${marklogic.host}")
+    private String marklogicHost;
+
+    @Value("${marklogic.schema}")
+    private String marklogicSchema;
+
+    private Clock clock = Clock.systemDefaultZone();
+
+    private final ConcurrentHashMap<String, LogTail> tails = new ConcurrentHashMap<>();
+
+    private final ScheduledExecutorService pollers = Executors.newScheduledThreadPool(2, runnable -> {
+        Thread thread = new Thread(runnable, "ml-log-tail");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @GetMapping(value = "/manage/v2/logs/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> streamLogs(
+            @RequestParam(value = "filename", required = false) String filename,
+            @RequestParam(value = "host", required = false) String host) {
+        if (filename == null || !NAME.matcher(filename).matches()
+                || (host != null && !NAME.matcher(host).matches())
+                || !LogRecordParser.isErrorLog(filename)) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        ManagementProperties.LogStream settings = managementProperties.getLogStream();
+        SseEmitter emitter = new SseEmitter(settings.getEmitterTimeout().toMillis());
+        String key = (host == null ? "" : host) + "/" + filename;
+        LogTail tail = tails.compute(key, (k, existing) -> {
+            LogTail joined = existing;
+            if (joined == null) {
+                joined = new LogTail(managementHttpClient, logUrl(filename, host), settings, clock);
+                joined.start(pollers);
+            }
+            joined.add(emitter);
+            return joined;
+        });
+        emitter.onCompletion(() -> unsubscribe(key, emitter));
+        emitter.onTimeout(() -> unsubscribe(key, emitter));
+        emitter.onError(e -> unsubscribe(key, emitter));
+        tail.replay(emitter);
+
+        return ResponseEntity.ok()
+                .header("Cache-Control", "no-cache")
+                .header("X-Accel-Buffering", "no")
+                .body(emitter);
+    }
+
+    void unsubscribe(String key, SseEmitter emitter) {
+        tails.computeIfPresent(key, (k, tail) -> {
+            if (tail.remove(emitter)) {
+                tail.stop();
+                return null;
+            }
+            return tail;
+        });
+    }
+
+    int tailCount() {
+        return tails.size();
+    }
+
+    @PreDestroy
+    void shutdown() {
+        pollers.shutdownNow();
+    }
+
+    private HttpUrl logUrl(String filename, String host) {
+        HttpUrl.Builder url = HttpUrl.parse(marklogicSchema + "://" + marklogicHost + ":8002/manage/v2/logs")
+                .newBuilder()
+                .addQueryParameter("filename", filename);
+        if (host != null) {
+            url.addQueryParameter("host", host);
+        }
+        return url.build();
+    }
+}
@@ -0,0 +1,216 @@
+package org.billFarber.marklogicadminproxy;
+
+/**
+ * One log file on one host being tailed for LogStreamController: a single
+ * upstream poller whose new lines are sent to every subscribed SseEmitter.
+ *
+ * Only error logs are tailed. They are polled incrementally with the
+ * Management API's start parameter, set to the second of the newest line seen
+ * so far. MarkLogic returns that whole second again, so the lines of the
+ * boundary second that were already sent are counted and skipped. The first
+ * poll starts backlog before now, in the proxy's local time, which is
+ * MarkLogic's log time when both run in the same time zone. Other logs
+ * (access, audit, request) do not support start and MarkLogic does not serve
+ * byte ranges of them, so LogStreamController refuses to tail them rather than
+ * download the whole file on every poll.
+ *
+ * Each poll sends the new lines as one "log" event, an "error" event when
+ * MarkLogic could not be reached, or a comment when nothing happened, so that
+ * disconnected subscribers are noticed. New subscribers first get the last
+ * replay-lines lines.
+ */
+
+import okhttp3.HttpUrl;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Clock;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+class LogTail {
+
+    private static final Logger logger = LoggerFactory.getLogger(LogTail.class);
+
+    /** "2025-01-01 10:15:30" at the start of an error log line. */
+    private static final Pattern TIMESTAMP = Pattern.compile("^\\d{4}-\\d{2}-\\d{2} \\d{2}:\\d{2}:\\d{2}.*");
+    private static final DateTimeFormatter START = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss");
+
+    private final OkHttpClient client;
+    private final HttpUrl logUrl;
+    private final ManagementProperties.LogStream settings;
+    private final Clock clock;
+
+    private final Set<SseEmitter> subscribers = new CopyOnWriteArraySet<>();
+    private final Deque<String> recent = new ArrayDeque<>();
+    private ScheduledFuture<?> poller;
+
+    /** Second of the newest line sent, as the start parameter, or null before the first poll. */
+    private String lastSecond;
+    /** How often each line of lastSecond has been sent. */
+    private Map<String, Integer> sentAtLastSecond = new HashMap<>();
+
+    /**
+     * @param logUrl the /manage/v2/logs URL with filename and host
+     */
+    LogTail(OkHttpClient client, HttpUrl logUrl, ManagementProperties.LogStream settings, Clock clock) {
+        this.client = client;
+        this.logUrl = logUrl;
+        this.settings = settings;
+        this.clock = clock;
+    }
+
+    void start(ScheduledExecutorService executor) {
+        long interval = settings.getPollInterval().toMillis();
+        poller = executor.scheduleWithFixedDelay(this::poll, 0, interval, TimeUnit.MILLISECONDS);
+    }
+
+    void stop() {
+        if (poller != null) {
+            poller.cancel(false);
+        }
+    }
+
+    void add(SseEmitter emitter) {
+        subscribers.add(emitter);
+    }
+
+    /**
+     * @return whether no subscribers are left
+     */
+    boolean remove(SseEmitter emitter) {
+        subscribers.remove(emitter);
+        return subscribers.isEmpty();
+    }
+
+    /**
+     * Sends the recent lines to a new subscriber.
+     */
+    synchronized void replay(SseEmitter emitter) {
+        if (!recent.isEmpty()) {
+            send(emitter, SseEmitter.event().name("log").data(String.join("\n", recent)));
+        }
+    }
+
+    /**
+     * Runs on the poller only, so the polling state needs no locking; sending
+     * is synchronized with replay() so a new subscriber sees lines in order.
+     */
+    void poll() {
+        List<String> lines;
+        try {
+            lines = fetch();
+        } catch (IOException | RuntimeException e) {
+            logger.debug("Log tail of {} failed", logUrl, e);
+            broadcast(SseEmitter.event().name("error").data("Failed to poll the log: " + e.getMessage()));
+            return;
+        }
+        if (lines == null) {
+            return;
+        }
+        if (lines.isEmpty()) {
+            broadcast(SseEmitter.event().comment("no new lines"));
+            return;
+        }
+        publish(lines);
+    }
+
+    private synchronized void publish(List<String> lines) {
+        for (String line : lines) {
+            recent.addLast(line);
+            if (recent.size() > settings.getReplayLines()) {
+                recent.removeFirst();
+            }
+        }
+        broadcast(SseEmitter.event().name("log").data(String.join("\n", lines)));
+    }
+
+    /**
+     * @return the new lines, or null when MarkLogic answered with an error
+     *         (already sent to the subscribers)
+     */
+    private List<String> fetch() throws IOException {
+        String start = lastSecond != null ? lastSecond
+                : LocalDateTime.now(clock).minus(settings.getBacklog()).truncatedTo(ChronoUnit.SECONDS)
+                        .format(START);
+        HttpUrl url = logUrl.newBuilder()
+                .setQueryParameter("format", "text")
+                .setQueryParameter("start", start)
+                .build();
+        Request request = new Request.Builder().url(url).header("Accept", "text/plain").build();
+        try (Response response = client.newCall(request).execute()) {
+            if (!response.isSuccessful()) {
+                broadcast(SseEmitter.event().name("error").data("MarkLogic returned status: " + response.code()));
+                return null;
+            }
+            List<String> lines = response.body().string().lines().filter(line -> !line.isEmpty()).toList();
+            return newSinceLastSecond(lines);
+        }
+    }
+
+    private List<String> newSinceLastSecond(List<String> lines) {
+        List<String> fresh = new ArrayList<>();
+        Map<String, Integer> repeated = new HashMap<>();
+        Map<String, Integer> atSecond = new HashMap<>();
+        String second = lastSecond;
+        for (String line : lines) {
+            if (TIMESTAMP.matcher(line).matches()) {
+                String lineSecond = line.substring(0, 19).replace(' ', 'T');
+                if (!lineSecond.equals(second)) {
+                    second = lineSecond;
+                    atSecond = new HashMap<>();
+                }
+            }
+            // Continuation lines belong to the second of the line before them
+            atSecond.merge(line, 1, Integer::sum);
+            if (lastSecond != null && second != null && second.compareTo(lastSecond) <= 0
+                    && repeated.merge(line, 1, Integer::sum) <= sentAtLastSecond.getOrDefault(line, 0)) {
+                continue;
+            }
+            fresh.add(line);
+        }
+        boolean first = lastSecond == null;
+        if (second != null) {
+            lastSecond = second;
+            sentAtLastSecond = atSecond;
+        }
+        if (first && fresh.size() > settings.getReplayLines()) {
+            return fresh.subList(fresh.size() - settings.getReplayLines(), fresh.size());
+        }
+        return fresh;
+    }
+
+    private synchronized void broadcast(SseEmitter.SseEventBuilder event) {
+        for (SseEmitter emitter : subscribers) {
+            send(emitter, event);
+        }
+    }
+
+    private void send(SseEmitter emitter, SseEmitter.SseEventBuilder event) {
+        try {
+            emitter.send(event);
+        } catch (IOException | IllegalStateException e) {
+            // The client went away; completing it runs the controller's cleanup
+            subscribers.remove(emitter);
+            emitter.completeWithError(e);
+        }
+    }
+}
@@ -19,26 +19,74 @@ package org.billFarber.marklogicadminproxy;
  * 
  * Note: start, end, and regex parameters are only supported for error logs.
  * Access and audit logs will return 400 Bad Request if these parameters are used.
+ *
+ * Paging (handled by the proxy, always as text):
+ * - offset: The first line to return, counting from 0
+ * - limit: The number of lines to return (default and maximum:
+ *   marklogic.management.log-spool.max-limit)
+ * - Range header: A single byte range (bytes=first-last, first- or -suffix),
+ *   answered with 206 Partial Content
+ *
+ * Paged requests are served from a local copy of the log (see LogSpool), so
+ * the log is fetched once and each page only reads the lines it returns. Line
+ * pages carry the total number of lines in X-Total-Lines. Concurrent first
+ * requests for the same log share one upstream fetch.
+ *
+ * Structured records (handled by the proxy, see LogRecordParser):
+ * - format=ndjson: One JSON record per log entry (timestamp, level, host,
+ *   app-server, message), with continuation lines merged into their entry
+ * - level: The lowest level to return (finest ... emergency)
+ * - start, end: Also applied by the proxy, to every log type, in the log's
+ *   own time (yyyy-MM-ddTHH:mm:ss)
+ *
+ * The log is fetched as text and parsed while it streams to the client, so
+ * filtered-out records never leave the proxy.
  */
 
-import com.marklogic.client.DatabaseClient;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
 import okhttp3.Response;
 import okhttp3.HttpUrl;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 @RestController
 public class LogsController {
 
+    static final String TOTAL_LINES = "X-Total-Lines";
+
+    static final MediaType NDJSON = MediaType.parseMediaType("application/x-ndjson");
+
+    private static final Pattern BYTE_RANGE = Pattern.compile("bytes=(\\d{0,18})-(\\d{0,18})");
+
+    @Autowired
+    private OkHttpClient managementHttpClient;
+
+    @Autowired
+    private LogSpool logSpool;
+
     @Autowired
-    private DatabaseClient databaseClient;
+    private ManagementProperties managementProperties;
+
+    // Paged logs being fetched into the spool, by upstream URL
+    private final ConcurrentHashMap<String, CompletableFuture<LogSpool.SpooledLog>> spooling = new ConcurrentHashMap<>();
 
     @Value("${marklogic.host}")
     private String marklogicHost;
@@ -46,27 +94,76 @@ public class LogsController {
     @Value("${marklogic.schema}")
     private String marklogicSchema;
 
+    @Value("${marklogic.management.async-enabled:false}")
+    private boolean asyncEnabled;
+
     @GetMapping("/manage/v2/logs")
-    public ResponseEntity<String> getLogs(
+    public CompletableFuture<ResponseEntity<StreamingResponseBody>> getLogs(
             @RequestParam(value = "format", required = false) String format,
             @RequestParam(value = "filename", required = false) String filename,
             @RequestParam(value = "host", required = false) String host,
             @RequestParam(value = "start", required = false) String start,
             @RequestParam(value = "end", required = false) String end,
-            @RequestParam(value = "regex", required = false) String regex) {
+            @RequestParam(value = "regex", required = false) String regex,
+            @RequestParam(value = "level", required = false) String level,
+            @RequestParam(value = "offset", required = false) Long offset,
+            @RequestParam(value = "limit", required = false) Integer limit,
+            @RequestHeader(value = HttpHeaders.RANGE, required = false) String range) {
 
         // Validate format parameter if provided
         if (format != null && !format.equals("json") && !format.equals("xml") &&
-                !format.equals("html") && !format.equals("text")) {
-            return ResponseEntity.badRequest()
+                !format.equals("html") && !format.equals("text") && !format.equals("ndjson")) {
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest()
                     .contentType(MediaType.APPLICATION_JSON)
-                    .body("{\"error\": \"Invalid format parameter. Must be one of: json, xml, html, text\"}");
+                    .body(ProxyResponses.text("{\"error\": \"Invalid format parameter. Must be one of: json, xml, html, text, ndjson\"}")));
         }
 
-        try {
-            // Get the underlying OkHttpClient from the MarkLogic DatabaseClient
-            OkHttpClient okHttpClient = (OkHttpClient) databaseClient.getClientImplementation();
+        boolean structured = "ndjson".equals(format);
+        LogRecordParser parser = null;
+        if (level != null && !structured) {
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest()
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .body(ProxyResponses.text("{\"error\": \"level requires format=ndjson\"}")));
+        }
+        if (structured) {
+            if (filename == null || filename.trim().isEmpty()) {
+                return CompletableFuture.completedFuture(ResponseEntity.badRequest()
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .body(ProxyResponses.text("{\"error\": \"format=ndjson requires filename\"}")));
+            }
+            if (level != null && !LogRecordParser.isLevel(level)) {
+                return CompletableFuture.completedFuture(ResponseEntity.badRequest()
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .body(ProxyResponses.text("{\"error\": \"level must be one of: "
+                                + String.join(", ", LogRecordParser.LEVELS) + "\"}")));
+            }
+            try {
+                parser = new LogRecordParser(filename, host, level, time(start), time(end));
+            } catch (DateTimeParseException e) {
+                return CompletableFuture.completedFuture(ResponseEntity.badRequest()
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .body(ProxyResponses.text("{\"error\": \"start and end must look like 2025-01-01T10:00:00\"}")));
+            }
+        }
+
+        boolean paged = offset != null || limit != null || range != null;
+        if (paged) {
+            if (format != null && !format.equals("text")) {
+                return CompletableFuture.completedFuture(ResponseEntity.badRequest()
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .body(ProxyResponses.text("{\"error\": \"offset, limit and Range require format=text\"}")));
+            }
+            int maxLimit = managementProperties.getLogSpool().getMaxLimit();
+            if ((offset != null && offset < 0) || (limit != null && (limit < 1 || limit > maxLimit))) {
+                return CompletableFuture.completedFuture(ResponseEntity.badRequest()
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .body(ProxyResponses.text("{\"error\": \"offset must be at least 0 and limit between 1 and "
+                                + maxLimit + "\"}")));
+            }
+            format = "text";
+        }
 
+        try {
             HttpUrl.Builder urlBuilder = HttpUrl.parse(marklogicSchema + "://" + marklogicHost + ":8002/manage/v2/logs")
                     .newBuilder();
 
@@ -77,15 +174,17 @@ public class LogsController {
 
             // Add optional parameters if provided
             if (format != null) {
-                urlBuilder.addQueryParameter("format", format);
+                urlBuilder.addQueryParameter("format", structured ? "text" : format);
             }
             if (host != null) {
                 urlBuilder.addQueryParameter("host", host);
             }
-            if (start != null) {
+            // MarkLogic only filters error logs by time; the parser filters the others
+            boolean upstreamTime = !structured || LogRecordParser.isErrorLog(filename);
+            if (start != null && upstreamTime) {
                 urlBuilder.addQueryParameter("start", start);
             }
-            if (end != null) {
+            if (end != null && upstreamTime) {
                 urlBuilder.addQueryParameter("end", end);
             }
             if (regex != null) {
@@ -98,59 +197,232 @@ public class LogsController {
                     .url(url)
                     .build();
 
-            Response response = okHttpClient.newCall(request).execute();
-            String responseBody = response.body().string();
+            // Determine appropriate content type based on format parameter
+            MediaType contentType = getContentType(format);
+            LogRecordParser records = parser;
 
-            // Determine appropriate content type based on format parameter or response
-            MediaType contentType = MediaType.APPLICATION_XML; // Default
-            if (format != null) {
-                switch (format.toLowerCase()) {
-                    case "json":
-                        contentType = MediaType.APPLICATION_JSON;
-                        break;
-                    case "xml":
-                        contentType = MediaType.APPLICATION_XML;
-                        break;
-                    case "html":
-                        contentType = MediaType.TEXT_HTML;
-                        break;
-                    case "text":
-                        contentType = MediaType.TEXT_PLAIN;
-                        break;
-                }
+            if (!paged) {
+                return fetch(request, url, contentType, records, offset, limit, range, null);
             }
+            LogSpool.SpooledLog spooled = logSpool.get(url);
+            if (spooled != null) {
+                return CompletableFuture.completedFuture(page(spooled, offset, limit, range));
+            }
+            // Only the first request for a log that is not spooled yet fetches it; the others page its copy
+            CompletableFuture<LogSpool.SpooledLog> spooling = new CompletableFuture<>();
+            CompletableFuture<LogSpool.SpooledLog> pending = this.spooling.putIfAbsent(url, spooling);
+            if (pending == null) {
+                return fetch(request, url, contentType, records, offset, limit, range, spooling);
+            }
+            return pending.thenCompose(log -> {
+                // Null once the copy has been evicted and deleted again, so fetch it anew
+                LogSpool.SpooledLog shared = log.retain();
+                return shared == null
+                        ? fetch(request, url, contentType, records, offset, limit, range, null)
+                        : CompletableFuture.completedFuture(page(shared, offset, limit, range));
+            }).exceptionally(e -> {
+                Throwable cause = ManagementCalls.unwrap(e);
+                if (cause instanceof ResponseStatusException status) {
+                    return ResponseEntity.status(status.getStatusCode())
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .body(ProxyResponses.text("{\"error\": \"MarkLogic returned status: "
+                                    + status.getReason() + "\"}"));
+                }
+                return logsError(cause);
+            });
+        } catch (Exception e) {
+            return CompletableFuture.completedFuture(logsError(e));
+        }
+    }
 
-            if (response.isSuccessful()) {
-                return ResponseEntity.ok()
-                        .contentType(contentType)
-                        .body(responseBody);
-            } else {
-                // Pass through MarkLogic error responses with appropriate status codes
-                org.springframework.http.HttpStatus httpStatus;
-                switch (response.code()) {
-                    case 400:
-                        httpStatus = org.springframework.http.HttpStatus.BAD_REQUEST;
-                        break;
-                    case 401:
-                        httpStatus = org.springframework.http.HttpStatus.UNAUTHORIZED;
-                        break;
-                    case 404:
-                        httpStatus = org.springframework.http.HttpStatus.NOT_FOUND;
-                        break;
-                    default:
-                        httpStatus = org.springframework.http.HttpStatus.INTERNAL_SERVER_ERROR;
-                        break;
+    /**
+     * Calls MarkLogic for the log. A paged request spools the response; when
+     * spooling is set, the spooled copy, or the failure, is also handed to the
+     * requests waiting for it.
+     */
+    private CompletableFuture<ResponseEntity<StreamingResponseBody>> fetch(Request request, String url,
+            MediaType contentType, LogRecordParser records, Long offset, Integer limit, String range,
+            CompletableFuture<LogSpool.SpooledLog> spooling) {
+        boolean paged = offset != null || limit != null || range != null;
+        try {
+            return ManagementCalls.exchange(managementHttpClient, request, asyncEnabled, response -> {
+                if (response.isSuccessful()) {
+                    if (paged) {
+                        LogSpool.SpooledLog log = logSpool.put(url, response);
+                        share(url, spooling, log, null);
+                        return page(log, offset, limit, range);
+                    }
+                    if (records != null) {
+                        return parse(records, response);
+                    }
+                    return ProxyResponses.stream(ResponseEntity.ok().contentType(contentType), response);
+                } else {
+                    // Pass through MarkLogic error responses with appropriate status codes
+                    org.springframework.http.HttpStatus httpStatus;
+                    switch (response.code()) {
+                        case 400:
+                            httpStatus = org.springframework.http.HttpStatus.BAD_REQUEST;
+                            break;
+                        case 401:
+                            httpStatus = org.springframework.http.HttpStatus.UNAUTHORIZED;
+                            break;
+                        case 404:
+                            httpStatus = org.springframework.http.HttpStatus.NOT_FOUND;
+                            break;
+                        case 503:
+                            httpStatus = org.springframework.http.HttpStatus.SERVICE_UNAVAILABLE;
+                            break;
+                        default:
+                            httpStatus = org.springframework.http.HttpStatus.INTERNAL_SERVER_ERROR;
+                            break;
+                    }
+
+                    share(url, spooling, null,
+                            new ResponseStatusException(httpStatus, Integer.toString(response.code())));
+                    // MarkLogic's error body is not a log, so it is passed through as it is
+                    return ProxyResponses.stream(ProxyResponses.rejectionHeaders(ResponseEntity.status(httpStatus)
+                            .contentType(records != null ? MediaType.APPLICATION_JSON : contentType), response),
+                            response);
                 }
+            }).whenComplete((result, e) -> {
+                if (e != null) {
+                    share(url, spooling, null, ManagementCalls.unwrap(e));
+                }
+            }).exceptionally(e -> logsError(ManagementCalls.unwrap(e)));
+        } catch (Exception e) {
+            share(url, spooling, null, e);
+            return CompletableFuture.completedFuture(logsError(e));
+        }
+    }
 
-                return ResponseEntity.status(httpStatus)
-                        .contentType(contentType)
-                        .body(responseBody);
+    /**
+     * Hands a spooled log, or the failure to spool it, to the requests
+     * waiting for it. The caller still holds its own reference to the log,
+     * so each waiter can retain one before it is released.
+     */
+    private void share(String url, CompletableFuture<LogSpool.SpooledLog> spooling, LogSpool.SpooledLog log,
+            Throwable failure) {
+        if (spooling == null) {
+            return;
+        }
+        // Later requests find the log in the spool, or fetch again after a failure
+        this.spooling.remove(url, spooling);
+        if (failure == null) {
+            spooling.complete(log);
+        } else {
+            spooling.completeExceptionally(failure);
+        }
+    }
+
+    /**
+     * Answers a paged request from a spooled log, which is closed once the
+     * body has been written.
+     */
+    private ResponseEntity<StreamingResponseBody> page(LogSpool.SpooledLog spooled, Long offset, Integer limit,
+            String range) {
+        Matcher byteRange = range == null ? null : BYTE_RANGE.matcher(range.trim());
+        if (byteRange != null && byteRange.matches() && validRange(byteRange)) {
+            long size = spooled.size();
+            long first;
+            long last;
+            if (byteRange.group(1).isEmpty()) {
+                first = Math.max(0, size - Long.parseLong(byteRange.group(2)));
+                last = size;
+            } else {
+                first = Long.parseLong(byteRange.group(1));
+                last = byteRange.group(2).isEmpty() ? size : Math.min(size, Long.parseLong(byteRange.group(2)) + 1);
+            }
+            // Only a range starting past the end, or an empty suffix, is unsatisfiable
+            if (first >= last) {
+                spooled.close();
+                return ResponseEntity.status(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE)
+                        .header(HttpHeaders.CONTENT_RANGE, "bytes */" + size)
+                        .build();
             }
+            return ResponseEntity.status(HttpStatus.PARTIAL_CONTENT)
+                    .contentType(MediaType.TEXT_PLAIN)
+                    .header(HttpHeaders.ACCEPT_RANGES, "bytes")
+                    .header(HttpHeaders.CONTENT_RANGE, "bytes " + first + "-" + (last - 1) + "/" + size)
+                    .contentLength(last - first)
+                    .body(copy(spooled, first, last));
+        }
 
-        } catch (Exception e) {
-            return ResponseEntity.internalServerError()
-                    .contentType(MediaType.APPLICATION_JSON)
-                    .body("{\"error\": \"Failed to retrieve logs: " + e.getMessage() + "\"}");
+        // A Range we cannot satisfy as one byte range, or an invalid one, is ignored as RFC 9110 requires,
+        // so a request with only a Range gets the whole log
+        boolean whole = offset == null && limit == null;
+        long firstLine = offset == null ? 0 : offset;
+        int lines = limit == null ? managementProperties.getLogSpool().getMaxLimit() : limit;
+        long lastLine = whole ? spooled.lineCount()
+                : firstLine >= spooled.lineCount() ? firstLine : firstLine + lines;
+        long first = spooled.lineStart(firstLine);
+        long last = spooled.lineStart(lastLine);
+        return ResponseEntity.ok()
+                .contentType(MediaType.TEXT_PLAIN)
+                .header(HttpHeaders.ACCEPT_RANGES, "bytes")
+                .header(TOTAL_LINES, Long.toString(spooled.lineCount()))
+                .contentLength(last - first)
+                .body(copy(spooled, first, last));
+    }
+
+    /**
+     * @return whether a matched byte range is valid: not empty on both sides,
+     *         and not ending before it starts
+     */
+    private static boolean validRange(Matcher byteRange) {
+        String first = byteRange.group(1);
+        String last = byteRange.group(2);
+        if (first.isEmpty()) {
+            return !last.isEmpty();
         }
+        return last.isEmpty() || Long.parseLong(last) >= Long.parseLong(first);
+    }
+
+    /**
+     * Streams a successful upstream log as parsed records; the response is
+     * closed once the body has been written.
+     */
+    private static ResponseEntity<StreamingResponseBody> parse(LogRecordParser parser, Response response) {
+        return ResponseEntity.ok()
+                .contentType(NDJSON)
+                .body(outputStream -> {
+                    try (response) {
+                        parser.write(response.body().source(), outputStream);
+                    }
+                });
+    }
+
+    private static LocalDateTime time(String value) {
+        return value == null || value.isBlank() ? null : LocalDateTime.parse(value.trim());
+    }
+
+    private static StreamingResponseBody copy(LogSpool.SpooledLog spooled, long first, long last) {
+        return outputStream -> {
+            try (spooled) {
+                spooled.copy(first, last, outputStream);
+            }
+        };
+    }
+
+    private MediaType getContentType(String format) {
+        if (format == null) {
+            return MediaType.APPLICATION_XML; // Default
+        }
+        switch (format.toLowerCase()) {
+            case "json":
+                return MediaType.APPLICATION_JSON;
+            case "html":
+                return MediaType.TEXT_HTML;
+            case "text":
+                return MediaType.TEXT_PLAIN;
+            case "xml":
+            default:
+                return MediaType.APPLICATION_XML;
+        }
+    }
+
+    private ResponseEntity<StreamingResponseBody> logsError(Throwable e) {
+        return ResponseEntity.internalServerError()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(ProxyResponses.text("{\"error\": \"Failed to retrieve logs: " + e.getMessage() + "\"}"));
     }
 }
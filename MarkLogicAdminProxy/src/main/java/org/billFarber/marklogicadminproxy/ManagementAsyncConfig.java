@@ -0,0 +1,100 @@
+package org.billFarber.marklogicadminproxy;
+
+/**
+ * Spring MVC async support for the proxy's controllers.
+ *
+ * Streamed bodies (StreamingResponseBody) are written on a dedicated executor
+ * sized by marklogic.management.streaming.*, with as many threads as bodies
+ * may be written at once, instead of Boot's applicationTaskExecutor with its
+ * 8 threads and unbounded queue, where a ninth large response would wait for
+ * one of the others to finish. With virtual threads enabled each body gets its
+ * own virtual thread.
+ *
+ * It also cancels a request's pending Management API calls when Spring MVC
+ * stops waiting for it, i.e. when spring.mvc.async.request-timeout expires or
+ * the async request fails. Controllers return the CompletableFuture from
+ * ManagementCalls, which Spring adapts to a DeferredResult but never cancels.
+ * Without this, a call that answers after the timeout would be wrapped in a
+ * response entity that Spring discards, leaving the upstream response, its
+ * pooled connection and its bulkhead slot open.
+ */
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.context.request.async.DeferredResultProcessingInterceptor;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+@Configuration
+public class ManagementAsyncConfig implements WebMvcConfigurer, DisposableBean {
+
+    static final String STREAMING_THREAD_PREFIX = "ml-stream-";
+
+    private final AsyncTaskExecutor streamingExecutor;
+
+    public ManagementAsyncConfig(ManagementProperties properties, Environment environment) {
+        this.streamingExecutor = streamingExecutor(properties.getStreaming(),
+                Threading.VIRTUAL.isActive(environment));
+    }
+
+    @Override
+    public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+        configurer.setTaskExecutor(streamingExecutor);
+        configurer.registerDeferredResultInterceptors(new PendingCallsInterceptor());
+    }
+
+    @Override
+    public void destroy() {
+        if (streamingExecutor instanceof ThreadPoolTaskExecutor pool) {
+            pool.shutdown();
+        }
+    }
+
+    AsyncTaskExecutor streamingExecutor() {
+        return streamingExecutor;
+    }
+
+    static AsyncTaskExecutor streamingExecutor(ManagementProperties.Streaming settings, boolean virtual) {
+        if (virtual) {
+            SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor(STREAMING_THREAD_PREFIX);
+            executor.setVirtualThreads(true);
+            return executor;
+        }
+        // Core and max size are equal, so every body gets a thread before any is queued
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setThreadNamePrefix(STREAMING_THREAD_PREFIX);
+        executor.setCorePoolSize(settings.getMaxThreads());
+        executor.setMaxPoolSize(settings.getMaxThreads());
+        executor.setQueueCapacity(settings.getQueueCapacity());
+        executor.setKeepAliveSeconds((int) settings.getKeepAlive().toSeconds());
+        executor.setAllowCoreThreadTimeOut(true);
+        executor.initialize();
+        return executor;
+    }
+
+    /**
+     * Cancels the pending calls on timeout or error, then lets Spring answer
+     * the request as it otherwise would.
+     */
+    static final class PendingCallsInterceptor implements DeferredResultProcessingInterceptor {
+
+        @Override
+        public <T> boolean handleTimeout(NativeWebRequest request, DeferredResult<T> deferredResult) {
+            ManagementCalls.cancelPending(request);
+            return true;
+        }
+
+        @Override
+        public <T> boolean handleError(NativeWebRequest request, DeferredResult<T> deferredResult, Throwable t) {
+            ManagementCalls.cancelPending(request);
+            return true;
+        }
+    }
+}
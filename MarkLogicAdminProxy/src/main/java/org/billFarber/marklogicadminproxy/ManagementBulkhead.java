@@ -0,0 +1,139 @@
+package org.billFarber.marklogicadminproxy;
+
+/**
+ * Separate concurrency limits for each EndpointFamily, so that slow log scans
+ * cannot take every connection and thread from the lists and properties the
+ * UI needs, and the other way round.
+ *
+ * A call waits up to max-wait for a slot in its family and is otherwise
+ * answered with a 503 (see RejectedResponse) without reaching MarkLogic. The
+ * slot is held until the response body is closed, since MarkLogic keeps
+ * working on a log while it streams it.
+ *
+ * marklogic.management.rejected counts rejected calls, tagged with the family
+ * and reason=bulkhead-full.
+ */
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.BufferedSource;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class ManagementBulkhead implements Interceptor {
+
+    static final String REJECTED = "marklogic.management.rejected";
+
+    private final ManagementProperties.Bulkhead settings;
+    private final Map<EndpointFamily, Semaphore> slots = new EnumMap<>(EndpointFamily.class);
+    private final Map<EndpointFamily, Counter> rejected = new EnumMap<>(EndpointFamily.class);
+
+    public ManagementBulkhead(ManagementProperties.Bulkhead settings, MeterRegistry registry) {
+        this.settings = settings;
+        for (EndpointFamily family : EndpointFamily.values()) {
+            Integer limit = settings.getMaxConcurrent().get(family.key());
+            if (limit != null) {
+                slots.put(family, new Semaphore(limit, true));
+            }
+            rejected.put(family, Counter.builder(REJECTED)
+                    .description("Management API calls the proxy answered itself with a 503")
+                    .tags("family", family.key(), "reason", "bulkhead-full")
+                    .register(registry));
+        }
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        EndpointFamily family = EndpointFamily.of(request.url());
+        Semaphore semaphore = slots.get(family);
+        if (semaphore == null) {
+            return chain.proceed(request);
+        }
+
+        try {
+            if (!semaphore.tryAcquire(settings.getMaxWait().toNanos(), TimeUnit.NANOSECONDS)) {
+                rejected.get(family).increment();
+                return RejectedResponse.of(request, "PROXY-BULKHEADFULL",
+                        "Too many concurrent " + family.key() + " calls to the Management API",
+                        settings.getMaxWait());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for a " + family.key() + " slot");
+        }
+
+        Response response;
+        try {
+            response = chain.proceed(request);
+        } catch (IOException | RuntimeException e) {
+            semaphore.release();
+            throw e;
+        }
+        if (response.body() == null) {
+            semaphore.release();
+            return response;
+        }
+        return response.newBuilder().body(new ReleasingBody(response.body(), semaphore)).build();
+    }
+
+    /**
+     * @return free slots per family, for families with a limit
+     */
+    Map<EndpointFamily, Integer> available() {
+        Map<EndpointFamily, Integer> available = new EnumMap<>(EndpointFamily.class);
+        slots.forEach((family, semaphore) -> available.put(family, semaphore.availablePermits()));
+        return available;
+    }
+
+    /**
+     * Gives the slot back when the body is closed, once.
+     */
+    private static final class ReleasingBody extends ResponseBody {
+        private final ResponseBody delegate;
+        private final Semaphore semaphore;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        ReleasingBody(ResponseBody delegate, Semaphore semaphore) {
+            this.delegate = delegate;
+            this.semaphore = semaphore;
+        }
+
+        @Override
+        public MediaType contentType() {
+            return delegate.contentType();
+        }
+
+        @Override
+        public long contentLength() {
+            return delegate.contentLength();
+        }
+
+        @Override
+        public BufferedSource source() {
+            return delegate.source();
+        }
+
+        @Override
+        public void close() {
+            try {
+                delegate.close();
+            } finally {
+                if (released.compareAndSet(false, true)) {
+                    semaphore.release();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,238 @@
+package org.billFarber.marklogicadminproxy;
+
+/**
+ * Runs Management API calls for the controllers, either blocking or
+ * asynchronously.
+ *
+ * In the default blocking mode the call is executed on the request thread and
+ * the returned future is already complete. When marklogic.management.async-enabled
+ * is set the call is handed to the OkHttp dispatcher with enqueue() and the
+ * future completes from its callback, so the servlet thread is released while
+ * MarkLogic is working. Concurrency is then bounded by the dispatcher limits
+ * (marklogic.management.max-requests and max-requests-per-host) rather than by
+ * the Tomcat thread pool. The request context is carried over to the callback
+ * so the handler can still read the incoming request's headers.
+ *
+ * In both modes the upstream request is tagged with the incoming request's
+ * RequestAttributes, so interceptors running on dispatcher threads can still
+ * attribute the call to it (see ManagementMetrics).
+ *
+ * Asynchronous calls are registered on the incoming request until they
+ * complete. When Spring MVC gives up on the request (async request timeout or
+ * error), ManagementAsyncConfig cancels them, which cancels the upstream call;
+ * a response that still arrives, or that the handler wrapped after the
+ * cancellation, is closed so its connection and bulkhead slot are released.
+ *
+ * When the client has ManagementHedging installed, properties lookups are
+ * raced against a hedged copy; in blocking mode the request thread then waits
+ * for the race instead of executing the call itself.
+ */
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+
+public final class ManagementCalls {
+
+    /** Request attribute holding the request's asynchronous calls still in flight. */
+    static final String PENDING_CALLS = ManagementCalls.class.getName() + ".PENDING_CALLS";
+
+    /**
+     * Turns an upstream response into the controller's response. It may throw
+     * IOException while reading an error body, which fails the returned future.
+     *
+     * @param <T> the controller's result, usually a ResponseEntity
+     */
+    @FunctionalInterface
+    public interface ResponseHandler<T> {
+        T handle(Response response) throws IOException;
+    }
+
+    private ManagementCalls() {
+    }
+
+    /**
+     * Executes the request and maps the upstream response with the handler.
+     *
+     * @param client  the Management API client
+     * @param request the upstream request
+     * @param async   whether to enqueue the call instead of blocking on it
+     * @param handler maps the upstream response; responsible for closing it
+     * @return future completed with the handler's result, or exceptionally with
+     *         the IOException or runtime exception that prevented it
+     */
+    public static <T> CompletableFuture<T> exchange(OkHttpClient client, Request request, boolean async,
+            ResponseHandler<T> handler) {
+        RequestAttributes requestAttributes = RequestContextHolder.getRequestAttributes();
+        if (requestAttributes != null) {
+            request = request.newBuilder().tag(RequestAttributes.class, requestAttributes).build();
+        }
+        ManagementHedging hedging = ManagementHedging.of(client);
+        if (hedging != null && hedging.applies(request)) {
+            return hedged(hedging.call(client, request), async, requestAttributes, handler);
+        }
+        Call call = client.newCall(request);
+        if (!async) {
+            try {
+                return CompletableFuture.completedFuture(handler.handle(call.execute()));
+            } catch (IOException | RuntimeException e) {
+                return CompletableFuture.failedFuture(e);
+            }
+        }
+
+        CompletableFuture<T> future = new CompletableFuture<>();
+        call.enqueue(new Callback() {
+            @Override
+            public void onFailure(Call failedCall, IOException e) {
+                future.completeExceptionally(e);
+            }
+
+            @Override
+            public void onResponse(Call completedCall, Response response) {
+                handle(future, response, requestAttributes, handler);
+            }
+        });
+        future.whenComplete((result, e) -> {
+            if (future.isCancelled()) {
+                call.cancel();
+            }
+        });
+        register(future, requestAttributes);
+        return future;
+    }
+
+    private static <T> CompletableFuture<T> hedged(CompletableFuture<Response> race, boolean async,
+            RequestAttributes requestAttributes, ResponseHandler<T> handler) {
+        if (!async) {
+            try {
+                return CompletableFuture.completedFuture(handler.handle(race.get()));
+            } catch (ExecutionException e) {
+                return CompletableFuture.failedFuture(e.getCause());
+            } catch (InterruptedException e) {
+                race.cancel(true);
+                Thread.currentThread().interrupt();
+                return CompletableFuture.failedFuture(new InterruptedIOException("Interrupted waiting for MarkLogic"));
+            } catch (IOException | RuntimeException e) {
+                return CompletableFuture.failedFuture(e);
+            }
+        }
+
+        CompletableFuture<T> future = new CompletableFuture<>();
+        race.whenComplete((response, e) -> {
+            if (e != null) {
+                future.completeExceptionally(unwrap(e));
+            } else {
+                handle(future, response, requestAttributes, handler);
+            }
+        });
+        future.whenComplete((result, e) -> {
+            if (future.isCancelled()) {
+                race.cancel(true);
+            }
+        });
+        register(future, requestAttributes);
+        return future;
+    }
+
+    /**
+     * Completes the future with the handler's result, running the handler in
+     * the calling request's context.
+     */
+    private static <T> void handle(CompletableFuture<T> future, Response response,
+            RequestAttributes requestAttributes, ResponseHandler<T> handler) {
+        if (future.isDone()) {
+            response.close();
+            return;
+        }
+        RequestContextHolder.setRequestAttributes(requestAttributes);
+        try {
+            if (!future.complete(handler.handle(response))) {
+                // Cancelled while the handler ran; nobody will stream or close the result
+                response.close();
+            }
+        } catch (IOException | RuntimeException e) {
+            response.close();
+            future.completeExceptionally(e);
+        } finally {
+            RequestContextHolder.resetRequestAttributes();
+        }
+    }
+
+    /**
+     * Cancels the asynchronous calls made for a request that has timed out or
+     * failed, so their upstream responses are not left open.
+     */
+    static void cancelPending(RequestAttributes requestAttributes) {
+        Set<CompletableFuture<?>> pending = pendingCalls(requestAttributes, false);
+        if (pending != null) {
+            for (CompletableFuture<?> future : pending.toArray(new CompletableFuture<?>[0])) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * Cancels future together with the calls of the current request when the
+     * request times out or fails, for work a controller does between its
+     * Management API calls.
+     */
+    static void cancelWithRequest(CompletableFuture<?> future) {
+        register(future, RequestContextHolder.getRequestAttributes());
+    }
+
+    private static void register(CompletableFuture<?> future, RequestAttributes requestAttributes) {
+        if (requestAttributes == null || future.isDone()) {
+            return;
+        }
+        Set<CompletableFuture<?>> pending;
+        try {
+            pending = pendingCalls(requestAttributes, true);
+        } catch (IllegalStateException e) {
+            // The request has already completed, so it can no longer time out
+            return;
+        }
+        pending.add(future);
+        future.whenComplete((result, e) -> pending.remove(future));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Set<CompletableFuture<?>> pendingCalls(RequestAttributes requestAttributes, boolean create) {
+        synchronized (requestAttributes) {
+            Set<CompletableFuture<?>> pending = (Set<CompletableFuture<?>>) requestAttributes
+                    .getAttribute(PENDING_CALLS, RequestAttributes.SCOPE_REQUEST);
+            if (pending == null && create) {
+                pending = ConcurrentHashMap.newKeySet();
+                requestAttributes.setAttribute(PENDING_CALLS, pending, RequestAttributes.SCOPE_REQUEST);
+            }
+            return pending;
+        }
+    }
+
+    /**
+     * Returns the exception that actually failed a future, without the
+     * CompletionException or ExecutionException wrappers added along the way.
+     *
+     * @param throwable the exception passed to exceptionally() or handle()
+     * @return the underlying cause
+     */
+    public static Throwable unwrap(Throwable throwable) {
+        Throwable cause = throwable;
+        while ((cause instanceof CompletionException || cause instanceof ExecutionException)
+                && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        return cause;
+    }
+}
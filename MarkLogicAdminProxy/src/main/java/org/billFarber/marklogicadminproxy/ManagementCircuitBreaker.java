@@ -0,0 +1,204 @@
+package org.billFarber.marklogicadminproxy;
+
+/**
+ * A circuit breaker per EndpointFamily, so that while MarkLogic is failing the
+ * proxy answers at once instead of tying up threads until every call times
+ * out.
+ *
+ * Closed: calls go through and the outcomes of the last sliding-window-size
+ * calls are kept. An IO error (including timeouts) or a 5xx is a failure. Once
+ * minimum-calls outcomes are known and the failure rate reaches the threshold
+ * the circuit opens.
+ *
+ * Open: calls are answered with a 503 (see RejectedResponse) whose Retry-After
+ * is the time left until open-duration has passed. The response cache may
+ * serve a stale entry instead (stale-if-error).
+ *
+ * Half-open: after open-duration, half-open-calls trial calls go through while
+ * the rest are still rejected. If they all succeed the circuit closes with an
+ * empty window, and one failure opens it again.
+ *
+ * It runs inside the bulkhead, so it only sees calls that really went to
+ * MarkLogic. Meters: marklogic.management.circuit.state per family (0 closed,
+ * 1 half-open, 2 open) and marklogic.management.rejected with
+ * reason=circuit-open.
+ */
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+
+public class ManagementCircuitBreaker implements Interceptor {
+
+    static final String STATE = "marklogic.management.circuit.state";
+
+    private static final Logger logger = LoggerFactory.getLogger(ManagementCircuitBreaker.class);
+
+    enum State {
+        CLOSED, HALF_OPEN, OPEN
+    }
+
+    private final ManagementProperties.CircuitBreaker settings;
+    private final Clock clock;
+    private final Map<EndpointFamily, Breaker> breakers = new EnumMap<>(EndpointFamily.class);
+
+    public ManagementCircuitBreaker(ManagementProperties.CircuitBreaker settings, MeterRegistry registry) {
+        this(settings, registry, Clock.systemUTC());
+    }
+
+    ManagementCircuitBreaker(ManagementProperties.CircuitBreaker settings, MeterRegistry registry, Clock clock) {
+        this.settings = settings;
+        this.clock = clock;
+        for (EndpointFamily family : EndpointFamily.values()) {
+            Breaker breaker = new Breaker(family, Counter.builder(ManagementBulkhead.REJECTED)
+                    .description("Management API calls the proxy answered itself with a 503")
+                    .tags("family", family.key(), "reason", "circuit-open")
+                    .register(registry));
+            breakers.put(family, breaker);
+            Gauge.builder(STATE, breaker, b -> b.state().ordinal())
+                    .description("Circuit breaker state: 0 closed, 1 half-open, 2 open")
+                    .tag("family", family.key())
+                    .register(registry);
+        }
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        EndpointFamily family = EndpointFamily.of(request.url());
+        Breaker breaker = breakers.get(family);
+
+        Admission admission = breaker.admit();
+        if (admission.rejected()) {
+            return RejectedResponse.of(request, "PROXY-CIRCUITOPEN",
+                    "The Management API is failing; " + family.key() + " calls are paused", admission.retryAfter());
+        }
+        Response response;
+        try {
+            response = chain.proceed(request);
+        } catch (IOException | RuntimeException e) {
+            breaker.record(admission, false);
+            throw e;
+        }
+        breaker.record(admission, response.code() < 500);
+        return response;
+    }
+
+    State state(EndpointFamily family) {
+        return breakers.get(family).state();
+    }
+
+    /**
+     * Whether a call may go through, and if so whether it is a half-open trial.
+     */
+    private record Admission(boolean rejected, boolean trial, Duration retryAfter) {
+    }
+
+    private final class Breaker {
+        private final EndpointFamily family;
+        private final Counter rejected;
+
+        private State state = State.CLOSED;
+        private final boolean[] failed;
+        private int next;
+        private int calls;
+        private int failures;
+        private long openedAtMillis;
+        private int trialsStarted;
+        private int trialsSucceeded;
+
+        Breaker(EndpointFamily family, Counter rejected) {
+            this.family = family;
+            this.rejected = rejected;
+            this.failed = new boolean[Math.max(1, settings.getSlidingWindowSize())];
+        }
+
+        synchronized State state() {
+            return state;
+        }
+
+        synchronized Admission admit() {
+            long now = clock.millis();
+            if (state == State.OPEN) {
+                long remaining = openedAtMillis + settings.getOpenDuration().toMillis() - now;
+                if (remaining > 0) {
+                    rejected.increment();
+                    return new Admission(true, false, Duration.ofMillis(remaining));
+                }
+                transition(State.HALF_OPEN);
+                trialsStarted = 0;
+                trialsSucceeded = 0;
+            }
+            if (state == State.HALF_OPEN) {
+                if (trialsStarted >= settings.getHalfOpenCalls()) {
+                    rejected.increment();
+                    return new Admission(true, false, Duration.ofSeconds(1));
+                }
+                trialsStarted++;
+                return new Admission(false, true, null);
+            }
+            return new Admission(false, false, null);
+        }
+
+        synchronized void record(Admission admission, boolean success) {
+            if (admission.trial()) {
+                if (state != State.HALF_OPEN) {
+                    return;
+                }
+                if (!success) {
+                    open();
+                } else if (++trialsSucceeded >= settings.getHalfOpenCalls()) {
+                    transition(State.CLOSED);
+                    resetWindow();
+                }
+                return;
+            }
+            if (state != State.CLOSED) {
+                // Admitted before the circuit opened
+                return;
+            }
+            if (calls == failed.length) {
+                failures -= failed[next] ? 1 : 0;
+            } else {
+                calls++;
+            }
+            failed[next] = !success;
+            failures += success ? 0 : 1;
+            next = (next + 1) % failed.length;
+            if (calls >= settings.getMinimumCalls()
+                    && (double) failures / calls >= settings.getFailureRateThreshold()) {
+                open();
+            }
+        }
+
+        private void open() {
+            transition(State.OPEN);
+            openedAtMillis = clock.millis();
+            resetWindow();
+        }
+
+        private void resetWindow() {
+            calls = 0;
+            failures = 0;
+            next = 0;
+        }
+
+        private void transition(State to) {
+            if (state != to) {
+                logger.warn("Management API circuit for {} calls: {} -> {}", family.key(), state, to);
+                state = to;
+            }
+        }
+    }
+}
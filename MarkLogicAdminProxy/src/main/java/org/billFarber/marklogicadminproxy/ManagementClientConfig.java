@@ -0,0 +1,224 @@
+package org.billFarber.marklogicadminproxy;
+
+/**
+ * Builds the OkHttpClient the controllers use for the Management API.
+ *
+ * The client starts from the one inside the MarkLogic DatabaseClient so it
+ * keeps the same digest authentication and TLS settings, but it gets its own
+ * connection pool, dispatcher and timeouts. Traffic to port 8002 therefore no
+ * longer competes with, or inherits the defaults of, the port 8000 client.
+ *
+ * Cross-cutting behaviour such as upstream compression, metrics, the response
+ * cache, request coalescing, retries, the adaptive concurrency limiter,
+ * bulkheads and circuit breakers is added as interceptor beans, applied in
+ * @Order order.
+ * Per-phase timing for the Server-Timing header uses an OkHttp EventListener
+ * instead, since connection setup happens below the interceptors.
+ * ManagementDigestAuth replaces the DatabaseClient's authenticator so that
+ * digest nonces are reused instead of challenged for on every call.
+ * ManagementHedging, when enabled, is an interceptor only to time properties
+ * calls; ManagementCalls finds it in the client to send the hedges.
+ *
+ * When spring.threads.virtual.enabled is set on Java 21 the dispatcher runs
+ * enqueued calls on virtual threads, matching the Tomcat request threads.
+ */
+
+import com.marklogic.client.DatabaseClient;
+import io.micrometer.core.instrument.MeterRegistry;
+import okhttp3.Authenticator;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.EventListener;
+import okhttp3.Interceptor;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.annotation.Order;
+import org.springframework.core.env.Environment;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.core.task.support.ExecutorServiceAdapter;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@Configuration
+@EnableConfigurationProperties(ManagementProperties.class)
+public class ManagementClientConfig {
+
+    static final String VIRTUAL_THREAD_PREFIX = "ml-management-";
+
+    /** Interceptor order: lower values run first, i.e. closer to the controller. */
+    static final int COMPRESSION_ORDER = 50;
+    static final int METRICS_ORDER = 75;
+    static final int CACHE_ORDER = 100;
+    static final int COALESCING_ORDER = 200;
+    static final int HEDGING_ORDER = 220;
+    static final int RETRY_ORDER = 230;
+    static final int LIMITER_ORDER = 240;
+    static final int BULKHEAD_ORDER = 250;
+    static final int CIRCUIT_BREAKER_ORDER = 260;
+    static final int DIGEST_ORDER = 300;
+
+    @Bean
+    public OkHttpClient managementHttpClient(DatabaseClient databaseClient, ManagementProperties properties,
+            Environment environment, ObjectProvider<Interceptor> managementInterceptors,
+            ObjectProvider<EventListener.Factory> managementEventListeners,
+            ObjectProvider<Authenticator> managementAuthenticator) {
+        OkHttpClient baseClient = (OkHttpClient) databaseClient.getClientImplementation();
+
+        Dispatcher dispatcher = Threading.VIRTUAL.isActive(environment)
+                ? new Dispatcher(virtualThreadExecutor())
+                : new Dispatcher();
+        dispatcher.setMaxRequests(properties.getMaxRequests());
+        dispatcher.setMaxRequestsPerHost(properties.getMaxRequestsPerHost());
+
+        List<Protocol> protocols = properties.isHttp2Enabled()
+                ? List.of(Protocol.HTTP_2, Protocol.HTTP_1_1)
+                : List.of(Protocol.HTTP_1_1);
+
+        OkHttpClient.Builder builder = baseClient.newBuilder();
+        managementInterceptors.orderedStream().forEach(builder::addInterceptor);
+        managementEventListeners.ifAvailable(builder::eventListenerFactory);
+        managementAuthenticator.ifAvailable(builder::authenticator);
+
+        return builder
+                .connectionPool(new ConnectionPool(properties.getMaxIdleConnections(),
+                        properties.getKeepAlive().toMillis(), TimeUnit.MILLISECONDS))
+                .dispatcher(dispatcher)
+                .connectTimeout(properties.getConnectTimeout())
+                .readTimeout(properties.getReadTimeout())
+                .protocols(protocols)
+                .build();
+    }
+
+    @Bean
+    @Order(COMPRESSION_ORDER)
+    @ConditionalOnProperty(prefix = "marklogic.management.compression", name = "enabled", matchIfMissing = true)
+    public ManagementCompressionNegotiator managementCompressionNegotiator() {
+        return new ManagementCompressionNegotiator();
+    }
+
+    /**
+     * Inside the compression negotiator so the response size is the bytes on the
+     * wire, outside the cache so that cache hits are timed too.
+     */
+    @Bean
+    @Order(METRICS_ORDER)
+    @ConditionalOnProperty(prefix = "marklogic.management.metrics", name = "enabled", matchIfMissing = true)
+    public ManagementMetrics managementMetrics(MeterRegistry meterRegistry) {
+        return new ManagementMetrics(meterRegistry);
+    }
+
+    @Bean
+    @ConditionalOnProperty(prefix = "marklogic.management.metrics", name = "enabled", matchIfMissing = true)
+    public ProxyMetricsFilter proxyMetricsFilter(MeterRegistry meterRegistry) {
+        return new ProxyMetricsFilter(meterRegistry);
+    }
+
+    @Bean
+    @ConditionalOnProperty(prefix = "marklogic.management.server-timing", name = "enabled", matchIfMissing = true)
+    public ManagementPhaseTimer.Factory managementPhaseTimer(MeterRegistry meterRegistry) {
+        return new ManagementPhaseTimer.Factory(meterRegistry);
+    }
+
+    @Bean
+    public LogSpool logSpool(ManagementProperties properties) {
+        return new LogSpool(properties.getLogSpool());
+    }
+
+    @Bean
+    @Order(CACHE_ORDER)
+    @ConditionalOnProperty(prefix = "marklogic.management.cache", name = "enabled", matchIfMissing = true)
+    public ManagementResponseCache managementResponseCache(ManagementProperties properties) {
+        return new ManagementResponseCache(properties.getCache());
+    }
+
+    @Bean
+    @Order(COALESCING_ORDER)
+    @ConditionalOnProperty(prefix = "marklogic.management.coalescing", name = "enabled", matchIfMissing = true)
+    public ManagementRequestCoalescer managementRequestCoalescer(ManagementProperties properties) {
+        return new ManagementRequestCoalescer(properties.getCoalescing());
+    }
+
+    /**
+     * Inside the cache and coalescing, so it times only calls that go to
+     * MarkLogic, and outside the limiter so that queueing counts as latency.
+     */
+    @Bean
+    @Order(HEDGING_ORDER)
+    @ConditionalOnProperty(prefix = "marklogic.management.hedging", name = "enabled")
+    public ManagementHedging managementHedging(ManagementProperties properties, MeterRegistry meterRegistry) {
+        return new ManagementHedging(properties.getHedging(), meterRegistry);
+    }
+
+    /**
+     * Outside the limiter, bulkhead and circuit breaker, so every attempt is
+     * admitted, counted and sampled by them like any other call.
+     */
+    @Bean
+    @Order(RETRY_ORDER)
+    @ConditionalOnProperty(prefix = "marklogic.management.retry", name = "enabled", matchIfMissing = true)
+    public ManagementRetry managementRetry(ManagementProperties properties, MeterRegistry meterRegistry) {
+        return new ManagementRetry(properties.getRetry(), meterRegistry);
+    }
+
+    /**
+     * Inside the cache and coalescing, so only calls that go to MarkLogic take a
+     * permit, and outside the bulkhead and circuit breaker, so their rejections
+     * are not latency samples.
+     */
+    @Bean
+    @Order(LIMITER_ORDER)
+    @ConditionalOnProperty(prefix = "marklogic.management.limiter", name = "enabled", matchIfMissing = true)
+    public ManagementConcurrencyLimiter managementConcurrencyLimiter(ManagementProperties properties,
+            MeterRegistry meterRegistry) {
+        return new ManagementConcurrencyLimiter(properties.getLimiter(), meterRegistry);
+    }
+
+    /**
+     * Inside the cache and coalescing, so only calls that go to MarkLogic take a
+     * slot, and so the cache can serve stale entries for rejected calls.
+     */
+    @Bean
+    @Order(BULKHEAD_ORDER)
+    @ConditionalOnProperty(prefix = "marklogic.management.bulkhead", name = "enabled", matchIfMissing = true)
+    public ManagementBulkhead managementBulkhead(ManagementProperties properties, MeterRegistry meterRegistry) {
+        return new ManagementBulkhead(properties.getBulkhead(), meterRegistry);
+    }
+
+    /**
+     * Inside the bulkhead, so that its rejections are not counted as failures.
+     */
+    @Bean
+    @Order(CIRCUIT_BREAKER_ORDER)
+    @ConditionalOnProperty(prefix = "marklogic.management.circuit-breaker", name = "enabled", matchIfMissing = true)
+    public ManagementCircuitBreaker managementCircuitBreaker(ManagementProperties properties,
+            MeterRegistry meterRegistry) {
+        return new ManagementCircuitBreaker(properties.getCircuitBreaker(), meterRegistry);
+    }
+
+    /**
+     * Innermost, so that only calls that reach MarkLogic use a nonce count.
+     */
+    @Bean
+    @Order(DIGEST_ORDER)
+    @ConditionalOnProperty(prefix = "marklogic.management.digest", name = "enabled", matchIfMissing = true)
+    public ManagementDigestAuth managementDigestAuth(DatabaseClient databaseClient,
+            @Value("${marklogic.username}") String username, @Value("${marklogic.password}") String password,
+            MeterRegistry meterRegistry) {
+        OkHttpClient baseClient = (OkHttpClient) databaseClient.getClientImplementation();
+        return new ManagementDigestAuth(username, password, baseClient.authenticator(), meterRegistry);
+    }
+
+    private static ExecutorServiceAdapter virtualThreadExecutor() {
+        SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor(VIRTUAL_THREAD_PREFIX);
+        executor.setVirtualThreads(true);
+        return new ExecutorServiceAdapter(executor);
+    }
+}
@@ -0,0 +1,52 @@
+package org.billFarber.marklogicadminproxy;
+
+/**
+ * Asks MarkLogic for gzip-compressed Management API responses.
+ *
+ * OkHttp already sends Accept-Encoding: gzip on its own, but it inflates the
+ * response before any interceptor sees it. This interceptor runs outermost and
+ * sets the header itself, so the cache, the coalescer and the network all deal
+ * in the compressed bytes, and a large forests view=storage document crosses a
+ * slow link once, compressed, and is stored compressed.
+ *
+ * A gzip response is returned with a GzipResponseBody: it reads as plain bytes
+ * for callers that parse it, while ProxyResponses can forward the compressed
+ * bytes untouched to clients that accept gzip. MarkLogic may still answer
+ * without compression, in which case the response passes through unchanged.
+ *
+ * Requests that set Accept-Encoding themselves are left alone.
+ */
+
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+
+import java.io.IOException;
+
+public class ManagementCompressionNegotiator implements Interceptor {
+
+    static final String ACCEPT_ENCODING = "Accept-Encoding";
+    static final String CONTENT_ENCODING = "Content-Encoding";
+    static final String GZIP = "gzip";
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        if (request.header(ACCEPT_ENCODING) != null) {
+            return chain.proceed(request);
+        }
+
+        Response response = chain.proceed(request.newBuilder().header(ACCEPT_ENCODING, GZIP).build());
+        if (!GZIP.equalsIgnoreCase(response.header(CONTENT_ENCODING))
+                || response.body() == null || response.body().contentLength() == 0) {
+            return response;
+        }
+        // Same headers OkHttp would drop after inflating; the length now
+        // describes the compressed bytes only
+        return response.newBuilder()
+                .removeHeader(CONTENT_ENCODING)
+                .removeHeader("Content-Length")
+                .body(new GzipResponseBody(response.body()))
+                .build();
+    }
+}
@@ -0,0 +1,322 @@
+package org.billFarber.marklogicadminproxy;
+
+/**
+ * Adaptive limit on concurrent Management API calls, shared by all
+ * controllers, that backs off when MarkLogic's management threads saturate.
+ *
+ * The limit follows the gradient between the long-term and the recent
+ * upstream latency (time to response headers). While recent calls are no
+ * slower than rtt-tolerance times the long-term average the limit grows by
+ * about its square root, and as they slow down it shrinks in proportion. It
+ * only grows while at least half of it is in use. An IO error, a timeout or a
+ * 503/429 from MarkLogic cuts it by backoff-ratio (multiplicative decrease, as
+ * in AIMD). The limit stays between min-limit and max-limit.
+ *
+ * Calls over the limit wait in a queue ordered by Priority: interactive lists
+ * and properties first, then metrics polling, then logs and the bulk
+ * properties and cluster snapshot fan-outs (which tag their requests LOW). When
+ * the queue holds max-queue calls a new call displaces the newest call of a
+ * lower priority, or is rejected itself. Rejected calls, and calls still
+ * queued after max-wait, get a 503 with Retry-After (see RejectedResponse).
+ *
+ * It runs outside the bulkhead and circuit breaker; their rejections release
+ * the permit without a latency sample. The permit is released when the
+ * response headers arrive, so streaming a body to a slow client does not hold
+ * it.
+ *
+ * Meters: marklogic.management.limiter.limit, .inflight and .queued gauges,
+ * and marklogic.management.rejected with reason=limiter-queue-full or
+ * limiter-timeout.
+ */
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+public class ManagementConcurrencyLimiter implements Interceptor {
+
+    static final String LIMIT = "marklogic.management.limiter.limit";
+    static final String INFLIGHT = "marklogic.management.limiter.inflight";
+    static final String QUEUED = "marklogic.management.limiter.queued";
+
+    /** Number of samples the long-term latency average spans. */
+    private static final int LONG_WINDOW = 100;
+    /** Number of samples the recent latency average spans. */
+    private static final int SHORT_WINDOW = 10;
+
+    /**
+     * Queue order of calls over the limit; set one as a request tag to override
+     * the default for the endpoint family.
+     */
+    public enum Priority {
+        HIGH, NORMAL, LOW;
+
+        static Priority of(Request request) {
+            Priority tagged = request.tag(Priority.class);
+            if (tagged != null) {
+                return tagged;
+            }
+            return switch (EndpointFamily.of(request.url())) {
+                case LISTS, PROPERTIES -> HIGH;
+                case METRICS -> NORMAL;
+                case LOGS -> LOW;
+            };
+        }
+    }
+
+    private enum Outcome {
+        ADMITTED, QUEUE_FULL, TIMEOUT
+    }
+
+    private final ManagementProperties.Limiter settings;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final PriorityQueue<Waiter> queue = new PriorityQueue<>(
+            Comparator.comparing((Waiter waiter) -> waiter.priority).thenComparingLong(waiter -> waiter.sequence));
+    private long sequence;
+    private int inflight;
+    private double limit;
+    private double longRttNanos;
+    private double shortRttNanos;
+
+    private final Map<EndpointFamily, Counter> queueFull = new EnumMap<>(EndpointFamily.class);
+    private final Map<EndpointFamily, Counter> timedOut = new EnumMap<>(EndpointFamily.class);
+
+    public ManagementConcurrencyLimiter(ManagementProperties.Limiter settings, MeterRegistry registry) {
+        this.settings = settings;
+        this.limit = clamp(settings.getInitialLimit());
+        for (EndpointFamily family : EndpointFamily.values()) {
+            queueFull.put(family, rejected(registry, family, "limiter-queue-full"));
+            timedOut.put(family, rejected(registry, family, "limiter-timeout"));
+        }
+        Gauge.builder(LIMIT, this, ManagementConcurrencyLimiter::limit)
+                .description("Adaptive limit on concurrent Management API calls")
+                .register(registry);
+        Gauge.builder(INFLIGHT, this, ManagementConcurrencyLimiter::inflight)
+                .description("Management API calls holding a limiter permit")
+                .register(registry);
+        Gauge.builder(QUEUED, this, ManagementConcurrencyLimiter::queued)
+                .description("Management API calls waiting for a limiter permit")
+                .register(registry);
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        EndpointFamily family = EndpointFamily.of(request.url());
+        Outcome outcome = acquire(Priority.of(request));
+        if (outcome != Outcome.ADMITTED) {
+            (outcome == Outcome.QUEUE_FULL ? queueFull : timedOut).get(family).increment();
+            return RejectedResponse.of(request, "PROXY-LIMITERFULL",
+                    "Too many Management API calls are waiting; MarkLogic is answering slowly", retryAfter());
+        }
+
+        long start = System.nanoTime();
+        Response response;
+        try {
+            response = chain.proceed(request);
+        } catch (IOException | RuntimeException e) {
+            release(0, true);
+            throw e;
+        }
+        if (RejectedResponse.is(response)) {
+            release(0, false);
+        } else {
+            int code = response.code();
+            release(System.nanoTime() - start, code == 503 || code == 429);
+        }
+        return response;
+    }
+
+    double limit() {
+        lock.lock();
+        try {
+            return limit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    int inflight() {
+        lock.lock();
+        try {
+            return inflight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    int queued() {
+        lock.lock();
+        try {
+            return queue.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Outcome acquire(Priority priority) throws InterruptedIOException {
+        lock.lock();
+        try {
+            if (queue.isEmpty() && inflight < (int) limit) {
+                inflight++;
+                return Outcome.ADMITTED;
+            }
+            if (queue.size() >= settings.getMaxQueue() && !displaceLowerThan(priority)) {
+                return Outcome.QUEUE_FULL;
+            }
+
+            Waiter waiter = new Waiter(priority, sequence++, lock.newCondition());
+            queue.add(waiter);
+            long remaining = settings.getMaxWait().toNanos();
+            try {
+                while (waiter.outcome == null && remaining > 0) {
+                    remaining = waiter.signal.awaitNanos(remaining);
+                }
+            } catch (InterruptedException e) {
+                if (waiter.outcome == Outcome.ADMITTED) {
+                    inflight--;
+                    grant();
+                }
+                queue.remove(waiter);
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted waiting for a Management API permit");
+            }
+            if (waiter.outcome == null) {
+                queue.remove(waiter);
+                return Outcome.TIMEOUT;
+            }
+            return waiter.outcome;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Rejects the newest queued call with a lower priority, to make room.
+     *
+     * @return false when every queued call has the same or a higher priority
+     */
+    private boolean displaceLowerThan(Priority priority) {
+        Waiter victim = null;
+        for (Waiter waiter : queue) {
+            if (waiter.priority.compareTo(priority) > 0 && (victim == null
+                    || waiter.priority.compareTo(victim.priority) > 0
+                    || (waiter.priority == victim.priority && waiter.sequence > victim.sequence))) {
+                victim = waiter;
+            }
+        }
+        if (victim == null) {
+            return false;
+        }
+        queue.remove(victim);
+        victim.outcome = Outcome.QUEUE_FULL;
+        victim.signal.signal();
+        return true;
+    }
+
+    /**
+     * Returns a permit and adjusts the limit.
+     *
+     * @param rttNanos time to the response headers, or 0 for no sample
+     * @param dropped  whether MarkLogic failed or shed the call
+     */
+    private void release(long rttNanos, boolean dropped) {
+        lock.lock();
+        try {
+            inflight--;
+            if (dropped) {
+                limit = clamp(limit * settings.getBackoffRatio());
+            } else if (rttNanos > 0) {
+                sample(rttNanos);
+            }
+            grant();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void sample(long rttNanos) {
+        if (longRttNanos == 0) {
+            longRttNanos = rttNanos;
+            shortRttNanos = rttNanos;
+            return;
+        }
+        longRttNanos += (rttNanos - longRttNanos) / LONG_WINDOW;
+        shortRttNanos += (rttNanos - shortRttNanos) / SHORT_WINDOW;
+        if (longRttNanos > 2 * shortRttNanos) {
+            // Latency dropped a lot, e.g. after an incident: let the baseline follow
+            longRttNanos *= 0.95;
+        }
+
+        double gradient = Math.max(0.5, Math.min(1.0, settings.getRttTolerance() * longRttNanos / shortRttNanos));
+        double target = limit * gradient + Math.sqrt(limit);
+        if (inflight + 1 < limit / 2) {
+            // Not using the limit, so latency says nothing about a higher one
+            target = Math.min(target, limit);
+        }
+        limit = clamp(limit * (1 - settings.getSmoothing()) + target * settings.getSmoothing());
+    }
+
+    /**
+     * Admits queued calls, highest priority first, while there is room.
+     */
+    private void grant() {
+        while (inflight < (int) limit && !queue.isEmpty()) {
+            Waiter next = queue.poll();
+            next.outcome = Outcome.ADMITTED;
+            inflight++;
+            next.signal.signal();
+        }
+    }
+
+    /**
+     * @return roughly how long the queue takes to drain at the current limit
+     */
+    private Duration retryAfter() {
+        lock.lock();
+        try {
+            double rounds = (queue.size() + 1) / Math.max(1, limit);
+            return Duration.ofNanos((long) (rounds * longRttNanos));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private double clamp(double value) {
+        return Math.max(settings.getMinLimit(), Math.min(settings.getMaxLimit(), value));
+    }
+
+    private static Counter rejected(MeterRegistry registry, EndpointFamily family, String reason) {
+        return Counter.builder(ManagementBulkhead.REJECTED)
+                .description("Management API calls the proxy answered itself with a 503")
+                .tags("family", family.key(), "reason", reason)
+                .register(registry);
+    }
+
+    private static final class Waiter {
+        final Priority priority;
+        final long sequence;
+        final Condition signal;
+        Outcome outcome;
+
+        Waiter(Priority priority, long sequence, Condition signal) {
+            this.priority = priority;
+            this.sequence = sequence;
+            this.signal = signal;
+        }
+    }
+}
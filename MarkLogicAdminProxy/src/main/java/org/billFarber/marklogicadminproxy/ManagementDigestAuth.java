@@ -0,0 +1,238 @@
+package org.billFarber.marklogicadminproxy;
+
+/**
+ * Preemptive digest authentication for the Management API.
+ *
+ * Plain digest authentication sends every call twice: once without
+ * credentials to receive a 401 with a fresh nonce, then again with them. This
+ * class keeps the last challenge per MarkLogic host and port, and signs later
+ * calls with its nonce up front, counting each use in nc as RFC 7616 requires.
+ * Calls then authenticate in one round trip for as long as MarkLogic accepts
+ * the nonce.
+ *
+ * As the Authenticator it answers 401s: the challenge is cached and the call
+ * retried once with credentials. A 401 to that retry means the credentials are
+ * wrong, and is returned as it is. When MarkLogic expires the nonce (stale=true)
+ * or rejects the nonce count, which can happen when concurrent calls sharing a
+ * nonce arrive out of order, the call pays the challenge round trip as before
+ * and the new nonce is cached.
+ *
+ * Challenges it cannot answer (another scheme, auth-int only, or an algorithm
+ * other than MD5 and MD5-sess) go to the fallback, normally the authenticator of
+ * the MarkLogic DatabaseClient.
+ *
+ * As an interceptor it runs innermost, so calls answered by the response cache
+ * or by request coalescing never use up a nonce count.
+ *
+ * Meters:
+ *   marklogic.management.auth.preemptive  calls signed with a cached nonce
+ *   marklogic.management.auth.challenges  401 challenges answered, tagged with
+ *       reason: none (no nonce cached), stale or rejected
+ */
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import okhttp3.Authenticator;
+import okhttp3.Challenge;
+import okhttp3.HttpUrl;
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.Route;
+import okio.ByteString;
+
+import java.io.IOException;
+import java.security.SecureRandom;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class ManagementDigestAuth implements Interceptor, Authenticator {
+
+    static final String PREEMPTIVE = "marklogic.management.auth.preemptive";
+    static final String CHALLENGES = "marklogic.management.auth.challenges";
+
+    private static final String AUTHORIZATION = "Authorization";
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private final String username;
+    private final String password;
+    private final Authenticator fallback;
+    private final Map<String, Nonce> nonces = new ConcurrentHashMap<>();
+
+    private final Counter preemptive;
+    private final Counter challengedWithoutNonce;
+    private final Counter challengedStale;
+    private final Counter challengedRejected;
+
+    public ManagementDigestAuth(String username, String password, Authenticator fallback, MeterRegistry registry) {
+        this.username = username;
+        this.password = password;
+        this.fallback = fallback;
+        this.preemptive = Counter.builder(PREEMPTIVE)
+                .description("Management API calls authenticated with a cached digest nonce")
+                .register(registry);
+        this.challengedWithoutNonce = challenges(registry, "none");
+        this.challengedStale = challenges(registry, "stale");
+        this.challengedRejected = challenges(registry, "rejected");
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        Nonce nonce = nonces.get(origin(request.url()));
+        if (nonce == null || request.header(AUTHORIZATION) != null) {
+            return chain.proceed(request);
+        }
+        preemptive.increment();
+        return chain.proceed(request.newBuilder().header(AUTHORIZATION, nonce.authorization(request)).build());
+    }
+
+    @Override
+    public Request authenticate(Route route, Response response) throws IOException {
+        Request request = response.request();
+        if (response.priorResponse() != null && response.priorResponse().code() == 401) {
+            // Already retried with a fresh nonce, so the credentials are wrong
+            return null;
+        }
+        Challenge challenge = digestChallenge(response);
+        Nonce nonce = challenge == null ? null : Nonce.of(challenge, username, password);
+        if (nonce == null) {
+            return fallback.authenticate(route, response);
+        }
+
+        String origin = origin(request.url());
+        boolean stale = "true".equalsIgnoreCase(challenge.authParams().get("stale"));
+        if (nonces.containsKey(origin)) {
+            (stale ? challengedStale : challengedRejected).increment();
+        } else {
+            challengedWithoutNonce.increment();
+        }
+        nonces.put(origin, nonce);
+        return request.newBuilder().header(AUTHORIZATION, nonce.authorization(request)).build();
+    }
+
+    private static Challenge digestChallenge(Response response) {
+        for (Challenge challenge : response.challenges()) {
+            if (challenge.scheme().equalsIgnoreCase("Digest")) {
+                return challenge;
+            }
+        }
+        return null;
+    }
+
+    private static String origin(HttpUrl url) {
+        return url.scheme() + "://" + url.host() + ":" + url.port();
+    }
+
+    private static Counter challenges(MeterRegistry registry, String reason) {
+        return Counter.builder(CHALLENGES)
+                .description("Digest challenges answered by the Management API client")
+                .tag("reason", reason)
+                .register(registry);
+    }
+
+    /**
+     * One server nonce and the count of requests signed with it.
+     */
+    static final class Nonce {
+        private final String realm;
+        private final String nonce;
+        private final String opaque;
+        private final String algorithm;
+        private final boolean qopAuth;
+        private final boolean sessionAlgorithm;
+        private final String credentialsHash;
+        private final String username;
+        private final AtomicLong count = new AtomicLong();
+
+        private Nonce(String realm, String nonce, String opaque, String algorithm, boolean qopAuth,
+                String username, String password) {
+            this.realm = realm;
+            this.nonce = nonce;
+            this.opaque = opaque;
+            this.algorithm = algorithm;
+            this.qopAuth = qopAuth;
+            this.sessionAlgorithm = algorithm != null && algorithm.toUpperCase(Locale.ROOT).endsWith("-SESS");
+            this.username = username;
+            this.credentialsHash = hash(username + ":" + realm + ":" + password);
+        }
+
+        /**
+         * @return the nonce of a digest challenge, or null when its algorithm or
+         *         quality of protection is not supported
+         */
+        static Nonce of(Challenge challenge, String username, String password) {
+            Map<String, String> params = challenge.authParams();
+            String nonce = params.get("nonce");
+            String algorithm = params.get("algorithm");
+            if (nonce == null || (algorithm != null && !algorithm.toUpperCase(Locale.ROOT).startsWith("MD5"))) {
+                return null;
+            }
+            String qop = params.get("qop");
+            boolean qopAuth = false;
+            if (qop != null) {
+                for (String option : qop.split(",")) {
+                    qopAuth |= option.trim().equalsIgnoreCase("auth");
+                }
+                if (!qopAuth) {
+                    // auth-int only: would need the request body hash
+                    return null;
+                }
+            }
+            String realm = params.get("realm") == null ? "" : params.get("realm");
+            return new Nonce(realm, nonce, params.get("opaque"), algorithm, qopAuth, username, password);
+        }
+
+        /**
+         * @return the Authorization header value for the request, using the next
+         *         nonce count
+         */
+        String authorization(Request request) {
+            HttpUrl url = request.url();
+            String uri = url.encodedQuery() == null
+                    ? url.encodedPath()
+                    : url.encodedPath() + "?" + url.encodedQuery();
+            String nc = String.format("%08x", count.incrementAndGet());
+            String cnonce = cnonce();
+
+            String ha1 = sessionAlgorithm ? hash(credentialsHash + ":" + nonce + ":" + cnonce) : credentialsHash;
+            String ha2 = hash(request.method() + ":" + uri);
+            String response = qopAuth
+                    ? hash(ha1 + ":" + nonce + ":" + nc + ":" + cnonce + ":auth:" + ha2)
+                    : hash(ha1 + ":" + nonce + ":" + ha2);
+
+            StringBuilder header = new StringBuilder("Digest ")
+                    .append("username=").append(quote(username))
+                    .append(", realm=").append(quote(realm))
+                    .append(", nonce=").append(quote(nonce))
+                    .append(", uri=").append(quote(uri))
+                    .append(", response=").append(quote(response));
+            if (qopAuth) {
+                header.append(", qop=auth, nc=").append(nc).append(", cnonce=").append(quote(cnonce));
+            }
+            if (opaque != null) {
+                header.append(", opaque=").append(quote(opaque));
+            }
+            if (algorithm != null) {
+                header.append(", algorithm=").append(algorithm);
+            }
+            return header.toString();
+        }
+
+        private static String cnonce() {
+            byte[] bytes = new byte[8];
+            RANDOM.nextBytes(bytes);
+            return ByteString.of(bytes).hex();
+        }
+
+        private static String hash(String value) {
+            return ByteString.encodeUtf8(value).md5().hex();
+        }
+
+        private static String quote(String value) {
+            return "\"" + value.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+        }
+    }
+}
@@ -0,0 +1,339 @@
+package org.billFarber.marklogicadminproxy;
+
+/**
+ * Hedged requests for properties lookups, so that one slow MarkLogic response
+ * does not stall a whole fan-out.
+ *
+ * When a properties GET has not been answered after the observed latency
+ * percentile (p95 by default), ManagementCalls sends a second copy, to the next
+ * of the configured alternative hosts or else to the same one, and uses
+ * whichever answers first. The other call is cancelled. A 5xx only wins when
+ * the other call fails as well.
+ *
+ * As an interceptor it only measures: it times properties calls that reach
+ * MarkLogic (after the cache and coalescing) to find the hedge delay. Until
+ * min-samples calls are timed nothing is hedged. Hedges draw on a budget that
+ * earns budget-ratio of a hedge per properties call, so they add at most that
+ * share of extra load, and burst to at most max-burst hedges.
+ *
+ * The hedged copy carries a Hedge tag so request coalescing does not attach it
+ * to the call it is meant to race.
+ *
+ * Meters: marklogic.management.hedges, tagged with result: won (the hedge
+ * answered first), lost (the original did) or skipped (the budget was empty).
+ */
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.HttpUrl;
+import okhttp3.Interceptor;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ManagementHedging implements Interceptor, AutoCloseable {
+
+    static final String HEDGES = "marklogic.management.hedges";
+
+    /** Number of recent latencies the percentile is taken from. */
+    private static final int WINDOW = 200;
+
+    /**
+     * Request tag marking the hedged copy of a call.
+     */
+    static final class Hedge {
+        static final Hedge INSTANCE = new Hedge();
+
+        private Hedge() {
+        }
+    }
+
+    private final ManagementProperties.Hedging settings;
+    private final List<String> hosts;
+    private final AtomicInteger nextHost = new AtomicInteger();
+    private final ScheduledExecutorService timer;
+
+    private final long[] latencies = new long[WINDOW];
+    private long samples;
+    private long delayNanos = -1;
+    private double budget;
+
+    private final Counter won;
+    private final Counter lost;
+    private final Counter skipped;
+
+    public ManagementHedging(ManagementProperties.Hedging settings, MeterRegistry registry) {
+        this.settings = settings;
+        this.hosts = List.copyOf(settings.getHosts());
+        this.timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "ml-management-hedging");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.budget = settings.getMaxBurst();
+        this.won = hedges(registry, "won");
+        this.lost = hedges(registry, "lost");
+        this.skipped = hedges(registry, "skipped");
+    }
+
+    /**
+     * @return the hedging interceptor installed in the client, or null
+     */
+    static ManagementHedging of(OkHttpClient client) {
+        for (Interceptor interceptor : client.interceptors()) {
+            if (interceptor instanceof ManagementHedging hedging) {
+                return hedging;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return whether calls for the request are hedged: idempotent properties
+     *         lookups that are not themselves a hedge
+     */
+    boolean applies(Request request) {
+        return "GET".equals(request.method())
+                && EndpointFamily.of(request.url()) == EndpointFamily.PROPERTIES
+                && request.tag(Hedge.class) == null;
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        if (!"GET".equals(request.method()) || EndpointFamily.of(request.url()) != EndpointFamily.PROPERTIES) {
+            return chain.proceed(request);
+        }
+        long start = System.nanoTime();
+        Response response = chain.proceed(request);
+        if (response.code() < 500 && !RejectedResponse.is(response)) {
+            sample(System.nanoTime() - start);
+        }
+        return response;
+    }
+
+    /**
+     * Enqueues the request and, if it is still unanswered after the hedge delay
+     * and the budget allows, a hedged copy.
+     *
+     * @return future completed with the first usable response; cancelling it
+     *         cancels both calls
+     */
+    CompletableFuture<Response> call(OkHttpClient client, Request request) {
+        Race race = new Race();
+        race.start(client.newCall(request), false);
+
+        long delay = earn();
+        if (delay >= 0) {
+            Request hedge = hedgeRequest(request);
+            ScheduledFuture<?> scheduled = timer.schedule(() -> {
+                if (race.result.isDone()) {
+                    return;
+                }
+                if (!spend()) {
+                    skipped.increment();
+                    return;
+                }
+                race.start(client.newCall(hedge), true);
+            }, delay, TimeUnit.NANOSECONDS);
+            race.result.whenComplete((response, e) -> scheduled.cancel(false));
+        }
+        return race.result;
+    }
+
+    /**
+     * @return the current hedge delay, or null while there are too few samples
+     */
+    synchronized Duration delay() {
+        return delayNanos < 0 ? null : Duration.ofNanos(delayNanos);
+    }
+
+    @Override
+    public void close() {
+        timer.shutdownNow();
+    }
+
+    private Request hedgeRequest(Request request) {
+        Request.Builder hedge = request.newBuilder().tag(Hedge.class, Hedge.INSTANCE);
+        if (!hosts.isEmpty()) {
+            // host or host:port; without a port the original one is kept
+            String host = hosts.get(Math.floorMod(nextHost.getAndIncrement(), hosts.size()));
+            HttpUrl.Builder url = request.url().newBuilder();
+            int colon = host.lastIndexOf(':');
+            if (colon > 0 && host.indexOf(':') == colon) {
+                url.host(host.substring(0, colon)).port(Integer.parseInt(host.substring(colon + 1)));
+            } else {
+                url.host(host);
+            }
+            hedge.url(url.build());
+        }
+        return hedge.build();
+    }
+
+    private synchronized void sample(long nanos) {
+        latencies[(int) (samples % WINDOW)] = nanos;
+        samples++;
+        if (samples >= settings.getMinSamples() && (delayNanos < 0 || samples % 10 == 0)) {
+            long[] sorted = Arrays.copyOf(latencies, (int) Math.min(samples, WINDOW));
+            Arrays.sort(sorted);
+            int index = (int) Math.ceil(settings.getPercentile() * sorted.length) - 1;
+            long percentile = sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+            delayNanos = Math.max(settings.getMinDelay().toNanos(), percentile);
+        }
+    }
+
+    /**
+     * Adds one call's share to the budget.
+     *
+     * @return the hedge delay in nanoseconds, or -1 for none yet
+     */
+    private synchronized long earn() {
+        budget = Math.min(settings.getMaxBurst(), budget + settings.getBudgetRatio());
+        return delayNanos;
+    }
+
+    private synchronized boolean spend() {
+        if (budget < 1) {
+            return false;
+        }
+        budget--;
+        return true;
+    }
+
+    private static Counter hedges(MeterRegistry registry, String result) {
+        return Counter.builder(HEDGES)
+                .description("Hedged Management API properties calls")
+                .tag("result", result)
+                .register(registry);
+    }
+
+    /**
+     * The original call and, once sent, its hedge; the first usable response
+     * completes the result.
+     */
+    private final class Race implements Callback {
+        final CompletableFuture<Response> result = new CompletableFuture<>();
+        private final List<Call> calls = new ArrayList<>(2);
+        private Call hedge;
+        private int pending;
+        private boolean settled;
+        private Response fallback;
+        private Call fallbackCall;
+
+        Race() {
+            result.whenComplete((response, e) -> {
+                if (result.isCancelled()) {
+                    cancelAll(null);
+                }
+            });
+        }
+
+        void start(Call call, boolean isHedge) {
+            synchronized (this) {
+                if (settled || result.isDone()) {
+                    return;
+                }
+                calls.add(call);
+                pending++;
+                if (isHedge) {
+                    hedge = call;
+                }
+            }
+            call.enqueue(this);
+        }
+
+        @Override
+        public void onResponse(Call call, Response response) {
+            Response previous;
+            synchronized (this) {
+                pending--;
+                if (settled || result.isDone()) {
+                    response.close();
+                    return;
+                }
+                if (response.code() >= 500 && pending > 0) {
+                    // Wait for the other call before settling for an error
+                    if (fallback != null) {
+                        fallback.close();
+                    }
+                    fallback = response;
+                    fallbackCall = call;
+                    return;
+                }
+                settled = true;
+                previous = fallback;
+                fallback = null;
+            }
+            if (previous != null) {
+                previous.close();
+            }
+            settle(call, response);
+        }
+
+        @Override
+        public void onFailure(Call call, IOException e) {
+            Response previous;
+            Call previousCall;
+            synchronized (this) {
+                pending--;
+                if (settled || result.isDone() || pending > 0) {
+                    return;
+                }
+                settled = true;
+                previous = fallback;
+                previousCall = fallbackCall;
+                fallback = null;
+            }
+            if (previous != null) {
+                settle(previousCall, previous);
+            } else {
+                result.completeExceptionally(e);
+            }
+        }
+
+        /**
+         * Completes the result before cancelling the other call, whose failure
+         * would otherwise be reported.
+         */
+        private void settle(Call winner, Response response) {
+            Call sentHedge;
+            synchronized (this) {
+                sentHedge = hedge;
+            }
+            if (sentHedge != null) {
+                (winner == sentHedge ? won : lost).increment();
+            }
+            if (!result.complete(response)) {
+                response.close();
+                return;
+            }
+            cancelAll(winner);
+        }
+
+        private void cancelAll(Call except) {
+            List<Call> others;
+            synchronized (this) {
+                others = new ArrayList<>(calls);
+            }
+            for (Call call : others) {
+                if (call != except) {
+                    call.cancel();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package org.billFarber.marklogicadminproxy;
+
+/**
+ * Records a Micrometer timer and a response size summary for every Management
+ * API call, whichever controller made it.
+ *
+ * marklogic.management.requests times each call until MarkLogic's response
+ * headers arrive, tagged with:
+ *   endpoint  the path with ids replaced, e.g. /manage/v2/forests/{id}/properties
+ *   view      the view parameter (default when absent, other when unknown)
+ *   status    the upstream status code, or IO_ERROR when MarkLogic was unreachable
+ *   cache     hit, miss or coalesced when the response cache or request
+ *             coalescing answered, stale when the cache answered for a failed
+ *             call, none when neither applied
+ *
+ * marklogic.management.response.size records the bytes read from the upstream
+ * body (compressed when MarkLogic sent gzip) once the body is closed.
+ *
+ * Each call is also added to the UpstreamSpan of the servlet request that made
+ * it, which ProxyMetricsFilter uses to separate the proxy's own overhead from
+ * the time spent waiting on MarkLogic.
+ *
+ * Percentile histograms for both meters are switched on in application.yml
+ * (management.metrics.distribution.percentiles-histogram).
+ */
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import okhttp3.HttpUrl;
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import okio.BufferedSource;
+import okio.ForwardingSource;
+import okio.Okio;
+import org.springframework.web.context.request.RequestAttributes;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class ManagementMetrics implements Interceptor {
+
+    static final String REQUESTS = "marklogic.management.requests";
+    static final String RESPONSE_SIZE = "marklogic.management.response.size";
+
+    /** Views documented for the Management API; anything else is tagged other. */
+    private static final Set<String> VIEWS = Set.of("default", "config", "counts", "describe", "edit", "metrics",
+            "package", "properties-schema", "schema", "status", "storage");
+
+    private final MeterRegistry registry;
+
+    public ManagementMetrics(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        CallOutcome outcome = new CallOutcome();
+        Request request = chain.request().newBuilder().tag(CallOutcome.class, outcome).build();
+        Tags tags = Tags.of("endpoint", endpoint(request.url()), "view", view(request.url()));
+        UpstreamSpan span = UpstreamSpan.of(request.tag(RequestAttributes.class));
+
+        long start = System.nanoTime();
+        Response response;
+        try {
+            response = chain.proceed(request);
+        } catch (IOException | RuntimeException e) {
+            record(tags.and("status", "IO_ERROR"), outcome, start, span);
+            throw e;
+        }
+        Tags responseTags = tags.and("status", Integer.toString(response.code()));
+        record(responseTags, outcome, start, span);
+
+        if (response.body() == null) {
+            return response;
+        }
+        DistributionSummary size = DistributionSummary.builder(RESPONSE_SIZE)
+                .description("Bytes read from Management API response bodies")
+                .baseUnit("bytes")
+                .tags(responseTags)
+                .register(registry);
+        return response.newBuilder().body(new CountingBody(response.body(), size)).build();
+    }
+
+    /**
+     * Records which of the response cache and request coalescing answered the
+     * call. Called by those interceptors; does nothing when metrics are off.
+     */
+    static void cacheOutcome(Request request, String cache) {
+        CallOutcome outcome = request.tag(CallOutcome.class);
+        if (outcome != null) {
+            outcome.cache = cache;
+        }
+    }
+
+    /**
+     * Replaces the id or name segment of a /manage/v2 path so that the tag has
+     * one value per endpoint rather than per resource.
+     */
+    static String endpoint(HttpUrl url) {
+        List<String> segments = url.pathSegments();
+        if (segments.size() < 3 || !segments.get(0).equals("manage") || !segments.get(1).equals("v2")) {
+            return "other";
+        }
+        StringBuilder endpoint = new StringBuilder("/manage/v2/").append(segments.get(2));
+        for (int i = 3; i < segments.size(); i++) {
+            if (!segments.get(i).isEmpty()) {
+                endpoint.append('/').append(i == 3 ? "{id}" : segments.get(i));
+            }
+        }
+        return endpoint.toString();
+    }
+
+    static String view(HttpUrl url) {
+        String view = url.queryParameter("view");
+        if (view == null) {
+            return "default";
+        }
+        return VIEWS.contains(view) ? view : "other";
+    }
+
+    private void record(Tags tags, CallOutcome outcome, long start, UpstreamSpan span) {
+        long end = System.nanoTime();
+        Timer.builder(REQUESTS)
+                .description("Management API calls until the response headers arrive")
+                .tags(tags.and("cache", outcome.cache))
+                .register(registry)
+                .record(end - start, TimeUnit.NANOSECONDS);
+        if (span != null) {
+            span.add(start, end);
+        }
+    }
+
+    /**
+     * Mutable request tag the inner interceptors use to report the cache outcome.
+     */
+    static final class CallOutcome {
+        volatile String cache = "none";
+    }
+
+    /**
+     * Counts the bytes read through the body and records them once on close.
+     */
+    private static final class CountingBody extends ResponseBody {
+        private final ResponseBody delegate;
+        private final DistributionSummary size;
+        private final AtomicBoolean recorded = new AtomicBoolean();
+        private long bytes;
+        private BufferedSource source;
+
+        CountingBody(ResponseBody delegate, DistributionSummary size) {
+            this.delegate = delegate;
+            this.size = size;
+        }
+
+        @Override
+        public MediaType contentType() {
+            return delegate.contentType();
+        }
+
+        @Override
+        public long contentLength() {
+            return delegate.contentLength();
+        }
+
+        @Override
+        public BufferedSource source() {
+            if (source == null) {
+                source = Okio.buffer(new ForwardingSource(delegate.source()) {
+                    @Override
+                    public long read(Buffer sink, long byteCount) throws IOException {
+                        long read = super.read(sink, byteCount);
+                        if (read > 0) {
+                            bytes += read;
+                        }
+                        return read;
+                    }
+                });
+            }
+            return source;
+        }
+
+        @Override
+        public void close() {
+            if (recorded.compareAndSet(false, true)) {
+                size.record(bytes);
+            }
+            delegate.close();
+        }
+    }
+}
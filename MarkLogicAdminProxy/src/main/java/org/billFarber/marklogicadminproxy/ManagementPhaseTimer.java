@@ -0,0 +1,218 @@
+package org.billFarber.marklogicadminproxy;
+
+/**
+ * Times the phases of every Management API call from OkHttp's call events and
+ * adds them to the ServerTiming of the servlet request that made the call.
+ *
+ * Each phase is also recorded to the marklogic.management.phase timer, tagged
+ * with the endpoint (as in ManagementMetrics) and the phase: dns, connect,
+ * tls, auth, server or transfer. Calls answered by the response cache or by
+ * request coalescing never reach the network and record nothing.
+ *
+ * The auth phase is the digest challenge: the attempt MarkLogic answered with
+ * 401, from sending it to sending the retry with credentials. A 401 that is not
+ * retried is the real answer and counts as server time instead. transfer runs
+ * from the response headers to the end of the body, so it includes any time
+ * the proxy took to consume it.
+ */
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import okhttp3.Call;
+import okhttp3.EventListener;
+import okhttp3.Handshake;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import org.springframework.web.context.request.RequestAttributes;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+public class ManagementPhaseTimer extends EventListener {
+
+    static final String PHASE = "marklogic.management.phase";
+
+    private static final long NONE = -1;
+
+    private final MeterRegistry registry;
+    private final String endpoint;
+    private final ServerTiming timing;
+
+    private long dnsStart = NONE;
+    private long connectStart = NONE;
+    private long tlsStart = NONE;
+    private long tlsNanos;
+    private long attemptStart = NONE;
+    private long requestSent = NONE;
+    private long challengeStart = NONE;
+    private long pendingServerNanos;
+    private long bodyStart = NONE;
+
+    ManagementPhaseTimer(MeterRegistry registry, String endpoint, ServerTiming timing) {
+        this.registry = registry;
+        this.endpoint = endpoint;
+        this.timing = timing;
+    }
+
+    /**
+     * Creates one timer per call. Called by OkHttp when the call is created, on
+     * the thread that creates it.
+     */
+    public static class Factory implements EventListener.Factory {
+        private final MeterRegistry registry;
+
+        public Factory(MeterRegistry registry) {
+            this.registry = registry;
+        }
+
+        @Override
+        public EventListener create(Call call) {
+            return new ManagementPhaseTimer(registry, ManagementMetrics.endpoint(call.request().url()),
+                    ServerTiming.of(call.request().tag(RequestAttributes.class)));
+        }
+    }
+
+    @Override
+    public synchronized void dnsStart(Call call, String domainName) {
+        dnsStart = System.nanoTime();
+    }
+
+    @Override
+    public synchronized void dnsEnd(Call call, String domainName, List<InetAddress> inetAddressList) {
+        dnsStart = add(ServerTiming.Phase.DNS, dnsStart);
+    }
+
+    @Override
+    public synchronized void connectStart(Call call, InetSocketAddress inetSocketAddress, Proxy proxy) {
+        connectStart = System.nanoTime();
+        tlsNanos = 0;
+    }
+
+    @Override
+    public synchronized void secureConnectStart(Call call) {
+        tlsStart = System.nanoTime();
+    }
+
+    @Override
+    public synchronized void secureConnectEnd(Call call, Handshake handshake) {
+        if (tlsStart != NONE) {
+            tlsNanos = System.nanoTime() - tlsStart;
+            record(ServerTiming.Phase.TLS, tlsNanos);
+            tlsStart = NONE;
+        }
+    }
+
+    @Override
+    public synchronized void connectEnd(Call call, InetSocketAddress inetSocketAddress, Proxy proxy,
+            Protocol protocol) {
+        connectDone();
+    }
+
+    @Override
+    public synchronized void connectFailed(Call call, InetSocketAddress inetSocketAddress, Proxy proxy,
+            Protocol protocol, IOException ioe) {
+        connectDone();
+    }
+
+    @Override
+    public synchronized void requestHeadersStart(Call call) {
+        long now = System.nanoTime();
+        if (challengeStart != NONE) {
+            record(ServerTiming.Phase.AUTH, now - challengeStart);
+            challengeStart = NONE;
+        }
+        attemptStart = now;
+    }
+
+    @Override
+    public synchronized void requestHeadersEnd(Call call, Request request) {
+        requestSent = System.nanoTime();
+    }
+
+    @Override
+    public synchronized void requestBodyEnd(Call call, long byteCount) {
+        requestSent = System.nanoTime();
+    }
+
+    @Override
+    public synchronized void responseHeadersEnd(Call call, Response response) {
+        long serverNanos = requestSent == NONE ? 0 : System.nanoTime() - requestSent;
+        requestSent = NONE;
+        if (response.code() == 401) {
+            // Either a challenge that is about to be answered, or the answer
+            challengeStart = attemptStart;
+            pendingServerNanos = serverNanos;
+        } else {
+            record(ServerTiming.Phase.SERVER, serverNanos);
+        }
+    }
+
+    @Override
+    public synchronized void responseBodyStart(Call call) {
+        bodyStart = System.nanoTime();
+    }
+
+    @Override
+    public synchronized void responseBodyEnd(Call call, long byteCount) {
+        if (challengeStart == NONE) {
+            bodyStart = add(ServerTiming.Phase.TRANSFER, bodyStart);
+        } else {
+            bodyStart = NONE;
+        }
+    }
+
+    @Override
+    public synchronized void callEnd(Call call) {
+        unansweredChallenge();
+    }
+
+    @Override
+    public synchronized void callFailed(Call call, IOException ioe) {
+        unansweredChallenge();
+    }
+
+    private void connectDone() {
+        if (connectStart != NONE) {
+            record(ServerTiming.Phase.CONNECT, System.nanoTime() - connectStart - tlsNanos);
+            connectStart = NONE;
+        }
+    }
+
+    /**
+     * A 401 that was not retried was MarkLogic's answer, not a challenge.
+     */
+    private void unansweredChallenge() {
+        if (challengeStart != NONE) {
+            record(ServerTiming.Phase.SERVER, pendingServerNanos);
+            challengeStart = NONE;
+        }
+    }
+
+    /**
+     * Records the time since start, if the phase was started.
+     *
+     * @return NONE, for resetting the start field
+     */
+    private long add(ServerTiming.Phase phase, long start) {
+        if (start != NONE) {
+            record(phase, System.nanoTime() - start);
+        }
+        return NONE;
+    }
+
+    private void record(ServerTiming.Phase phase, long nanos) {
+        Timer.builder(PHASE)
+                .description("Management API call phases")
+                .tags("endpoint", endpoint, "phase", phase.metricName())
+                .register(registry)
+                .record(Math.max(0, nanos), TimeUnit.NANOSECONDS);
+        if (timing != null) {
+            timing.add(phase, nanos);
+        }
+    }
+}
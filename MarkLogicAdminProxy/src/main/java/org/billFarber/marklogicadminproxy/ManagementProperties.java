@@ -0,0 +1,1119 @@
+package org.billFarber.marklogicadminproxy;
+
+/**
+ * Tuning for the HTTP client used to call the MarkLogic Management API on port
+ * 8002, bound from the marklogic.management.* properties.
+ */
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+@ConfigurationProperties(prefix = "marklogic.management")
+public class ManagementProperties {
+
+    /**
+     * Maximum number of idle connections kept in the pool.
+     */
+    private int maxIdleConnections = 20;
+
+    /**
+     * How long an idle connection is kept before it is evicted from the pool.
+     */
+    private Duration keepAlive = Duration.ofMinutes(5);
+
+    /**
+     * Maximum number of concurrent asynchronous calls across all hosts.
+     */
+    private int maxRequests = 128;
+
+    /**
+     * Maximum number of concurrent asynchronous calls to a single host.
+     */
+    private int maxRequestsPerHost = 64;
+
+    private Duration connectTimeout = Duration.ofSeconds(10);
+
+    private Duration readTimeout = Duration.ofSeconds(60);
+
+    /**
+     * Offer HTTP/2 during TLS negotiation. MarkLogic answers with HTTP/1.1 when it
+     * does not support it, and plain http connections always use HTTP/1.1.
+     */
+    private boolean http2Enabled = true;
+
+    private final Compression compression = new Compression();
+
+    private final Metrics metrics = new Metrics();
+
+    private final Timing serverTiming = new Timing();
+
+    private final Cache cache = new Cache();
+
+    private final Coalescing coalescing = new Coalescing();
+
+    private final Bulk bulk = new Bulk();
+
+    private final Digest digest = new Digest();
+
+    private final Bulkhead bulkhead = new Bulkhead();
+
+    private final CircuitBreaker circuitBreaker = new CircuitBreaker();
+
+    private final Limiter limiter = new Limiter();
+
+    private final Hedging hedging = new Hedging();
+
+    private final Retry retry = new Retry();
+
+    private final LogStream logStream = new LogStream();
+
+    private final LogSpool logSpool = new LogSpool();
+
+    private final LogSearch logSearch = new LogSearch();
+
+    private final LogMerge logMerge = new LogMerge();
+
+    private final Streaming streaming = new Streaming();
+
+    public int getMaxIdleConnections() {
+        return maxIdleConnections;
+    }
+
+    public void setMaxIdleConnections(int maxIdleConnections) {
+        this.maxIdleConnections = maxIdleConnections;
+    }
+
+    public Duration getKeepAlive() {
+        return keepAlive;
+    }
+
+    public void setKeepAlive(Duration keepAlive) {
+        this.keepAlive = keepAlive;
+    }
+
+    public int getMaxRequests() {
+        return maxRequests;
+    }
+
+    public void setMaxRequests(int maxRequests) {
+        this.maxRequests = maxRequests;
+    }
+
+    public int getMaxRequestsPerHost() {
+        return maxRequestsPerHost;
+    }
+
+    public void setMaxRequestsPerHost(int maxRequestsPerHost) {
+        this.maxRequestsPerHost = maxRequestsPerHost;
+    }
+
+    public Duration getConnectTimeout() {
+        return connectTimeout;
+    }
+
+    public void setConnectTimeout(Duration connectTimeout) {
+        this.connectTimeout = connectTimeout;
+    }
+
+    public Duration getReadTimeout() {
+        return readTimeout;
+    }
+
+    public void setReadTimeout(Duration readTimeout) {
+        this.readTimeout = readTimeout;
+    }
+
+    public boolean isHttp2Enabled() {
+        return http2Enabled;
+    }
+
+    public void setHttp2Enabled(boolean http2Enabled) {
+        this.http2Enabled = http2Enabled;
+    }
+
+    public Compression getCompression() {
+        return compression;
+    }
+
+    public Metrics getMetrics() {
+        return metrics;
+    }
+
+    public Timing getServerTiming() {
+        return serverTiming;
+    }
+
+    public Cache getCache() {
+        return cache;
+    }
+
+    public Coalescing getCoalescing() {
+        return coalescing;
+    }
+
+    public Bulk getBulk() {
+        return bulk;
+    }
+
+    public Digest getDigest() {
+        return digest;
+    }
+
+    public Bulkhead getBulkhead() {
+        return bulkhead;
+    }
+
+    public CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    public Limiter getLimiter() {
+        return limiter;
+    }
+
+    public Hedging getHedging() {
+        return hedging;
+    }
+
+    public Retry getRetry() {
+        return retry;
+    }
+
+    public LogStream getLogStream() {
+        return logStream;
+    }
+
+    public LogSpool getLogSpool() {
+        return logSpool;
+    }
+
+    public LogSearch getLogSearch() {
+        return logSearch;
+    }
+
+    public LogMerge getLogMerge() {
+        return logMerge;
+    }
+
+    public Streaming getStreaming() {
+        return streaming;
+    }
+
+    /**
+     * Gzip between the proxy and the Management API, bound from
+     * marklogic.management.compression.*.
+     */
+    public static class Compression {
+
+        /**
+         * Ask MarkLogic for gzip and forward the compressed bytes to clients
+         * that accept gzip.
+         */
+        private boolean enabled = true;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+    }
+
+    /**
+     * Micrometer meters for Management API calls and proxy overhead, bound from
+     * marklogic.management.metrics.*.
+     */
+    public static class Metrics {
+
+        private boolean enabled = true;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+    }
+
+    /**
+     * Per-phase timing of Management API calls, reported in the Server-Timing
+     * response header and the marklogic.management.phase timer, bound from
+     * marklogic.management.server-timing.*.
+     */
+    public static class Timing {
+
+        private boolean enabled = true;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+    }
+
+    /**
+     * Response cache in front of the Management API, bound from
+     * marklogic.management.cache.*.
+     */
+    public static class Cache {
+
+        private boolean enabled = true;
+
+        /**
+         * Upper bound on the bytes held by all cached responses. Least recently
+         * used entries are evicted to stay under it.
+         */
+        private DataSize maxSize = DataSize.ofMegabytes(16);
+
+        /**
+         * Responses larger than this are streamed through without being cached.
+         */
+        private DataSize maxEntrySize = DataSize.ofMegabytes(1);
+
+        /**
+         * TTL for configuration data: the default view, lists and properties.
+         */
+        private Duration configTtl = Duration.ofSeconds(60);
+
+        /**
+         * TTL for the status, metrics and counts views, which change constantly.
+         */
+        private Duration statusTtl = Duration.ofSeconds(5);
+
+        /**
+         * TTL overrides by resource, e.g. hosts: 10s. A zero TTL disables caching
+         * for that resource. Logs are not cached unless listed here.
+         */
+        private Map<String, Duration> endpointTtls = new HashMap<>();
+
+        /**
+         * How long past its TTL an entry may still be served when MarkLogic
+         * fails, answers with a 5xx, or the proxy rejects the call because a
+         * bulkhead is full or a circuit breaker is open. Zero disables it.
+         */
+        private Duration staleIfError = Duration.ofMinutes(5);
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public DataSize getMaxSize() {
+            return maxSize;
+        }
+
+        public void setMaxSize(DataSize maxSize) {
+            this.maxSize = maxSize;
+        }
+
+        public DataSize getMaxEntrySize() {
+            return maxEntrySize;
+        }
+
+        public void setMaxEntrySize(DataSize maxEntrySize) {
+            this.maxEntrySize = maxEntrySize;
+        }
+
+        public Duration getConfigTtl() {
+            return configTtl;
+        }
+
+        public void setConfigTtl(Duration configTtl) {
+            this.configTtl = configTtl;
+        }
+
+        public Duration getStatusTtl() {
+            return statusTtl;
+        }
+
+        public void setStatusTtl(Duration statusTtl) {
+            this.statusTtl = statusTtl;
+        }
+
+        public Duration getStaleIfError() {
+            return staleIfError;
+        }
+
+        public void setStaleIfError(Duration staleIfError) {
+            this.staleIfError = staleIfError;
+        }
+
+        public Map<String, Duration> getEndpointTtls() {
+            return endpointTtls;
+        }
+
+        public void setEndpointTtls(Map<String, Duration> endpointTtls) {
+            this.endpointTtls = endpointTtls;
+        }
+    }
+
+    /**
+     * Single-flight coalescing of identical concurrent GETs, bound from
+     * marklogic.management.coalescing.*.
+     */
+    public static class Coalescing {
+
+        private boolean enabled = true;
+
+        /**
+         * Largest response that is buffered and shared with waiting requests.
+         */
+        private DataSize maxBodySize = DataSize.ofMegabytes(4);
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public DataSize getMaxBodySize() {
+            return maxBodySize;
+        }
+
+        public void setMaxBodySize(DataSize maxBodySize) {
+            this.maxBodySize = maxBodySize;
+        }
+    }
+
+    /**
+     * Fan-out limits for the bulk properties endpoints, bound from
+     * marklogic.management.bulk.*.
+     */
+    public static class Bulk {
+
+        /**
+         * Maximum number of properties calls one bulk request has in flight.
+         */
+        private int maxConcurrency = 16;
+
+        /**
+         * Maximum number of ids one bulk request may ask for.
+         */
+        private int maxIds = 1000;
+
+        public int getMaxConcurrency() {
+            return maxConcurrency;
+        }
+
+        public void setMaxConcurrency(int maxConcurrency) {
+            this.maxConcurrency = maxConcurrency;
+        }
+
+        public int getMaxIds() {
+            return maxIds;
+        }
+
+        public void setMaxIds(int maxIds) {
+            this.maxIds = maxIds;
+        }
+    }
+
+    /**
+     * Preemptive digest authentication with cached nonces, bound from
+     * marklogic.management.digest.*.
+     */
+    public static class Digest {
+
+        private boolean enabled = true;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+    }
+
+    /**
+     * Concurrency limits per endpoint family (see EndpointFamily), bound from
+     * marklogic.management.bulkhead.*.
+     */
+    public static class Bulkhead {
+
+        private boolean enabled = true;
+
+        /**
+         * Maximum concurrent calls per family: logs, metrics, properties, lists.
+         * Families that are not listed are not limited.
+         */
+        private Map<String, Integer> maxConcurrent = new HashMap<>(
+                Map.of("logs", 4, "metrics", 16, "properties", 32, "lists", 16));
+
+        /**
+         * How long a call waits for a free slot before it is rejected.
+         */
+        private Duration maxWait = Duration.ofMillis(500);
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public Map<String, Integer> getMaxConcurrent() {
+            return maxConcurrent;
+        }
+
+        public void setMaxConcurrent(Map<String, Integer> maxConcurrent) {
+            this.maxConcurrent = maxConcurrent;
+        }
+
+        public Duration getMaxWait() {
+            return maxWait;
+        }
+
+        public void setMaxWait(Duration maxWait) {
+            this.maxWait = maxWait;
+        }
+    }
+
+    /**
+     * Circuit breakers per endpoint family, bound from
+     * marklogic.management.circuit-breaker.*.
+     */
+    public static class CircuitBreaker {
+
+        private boolean enabled = true;
+
+        /**
+         * Share of failed calls (IO errors and 5xx) among the last
+         * sliding-window-size calls that opens the circuit.
+         */
+        private double failureRateThreshold = 0.5;
+
+        private int slidingWindowSize = 20;
+
+        /**
+         * Calls needed in the window before the failure rate is evaluated.
+         */
+        private int minimumCalls = 10;
+
+        /**
+         * How long an open circuit rejects calls before letting trial calls
+         * through.
+         */
+        private Duration openDuration = Duration.ofSeconds(30);
+
+        /**
+         * Trial calls that must all succeed to close the circuit again.
+         */
+        private int halfOpenCalls = 3;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public double getFailureRateThreshold() {
+            return failureRateThreshold;
+        }
+
+        public void setFailureRateThreshold(double failureRateThreshold) {
+            this.failureRateThreshold = failureRateThreshold;
+        }
+
+        public int getSlidingWindowSize() {
+            return slidingWindowSize;
+        }
+
+        public void setSlidingWindowSize(int slidingWindowSize) {
+            this.slidingWindowSize = slidingWindowSize;
+        }
+
+        public int getMinimumCalls() {
+            return minimumCalls;
+        }
+
+        public void setMinimumCalls(int minimumCalls) {
+            this.minimumCalls = minimumCalls;
+        }
+
+        public Duration getOpenDuration() {
+            return openDuration;
+        }
+
+        public void setOpenDuration(Duration openDuration) {
+            this.openDuration = openDuration;
+        }
+
+        public int getHalfOpenCalls() {
+            return halfOpenCalls;
+        }
+
+        public void setHalfOpenCalls(int halfOpenCalls) {
+            this.halfOpenCalls = halfOpenCalls;
+        }
+    }
+
+    /**
+     * Adaptive concurrency limit shared by all Management API calls, bound from
+     * marklogic.management.limiter.*.
+     */
+    public static class Limiter {
+
+        private boolean enabled = true;
+
+        private int initialLimit = 20;
+
+        private int minLimit = 4;
+
+        private int maxLimit = 128;
+
+        /**
+         * How much slower than the long-term average recent calls may get
+         * before the limit shrinks.
+         */
+        private double rttTolerance = 1.5;
+
+        /**
+         * Share of each new limit estimate applied at once, between 0 and 1.
+         */
+        private double smoothing = 0.2;
+
+        /**
+         * Factor the limit is multiplied by when MarkLogic fails or answers
+         * 503 or 429.
+         */
+        private double backoffRatio = 0.9;
+
+        /**
+         * Calls that may wait for a permit; more are rejected with a 503.
+         */
+        private int maxQueue = 100;
+
+        /**
+         * How long a call waits for a permit before it is rejected.
+         */
+        private Duration maxWait = Duration.ofSeconds(2);
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public int getInitialLimit() {
+            return initialLimit;
+        }
+
+        public void setInitialLimit(int initialLimit) {
+            this.initialLimit = initialLimit;
+        }
+
+        public int getMinLimit() {
+            return minLimit;
+        }
+
+        public void setMinLimit(int minLimit) {
+            this.minLimit = minLimit;
+        }
+
+        public int getMaxLimit() {
+            return maxLimit;
+        }
+
+        public void setMaxLimit(int maxLimit) {
+            this.maxLimit = maxLimit;
+        }
+
+        public double getRttTolerance() {
+            return rttTolerance;
+        }
+
+        public void setRttTolerance(double rttTolerance) {
+            this.rttTolerance = rttTolerance;
+        }
+
+        public double getSmoothing() {
+            return smoothing;
+        }
+
+        public void setSmoothing(double smoothing) {
+            this.smoothing = smoothing;
+        }
+
+        public double getBackoffRatio() {
+            return backoffRatio;
+        }
+
+        public void setBackoffRatio(double backoffRatio) {
+            this.backoffRatio = backoffRatio;
+        }
+
+        public int getMaxQueue() {
+            return maxQueue;
+        }
+
+        public void setMaxQueue(int maxQueue) {
+            this.maxQueue = maxQueue;
+        }
+
+        public Duration getMaxWait() {
+            return maxWait;
+        }
+
+        public void setMaxWait(Duration maxWait) {
+            this.maxWait = maxWait;
+        }
+    }
+
+    /**
+     * Hedged properties lookups, bound from marklogic.management.hedging.*.
+     */
+    public static class Hedging {
+
+        private boolean enabled = false;
+
+        /**
+         * Latency percentile of properties calls after which a hedge is sent.
+         */
+        private double percentile = 0.95;
+
+        /**
+         * Lower bound for the hedge delay.
+         */
+        private Duration minDelay = Duration.ofMillis(20);
+
+        /**
+         * Properties calls to time before hedging starts.
+         */
+        private int minSamples = 20;
+
+        /**
+         * Hedges earned per properties call, i.e. the most extra load hedging
+         * adds.
+         */
+        private double budgetRatio = 0.1;
+
+        /**
+         * Hedges that may be sent in a burst once the budget has built up.
+         */
+        private int maxBurst = 10;
+
+        /**
+         * Other cluster hosts to send hedges to, as host or host:port, in
+         * turn. Empty sends them to marklogic.host.
+         */
+        private List<String> hosts = new ArrayList<>();
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public double getPercentile() {
+            return percentile;
+        }
+
+        public void setPercentile(double percentile) {
+            this.percentile = percentile;
+        }
+
+        public Duration getMinDelay() {
+            return minDelay;
+        }
+
+        public void setMinDelay(Duration minDelay) {
+            this.minDelay = minDelay;
+        }
+
+        public int getMinSamples() {
+            return minSamples;
+        }
+
+        public void setMinSamples(int minSamples) {
+            this.minSamples = minSamples;
+        }
+
+        public double getBudgetRatio() {
+            return budgetRatio;
+        }
+
+        public void setBudgetRatio(double budgetRatio) {
+            this.budgetRatio = budgetRatio;
+        }
+
+        public int getMaxBurst() {
+            return maxBurst;
+        }
+
+        public void setMaxBurst(int maxBurst) {
+            this.maxBurst = maxBurst;
+        }
+
+        public List<String> getHosts() {
+            return hosts;
+        }
+
+        public void setHosts(List<String> hosts) {
+            this.hosts = hosts;
+        }
+    }
+
+    /**
+     * Retries of failed idempotent calls, bound from
+     * marklogic.management.retry.*.
+     */
+    public static class Retry {
+
+        private boolean enabled = true;
+
+        /**
+         * Attempts per call, including the first.
+         */
+        private int maxAttempts = 3;
+
+        /**
+         * max-attempts overrides per endpoint family: logs, metrics,
+         * properties, lists.
+         */
+        private Map<String, Integer> endpointMaxAttempts = new HashMap<>();
+
+        /**
+         * Status codes that are retried, besides IO errors.
+         */
+        private List<Integer> retryableStatuses = new ArrayList<>(List.of(502, 503, 504));
+
+        /**
+         * Backoff ceiling before the first retry; it doubles for each further
+         * one.
+         */
+        private Duration initialBackoff = Duration.ofMillis(50);
+
+        private Duration maxBackoff = Duration.ofSeconds(1);
+
+        /**
+         * Retries earned per call, i.e. the most extra load retries add.
+         */
+        private double budgetRatio = 0.1;
+
+        /**
+         * Retries that may be made in a burst once the budget has built up.
+         */
+        private int maxBurst = 10;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public int getMaxAttempts() {
+            return maxAttempts;
+        }
+
+        public void setMaxAttempts(int maxAttempts) {
+            this.maxAttempts = maxAttempts;
+        }
+
+        public Map<String, Integer> getEndpointMaxAttempts() {
+            return endpointMaxAttempts;
+        }
+
+        public void setEndpointMaxAttempts(Map<String, Integer> endpointMaxAttempts) {
+            this.endpointMaxAttempts = endpointMaxAttempts;
+        }
+
+        public List<Integer> getRetryableStatuses() {
+            return retryableStatuses;
+        }
+
+        public void setRetryableStatuses(List<Integer> retryableStatuses) {
+            this.retryableStatuses = retryableStatuses;
+        }
+
+        public Duration getInitialBackoff() {
+            return initialBackoff;
+        }
+
+        public void setInitialBackoff(Duration initialBackoff) {
+            this.initialBackoff = initialBackoff;
+        }
+
+        public Duration getMaxBackoff() {
+            return maxBackoff;
+        }
+
+        public void setMaxBackoff(Duration maxBackoff) {
+            this.maxBackoff = maxBackoff;
+        }
+
+        public double getBudgetRatio() {
+            return budgetRatio;
+        }
+
+        public void setBudgetRatio(double budgetRatio) {
+            this.budgetRatio = budgetRatio;
+        }
+
+        public int getMaxBurst() {
+            return maxBurst;
+        }
+
+        public void setMaxBurst(int maxBurst) {
+            this.maxBurst = maxBurst;
+        }
+    }
+
+    /**
+     * Live log tails at /manage/v2/logs/stream, bound from
+     * marklogic.management.log-stream.*.
+     */
+    public static class LogStream {
+
+        /**
+         * Delay between the end of one upstream poll and the next.
+         */
+        private Duration pollInterval = Duration.ofSeconds(2);
+
+        /**
+         * How far back the first poll of an error log starts.
+         */
+        private Duration backlog = Duration.ofMinutes(5);
+
+        /**
+         * Recent lines sent to a new subscriber, and the most the first poll
+         * sends.
+         */
+        private int replayLines = 200;
+
+        /**
+         * How long a subscription stays open before the client has to
+         * reconnect.
+         */
+        private Duration emitterTimeout = Duration.ofMinutes(30);
+
+        public Duration getPollInterval() {
+            return pollInterval;
+        }
+
+        public void setPollInterval(Duration pollInterval) {
+            this.pollInterval = pollInterval;
+        }
+
+        public Duration getBacklog() {
+            return backlog;
+        }
+
+        public void setBacklog(Duration backlog) {
+            this.backlog = backlog;
+        }
+
+        public int getReplayLines() {
+            return replayLines;
+        }
+
+        public void setReplayLines(int replayLines) {
+            this.replayLines = replayLines;
+        }
+
+        public Duration getEmitterTimeout() {
+            return emitterTimeout;
+        }
+
+        public void setEmitterTimeout(Duration emitterTimeout) {
+            this.emitterTimeout = emitterTimeout;
+        }
+    }
+
+    /**
+     * Spooled logs for paged retrieval, bound from
+     * marklogic.management.log-spool.*.
+     */
+    public static class LogSpool {
+
+        /**
+         * Directory for spooled logs. Empty uses a new directory under
+         * java.io.tmpdir.
+         */
+        private String directory = "";
+
+        /**
+         * How long a spooled log is served before it is fetched again.
+         */
+        private Duration ttl = Duration.ofMinutes(5);
+
+        /**
+         * Disk space for spooled logs; the least recently used are deleted
+         * beyond it.
+         */
+        private DataSize maxSize = DataSize.ofGigabytes(1);
+
+        /**
+         * Most lines returned by one paged request.
+         */
+        private int maxLimit = 10000;
+
+        public String getDirectory() {
+            return directory;
+        }
+
+        public void setDirectory(String directory) {
+            this.directory = directory;
+        }
+
+        public Duration getTtl() {
+            return ttl;
+        }
+
+        public void setTtl(Duration ttl) {
+            this.ttl = ttl;
+        }
+
+        public DataSize getMaxSize() {
+            return maxSize;
+        }
+
+        public void setMaxSize(DataSize maxSize) {
+            this.maxSize = maxSize;
+        }
+
+        public int getMaxLimit() {
+            return maxLimit;
+        }
+
+        public void setMaxLimit(int maxLimit) {
+            this.maxLimit = maxLimit;
+        }
+    }
+
+    /**
+     * Indexed log search at /manage/v2/logs/search, bound from
+     * marklogic.management.log-search.*.
+     */
+    public static class LogSearch {
+
+        /**
+         * Logs whose index is kept in memory, most recently searched first.
+         */
+        private int maxIndexes = 4;
+
+        /**
+         * Estimated heap size of one index; lines past it are scanned from the
+         * spool file on each search instead.
+         */
+        private DataSize maxIndexSize = DataSize.ofMegabytes(64);
+
+        /**
+         * Matching lines returned when the request has no limit.
+         */
+        private int defaultLimit = 100;
+
+        public int getMaxIndexes() {
+            return maxIndexes;
+        }
+
+        public void setMaxIndexes(int maxIndexes) {
+            this.maxIndexes = maxIndexes;
+        }
+
+        public DataSize getMaxIndexSize() {
+            return maxIndexSize;
+        }
+
+        public void setMaxIndexSize(DataSize maxIndexSize) {
+            this.maxIndexSize = maxIndexSize;
+        }
+
+        public int getDefaultLimit() {
+            return defaultLimit;
+        }
+
+        public void setDefaultLimit(int defaultLimit) {
+            this.defaultLimit = defaultLimit;
+        }
+    }
+
+    /**
+     * Cluster-wide merged logs at /manage/v2/logs/merged, bound from
+     * marklogic.management.log-merge.*.
+     */
+    public static class LogMerge {
+
+        /**
+         * Host logs fetched at the same time; keep it below the logs bulkhead
+         * so other log requests still get a slot.
+         */
+        private int maxConcurrency = 3;
+
+        public int getMaxConcurrency() {
+            return maxConcurrency;
+        }
+
+        public void setMaxConcurrency(int maxConcurrency) {
+            this.maxConcurrency = maxConcurrency;
+        }
+    }
+
+    /**
+     * Threads that write streamed response bodies (StreamingResponseBody) to
+     * the client, bound from marklogic.management.streaming.*. Ignored when
+     * virtual threads are enabled; every body then gets its own virtual thread.
+     */
+    public static class Streaming {
+
+        /**
+         * Bodies written at the same time; each holds a thread for as long as
+         * the client takes to read it.
+         */
+        private int maxThreads = 200;
+
+        /** Bodies waiting for a thread once all are busy; more are rejected. */
+        private int queueCapacity = 100;
+
+        /** How long an idle thread is kept. */
+        private Duration keepAlive = Duration.ofSeconds(60);
+
+        public int getMaxThreads() {
+            return maxThreads;
+        }
+
+        public void setMaxThreads(int maxThreads) {
+            this.maxThreads = maxThreads;
+        }
+
+        public int getQueueCapacity() {
+            return queueCapacity;
+        }
+
+        public void setQueueCapacity(int queueCapacity) {
+            this.queueCapacity = queueCapacity;
+        }
+
+        public Duration getKeepAlive() {
+            return keepAlive;
+        }
+
+        public void setKeepAlive(Duration keepAlive) {
+            this.keepAlive = keepAlive;
+        }
+    }
+}
@@ -0,0 +1,345 @@
+package org.billFarber.marklogicadminproxy;
+
+/**
+ * Single-flight coalescing of identical concurrent Management API GETs.
+ *
+ * The first request for a ManagementRequestKey goes to MarkLogic. Requests with
+ * the same key that arrive before its response headers do wait for it and
+ * receive a copy of its response, or its IOException, instead of making their
+ * own call. Hedged copies of a call (see ManagementHedging) are never
+ * coalesced, since they are meant to race it.
+ *
+ * Nothing is buffered when no request joined the call: the caller gets the
+ * upstream response as it is. When some did, a body of up to max-body-size is
+ * read into memory and each caller gets its own copy. A larger body is teed
+ * instead: every caller reads the same upstream stream, and the bytes that the
+ * slowest of them has not read yet are kept. A caller that gets max-body-size
+ * ahead of another waits for it, so a caller that stops reading without closing
+ * its response holds up the others until it is closed.
+ */
+
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import okio.BufferedSource;
+import okio.Okio;
+import okio.Source;
+import okio.Timeout;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+public class ManagementRequestCoalescer implements Interceptor {
+
+    private static final long SEGMENT_SIZE = 8192;
+
+    private final ManagementProperties.Coalescing settings;
+
+    private final ConcurrentHashMap<String, Flight> inFlight = new ConcurrentHashMap<>();
+    private final AtomicLong coalesced = new AtomicLong();
+
+    public ManagementRequestCoalescer(ManagementProperties.Coalescing settings) {
+        this.settings = settings;
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        if (!"GET".equals(request.method()) || request.tag(ManagementHedging.Hedge.class) != null) {
+            return chain.proceed(request);
+        }
+
+        String key = ManagementRequestKey.of(request);
+        Flight flight = new Flight();
+        while (true) {
+            Flight leader = inFlight.putIfAbsent(key, flight);
+            if (leader == null) {
+                break;
+            }
+            if (!leader.join()) {
+                // Its headers arrived just now; it is about to leave the map
+                inFlight.remove(key, leader);
+                continue;
+            }
+            Optional<Function<Request, Response>> shared = await(leader.result, request);
+            if (shared.isEmpty()) {
+                return chain.proceed(request);
+            }
+            coalesced.incrementAndGet();
+            ManagementMetrics.cacheOutcome(request, "coalesced");
+            return shared.get().apply(request);
+        }
+
+        Response response;
+        try {
+            response = chain.proceed(request);
+        } catch (IOException | RuntimeException e) {
+            inFlight.remove(key, flight);
+            flight.close();
+            flight.result.completeExceptionally(e);
+            throw e;
+        }
+        // Remove first so that requests arriving from now on start a new call
+        inFlight.remove(key, flight);
+        int waiters = flight.close();
+        if (waiters == 0) {
+            return response;
+        }
+        try {
+            BufferedResponse buffered = BufferedResponse.read(response, settings.getMaxBodySize().toBytes());
+            if (buffered != null) {
+                flight.result.complete(Optional.of(waiter -> buffered.toResponse(waiter, System.currentTimeMillis())));
+                return buffered.toResponse(request, System.currentTimeMillis());
+            }
+            if (response.body() == null) {
+                flight.result.complete(Optional.empty());
+                return response;
+            }
+        } catch (IOException | RuntimeException e) {
+            flight.result.completeExceptionally(e);
+            throw e;
+        }
+        Tee tee = new Tee(response, waiters + 1, settings.getMaxBodySize().toBytes());
+        flight.result.complete(Optional.of(tee::next));
+        return tee.next(request);
+    }
+
+    /**
+     * @return number of requests answered with another request's response
+     *         instead of their own upstream call
+     */
+    public long coalescedCount() {
+        return coalesced.get();
+    }
+
+    private static Optional<Function<Request, Response>> await(
+            CompletableFuture<Optional<Function<Request, Response>>> leader, Request request) throws IOException {
+        try {
+            return leader.get();
+        } catch (InterruptedException e) {
+            // Take and close this request's copy later, so a teed body is not held for it
+            leader.thenAccept(shared -> shared.ifPresent(copy -> copy.apply(request).close()));
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for a coalesced request");
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    /**
+     * An upstream call that requests with the same key may join until its
+     * response headers arrive.
+     */
+    private static final class Flight {
+
+        final CompletableFuture<Optional<Function<Request, Response>>> result = new CompletableFuture<>();
+        private int waiters;
+        private boolean closed;
+
+        synchronized boolean join() {
+            if (closed) {
+                return false;
+            }
+            waiters++;
+            return true;
+        }
+
+        /**
+         * @return the number of requests that joined
+         */
+        synchronized int close() {
+            closed = true;
+            return waiters;
+        }
+    }
+
+    /**
+     * One upstream body read by several callers, each at its own pace. The
+     * window holds the bytes between the slowest and the fastest reader; the
+     * upstream response is closed once every reader is.
+     */
+    private static final class Tee {
+
+        private final Response upstream;
+        private final BufferedSource source;
+        private final long maxLag;
+        private final long[] offsets;
+        private final boolean[] open;
+        private final Buffer window = new Buffer();
+        private long windowStart;
+        private int readers;
+        private int handedOut;
+        private boolean reading;
+        private boolean exhausted;
+        private IOException failure;
+
+        Tee(Response upstream, int readers, long maxLag) {
+            this.upstream = upstream;
+            this.source = upstream.body().source();
+            this.maxLag = maxLag;
+            this.offsets = new long[readers];
+            this.open = new boolean[readers];
+            this.readers = readers;
+            Arrays.fill(open, true);
+        }
+
+        /**
+         * @return the response for the next of the callers
+         */
+        Response next(Request request) {
+            int reader;
+            synchronized (this) {
+                reader = handedOut++;
+            }
+            ResponseBody body = upstream.body();
+            ResponseBody copy = ResponseBody.create(Okio.buffer(new Reader(reader)), body.contentType(),
+                    body.contentLength());
+            if (reader == 0) {
+                return upstream.newBuilder().body(copy).build();
+            }
+            long now = System.currentTimeMillis();
+            return new Response.Builder()
+                    .request(request)
+                    .protocol(upstream.protocol())
+                    .code(upstream.code())
+                    .message(upstream.message())
+                    .headers(upstream.headers())
+                    .body(copy)
+                    .sentRequestAtMillis(now)
+                    .receivedResponseAtMillis(now)
+                    .build();
+        }
+
+        private long read(int reader, Buffer sink, long byteCount) throws IOException {
+            while (true) {
+                synchronized (this) {
+                    if (!open[reader]) {
+                        throw new IllegalStateException("closed");
+                    }
+                    long available = windowStart + window.size() - offsets[reader];
+                    if (available > 0) {
+                        long count = Math.min(byteCount, available);
+                        window.copyTo(sink, offsets[reader] - windowStart, count);
+                        offsets[reader] += count;
+                        trim();
+                        notifyAll();
+                        return count;
+                    }
+                    if (failure != null) {
+                        throw new IOException(failure.getMessage(), failure);
+                    }
+                    if (exhausted) {
+                        return -1;
+                    }
+                    if (reading || window.size() >= maxLag) {
+                        // Another reader is fetching, or one is too far behind
+                        await();
+                        continue;
+                    }
+                    reading = true;
+                }
+                fill();
+            }
+        }
+
+        /**
+         * Reads the next segment from upstream, without holding the lock.
+         */
+        private void fill() {
+            Buffer chunk = new Buffer();
+            long count;
+            IOException error = null;
+            try {
+                count = source.read(chunk, SEGMENT_SIZE);
+            } catch (IOException e) {
+                count = -1;
+                error = e;
+            }
+            synchronized (this) {
+                if (error != null) {
+                    failure = error;
+                } else if (count == -1) {
+                    exhausted = true;
+                } else {
+                    window.write(chunk, chunk.size());
+                }
+                reading = false;
+                notifyAll();
+            }
+        }
+
+        private synchronized void close(int reader) {
+            if (!open[reader]) {
+                return;
+            }
+            open[reader] = false;
+            readers--;
+            trim();
+            notifyAll();
+            if (readers == 0) {
+                upstream.close();
+            }
+        }
+
+        /**
+         * Drops the bytes every open reader is past.
+         */
+        private void trim() {
+            long slowest = windowStart + window.size();
+            for (int i = 0; i < offsets.length; i++) {
+                if (open[i]) {
+                    slowest = Math.min(slowest, offsets[i]);
+                }
+            }
+            try {
+                window.skip(slowest - windowStart);
+            } catch (EOFException e) {
+                throw new IllegalStateException(e);
+            }
+            windowStart = slowest;
+        }
+
+        private void await() throws InterruptedIOException {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted reading a coalesced response");
+            }
+        }
+
+        private final class Reader implements Source {
+
+            private final int reader;
+
+            Reader(int reader) {
+                this.reader = reader;
+            }
+
+            @Override
+            public long read(Buffer sink, long byteCount) throws IOException {
+                return Tee.this.read(reader, sink, byteCount);
+            }
+
+            @Override
+            public Timeout timeout() {
+                return source.timeout();
+            }
+
+            @Override
+            public void close() {
+                Tee.this.close(reader);
+            }
+        }
+    }
+}
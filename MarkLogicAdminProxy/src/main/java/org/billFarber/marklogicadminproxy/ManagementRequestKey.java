@@ -0,0 +1,46 @@
+package org.billFarber.marklogicadminproxy;
+
+/**
+ * Identity of a Management API request for caching and coalescing: the host,
+ * port and path without a trailing slash, the query parameters sorted by name,
+ * and the Accept and Accept-Encoding headers. Two requests with the same key
+ * get the same response from MarkLogic. The path keeps its case, since
+ * database, forest, user, role and server names are case-sensitive.
+ */
+
+import okhttp3.HttpUrl;
+import okhttp3.Request;
+
+import java.util.TreeSet;
+
+final class ManagementRequestKey {
+
+    private ManagementRequestKey() {
+    }
+
+    static String of(Request request) {
+        HttpUrl url = request.url();
+        String path = url.encodedPath();
+        if (path.length() > 1 && path.endsWith("/")) {
+            path = path.substring(0, path.length() - 1);
+        }
+
+        StringBuilder key = new StringBuilder(url.host()).append(':').append(url.port()).append(path);
+        char separator = '?';
+        for (String name : new TreeSet<>(url.queryParameterNames())) {
+            for (String value : url.queryParameterValues(name)) {
+                key.append(separator).append(name).append('=').append(value == null ? "" : value);
+                separator = '&';
+            }
+        }
+        String accept = request.header("Accept");
+        if (accept != null) {
+            key.append(" accept=").append(accept);
+        }
+        String acceptEncoding = request.header("Accept-Encoding");
+        if (acceptEncoding != null) {
+            key.append(" accept-encoding=").append(acceptEncoding);
+        }
+        return key.toString();
+    }
+}
@@ -0,0 +1,205 @@
+package org.billFarber.marklogicadminproxy;
+
+/**
+ * In-memory TTL cache for Management API GET responses, installed as an
+ * interceptor on the management OkHttpClient so every controller benefits
+ * without changes.
+ *
+ * Entries are keyed by ManagementRequestKey. The TTL depends on the endpoint:
+ * configuration data (the default view, lists and properties) is kept for
+ * config-ttl, the status, metrics and counts views for status-ttl, and logs are
+ * not cached. Only 200 responses no larger than max-entry-size are stored, and
+ * the least recently used entries are evicted to keep the total under max-size.
+ *
+ * Expired entries are kept for another stale-if-error (RFC 5861). When the call
+ * that should refresh one fails, gets a 5xx, or is rejected by a bulkhead or
+ * circuit breaker, the stale entry is served instead, so the UI keeps showing
+ * the last known values while MarkLogic is unhealthy.
+ */
+
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+
+import java.io.IOException;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class ManagementResponseCache implements Interceptor {
+
+    private static final String MANAGE_PREFIX = "/manage/v2/";
+    private static final Set<String> STATUS_VIEWS = Set.of("status", "metrics", "counts");
+
+    private final ManagementProperties.Cache settings;
+    private final Clock clock;
+
+    // Access-ordered, so iteration starts at the least recently used entry
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private long totalBytes;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong staleServed = new AtomicLong();
+
+    public ManagementResponseCache(ManagementProperties.Cache settings) {
+        this(settings, Clock.systemUTC());
+    }
+
+    ManagementResponseCache(ManagementProperties.Cache settings, Clock clock) {
+        this.settings = settings;
+        this.clock = clock;
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        Duration ttl = ttlFor(request);
+        if (!"GET".equals(request.method()) || ttl.isZero() || ttl.isNegative()) {
+            return chain.proceed(request);
+        }
+
+        String key = ManagementRequestKey.of(request);
+        Entry cached = lookup(key);
+        if (cached != null) {
+            hits.incrementAndGet();
+            ManagementMetrics.cacheOutcome(request, "hit");
+            return cached.response.toResponse(request, clock.millis());
+        }
+        misses.incrementAndGet();
+        ManagementMetrics.cacheOutcome(request, "miss");
+
+        Response response;
+        try {
+            response = chain.proceed(request);
+        } catch (IOException e) {
+            Response stale = stale(request, key);
+            if (stale == null) {
+                throw e;
+            }
+            return stale;
+        }
+        if (response.code() >= 500) {
+            Response stale = stale(request, key);
+            if (stale != null) {
+                response.close();
+                return stale;
+            }
+        }
+        if (response.code() != 200) {
+            return response;
+        }
+        BufferedResponse buffered = BufferedResponse.read(response, settings.getMaxEntrySize().toBytes());
+        if (buffered == null) {
+            return response;
+        }
+
+        store(key, new Entry(buffered, clock.millis() + ttl.toMillis()));
+        return buffered.toResponse(request, clock.millis());
+    }
+
+    /**
+     * @return how many times a stale entry was served because MarkLogic failed
+     */
+    public long staleCount() {
+        return staleServed.get();
+    }
+
+    public Stats stats() {
+        synchronized (this) {
+            return new Stats(hits.get(), misses.get(), evictions.get(), entries.size(), totalBytes);
+        }
+    }
+
+    Duration ttlFor(Request request) {
+        String path = request.url().encodedPath().toLowerCase(Locale.ROOT);
+        if (!path.startsWith(MANAGE_PREFIX)) {
+            return Duration.ZERO;
+        }
+        String resource = path.substring(MANAGE_PREFIX.length()).split("/", 2)[0];
+
+        Duration override = settings.getEndpointTtls().get(resource);
+        if (override != null) {
+            return override;
+        }
+        if (resource.equals("logs")) {
+            return Duration.ZERO;
+        }
+
+        String view = request.url().queryParameter("view");
+        if (view != null && STATUS_VIEWS.contains(view.toLowerCase(Locale.ROOT))) {
+            return settings.getStatusTtl();
+        }
+        return settings.getConfigTtl();
+    }
+
+    private synchronized Entry lookup(String key) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        long now = clock.millis();
+        if (entry.expiresAtMillis <= now) {
+            if (entry.expiresAtMillis + settings.getStaleIfError().toMillis() <= now) {
+                entries.remove(key);
+                totalBytes -= entry.size();
+            }
+            return null;
+        }
+        return entry;
+    }
+
+    /**
+     * @return the expired entry for the key as a response, or null when there
+     *         is none or it is past stale-if-error
+     */
+    private Response stale(Request request, String key) {
+        Entry entry;
+        synchronized (this) {
+            entry = entries.get(key);
+        }
+        long now = clock.millis();
+        if (entry == null || entry.expiresAtMillis + settings.getStaleIfError().toMillis() <= now) {
+            return null;
+        }
+        staleServed.incrementAndGet();
+        ManagementMetrics.cacheOutcome(request, "stale");
+        return entry.response.toResponse(request, now);
+    }
+
+    private synchronized void store(String key, Entry entry) {
+        Entry previous = entries.put(key, entry);
+        if (previous != null) {
+            totalBytes -= previous.size();
+        }
+        totalBytes += entry.size();
+
+        long maxBytes = settings.getMaxSize().toBytes();
+        Iterator<Map.Entry<String, Entry>> eldest = entries.entrySet().iterator();
+        while (totalBytes > maxBytes && eldest.hasNext()) {
+            Entry evicted = eldest.next().getValue();
+            eldest.remove();
+            totalBytes -= evicted.size();
+            evictions.incrementAndGet();
+        }
+    }
+
+    /**
+     * Snapshot of the cache counters.
+     */
+    public record Stats(long hits, long misses, long evictions, int entries, long bytes) {
+    }
+
+    private record Entry(BufferedResponse response, long expiresAtMillis) {
+
+        long size() {
+            return response.body().length;
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package org.billFarber.marklogicadminproxy;
+
+/**
+ * Retries idempotent Management API calls that failed transiently, so a reset
+ * connection or a restarting host does not reach the UI as a 502.
+ *
+ * GETs and HEADs are retried after an IO error or one of the retryable status
+ * codes (502, 503 and 504 by default), up to max-attempts in total, or the
+ * per-family override in endpoint-max-attempts (logs, metrics, properties,
+ * lists). Before attempt n the call sleeps a random time between zero and
+ * initial-backoff * 2^(n-2), capped at max-backoff ("full jitter"), so
+ * callers that failed together do not retry together. A Retry-After longer
+ * than max-backoff is taken to mean MarkLogic is not coming back soon, and
+ * the response is returned as it is.
+ *
+ * Retries draw on a budget shared by all calls: each call earns budget-ratio
+ * of a retry, up to max-burst, and each retry spends one. During a real outage
+ * the budget runs dry and calls fail after one attempt, so retries add at most
+ * that share of load to a struggling cluster. Calls cancelled by the client and
+ * the proxy's own 503s (bulkhead, circuit breaker, limiter) are never retried.
+ *
+ * Meters: marklogic.management.retries, tagged with family and outcome: retry
+ * (an attempt was repeated), exhausted (max-attempts reached) or no-budget.
+ */
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+public class ManagementRetry implements Interceptor {
+
+    static final String RETRIES = "marklogic.management.retries";
+
+    private final ManagementProperties.Retry settings;
+    private double budget;
+
+    private final Map<EndpointFamily, Counter> retried = new EnumMap<>(EndpointFamily.class);
+    private final Map<EndpointFamily, Counter> exhausted = new EnumMap<>(EndpointFamily.class);
+    private final Map<EndpointFamily, Counter> noBudget = new EnumMap<>(EndpointFamily.class);
+
+    public ManagementRetry(ManagementProperties.Retry settings, MeterRegistry registry) {
+        this.settings = settings;
+        this.budget = settings.getMaxBurst();
+        for (EndpointFamily family : EndpointFamily.values()) {
+            retried.put(family, retries(registry, family, "retry"));
+            exhausted.put(family, retries(registry, family, "exhausted"));
+            noBudget.put(family, retries(registry, family, "no-budget"));
+        }
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        if (!"GET".equals(request.method()) && !"HEAD".equals(request.method())) {
+            return chain.proceed(request);
+        }
+        EndpointFamily family = EndpointFamily.of(request.url());
+        int maxAttempts = settings.getEndpointMaxAttempts().getOrDefault(family.key(), settings.getMaxAttempts());
+        earn();
+
+        for (int attempt = 1;; attempt++) {
+            Response response = null;
+            IOException failure = null;
+            try {
+                response = chain.proceed(request);
+            } catch (IOException e) {
+                failure = e;
+            }
+            if (response != null && !retryable(response)) {
+                return response;
+            }
+            if (chain.call().isCanceled()) {
+                return rethrowOr(failure, response);
+            }
+
+            Duration backoff = backoff(attempt);
+            Duration retryAfter = response == null ? null : retryAfter(response);
+            if (retryAfter != null) {
+                if (retryAfter.compareTo(settings.getMaxBackoff()) > 0) {
+                    return response;
+                }
+                backoff = retryAfter.compareTo(backoff) > 0 ? retryAfter : backoff;
+            }
+            if (attempt >= maxAttempts) {
+                exhausted.get(family).increment();
+                return rethrowOr(failure, response);
+            }
+            if (!spend()) {
+                noBudget.get(family).increment();
+                return rethrowOr(failure, response);
+            }
+
+            retried.get(family).increment();
+            if (response != null) {
+                response.close();
+            }
+            sleep(backoff);
+        }
+    }
+
+    private boolean retryable(Response response) {
+        return settings.getRetryableStatuses().contains(response.code()) && !RejectedResponse.is(response);
+    }
+
+    /**
+     * @return a random delay up to the exponential backoff for the attempt
+     *         that just failed
+     */
+    private Duration backoff(int attempt) {
+        long ceiling = settings.getInitialBackoff().toNanos() << Math.min(attempt - 1, 30);
+        ceiling = Math.min(settings.getMaxBackoff().toNanos(), Math.max(0, ceiling));
+        return Duration.ofNanos(ceiling == 0 ? 0 : ThreadLocalRandom.current().nextLong(ceiling + 1));
+    }
+
+    private static Duration retryAfter(Response response) {
+        String value = response.header("Retry-After");
+        if (value == null) {
+            return null;
+        }
+        try {
+            return Duration.ofSeconds(Long.parseLong(value.trim()));
+        } catch (NumberFormatException e) {
+            // An HTTP date; MarkLogic sends seconds
+            return null;
+        }
+    }
+
+    private synchronized void earn() {
+        budget = Math.min(settings.getMaxBurst(), budget + settings.getBudgetRatio());
+    }
+
+    private synchronized boolean spend() {
+        if (budget < 1) {
+            return false;
+        }
+        budget--;
+        return true;
+    }
+
+    private static Response rethrowOr(IOException failure, Response response) throws IOException {
+        if (failure != null) {
+            throw failure;
+        }
+        return response;
+    }
+
+    private static void sleep(Duration backoff) throws InterruptedIOException {
+        try {
+            Thread.sleep(backoff.toMillis(), backoff.toNanosPart() % 1_000_000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting to retry a Management API call");
+        }
+    }
+
+    private static Counter retries(MeterRegistry registry, EndpointFamily family, String outcome) {
+        return Counter.builder(RETRIES)
+                .description("Retries of failed Management API calls")
+                .tags("family", family.key(), "outcome", outcome)
+                .register(registry);
+    }
+}
@@ -0,0 +1,459 @@
+package org.billFarber.marklogicadminproxy;
+
+/**
+ * Controller for one log file merged across every host of the cluster.
+ *
+ * GET /manage/v2/logs/merged?filename=ErrorLog.txt
+ *
+ * Supported parameters:
+ * - filename: The log file to merge (required)
+ * - start, end, regex: Passed to every host as in /manage/v2/logs (error logs
+ *   only)
+ *
+ * The hosts are read from /manage/v2/hosts. The file is fetched as text from
+ * every host, at most marklogic.management.log-merge.max-concurrency at a time
+ * so the fetches stay within the logs bulkhead, into the LogSpool shared with
+ * paged retrieval and search. The response is then streamed as a k-way merge
+ * of the spooled files by timestamp, with each line prefixed by its host:
+ *
+ * [node1.example.com] 2025-01-01 10:00:00.100 Info: ...
+ *
+ * Only one entry per host is held in memory while merging; continuation
+ * lines without a timestamp (stack traces) stay with the line before them.
+ * Lines with the same timestamp keep the order of the host list.
+ *
+ * Spooling to disk first, rather than merging the upstream responses as they
+ * arrive, keeps the fetches within max-concurrency whatever the host count and
+ * lets the merge reuse copies spooled by other requests. The cost is that no
+ * byte is sent until every host's log has been fetched, so the slowest host
+ * has to answer within spring.mvc.async.request-timeout. When the request
+ * times out or fails before that, the fetches still running are cancelled,
+ * those not started are skipped, and the spooled copies already taken are
+ * released, so their files are deleted once the spool lets them go.
+ *
+ * X-Merged-Hosts lists the hosts whose log is included and X-Failed-Hosts
+ * those whose log could not be fetched, with a short reason (status 503,
+ * timeout, connect-failed, io-error); the full exception is only logged. When
+ * no log could be fetched the response is a 502 with a JSON error.
+ */
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import okhttp3.HttpUrl;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okio.BufferedSource;
+import org.billFarber.marklogicadminproxy.PropertiesFanOut.Target;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.ConnectException;
+import java.net.NoRouteToHostException;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+@RestController
+public class MergedLogsController {
+
+    private static final Logger logger = LoggerFactory.getLogger(MergedLogsController.class);
+
+    static final String MERGED_HOSTS = "X-Merged-Hosts";
+    static final String FAILED_HOSTS = "X-Failed-Hosts";
+
+    /** Longest run of continuation lines kept together as one entry. */
+    private static final int MAX_ENTRY_LINES = 1000;
+
+    /** Error log timestamp with milliseconds, which sorts as a string. */
+    private static final Pattern ERROR_TIME = Pattern.compile("^\\d{4}-\\d{2}-\\d{2} \\d{2}:\\d{2}:\\d{2}\\.\\d{3}");
+    private static final DateTimeFormatter SORT_KEY = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS");
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    @Autowired
+    private OkHttpClient managementHttpClient;
+
+    @Autowired
+    private LogSpool logSpool;
+
+    @Autowired
+    private ManagementProperties managementProperties;
+
+    @Value("${marklogic.host}")
+    private String marklogicHost;
+
+    @Value("${marklogic.schema}")
+    private String marklogicSchema;
+
+    @Value("${marklogic.management.async-enabled:false}")
+    private boolean asyncEnabled;
+
+    @GetMapping("/manage/v2/logs/merged")
+    public CompletableFuture<ResponseEntity<StreamingResponseBody>> getMergedLogs(
+            @RequestParam(value = "filename", required = false) String filename,
+            @RequestParam(value = "start", required = false) String start,
+            @RequestParam(value = "end", required = false) String end,
+            @RequestParam(value = "regex", required = false) String regex) {
+
+        if (filename == null || filename.trim().isEmpty()) {
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest()
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .body(ProxyResponses.text("{\"error\": \"filename is required\"}")));
+        }
+
+        try {
+            Request request = new Request.Builder()
+                    .url(HttpUrl.parse(managementUrl() + "/manage/v2/hosts")
+                            .newBuilder()
+                            .addQueryParameter("format", "json")
+                            .build())
+                    .addHeader("Accept", "application/json")
+                    .build();
+
+            CompletableFuture<ResponseEntity<StreamingResponseBody>> merged = new CompletableFuture<>();
+            ManagementCalls.cancelWithRequest(merged);
+            ManagementCalls.exchange(managementHttpClient, request, asyncEnabled, response -> {
+                try (response) {
+                    if (!response.isSuccessful()) {
+                        return new Hosts(ProxyResponses.rejectionHeaders(ResponseEntity.status(response.code())
+                                .contentType(MediaType.APPLICATION_JSON), response)
+                                .body(ProxyResponses.text("{\"error\": \"MarkLogic returned status: "
+                                        + response.code() + "\"}")), null);
+                    }
+                    JsonNode list = MAPPER.readTree(response.body().byteStream());
+                    return new Hosts(null, PropertiesFanOut.listTargets("hosts", list));
+                }
+            }).thenCompose(hosts -> {
+                if (hosts.targets() == null) {
+                    return CompletableFuture.completedFuture(hosts.error());
+                }
+                List<HostLog> logs = new ArrayList<>();
+                for (Target target : hosts.targets()) {
+                    logs.add(new HostLog(logs.size(), target.idOrName(),
+                            logUrl(filename, target.idOrName(), start, end, regex)));
+                }
+                return spoolAll(logs, merged).thenApply(done -> {
+                    merged.whenComplete((response, e) -> {
+                        if (merged.isCancelled()) {
+                            // Nobody will stream the merge, which would close the spooled logs
+                            logs.forEach(HostLog::release);
+                        }
+                    });
+                    return mergedResponse(logs);
+                });
+            }).exceptionally(e -> mergeError(ManagementCalls.unwrap(e))).thenAccept(merged::complete);
+            return merged;
+        } catch (Exception e) {
+            return CompletableFuture.completedFuture(mergeError(e));
+        }
+    }
+
+    /**
+     * Spools the log of every host, at most max-concurrency at a time, until
+     * merged is cancelled. Completes once each HostLog has its spooled log or
+     * its error; never completes exceptionally.
+     */
+    private CompletableFuture<Void> spoolAll(List<HostLog> logs, CompletableFuture<?> merged) {
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        if (logs.isEmpty()) {
+            done.complete(null);
+            return done;
+        }
+        AtomicInteger next = new AtomicInteger();
+        AtomicInteger remaining = new AtomicInteger(logs.size());
+        int concurrency = Math.max(1, managementProperties.getLogMerge().getMaxConcurrency());
+        for (int i = 0; i < Math.min(concurrency, logs.size()); i++) {
+            spoolNext(logs, merged, next, remaining, done);
+        }
+        return done;
+    }
+
+    private void spoolNext(List<HostLog> logs, CompletableFuture<?> merged, AtomicInteger next,
+            AtomicInteger remaining, CompletableFuture<Void> done) {
+        int index = next.getAndIncrement();
+        if (index >= logs.size()) {
+            return;
+        }
+        spool(logs.get(index), merged).whenComplete((ignored, e) -> {
+            if (remaining.decrementAndGet() == 0) {
+                done.complete(null);
+            } else {
+                spoolNext(logs, merged, next, remaining, done);
+            }
+        });
+    }
+
+    private CompletableFuture<Void> spool(HostLog log, CompletableFuture<?> merged) {
+        if (merged.isCancelled()) {
+            log.error = "cancelled";
+            return CompletableFuture.completedFuture(null);
+        }
+        LogSpool.SpooledLog cached = logSpool.get(log.url);
+        if (cached != null) {
+            log.keep(cached);
+            return CompletableFuture.completedFuture(null);
+        }
+        Request request = new Request.Builder()
+                .url(log.url)
+                .build();
+        CompletableFuture<Void> fetch = ManagementCalls.exchange(managementHttpClient, request, true, response -> {
+            if (!response.isSuccessful()) {
+                try (response) {
+                    log.error = "status " + response.code();
+                    return null;
+                }
+            }
+            log.keep(logSpool.put(log.url, response));
+            return null;
+        });
+        merged.whenComplete((response, e) -> {
+            if (merged.isCancelled()) {
+                fetch.cancel(true);
+            }
+        });
+        return fetch.handle((ignored, e) -> {
+            if (e != null) {
+                Throwable cause = ManagementCalls.unwrap(e);
+                logger.warn("Could not fetch {} for the merged log", log.url, cause);
+                log.error = failureReason(cause);
+            }
+            return null;
+        });
+    }
+
+    /**
+     * @return a short reason for X-Failed-Hosts; exception messages can hold
+     *         line breaks, non-ASCII text and internal addresses
+     */
+    static String failureReason(Throwable e) {
+        if (e instanceof ConnectException || e instanceof UnknownHostException
+                || e instanceof NoRouteToHostException) {
+            return "connect-failed";
+        }
+        // SocketTimeoutException, and OkHttp's call timeout
+        if (e instanceof InterruptedIOException) {
+            return "timeout";
+        }
+        return e instanceof IOException ? "io-error" : "error";
+    }
+
+    private ResponseEntity<StreamingResponseBody> mergedResponse(List<HostLog> logs) {
+        List<HostLog> merged = logs.stream().filter(log -> log.spooled != null).toList();
+        String failed = logs.stream()
+                .filter(log -> log.spooled == null)
+                .map(log -> log.host + " (" + log.error + ")")
+                .collect(Collectors.joining(", "));
+        if (merged.isEmpty() && !logs.isEmpty()) {
+            return ResponseEntity.status(HttpStatus.BAD_GATEWAY)
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .header(FAILED_HOSTS, failed)
+                    .body(ProxyResponses.text("{\"error\": \"No host returned the log\"}"));
+        }
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .contentType(MediaType.TEXT_PLAIN)
+                .header(MERGED_HOSTS, merged.stream().map(log -> log.host).collect(Collectors.joining(", ")));
+        if (!failed.isEmpty()) {
+            response.header(FAILED_HOSTS, failed);
+        }
+        return response.body(outputStream -> merge(merged, outputStream));
+    }
+
+    /**
+     * Writes the entries of all logs in timestamp order, closing the spooled
+     * logs when done.
+     */
+    static void merge(List<HostLog> logs, OutputStream outputStream) throws IOException {
+        PriorityQueue<HostLog> heads = new PriorityQueue<>(
+                Comparator.comparing((HostLog log) -> log.key).thenComparingInt(log -> log.order));
+        try {
+            for (HostLog log : logs) {
+                log.source = log.spooled.source();
+                if (log.advance()) {
+                    heads.add(log);
+                }
+            }
+            Writer writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8), 64 * 1024);
+            while (!heads.isEmpty()) {
+                HostLog head = heads.poll();
+                for (String line : head.entry) {
+                    writer.write('[');
+                    writer.write(head.host);
+                    writer.write("] ");
+                    writer.write(line);
+                    writer.write('\n');
+                }
+                if (head.advance()) {
+                    heads.add(head);
+                }
+            }
+            writer.flush();
+        } finally {
+            for (HostLog log : logs) {
+                log.close();
+            }
+        }
+    }
+
+    /**
+     * @return a key that sorts lines by their timestamp, or null for a line
+     *         without one
+     */
+    static String sortKey(String line) {
+        if (ERROR_TIME.matcher(line).find()) {
+            return line.substring(0, 23);
+        }
+        LocalDateTime time = LogIndex.timestamp(line);
+        return time == null ? null : time.format(SORT_KEY);
+    }
+
+    /**
+     * The same URL as a paged request for the log, so they share the spooled
+     * copy.
+     */
+    private String logUrl(String filename, String host, String start, String end, String regex) {
+        HttpUrl.Builder url = HttpUrl.parse(managementUrl() + "/manage/v2/logs")
+                .newBuilder()
+                .addQueryParameter("filename", filename)
+                .addQueryParameter("format", "text")
+                .addQueryParameter("host", host);
+        if (start != null) {
+            url.addQueryParameter("start", start);
+        }
+        if (end != null) {
+            url.addQueryParameter("end", end);
+        }
+        if (regex != null) {
+            url.addQueryParameter("regex", regex);
+        }
+        return url.build().toString();
+    }
+
+    private String managementUrl() {
+        return marklogicSchema + "://" + marklogicHost + ":8002";
+    }
+
+    private ResponseEntity<StreamingResponseBody> mergeError(Throwable e) {
+        return ResponseEntity.internalServerError()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(ProxyResponses.text("{\"error\": \"Failed to merge logs: " + e.getMessage() + "\"}"));
+    }
+
+    /**
+     * The hosts list, or the error to answer with when MarkLogic did not return it.
+     */
+    private record Hosts(ResponseEntity<StreamingResponseBody> error, List<Target> targets) {
+    }
+
+    /**
+     * One host's log: where it is fetched from, its spooled copy, and while
+     * merging the entry at its head.
+     */
+    static final class HostLog {
+
+        final int order;
+        final String host;
+        final String url;
+        volatile LogSpool.SpooledLog spooled;
+        volatile String error;
+        private boolean released;
+
+        private BufferedSource source;
+        private String pending;
+        private String key = "";
+        private final List<String> entry = new ArrayList<>();
+
+        HostLog(int order, String host, String url) {
+            this.order = order;
+            this.host = host;
+            this.url = url;
+        }
+
+        /**
+         * Holds on to the spooled log, or closes it right away when the merge
+         * was already given up. The fetch may still finish after that.
+         */
+        synchronized void keep(LogSpool.SpooledLog log) {
+            if (released) {
+                log.close();
+            } else {
+                spooled = log;
+            }
+        }
+
+        /**
+         * Closes the spooled log of a merge that will not be streamed.
+         */
+        synchronized void release() {
+            released = true;
+            if (spooled != null) {
+                spooled.close();
+                spooled = null;
+            }
+        }
+
+        /**
+         * Reads the next entry: a line and the continuation lines after it.
+         *
+         * @return false at the end of the log
+         */
+        private boolean advance() throws IOException {
+            entry.clear();
+            String line = pending != null ? pending : source.readUtf8Line();
+            pending = null;
+            if (line == null) {
+                return false;
+            }
+            String lineKey = sortKey(line);
+            if (lineKey != null) {
+                key = lineKey;
+            }
+            entry.add(line);
+            while (entry.size() < MAX_ENTRY_LINES) {
+                String next = source.readUtf8Line();
+                if (next == null) {
+                    break;
+                }
+                if (sortKey(next) != null) {
+                    pending = next;
+                    break;
+                }
+                entry.add(next);
+            }
+            return true;
+        }
+
+        private void close() throws IOException {
+            try {
+                if (source != null) {
+                    source.close();
+                }
+            } finally {
+                spooled.close();
+            }
+        }
+    }
+}
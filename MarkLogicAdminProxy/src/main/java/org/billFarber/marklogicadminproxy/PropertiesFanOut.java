@@ -0,0 +1,207 @@
+package org.billFarber.marklogicadminproxy;
+
+/**
+ * Fetches /manage/v2/{resource}/{idOrName}/properties for many resources in
+ * parallel, for the bulk properties and cluster snapshot endpoints.
+ *
+ * Calls are always enqueued on the management client's dispatcher, so they go
+ * through the same interceptors (cache, coalescing) and connection limits as
+ * the single-resource controllers. At most maxConcurrency calls of one fetchAll
+ * are in flight; the next one starts as soon as one completes.
+ */
+
+import com.fasterxml.jackson.databind.JsonNode;
+import okhttp3.HttpUrl;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+final class PropertiesFanOut {
+
+    private final OkHttpClient client;
+    private final String managementUrl;
+
+    /**
+     * @param client        the Management API client
+     * @param managementUrl scheme, host and port of the Management API, e.g.
+     *                      http://localhost:8002
+     */
+    PropertiesFanOut(OkHttpClient client, String managementUrl) {
+        this.client = client;
+        this.managementUrl = managementUrl;
+    }
+
+    /**
+     * Fetches the properties of every target, passing each result to onItem as
+     * soon as it is available. onItem is called from the dispatcher threads, one
+     * call per target, and must be thread safe.
+     *
+     * @return future completed once every target has been passed to onItem.
+     *         Cancelling it cancels the calls still in flight.
+     */
+    CompletableFuture<Void> fetchAll(String resource, List<Target> targets, int maxConcurrency,
+            Consumer<Item> onItem) {
+        Run run = new Run(resource, targets, onItem);
+        if (targets.isEmpty()) {
+            run.done.complete(null);
+        }
+        for (int i = 0; i < Math.min(Math.max(1, maxConcurrency), targets.size()); i++) {
+            run.startNext();
+        }
+        return run.done;
+    }
+
+    /**
+     * Fetches the properties of every target and returns them in target order.
+     */
+    CompletableFuture<List<Item>> fetchAll(String resource, List<Target> targets, int maxConcurrency) {
+        Map<Target, Item> items = new ConcurrentHashMap<>();
+        return fetchAll(resource, targets, maxConcurrency, item -> items.put(item.target(), item))
+                .thenApply(done -> {
+                    List<Item> ordered = new ArrayList<>(targets.size());
+                    for (Target target : targets) {
+                        ordered.add(items.get(target));
+                    }
+                    return ordered;
+                });
+    }
+
+    /**
+     * Starts the properties call for one target. The future is the OkHttp call
+     * itself, so cancelling it cancels the call; it fails with the IOException
+     * when MarkLogic could not be reached.
+     */
+    CompletableFuture<Item> fetch(String resource, Target target) {
+        try {
+            HttpUrl.Builder urlBuilder = HttpUrl.parse(managementUrl + "/manage/v2/" + resource)
+                    .newBuilder()
+                    .addPathSegment(target.idOrName())
+                    .addPathSegment("properties");
+            if (target.groupId() != null) {
+                urlBuilder.addQueryParameter("group-id", target.groupId());
+            }
+            urlBuilder.addQueryParameter("format", "json");
+
+            Request request = new Request.Builder()
+                    .url(urlBuilder.build())
+                    .get()
+                    .addHeader("Accept", "application/json")
+                    .tag(ManagementConcurrencyLimiter.Priority.class, ManagementConcurrencyLimiter.Priority.LOW)
+                    .build();
+
+            return ManagementCalls.exchange(client, request, true, response -> {
+                try (response) {
+                    if (!response.isSuccessful()) {
+                        return Item.error(target, response.code(), "MarkLogic returned status: " + response.code());
+                    }
+                    return new Item(target, response.code(), response.body().string(), null);
+                }
+            });
+        } catch (Exception e) {
+            return CompletableFuture.completedFuture(Item.failed(target, e));
+        }
+    }
+
+    /**
+     * Reads the nameref (and, for servers, groupnameref) of every list item in
+     * a {resource}-default-list document.
+     */
+    static List<Target> listTargets(String resource, JsonNode list) {
+        List<Target> targets = new ArrayList<>();
+        for (Map.Entry<String, JsonNode> field : list.properties()) {
+            if (!field.getKey().endsWith("-default-list")) {
+                continue;
+            }
+            for (JsonNode item : field.getValue().path("list-items").path("list-item")) {
+                String name = item.path("nameref").asText(item.path("idref").asText(""));
+                if (!name.isEmpty()) {
+                    String group = resource.equals("servers") ? item.path("groupnameref").asText(null) : null;
+                    targets.add(new Target(name, group));
+                }
+            }
+        }
+        return targets;
+    }
+
+    /**
+     * One resource to fetch; groupId is only set for servers.
+     */
+    record Target(String idOrName, String groupId) {
+    }
+
+    /**
+     * Result for one target: the raw JSON properties, or the error.
+     */
+    record Item(Target target, int status, String properties, String error) {
+
+        static Item error(Target target, int status, String error) {
+            return new Item(target, status, null, error);
+        }
+
+        static Item failed(Target target, Throwable e) {
+            return error(target, 502, "Failed to proxy to MarkLogic: " + ManagementCalls.unwrap(e).getMessage());
+        }
+
+        boolean isError() {
+            return properties == null;
+        }
+    }
+
+    private final class Run {
+        private final String resource;
+        private final List<Target> targets;
+        private final Consumer<Item> onItem;
+        private final CompletableFuture<Void> done = new CompletableFuture<>();
+        private final AtomicInteger next = new AtomicInteger();
+        private final AtomicInteger remaining;
+        private final Set<CompletableFuture<Item>> inFlight = ConcurrentHashMap.newKeySet();
+
+        Run(String resource, List<Target> targets, Consumer<Item> onItem) {
+            this.resource = resource;
+            this.targets = targets;
+            this.onItem = onItem;
+            this.remaining = new AtomicInteger(targets.size());
+            done.whenComplete((result, e) -> {
+                if (done.isCancelled()) {
+                    inFlight.forEach(call -> call.cancel(true));
+                }
+            });
+        }
+
+        void startNext() {
+            int index = next.getAndIncrement();
+            if (index >= targets.size() || done.isDone()) {
+                return;
+            }
+            Target target = targets.get(index);
+            CompletableFuture<Item> call = fetch(resource, target);
+            inFlight.add(call);
+            call.whenComplete((item, e) -> {
+                inFlight.remove(call);
+                if (done.isDone()) {
+                    return;
+                }
+                try {
+                    onItem.accept(item != null ? item : Item.failed(target, e));
+                } catch (RuntimeException failure) {
+                    done.completeExceptionally(failure);
+                    inFlight.forEach(other -> other.cancel(true));
+                    return;
+                }
+                if (remaining.decrementAndGet() == 0) {
+                    done.complete(null);
+                } else {
+                    startNext();
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package org.billFarber.marklogicadminproxy;
+
+/**
+ * Records how much of each request's time the proxy itself adds on top of
+ * waiting for MarkLogic.
+ *
+ * proxy.overhead is the request's total time, including streaming the body to
+ * the client, minus its UpstreamSpan, tagged with the matched uri pattern and
+ * the response status. Spring Boot's http.server.requests already reports the
+ * total, and marklogic.management.requests the upstream side.
+ *
+ * Asynchronous requests, including every StreamingResponseBody, are recorded
+ * when the last async cycle completes.
+ */
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+public class ProxyMetricsFilter extends OncePerRequestFilter {
+
+    static final String OVERHEAD = "proxy.overhead";
+
+    private final MeterRegistry registry;
+
+    public ProxyMetricsFilter(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return request.getRequestURI().startsWith(request.getContextPath() + "/actuator");
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        long start = System.nanoTime();
+        UpstreamSpan span = new UpstreamSpan();
+        request.setAttribute(UpstreamSpan.ATTRIBUTE, span);
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            if (request.isAsyncStarted()) {
+                request.getAsyncContext().addListener(new AsyncListener() {
+                    @Override
+                    public void onComplete(AsyncEvent event) {
+                        record(request, response, start, span);
+                    }
+
+                    @Override
+                    public void onTimeout(AsyncEvent event) {
+                    }
+
+                    @Override
+                    public void onError(AsyncEvent event) {
+                    }
+
+                    @Override
+                    public void onStartAsync(AsyncEvent event) {
+                        // Streaming the body starts a second async cycle
+                        event.getAsyncContext().addListener(this);
+                    }
+                });
+            } else {
+                record(request, response, start, span);
+            }
+        }
+    }
+
+    private void record(HttpServletRequest request, HttpServletResponse response, long start, UpstreamSpan span) {
+        long overhead = Math.max(0, System.nanoTime() - start - span.nanos());
+        Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        Timer.builder(OVERHEAD)
+                .description("Request time not spent waiting on the Management API")
+                .tag("uri", pattern != null ? pattern.toString() : "UNKNOWN")
+                .tag("status", Integer.toString(response.getStatus()))
+                .register(registry)
+                .record(overhead, TimeUnit.NANOSECONDS);
+    }
+}
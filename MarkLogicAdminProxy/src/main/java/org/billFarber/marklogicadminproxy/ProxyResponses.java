@@ -0,0 +1,263 @@
+package org.billFarber.marklogicadminproxy;
+
+/**
+ * Helpers for turning MarkLogic Management API responses into proxy responses.
+ *
+ * Successful upstream bodies are streamed straight into the servlet output
+ * stream instead of being materialized as a String first. The copy is done with
+ * Okio, which moves the pooled segments already holding the upstream bytes, so
+ * a multi-megabyte view=metrics or view=status payload is never held on the
+ * heap in full by the proxy.
+ *
+ * Successful responses also carry an ETag: the upstream one when MarkLogic
+ * sends a strong one, otherwise a SHA-256 of the body for bodies up to 1 MB.
+ * When the client's If-None-Match matches, a 304 Not Modified is returned
+ * without a body, so the UI's polling only transfers data that changed.
+ *
+ * The ETag is weak unless the body goes out with Content-Encoding: gzip,
+ * because Tomcat does not compress responses with a strong ETag and the
+ * server's response compression (server.compression) may still gzip the body.
+ *
+ * When MarkLogic answered with gzip (see ManagementCompressionNegotiator) and
+ * the client accepts gzip, the compressed bytes are forwarded as they are with
+ * Content-Encoding: gzip instead of being inflated here and deflated again by
+ * the server's response compression. Each encoding has its own ETag: the hash
+ * of the compressed bytes, or MarkLogic's tag with a -gzip suffix. A body
+ * inflated for a client without gzip gets the hash of the inflated bytes.
+ *
+ * Every response, 304s included, carries the Server-Timing header with the
+ * phases of the upstream calls made for it so far (see ServerTiming).
+ */
+
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.BufferedSource;
+import okio.Okio;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+public final class ProxyResponses {
+
+    /** Largest body that is hashed for an ETag when MarkLogic does not send one. */
+    static final long ETAG_MAX_BYTES = 1024 * 1024;
+
+    /**
+     * Headers of a failed or rejected response (see RejectedResponse) that tell
+     * the client when trying again makes sense.
+     */
+    private static final List<String> REJECTION_HEADERS = List.of(HttpHeaders.RETRY_AFTER);
+
+    private ProxyResponses() {
+    }
+
+    /**
+     * Completes the given builder with a body that streams the upstream response.
+     * The upstream response is closed once the body has been written, so callers
+     * must not close it themselves.
+     *
+     * For a 2xx status the ETag is added, and a 304 is returned instead when it
+     * matches the If-None-Match header of the current request.
+     *
+     * @param builder  the status and headers chosen by the controller
+     * @param response the upstream response
+     * @return ResponseEntity whose body copies the upstream bytes to the client
+     * @throws IOException if the body could not be read to compute the ETag
+     */
+    public static ResponseEntity<StreamingResponseBody> stream(ResponseEntity.BodyBuilder builder,
+            Response response) throws IOException {
+        ResponseBody body = response.body();
+        boolean compressed = body instanceof GzipResponseBody;
+        long contentLength = body.contentLength();
+        boolean forwardGzip = compressed && acceptsGzip(currentRequestHeader(HttpHeaders.ACCEPT_ENCODING));
+        BufferedSource source;
+        if (forwardGzip) {
+            GzipResponseBody gzip = (GzipResponseBody) body;
+            builder.header(HttpHeaders.CONTENT_ENCODING, ManagementCompressionNegotiator.GZIP);
+            contentLength = gzip.compressedLength();
+            source = gzip.compressedSource();
+        } else {
+            source = body.source();
+        }
+        if (compressed) {
+            builder.varyBy(HttpHeaders.ACCEPT_ENCODING);
+        }
+        if (contentLength >= 0) {
+            builder.contentLength(contentLength);
+        }
+        ResponseEntity<StreamingResponseBody> entity = builder
+                .body(outputStream -> copy(response, source, outputStream));
+        String etag = entity.getStatusCode().is2xxSuccessful()
+                ? etag(response, source, forwardGzip)
+                : null;
+        boolean notModified = etag != null && matches(currentRequestHeader(HttpHeaders.IF_NONE_MATCH), etag);
+
+        ResponseEntity.BodyBuilder result;
+        if (notModified) {
+            response.close();
+            result = ResponseEntity.status(HttpStatus.NOT_MODIFIED);
+            if (compressed) {
+                result.varyBy(HttpHeaders.ACCEPT_ENCODING);
+            }
+        } else {
+            result = ResponseEntity.status(entity.getStatusCode()).headers(entity.getHeaders());
+        }
+        // Taken after the ETag, which may have read the whole body
+        String serverTiming = ServerTiming.header(RequestContextHolder.getRequestAttributes());
+        if (serverTiming != null) {
+            result.header(ServerTiming.HEADER, serverTiming);
+        }
+        if (etag == null) {
+            return result.body(entity.getBody());
+        }
+        result.eTag(etag).cacheControl(CacheControl.noCache());
+        return notModified ? result.build() : result.body(entity.getBody());
+    }
+
+    /**
+     * Wraps a small, already available body (validation and error messages).
+     *
+     * @param body the body to write
+     * @return StreamingResponseBody writing the UTF-8 bytes of the body
+     */
+    public static StreamingResponseBody text(String body) {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        return outputStream -> outputStream.write(bytes);
+    }
+
+    /**
+     * Answers a non-2xx upstream response, or a 503 the proxy made instead of
+     * calling MarkLogic, with its status, its rejection headers and the given
+     * body. The caller closes the response.
+     *
+     * @param response the upstream or rejected response
+     * @param body     the error message to send
+     * @return ResponseEntity with the status and Retry-After of the response
+     */
+    public static ResponseEntity<StreamingResponseBody> error(Response response, String body) {
+        return rejectionHeaders(ResponseEntity.status(response.code()), response).body(text(body));
+    }
+
+    /**
+     * Copies the rejection headers of response, such as Retry-After, to
+     * builder.
+     *
+     * @return builder
+     */
+    public static ResponseEntity.BodyBuilder rejectionHeaders(ResponseEntity.BodyBuilder builder, Response response) {
+        for (String name : REJECTION_HEADERS) {
+            for (String value : response.headers(name)) {
+                builder.header(name, value);
+            }
+        }
+        return builder;
+    }
+
+    private static void copy(Response response, BufferedSource source, OutputStream outputStream)
+            throws IOException {
+        try (response) {
+            source.readAll(Okio.sink(outputStream));
+            outputStream.flush();
+        }
+    }
+
+    /**
+     * Returns the weak ETag for an upstream response, or null when there is
+     * none and the body is too large to hash.
+     */
+    static String etag(Response response) throws IOException {
+        return etag(response, response.body().source(), false);
+    }
+
+    /**
+     * Returns the ETag for the bytes of source, which is either the body or,
+     * when they are forwarded as they are, its gzip bytes.
+     *
+     * @param forwardedGzip whether source holds the gzip bytes MarkLogic sent,
+     *                      which are forwarded with Content-Encoding: gzip
+     */
+    private static String etag(Response response, BufferedSource source, boolean forwardedGzip)
+            throws IOException {
+        String upstream = response.header(HttpHeaders.ETAG);
+        if (upstream != null && !upstream.startsWith("W/")) {
+            // MarkLogic may tag both encodings alike; keep the client's copies apart
+            return forwardedGzip
+                    ? upstream.substring(0, upstream.length() - 1) + "-gzip\""
+                    : "W/" + upstream;
+        }
+        // request() returns false once the whole body is buffered within the limit
+        if (source.request(ETAG_MAX_BYTES + 1)) {
+            return null;
+        }
+        String hash = "\"" + source.getBuffer().sha256().hex() + "\"";
+        return forwardedGzip ? hash : "W/" + hash;
+    }
+
+    /**
+     * Compares an If-None-Match header with an ETag using the weak comparison
+     * that RFC 9110 requires for If-None-Match.
+     */
+    static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        String opaqueTag = etag.startsWith("W/") ? etag.substring(2) : etag;
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.equals("*")) {
+                return true;
+            }
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals(opaqueTag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Whether an Accept-Encoding header allows gzip: it lists gzip, or else *,
+     * without q=0.
+     */
+    static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        Boolean wildcard = null;
+        for (String candidate : acceptEncoding.split(",")) {
+            String[] parts = candidate.split(";");
+            String coding = parts[0].trim();
+            boolean refused = false;
+            for (int i = 1; i < parts.length; i++) {
+                refused |= parts[i].replace(" ", "").matches("[qQ]=0(\\.0*)?");
+            }
+            if (coding.equalsIgnoreCase(ManagementCompressionNegotiator.GZIP)) {
+                return !refused;
+            }
+            if (coding.equals("*")) {
+                wildcard = !refused;
+            }
+        }
+        return Boolean.TRUE.equals(wildcard);
+    }
+
+    private static String currentRequestHeader(String name) {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (attributes instanceof ServletRequestAttributes servletAttributes) {
+            return servletAttributes.getRequest().getHeader(name);
+        }
+        return null;
+    }
+}
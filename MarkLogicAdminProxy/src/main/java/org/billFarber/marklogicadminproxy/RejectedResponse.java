@@ -0,0 +1,59 @@
+package org.billFarber.marklogicadminproxy;
+
+/**
+ * The 503 the proxy answers with instead of calling MarkLogic, when a bulkhead
+ * is full, a circuit breaker is open or the concurrency limiter's queue is
+ * full. The body has the shape of a MarkLogic
+ * errorResponse so callers handle it like any other Management API error, and
+ * Retry-After says when trying again makes sense. The response cache may
+ * replace it with a stale entry (stale-if-error).
+ */
+
+import okhttp3.MediaType;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+import java.time.Duration;
+
+final class RejectedResponse {
+
+    static final int STATUS = 503;
+
+    private static final MediaType JSON = MediaType.get("application/json; charset=utf-8");
+
+    private RejectedResponse() {
+    }
+
+    /**
+     * @param messageCode e.g. PROXY-BULKHEADFULL
+     * @param message     what was rejected and why
+     * @param retryAfter  rounded up to whole seconds, at least 1
+     */
+    static Response of(Request request, String messageCode, String message, Duration retryAfter) {
+        long seconds = Math.max(1, (retryAfter.toMillis() + 999) / 1000);
+        String body = "{\"errorResponse\":{\"statusCode\":" + STATUS + ",\"status\":\"Service Unavailable\","
+                + "\"messageCode\":\"" + messageCode + "\",\"message\":\"" + message + "\"}}";
+        long now = System.currentTimeMillis();
+        return new Response.Builder()
+                .request(request)
+                .protocol(Protocol.HTTP_1_1)
+                .code(STATUS)
+                .message("Service Unavailable")
+                .header("Retry-After", Long.toString(seconds))
+                .body(ResponseBody.create(body, JSON))
+                .sentRequestAtMillis(now)
+                .receivedResponseAtMillis(now)
+                .build();
+    }
+
+    /**
+     * @return whether the response was made by of() rather than received from
+     *         MarkLogic or the OkHttp cache
+     */
+    static boolean is(Response response) {
+        return response.code() == STATUS && response.networkResponse() == null && response.cacheResponse() == null
+                && response.header("Retry-After") != null;
+    }
+}
@@ -0,0 +1,103 @@
+package org.billFarber.marklogicadminproxy;
+
+/**
+ * Where one incoming request's Management API time went, for its Server-Timing
+ * response header. ManagementPhaseTimer adds each phase of each upstream call
+ * made on the request's behalf:
+ *
+ *   dns       resolving the MarkLogic host
+ *   connect   opening the TCP connection
+ *   tls       the TLS handshake
+ *   auth      the digest challenge: the 401 round trip before the real request
+ *   server    from the request being sent to MarkLogic's response headers
+ *   transfer  reading the response body, as far as it has been read
+ *
+ * A phase that did not happen, such as connect on a pooled connection, is left
+ * out. When a request makes several calls (cluster snapshot) the phases are
+ * summed over them. The header is built once the response headers are known,
+ * so transfer only covers bodies the proxy read before answering, e.g. to
+ * compute the ETag.
+ *
+ * The timings live in a servlet request attribute, reached through the servlet
+ * request itself: with async calls the RequestAttributes may already be marked
+ * inactive when a call starts, which makes its attribute methods throw.
+ */
+
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import java.util.Locale;
+
+final class ServerTiming {
+
+    static final String HEADER = "Server-Timing";
+    static final String ATTRIBUTE = ServerTiming.class.getName();
+
+    enum Phase {
+        DNS, CONNECT, TLS, AUTH, SERVER, TRANSFER;
+
+        String metricName() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    private final long[] nanos = new long[Phase.values().length];
+    private final boolean[] seen = new boolean[Phase.values().length];
+
+    /**
+     * @return the timings of the request the attributes belong to, created on
+     *         first use, or null outside a request
+     */
+    static ServerTiming of(RequestAttributes attributes) {
+        if (!(attributes instanceof ServletRequestAttributes servletAttributes)) {
+            return null;
+        }
+        HttpServletRequest request = servletAttributes.getRequest();
+        synchronized (servletAttributes) {
+            ServerTiming timing = (ServerTiming) request.getAttribute(ATTRIBUTE);
+            if (timing == null) {
+                timing = new ServerTiming();
+                request.setAttribute(ATTRIBUTE, timing);
+            }
+            return timing;
+        }
+    }
+
+    /**
+     * @return the header value for the request the attributes belong to, or
+     *         null when it made no upstream calls
+     */
+    static String header(RequestAttributes attributes) {
+        if (!(attributes instanceof ServletRequestAttributes servletAttributes)) {
+            return null;
+        }
+        ServerTiming timing = (ServerTiming) servletAttributes.getRequest().getAttribute(ATTRIBUTE);
+        return timing == null ? null : timing.header();
+    }
+
+    synchronized void add(Phase phase, long durationNanos) {
+        nanos[phase.ordinal()] += Math.max(0, durationNanos);
+        seen[phase.ordinal()] = true;
+    }
+
+    /**
+     * @return e.g. "connect;dur=1.2, server;dur=1840.5", or null when no phase
+     *         has been recorded
+     */
+    synchronized String header() {
+        StringBuilder header = new StringBuilder();
+        for (Phase phase : Phase.values()) {
+            if (!seen[phase.ordinal()]) {
+                continue;
+            }
+            if (header.length() > 0) {
+                header.append(", ");
+            }
+            header.append(phase.metricName())
+                    .append(";dur=")
+                    .append(String.format(Locale.ROOT, "%.1f", nanos[phase.ordinal()] / 1_000_000.0));
+        }
+        return header.length() == 0 ? null : header.toString();
+    }
+}
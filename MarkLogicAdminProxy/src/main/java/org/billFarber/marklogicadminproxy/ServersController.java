@@ -17,10 +17,8 @@ package org.billFarber.marklogicadminproxy;
  * - fullrefs: If true, full detail for all relationship references (default: false)
  */
 
-import com.marklogic.client.DatabaseClient;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
-import okhttp3.Response;
 import okhttp3.HttpUrl;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
@@ -30,11 +28,14 @@ import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.util.concurrent.CompletableFuture;
 
 @RestController
 public class ServersController {
     @Autowired
-    private DatabaseClient databaseClient;
+    private OkHttpClient managementHttpClient;
 
     @Value("${marklogic.host}")
     private String marklogicHost;
@@ -42,8 +43,11 @@ public class ServersController {
     @Value("${marklogic.schema}")
     private String marklogicSchema;
 
+    @Value("${marklogic.management.async-enabled:false}")
+    private boolean asyncEnabled;
+
     @GetMapping("/manage/v2/servers")
-    public ResponseEntity<String> getServers(
+    public CompletableFuture<ResponseEntity<StreamingResponseBody>> getServers(
             @RequestParam(value = "format", required = false, defaultValue = "json") String format,
             @RequestParam(value = "group-id", required = false) String groupId,
             @RequestParam(value = "view", required = false) String view,
@@ -51,28 +55,25 @@ public class ServersController {
 
         // Validate format parameter
         if (!format.equals("json") && !format.equals("xml") && !format.equals("html")) {
-            return ResponseEntity.badRequest()
-                    .body("{\"error\":\"Invalid format parameter. Must be 'json', 'xml', or 'html'\"}");
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest()
+                    .body(ProxyResponses.text("{\"error\":\"Invalid format parameter. Must be 'json', 'xml', or 'html'\"}")));
         }
 
         // Validate view parameter
         if (view != null && !view.trim().isEmpty() && !view.equals("default") && !view.equals("schema")
                 && !view.equals("status")
                 && !view.equals("metrics") && !view.equals("package")) {
-            return ResponseEntity.badRequest()
-                    .body("{\"error\":\"Invalid view parameter. Must be 'default', 'schema', 'status', 'metrics', or 'package'\"}");
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest()
+                    .body(ProxyResponses.text("{\"error\":\"Invalid view parameter. Must be 'default', 'schema', 'status', 'metrics', or 'package'\"}")));
         }
 
         // Validate fullrefs parameter
         if (fullrefs != null && !fullrefs.trim().isEmpty() && !fullrefs.equals("true") && !fullrefs.equals("false")) {
-            return ResponseEntity.badRequest()
-                    .body("{\"error\":\"Invalid fullrefs parameter. Must be 'true' or 'false'\"}");
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest()
+                    .body(ProxyResponses.text("{\"error\":\"Invalid fullrefs parameter. Must be 'true' or 'false'\"}")));
         }
 
         try {
-            // Get the underlying OkHttpClient from the MarkLogic DatabaseClient
-            OkHttpClient okHttpClient = (OkHttpClient) databaseClient.getClientImplementation();
-
             // Build the URL for the MarkLogic management API
             HttpUrl.Builder urlBuilder = HttpUrl
                     .parse(marklogicSchema + "://" + marklogicHost + ":8002/manage/v2/servers")
@@ -114,41 +115,38 @@ public class ServersController {
                     .addHeader("Accept", acceptHeader)
                     .build();
 
+            // Set appropriate content type based on format
+            MediaType contentType;
+            switch (format) {
+                case "json":
+                    contentType = MediaType.APPLICATION_JSON;
+                    break;
+                case "xml":
+                    contentType = MediaType.APPLICATION_XML;
+                    break;
+                case "html":
+                    contentType = MediaType.TEXT_HTML;
+                    break;
+                default:
+                    contentType = MediaType.APPLICATION_JSON;
+            }
+
             // Execute the request
-            Response response = okHttpClient.newCall(request).execute();
-
-            if (response.isSuccessful()) {
-                String responseBody = response.body().string();
-
-                // Set appropriate content type based on format
-                MediaType contentType;
-                switch (format) {
-                    case "json":
-                        contentType = MediaType.APPLICATION_JSON;
-                        break;
-                    case "xml":
-                        contentType = MediaType.APPLICATION_XML;
-                        break;
-                    case "html":
-                        contentType = MediaType.TEXT_HTML;
-                        break;
-                    default:
-                        contentType = MediaType.APPLICATION_JSON;
+            return ManagementCalls.exchange(managementHttpClient, request, asyncEnabled, response -> {
+                if (response.isSuccessful()) {
+                    return ProxyResponses.stream(ResponseEntity.ok().contentType(contentType), response);
+                } else {
+                    response.close();
+                    return ProxyResponses.error(response, "{\"error\":\"MarkLogic returned status: " + response.code() + "\"}");
                 }
-
-                return ResponseEntity.ok().contentType(contentType).body(responseBody);
-            } else {
-                return ResponseEntity.status(response.code())
-                        .body("{\"error\":\"MarkLogic returned status: " + response.code() + "\"}");
-            }
+            }).exceptionally(e -> proxyError(ManagementCalls.unwrap(e)));
         } catch (Exception e) {
-            return ResponseEntity.status(502)
-                    .body("{\"error\":\"Failed to proxy to MarkLogic: " + e.getMessage() + "\"}");
+            return CompletableFuture.completedFuture(proxyError(e));
         }
     }
 
     @GetMapping("/manage/v2/servers/{idOrName}/properties")
-    public ResponseEntity<String> getServerProperties(
+    public CompletableFuture<ResponseEntity<StreamingResponseBody>> getServerProperties(
             @PathVariable String idOrName,
             @RequestParam(value = "group-id", required = true) String groupId,
             @RequestParam(value = "format", required = false, defaultValue = "json") String format) {
@@ -160,20 +158,17 @@ public class ServersController {
 
         // Validate format parameter
         if (!format.equals("json") && !format.equals("xml")) {
-            return ResponseEntity.badRequest()
-                    .body("{\"error\":\"Invalid format parameter. Must be 'json' or 'xml'\"}");
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest()
+                    .body(ProxyResponses.text("{\"error\":\"Invalid format parameter. Must be 'json' or 'xml'\"}")));
         }
 
         // Validate group-id parameter
         if (groupId == null || groupId.trim().isEmpty()) {
-            return ResponseEntity.badRequest()
-                    .body("{\"error\":\"group-id parameter is required\"}");
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest()
+                    .body(ProxyResponses.text("{\"error\":\"group-id parameter is required\"}")));
         }
 
         try {
-            // Get the underlying OkHttpClient from the MarkLogic DatabaseClient
-            OkHttpClient okHttpClient = (OkHttpClient) databaseClient.getClientImplementation();
-
             // Build the URL for the MarkLogic management API
             HttpUrl.Builder urlBuilder = HttpUrl
                     .parse(marklogicSchema + "://" + marklogicHost + ":8002/manage/v2/servers/" + idOrName
@@ -190,27 +185,31 @@ public class ServersController {
                     .get()
                     .build();
 
-            try (Response response = okHttpClient.newCall(request).execute()) {
+            // Set appropriate content type based on format
+            MediaType contentType = format.equals("xml") ? MediaType.APPLICATION_XML
+                    : MediaType.APPLICATION_JSON;
+
+            return ManagementCalls.exchange(managementHttpClient, request, asyncEnabled, response -> {
                 if (response.body() == null) {
+                    response.close();
                     return ResponseEntity.status(502)
-                            .body("{\"error\":\"No response from MarkLogic server\"}");
+                            .body(ProxyResponses.text("{\"error\":\"No response from MarkLogic server\"}"));
                 }
 
-                String responseBody = response.body().string();
-
                 if (response.isSuccessful()) {
-                    // Set appropriate content type based on format
-                    MediaType contentType = format.equals("xml") ? MediaType.APPLICATION_XML
-                            : MediaType.APPLICATION_JSON;
-                    return ResponseEntity.ok().contentType(contentType).body(responseBody);
+                    return ProxyResponses.stream(ResponseEntity.ok().contentType(contentType), response);
                 } else {
-                    return ResponseEntity.status(response.code())
-                            .body("{\"error\":\"MarkLogic returned status: " + response.code() + "\"}");
+                    response.close();
+                    return ProxyResponses.error(response, "{\"error\":\"MarkLogic returned status: " + response.code() + "\"}");
                 }
-            }
+            }).exceptionally(e -> proxyError(ManagementCalls.unwrap(e)));
         } catch (Exception e) {
-            return ResponseEntity.status(502)
-                    .body("{\"error\":\"Failed to proxy to MarkLogic: " + e.getMessage() + "\"}");
+            return CompletableFuture.completedFuture(proxyError(e));
         }
     }
+
+    private ResponseEntity<StreamingResponseBody> proxyError(Throwable e) {
+        return ResponseEntity.status(502)
+                .body(ProxyResponses.text("{\"error\":\"Failed to proxy to MarkLogic: " + e.getMessage() + "\"}"));
+    }
 }
@@ -0,0 +1,48 @@
+package org.billFarber.marklogicadminproxy;
+
+/**
+ * The time one incoming request spent waiting on the Management API: from the
+ * start of its first upstream call to the end of its last one. Calls that run
+ * in parallel (bulk properties, cluster snapshot) overlap inside the span
+ * instead of being added up, so the span never exceeds the request's own time.
+ *
+ * ProxyMetricsFilter stores one in each request's attributes and
+ * ManagementMetrics extends it for every call made on that request's behalf.
+ */
+
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+final class UpstreamSpan {
+
+    static final String ATTRIBUTE = UpstreamSpan.class.getName();
+
+    private long start = Long.MAX_VALUE;
+    private long end = Long.MIN_VALUE;
+
+    /**
+     * @return the span of the request the attributes belong to, or null outside
+     *         a request or when ProxyMetricsFilter is not installed
+     */
+    static UpstreamSpan of(RequestAttributes attributes) {
+        // Not attributes.getAttribute: it throws once an async request's
+        // attributes are marked inactive, which can happen before a call starts
+        if (!(attributes instanceof ServletRequestAttributes servletAttributes)) {
+            return null;
+        }
+        return (UpstreamSpan) servletAttributes.getRequest().getAttribute(ATTRIBUTE);
+    }
+
+    synchronized void add(long startNanos, long endNanos) {
+        start = Math.min(start, startNanos);
+        end = Math.max(end, endNanos);
+    }
+
+    /**
+     * @return nanoseconds between the first call's start and the last call's
+     *         end, or 0 when no call was made
+     */
+    synchronized long nanos() {
+        return end < start ? 0 : end - start;
+    }
+}
@@ -17,10 +17,8 @@ package org.billFarber.marklogicadminproxy;
  * - format: The format of the returned data (json, xml - default)
  */
 
-import com.marklogic.client.DatabaseClient;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
-import okhttp3.Response;
 import okhttp3.HttpUrl;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
@@ -30,11 +28,14 @@ import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.util.concurrent.CompletableFuture;
 
 @RestController
 public class UsersController {
     @Autowired
-    private DatabaseClient databaseClient;
+    private OkHttpClient managementHttpClient;
 
     @Value("${marklogic.host}")
     private String marklogicHost;
@@ -42,8 +43,11 @@ public class UsersController {
     @Value("${marklogic.schema}")
     private String marklogicSchema;
 
+    @Value("${marklogic.management.async-enabled:false}")
+    private boolean asyncEnabled;
+
     @GetMapping("/manage/v2/users")
-    public ResponseEntity<String> getUsers(
+    public CompletableFuture<ResponseEntity<StreamingResponseBody>> getUsers(
             @RequestParam(value = "format", required = false, defaultValue = "json") String format) {
 
         // Handle null format and set default
@@ -53,14 +57,11 @@ public class UsersController {
 
         // Validate format parameter
         if (!format.equals("json") && !format.equals("xml") && !format.equals("html")) {
-            return ResponseEntity.badRequest()
-                    .body("{\"error\":\"Invalid format parameter. Must be 'json', 'xml', or 'html'\"}");
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest()
+                    .body(ProxyResponses.text("{\"error\":\"Invalid format parameter. Must be 'json', 'xml', or 'html'\"}")));
         }
 
         try {
-            // Get the underlying OkHttpClient from the MarkLogic DatabaseClient
-            OkHttpClient okHttpClient = (OkHttpClient) databaseClient.getClientImplementation();
-
             // Build the URL for the MarkLogic management API
             HttpUrl.Builder urlBuilder = HttpUrl
                     .parse(marklogicSchema + "://" + marklogicHost + ":8002/manage/v2/users")
@@ -90,41 +91,38 @@ public class UsersController {
                     .addHeader("Accept", acceptHeader)
                     .build();
 
+            // Set appropriate content type based on format
+            MediaType contentType;
+            switch (format) {
+                case "json":
+                    contentType = MediaType.APPLICATION_JSON;
+                    break;
+                case "xml":
+                    contentType = MediaType.APPLICATION_XML;
+                    break;
+                case "html":
+                    contentType = MediaType.TEXT_HTML;
+                    break;
+                default:
+                    contentType = MediaType.APPLICATION_JSON;
+            }
+
             // Execute the request
-            Response response = okHttpClient.newCall(request).execute();
-
-            if (response.isSuccessful()) {
-                String responseBody = response.body().string();
-
-                // Set appropriate content type based on format
-                MediaType contentType;
-                switch (format) {
-                    case "json":
-                        contentType = MediaType.APPLICATION_JSON;
-                        break;
-                    case "xml":
-                        contentType = MediaType.APPLICATION_XML;
-                        break;
-                    case "html":
-                        contentType = MediaType.TEXT_HTML;
-                        break;
-                    default:
-                        contentType = MediaType.APPLICATION_JSON;
+            return ManagementCalls.exchange(managementHttpClient, request, asyncEnabled, response -> {
+                if (response.isSuccessful()) {
+                    return ProxyResponses.stream(ResponseEntity.ok().contentType(contentType), response);
+                } else {
+                    response.close();
+                    return ProxyResponses.error(response, "{\"error\":\"MarkLogic returned status: " + response.code() + "\"}");
                 }
-
-                return ResponseEntity.ok().contentType(contentType).body(responseBody);
-            } else {
-                return ResponseEntity.status(response.code())
-                        .body("{\"error\":\"MarkLogic returned status: " + response.code() + "\"}");
-            }
+            }).exceptionally(e -> proxyError(ManagementCalls.unwrap(e)));
         } catch (Exception e) {
-            return ResponseEntity.status(502)
-                    .body("{\"error\":\"Failed to proxy to MarkLogic: " + e.getMessage() + "\"}");
+            return CompletableFuture.completedFuture(proxyError(e));
         }
     }
 
     @GetMapping("/manage/v2/users/{idOrName}/properties")
-    public ResponseEntity<String> getUserProperties(
+    public CompletableFuture<ResponseEntity<StreamingResponseBody>> getUserProperties(
             @PathVariable String idOrName,
             @RequestParam(value = "format", required = false, defaultValue = "xml") String format) {
 
@@ -136,14 +134,11 @@ public class UsersController {
         // Validate format parameter - user properties only supports json and xml (no
         // html)
         if (!format.equals("json") && !format.equals("xml")) {
-            return ResponseEntity.badRequest()
-                    .body("{\"error\":\"Invalid format parameter. Must be 'json' or 'xml'\"}");
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest()
+                    .body(ProxyResponses.text("{\"error\":\"Invalid format parameter. Must be 'json' or 'xml'\"}")));
         }
 
         try {
-            // Get the underlying OkHttpClient from the MarkLogic DatabaseClient
-            OkHttpClient okHttpClient = (OkHttpClient) databaseClient.getClientImplementation();
-
             // Build the URL for the MarkLogic management API
             HttpUrl.Builder urlBuilder = HttpUrl
                     .parse(marklogicSchema + "://" + marklogicHost + ":8002/manage/v2/users/" + idOrName
@@ -163,27 +158,31 @@ public class UsersController {
                     .addHeader("Accept", acceptHeader)
                     .build();
 
-            try (Response response = okHttpClient.newCall(request).execute()) {
+            // Set appropriate content type based on format
+            MediaType contentType = format.equals("json") ? MediaType.APPLICATION_JSON
+                    : MediaType.APPLICATION_XML;
+
+            return ManagementCalls.exchange(managementHttpClient, request, asyncEnabled, response -> {
                 if (response.body() == null) {
+                    response.close();
                     return ResponseEntity.status(502)
-                            .body("{\"error\":\"No response from MarkLogic server\"}");
+                            .body(ProxyResponses.text("{\"error\":\"No response from MarkLogic server\"}"));
                 }
 
-                String responseBody = response.body().string();
-
                 if (response.isSuccessful()) {
-                    // Set appropriate content type based on format
-                    MediaType contentType = format.equals("json") ? MediaType.APPLICATION_JSON
-                            : MediaType.APPLICATION_XML;
-                    return ResponseEntity.ok().contentType(contentType).body(responseBody);
+                    return ProxyResponses.stream(ResponseEntity.ok().contentType(contentType), response);
                 } else {
-                    return ResponseEntity.status(response.code())
-                            .body("{\"error\":\"MarkLogic returned status: " + response.code() + "\"}");
+                    response.close();
+                    return ProxyResponses.error(response, "{\"error\":\"MarkLogic returned status: " + response.code() + "\"}");
                 }
-            }
+            }).exceptionally(e -> proxyError(ManagementCalls.unwrap(e)));
         } catch (Exception e) {
-            return ResponseEntity.status(502)
-                    .body("{\"error\":\"Failed to proxy to MarkLogic: " + e.getMessage() + "\"}");
+            return CompletableFuture.completedFuture(proxyError(e));
         }
     }
+
+    private ResponseEntity<StreamingResponseBody> proxyError(Throwable e) {
+        return ResponseEntity.status(502)
+                .body(ProxyResponses.text("{\"error\":\"Failed to proxy to MarkLogic: " + e.getMessage() + "\"}"));
+    }
 }
@@ -0,0 +1,239 @@
+package org.billFarber.marklogicadminproxy;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import okhttp3.HttpUrl;
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.billFarber.marklogicadminproxy.ResponseBodies.bodyAsString;
+import static org.junit.jupiter.api.Assertions.*;
+
+class BulkPropertiesControllerTest {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    private MockWebServer server;
+    private ManagementProperties managementProperties;
+    private BulkPropertiesController bulkPropertiesController;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = new MockWebServer();
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                HttpUrl url = request.getRequestUrl();
+                List<String> segments = url.pathSegments();
+                if (segments.size() == 3) {
+                    return list(segments.get(2));
+                }
+                String name = segments.get(3);
+                if (name.equals("Missing")) {
+                    return new MockResponse().setResponseCode(404);
+                }
+
+                maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+                Thread.sleep(20);
+                inFlight.decrementAndGet();
+                String group = url.queryParameter("group-id");
+                return new MockResponse()
+                        .setHeader("Content-Type", "application/json")
+                        .setBody("{\"name\":\"" + name + "\"" + (group == null ? "" : ",\"group\":\"" + group + "\"")
+                                + "}");
+            }
+        });
+        server.start();
+
+        // The controller always calls port 8002, so point it at the mock server
+        HttpUrl target = server.url("/");
+        OkHttpClient client = new OkHttpClient.Builder()
+                .addInterceptor(chain -> chain.proceed(chain.request().newBuilder()
+                        .url(chain.request().url().newBuilder().port(target.port()).build())
+                        .build()))
+                .build();
+
+        managementProperties = new ManagementProperties();
+        bulkPropertiesController = new BulkPropertiesController();
+        ReflectionTestUtils.setField(bulkPropertiesController, "managementHttpClient", client);
+        ReflectionTestUtils.setField(bulkPropertiesController, "managementProperties", managementProperties);
+        ReflectionTestUtils.setField(bulkPropertiesController, "marklogicHost", target.host());
+        ReflectionTestUtils.setField(bulkPropertiesController, "marklogicSchema", "http");
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        server.shutdown();
+    }
+
+    @Test
+    void testBulkPropertiesForIds() throws Exception {
+        // Act
+        ResponseEntity<StreamingResponseBody> result = bulkPropertiesController
+                .getBulkProperties("databases", List.of("Documents", "Security", "Missing"), null, "json").join();
+
+        // Assert
+        assertEquals(HttpStatus.OK, result.getStatusCode());
+        JsonNode bulk = mapper.readTree(bodyAsString(result)).path("bulk-properties");
+        assertEquals("databases", bulk.path("resource").asText());
+        assertEquals(3, bulk.path("list-count").asInt());
+        assertEquals(1, bulk.path("error-count").asInt());
+
+        Set<String> found = new HashSet<>();
+        for (JsonNode item : bulk.path("list-items")) {
+            found.add(item.path("idOrName").asText());
+            if (item.path("idOrName").asText().equals("Missing")) {
+                assertEquals(404, item.path("status").asInt());
+                assertEquals("MarkLogic returned status: 404", item.path("error").asText());
+            } else {
+                assertEquals(200, item.path("status").asInt());
+                assertEquals(item.path("idOrName").asText(), item.path("properties").path("name").asText());
+            }
+        }
+        assertEquals(Set.of("Documents", "Security", "Missing"), found);
+    }
+
+    @Test
+    void testBulkPropertiesForAllItemsInList() throws Exception {
+        // Act
+        ResponseEntity<StreamingResponseBody> result = bulkPropertiesController
+                .getBulkProperties("forests", null, null, "json").join();
+
+        // Assert
+        JsonNode bulk = mapper.readTree(bodyAsString(result)).path("bulk-properties");
+        assertEquals(5, bulk.path("list-count").asInt());
+        assertEquals(0, bulk.path("error-count").asInt());
+        assertEquals("/manage/v2/forests?format=json", server.takeRequest().getPath());
+        assertEquals(6, server.getRequestCount());
+    }
+
+    @Test
+    void testBulkServerPropertiesUseGroupFromList() throws Exception {
+        // Act
+        ResponseEntity<StreamingResponseBody> result = bulkPropertiesController
+                .getBulkProperties("servers", List.of("_all"), null, "json").join();
+
+        // Assert
+        JsonNode bulk = mapper.readTree(bodyAsString(result)).path("bulk-properties");
+        for (JsonNode item : bulk.path("list-items")) {
+            assertEquals("Default", item.path("group-id").asText());
+            assertEquals("Default", item.path("properties").path("group").asText());
+        }
+    }
+
+    @Test
+    void testBulkPropertiesLimitsConcurrency() throws Exception {
+        // Arrange
+        managementProperties.getBulk().setMaxConcurrency(3);
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            ids.add("forest-" + i);
+        }
+
+        // Act
+        ResponseEntity<StreamingResponseBody> result = bulkPropertiesController
+                .getBulkProperties("forests", ids, null, "json").join();
+        JsonNode bulk = mapper.readTree(bodyAsString(result)).path("bulk-properties");
+
+        // Assert
+        assertEquals(20, bulk.path("list-items").size());
+        assertTrue(maxInFlight.get() <= 3, "At most 3 calls in flight but saw " + maxInFlight.get());
+        assertTrue(maxInFlight.get() > 1, "Calls should run in parallel");
+    }
+
+    @Test
+    void testBulkServerPropertiesRequireGroupId() {
+        // Act
+        ResponseEntity<StreamingResponseBody> result = bulkPropertiesController
+                .getBulkProperties("servers", List.of("App-Services"), null, "json").join();
+
+        // Assert
+        assertEquals(HttpStatus.BAD_REQUEST, result.getStatusCode());
+        assertTrue(bodyAsString(result).contains("group-id parameter is required"));
+        assertEquals(0, server.getRequestCount());
+    }
+
+    @Test
+    void testBulkPropertiesRejectsUnsupportedResource() {
+        // Act
+        ResponseEntity<StreamingResponseBody> result = bulkPropertiesController
+                .getBulkProperties("logs", List.of("ErrorLog.txt"), null, "json").join();
+
+        // Assert
+        assertEquals(HttpStatus.NOT_FOUND, result.getStatusCode());
+    }
+
+    @Test
+    void testBulkPropertiesRejectsXmlFormat() {
+        // Act
+        ResponseEntity<StreamingResponseBody> result = bulkPropertiesController
+                .getBulkProperties("databases", List.of("Documents"), null, "xml").join();
+
+        // Assert
+        assertEquals(HttpStatus.BAD_REQUEST, result.getStatusCode());
+        assertTrue(bodyAsString(result).contains("Must be 'json'"));
+    }
+
+    @Test
+    void testBulkPropertiesRejectsTooManyIds() {
+        // Arrange
+        managementProperties.getBulk().setMaxIds(2);
+
+        // Act
+        ResponseEntity<StreamingResponseBody> result = bulkPropertiesController
+                .getBulkProperties("users", List.of("a", "b", "c"), null, "json").join();
+
+        // Assert
+        assertEquals(HttpStatus.BAD_REQUEST, result.getStatusCode());
+        assertTrue(bodyAsString(result).contains("At most 2"));
+    }
+
+    @Test
+    void testBulkPropertiesListFailure() throws Exception {
+        // Arrange
+        server.shutdown();
+
+        // Act
+        ResponseEntity<StreamingResponseBody> result = bulkPropertiesController
+                .getBulkProperties("hosts", null, null, "json").get(10, TimeUnit.SECONDS);
+
+        // Assert
+        assertEquals(HttpStatus.BAD_GATEWAY, result.getStatusCode());
+        assertTrue(bodyAsString(result).contains("Failed to proxy to MarkLogic"));
+    }
+
+    private static MockResponse list(String resource) {
+        String singular = resource.substring(0, resource.length() - 1);
+        StringBuilder items = new StringBuilder();
+        for (int i = 0; i < 5; i++) {
+            items.append(i == 0 ? "" : ",")
+                    .append("{\"idref\":\"").append(1000 + i).append("\",\"nameref\":\"")
+                    .append(singular).append('-').append(i).append("\",\"groupnameref\":\"Default\"}");
+        }
+        return new MockResponse()
+                .setHeader("Content-Type", "application/json")
+                .setBody("{\"" + singular + "-default-list\":{\"list-items\":{\"list-count\":{\"value\":5},"
+                        + "\"list-item\":[" + items + "]}}}");
+    }
+}
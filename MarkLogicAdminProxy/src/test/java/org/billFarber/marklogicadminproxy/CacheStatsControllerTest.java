@@ -0,0 +1,70 @@
+package org.billFarber.marklogicadminproxy;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class CacheStatsControllerTest {
+
+    @Mock
+    private ManagementResponseCache managementResponseCache;
+
+    @Mock
+    private ManagementRequestCoalescer managementRequestCoalescer;
+
+    @InjectMocks
+    private CacheStatsController cacheStatsController;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+    }
+
+    @Test
+    void testGetCacheStats() {
+        // Arrange
+        when(managementResponseCache.stats()).thenReturn(new ManagementResponseCache.Stats(30, 10, 2, 5, 4096));
+        when(managementResponseCache.staleCount()).thenReturn(3L);
+        when(managementRequestCoalescer.coalescedCount()).thenReturn(7L);
+
+        // Act
+        ResponseEntity<Map<String, Object>> result = cacheStatsController.getCacheStats();
+
+        // Assert
+        assertEquals(HttpStatus.OK, result.getStatusCode());
+        Map<String, Object> body = result.getBody();
+        assertEquals(true, body.get("enabled"));
+        assertEquals(30L, body.get("hits"));
+        assertEquals(10L, body.get("misses"));
+        assertEquals(0.75, (double) body.get("hitRatio"), 0.0001);
+        assertEquals(2L, body.get("evictions"));
+        assertEquals(3L, body.get("stale"));
+        assertEquals(5, body.get("entries"));
+        assertEquals(4096L, body.get("bytes"));
+        assertEquals(7L, body.get("coalesced"));
+    }
+
+    @Test
+    void testGetCacheStatsWhenCacheDisabled() {
+        // Arrange
+        ReflectionTestUtils.setField(cacheStatsController, "managementResponseCache", null);
+        ReflectionTestUtils.setField(cacheStatsController, "managementRequestCoalescer", null);
+
+        // Act
+        ResponseEntity<Map<String, Object>> result = cacheStatsController.getCacheStats();
+
+        // Assert
+        assertEquals(HttpStatus.OK, result.getStatusCode());
+        assertEquals(Map.of("enabled", false), result.getBody());
+    }
+}
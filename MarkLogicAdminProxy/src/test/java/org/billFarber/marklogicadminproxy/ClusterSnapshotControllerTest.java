@@ -0,0 +1,155 @@
+package org.billFarber.marklogicadminproxy;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import okhttp3.HttpUrl;
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.billFarber.marklogicadminproxy.ResponseBodies.bodyAsString;
+import static org.junit.jupiter.api.Assertions.*;
+
+class ClusterSnapshotControllerTest {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    private MockWebServer server;
+    private ClusterSnapshotController clusterSnapshotController;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = new MockWebServer();
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                List<String> segments = request.getRequestUrl().pathSegments();
+                String resource = segments.get(2);
+                if (resource.equals("roles")) {
+                    return new MockResponse().setResponseCode(500);
+                }
+                if (segments.size() > 3) {
+                    return new MockResponse()
+                            .setHeader("Content-Type", "application/json")
+                            .setBody("{\"name\":\"" + segments.get(3) + "\"}");
+                }
+                String singular = resource.substring(0, resource.length() - 1);
+                return new MockResponse()
+                        .setHeader("Content-Type", "application/json")
+                        .setBody("{\"" + singular + "-default-list\":{\"list-items\":{\"list-item\":["
+                                + "{\"nameref\":\"" + singular + "-a\",\"groupnameref\":\"Default\"},"
+                                + "{\"nameref\":\"" + singular + "-b\",\"groupnameref\":\"Default\"}]}}}");
+            }
+        });
+        server.start();
+
+        // The controller always calls port 8002, so point it at the mock server
+        HttpUrl target = server.url("/");
+        OkHttpClient client = new OkHttpClient.Builder()
+                .addInterceptor(chain -> chain.proceed(chain.request().newBuilder()
+                        .url(chain.request().url().newBuilder().port(target.port()).build())
+                        .build()))
+                .build();
+
+        clusterSnapshotController = new ClusterSnapshotController();
+        ReflectionTestUtils.setField(clusterSnapshotController, "managementHttpClient", client);
+        ReflectionTestUtils.setField(clusterSnapshotController, "managementProperties", new ManagementProperties());
+        ReflectionTestUtils.setField(clusterSnapshotController, "marklogicHost", target.host());
+        ReflectionTestUtils.setField(clusterSnapshotController, "marklogicSchema", "http");
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        server.shutdown();
+    }
+
+    @Test
+    void testClusterSnapshot() throws Exception {
+        // Act
+        ResponseEntity<StreamingResponseBody> result = clusterSnapshotController.getClusterSnapshot(false)
+                .get(10, TimeUnit.SECONDS);
+
+        // Assert
+        assertEquals(HttpStatus.OK, result.getStatusCode());
+        JsonNode snapshot = mapper.readTree(bodyAsString(result)).path("cluster-snapshot");
+        assertEquals(ClusterSnapshotController.SNAPSHOT_VERSION, snapshot.path("snapshot-version").asInt());
+        assertTrue(snapshot.has("generated-at"));
+        assertTrue(snapshot.path("time-ms").isNumber());
+
+        JsonNode sections = snapshot.path("sections");
+        assertEquals(ClusterSnapshotController.SECTIONS.size(), sections.size());
+        JsonNode databases = sections.path("databases");
+        assertEquals(200, databases.path("status").asInt());
+        assertTrue(databases.path("time-ms").isNumber());
+        assertEquals("database-a", databases.path("list").path("database-default-list")
+                .path("list-items").path("list-item").get(0).path("nameref").asText());
+        assertFalse(databases.has("properties-list"));
+
+        // Only the seven list calls are made
+        assertEquals(7, server.getRequestCount());
+    }
+
+    @Test
+    void testClusterSnapshotReportsFailedSection() throws Exception {
+        // Act
+        ResponseEntity<StreamingResponseBody> result = clusterSnapshotController.getClusterSnapshot(false)
+                .get(10, TimeUnit.SECONDS);
+
+        // Assert
+        JsonNode roles = mapper.readTree(bodyAsString(result)).path("cluster-snapshot").path("sections")
+                .path("roles");
+        assertEquals(500, roles.path("status").asInt());
+        assertEquals("MarkLogic returned status: 500", roles.path("error").asText());
+        assertFalse(roles.has("list"));
+    }
+
+    @Test
+    void testClusterSnapshotWithProperties() throws Exception {
+        // Act
+        ResponseEntity<StreamingResponseBody> result = clusterSnapshotController.getClusterSnapshot(true)
+                .get(10, TimeUnit.SECONDS);
+
+        // Assert
+        JsonNode sections = mapper.readTree(bodyAsString(result)).path("cluster-snapshot").path("sections");
+        JsonNode forests = sections.path("forests");
+        assertTrue(forests.path("properties-time-ms").isNumber());
+        assertEquals(2, forests.path("properties-list").size());
+        assertEquals("forest-a", forests.path("properties-list").get(0).path("properties").path("name").asText());
+
+        JsonNode servers = sections.path("servers").path("properties-list");
+        assertEquals("Default", servers.get(0).path("group-id").asText());
+
+        // Seven lists plus two properties calls for each of the six lists that succeeded
+        assertEquals(7 + 12, server.getRequestCount());
+    }
+
+    @Test
+    void testClusterSnapshotWhenMarkLogicIsDown() throws Exception {
+        // Arrange
+        server.shutdown();
+
+        // Act
+        ResponseEntity<StreamingResponseBody> result = clusterSnapshotController.getClusterSnapshot(false)
+                .get(10, TimeUnit.SECONDS);
+
+        // Assert
+        assertEquals(HttpStatus.OK, result.getStatusCode());
+        JsonNode hosts = mapper.readTree(bodyAsString(result)).path("cluster-snapshot").path("sections")
+                .path("hosts");
+        assertEquals(502, hosts.path("status").asInt());
+        assertTrue(hosts.path("error").asText().startsWith("Failed to proxy to MarkLogic"));
+    }
+}
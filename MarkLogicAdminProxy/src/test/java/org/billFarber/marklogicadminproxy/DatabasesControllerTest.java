@@ -1,29 +1,37 @@
 package org.billFarber.marklogicadminproxy;
 
-import com.marklogic.client.DatabaseClient;
 import okhttp3.Call;
+import okhttp3.Callback;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
 import okhttp3.Response;
 import okhttp3.ResponseBody;
+import okio.ByteString;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
 import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+
+import static org.billFarber.marklogicadminproxy.ResponseBodies.bodyAsString;
+import static org.billFarber.marklogicadminproxy.ResponseBodies.source;
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.*;
 
 class DatabasesControllerTest {
 
-    @Mock
-    private DatabaseClient databaseClient;
-
     @Mock
     private OkHttpClient okHttpClient;
 
@@ -51,22 +59,21 @@ class DatabasesControllerTest {
         // Arrange
         String mockJson = "{\"database-default-list\":{\"list-items\":{\"list-item\":[{\"nameref\":\"Documents\"},{\"nameref\":\"Modules\"}]}}}";
 
-        when(databaseClient.getClientImplementation()).thenReturn(okHttpClient);
         when(okHttpClient.newCall(any(Request.class))).thenReturn(call);
         when(call.execute()).thenReturn(response);
         when(response.isSuccessful()).thenReturn(true);
         when(response.body()).thenReturn(responseBody);
-        when(responseBody.string()).thenReturn(mockJson);
+        when(responseBody.source()).thenReturn(source(mockJson));
 
         // Act
-        ResponseEntity<String> result = databasesController.getDatabases("json", null);
+        ResponseEntity<StreamingResponseBody> result = databasesController.getDatabases("json", null).join();
 
         // Assert
         assertEquals(200, result.getStatusCode().value());
         assertEquals(MediaType.APPLICATION_JSON, result.getHeaders().getContentType());
-        assertEquals(mockJson, result.getBody());
+        assertEquals("W/\"" + ByteString.encodeUtf8(mockJson).sha256().hex() + "\"", result.getHeaders().getETag());
+        assertEquals(mockJson, bodyAsString(result));
 
-        verify(databaseClient).getClientImplementation();
         verify(okHttpClient).newCall(any(Request.class));
         verify(call).execute();
     }
@@ -76,51 +83,48 @@ class DatabasesControllerTest {
         // Arrange
         String mockJson = "{\"database-default-list\":{\"list-items\":{\"list-item\":[{\"nameref\":\"Documents\"}]}}}";
 
-        when(databaseClient.getClientImplementation()).thenReturn(okHttpClient);
         when(okHttpClient.newCall(any(Request.class))).thenReturn(call);
         when(call.execute()).thenReturn(response);
         when(response.isSuccessful()).thenReturn(true);
         when(response.body()).thenReturn(responseBody);
-        when(responseBody.string()).thenReturn(mockJson);
+        when(responseBody.source()).thenReturn(source(mockJson));
 
         // Act
-        ResponseEntity<String> result = databasesController.getDatabases("json", "summary");
+        ResponseEntity<StreamingResponseBody> result = databasesController.getDatabases("json", "summary").join();
 
         // Assert
         assertEquals(200, result.getStatusCode().value());
-        assertEquals(mockJson, result.getBody());
+        assertEquals(mockJson, bodyAsString(result));
     }
 
     @Test
     void testGetDatabases_MarkLogicError() throws Exception {
         // Arrange
-        when(databaseClient.getClientImplementation()).thenReturn(okHttpClient);
         when(okHttpClient.newCall(any(Request.class))).thenReturn(call);
         when(call.execute()).thenReturn(response);
         when(response.isSuccessful()).thenReturn(false);
         when(response.code()).thenReturn(401);
 
         // Act
-        ResponseEntity<String> result = databasesController.getDatabases("json", null);
+        ResponseEntity<StreamingResponseBody> result = databasesController.getDatabases("json", null).join();
 
         // Assert
         assertEquals(401, result.getStatusCode().value());
-        assertTrue(result.getBody().contains("MarkLogic returned status: 401"));
+        assertTrue(bodyAsString(result).contains("MarkLogic returned status: 401"));
     }
 
     @Test
     void testGetDatabases_Exception() throws Exception {
         // Arrange
-        when(databaseClient.getClientImplementation()).thenReturn(okHttpClient);
         when(okHttpClient.newCall(any(Request.class))).thenReturn(call);
         when(call.execute()).thenThrow(new RuntimeException("Network error"));
 
         // Act
-        ResponseEntity<String> result = databasesController.getDatabases("json", null);
+        ResponseEntity<StreamingResponseBody> result = databasesController.getDatabases("json", null).join();
 
         // Assert
         assertEquals(502, result.getStatusCode().value());
-        assertTrue(result.getBody().contains("Failed to proxy to MarkLogic: Network error"));
+        assertTrue(bodyAsString(result).contains("Failed to proxy to MarkLogic: Network error"));
     }
 
     @Test
@@ -128,86 +132,155 @@ class DatabasesControllerTest {
         // Arrange
         String mockJson = "{\"database-properties\":{\"database-name\":\"Documents\",\"enabled\":true}}";
 
-        when(databaseClient.getClientImplementation()).thenReturn(okHttpClient);
         when(okHttpClient.newCall(any(Request.class))).thenReturn(call);
         when(call.execute()).thenReturn(response);
         when(response.isSuccessful()).thenReturn(true);
         when(response.body()).thenReturn(responseBody);
-        when(responseBody.string()).thenReturn(mockJson);
+        when(responseBody.source()).thenReturn(source(mockJson));
 
         // Act
-        ResponseEntity<String> result = databasesController.getDatabaseProperties("Documents", "json");
+        ResponseEntity<StreamingResponseBody> result = databasesController.getDatabaseProperties("Documents", "json").join();
 
         // Assert
         assertEquals(200, result.getStatusCode().value());
         assertEquals(MediaType.APPLICATION_JSON, result.getHeaders().getContentType());
-        assertEquals(mockJson, result.getBody());
+        assertEquals(mockJson, bodyAsString(result));
 
-        verify(databaseClient).getClientImplementation();
         verify(okHttpClient).newCall(any(Request.class));
         verify(call).execute();
     }
 
+    @Test
+    void testGetDatabaseProperties_NotModified() throws Exception {
+        // Arrange
+        String mockJson = "{\"database-properties\":{\"database-name\":\"Documents\",\"enabled\":true}}";
+        String etag = "W/\"" + ByteString.encodeUtf8(mockJson).sha256().hex() + "\"";
+        MockHttpServletRequest servletRequest = new MockHttpServletRequest();
+        servletRequest.addHeader("If-None-Match", etag);
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(servletRequest));
+
+        when(okHttpClient.newCall(any(Request.class))).thenReturn(call);
+        when(call.execute()).thenReturn(response);
+        when(response.isSuccessful()).thenReturn(true);
+        when(response.body()).thenReturn(responseBody);
+        when(responseBody.source()).thenReturn(source(mockJson));
+
+        try {
+            // Act
+            ResponseEntity<StreamingResponseBody> result = databasesController.getDatabaseProperties("Documents", "json").join();
+
+            // Assert
+            assertEquals(304, result.getStatusCode().value());
+            assertEquals(etag, result.getHeaders().getETag());
+            assertNull(result.getBody());
+            verify(response).close();
+        } finally {
+            RequestContextHolder.resetRequestAttributes();
+        }
+    }
+
     @Test
     void testGetDatabaseProperties_XmlFormat() throws Exception {
         // Arrange
         String mockXml = "<database-properties><database-name>Documents</database-name></database-properties>";
 
-        when(databaseClient.getClientImplementation()).thenReturn(okHttpClient);
         when(okHttpClient.newCall(any(Request.class))).thenReturn(call);
         when(call.execute()).thenReturn(response);
         when(response.isSuccessful()).thenReturn(true);
         when(response.body()).thenReturn(responseBody);
-        when(responseBody.string()).thenReturn(mockXml);
+        when(responseBody.source()).thenReturn(source(mockXml));
 
         // Act
-        ResponseEntity<String> result = databasesController.getDatabaseProperties("Documents", "xml");
+        ResponseEntity<StreamingResponseBody> result = databasesController.getDatabaseProperties("Documents", "xml").join();
 
         // Assert
         assertEquals(200, result.getStatusCode().value());
         assertEquals(MediaType.APPLICATION_XML, result.getHeaders().getContentType());
-        assertEquals(mockXml, result.getBody());
+        assertEquals(mockXml, bodyAsString(result));
     }
 
     @Test
     void testGetDatabaseProperties_InvalidFormat() {
         // Act
-        ResponseEntity<String> result = databasesController.getDatabaseProperties("Documents", "invalid");
+        ResponseEntity<StreamingResponseBody> result = databasesController.getDatabaseProperties("Documents", "invalid").join();
 
         // Assert
         assertEquals(400, result.getStatusCode().value());
-        assertTrue(result.getBody().contains("Invalid format parameter. Must be 'json' or 'xml'"));
+        assertTrue(bodyAsString(result).contains("Invalid format parameter. Must be 'json' or 'xml'"));
     }
 
     @Test
     void testGetDatabaseProperties_MarkLogicError() throws Exception {
         // Arrange
-        when(databaseClient.getClientImplementation()).thenReturn(okHttpClient);
         when(okHttpClient.newCall(any(Request.class))).thenReturn(call);
         when(call.execute()).thenReturn(response);
         when(response.isSuccessful()).thenReturn(false);
         when(response.code()).thenReturn(404);
 
         // Act
-        ResponseEntity<String> result = databasesController.getDatabaseProperties("NonExistent", "json");
+        ResponseEntity<StreamingResponseBody> result = databasesController.getDatabaseProperties("NonExistent", "json").join();
 
         // Assert
         assertEquals(404, result.getStatusCode().value());
-        assertTrue(result.getBody().contains("MarkLogic returned status: 404"));
+        assertTrue(bodyAsString(result).contains("MarkLogic returned status: 404"));
     }
 
     @Test
     void testGetDatabaseProperties_Exception() throws Exception {
         // Arrange
-        when(databaseClient.getClientImplementation()).thenReturn(okHttpClient);
         when(okHttpClient.newCall(any(Request.class))).thenReturn(call);
         when(call.execute()).thenThrow(new RuntimeException("Network error"));
 
         // Act
-        ResponseEntity<String> result = databasesController.getDatabaseProperties("Documents", "json");
+        ResponseEntity<StreamingResponseBody> result = databasesController.getDatabaseProperties("Documents", "json").join();
+
+        // Assert
+        assertEquals(502, result.getStatusCode().value());
+        assertTrue(bodyAsString(result).contains("Failed to proxy to MarkLogic: Network error"));
+    }
+
+    @Test
+    void testGetDatabases_AsyncMode() throws Exception {
+        // Arrange
+        String mockJson = "{\"database-default-list\":{}}";
+        ReflectionTestUtils.setField(databasesController, "asyncEnabled", true);
+
+        when(okHttpClient.newCall(any(Request.class))).thenReturn(call);
+        when(response.isSuccessful()).thenReturn(true);
+        when(response.body()).thenReturn(responseBody);
+        when(responseBody.source()).thenReturn(source(mockJson));
+
+        // Act
+        CompletableFuture<ResponseEntity<StreamingResponseBody>> future = databasesController.getDatabases("json", null);
+
+        // Assert - nothing is returned until the OkHttp callback fires
+        ArgumentCaptor<Callback> callback = ArgumentCaptor.forClass(Callback.class);
+        verify(call).enqueue(callback.capture());
+        verify(call, never()).execute();
+        assertFalse(future.isDone());
+
+        callback.getValue().onResponse(call, response);
+
+        ResponseEntity<StreamingResponseBody> result = future.join();
+        assertEquals(200, result.getStatusCode().value());
+        assertEquals(mockJson, bodyAsString(result));
+    }
+
+    @Test
+    void testGetDatabases_AsyncModeFailure() {
+        // Arrange
+        ReflectionTestUtils.setField(databasesController, "asyncEnabled", true);
+        when(okHttpClient.newCall(any(Request.class))).thenReturn(call);
+
+        // Act
+        CompletableFuture<ResponseEntity<StreamingResponseBody>> future = databasesController.getDatabases("json", null);
+        ArgumentCaptor<Callback> callback = ArgumentCaptor.forClass(Callback.class);
+        verify(call).enqueue(callback.capture());
+        callback.getValue().onFailure(call, new IOException("Connection reset"));
 
         // Assert
+        ResponseEntity<StreamingResponseBody> result = future.join();
         assertEquals(502, result.getStatusCode().value());
-        assertTrue(result.getBody().contains("Failed to proxy to MarkLogic: Network error"));
+        assertTrue(bodyAsString(result).contains("Failed to proxy to MarkLogic: Connection reset"));
     }
 }
@@ -1,27 +1,28 @@
 package org.billFarber.marklogicadminproxy;
 
-import com.marklogic.client.DatabaseClient;
 import okhttp3.*;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
 
+import static org.billFarber.marklogicadminproxy.ResponseBodies.bodyAsString;
+import static org.billFarber.marklogicadminproxy.ResponseBodies.source;
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.*;
 
 class ForestsControllerTest {
 
-    @Mock
-    private DatabaseClient databaseClient;
-
     @Mock
     private OkHttpClient okHttpClient;
 
@@ -46,7 +47,6 @@ class ForestsControllerTest {
         ReflectionTestUtils.setField(forestsController, "marklogicSchema", "http");
 
         // Set up the mock chain
-        when(databaseClient.getClientImplementation()).thenReturn(okHttpClient);
         when(okHttpClient.newCall(any(Request.class))).thenReturn(call);
     }
 
@@ -59,17 +59,16 @@ class ForestsControllerTest {
         when(response.isSuccessful()).thenReturn(true);
         when(response.body()).thenReturn(responseBody);
         when(response.header("Content-Type", "application/json")).thenReturn("application/json");
-        when(responseBody.string()).thenReturn(expectedResponse);
+        when(responseBody.source()).thenReturn(source(expectedResponse));
 
         // Act
-        ResponseEntity<String> result = forestsController.getForests("json", null, null, null, null, null);
+        ResponseEntity<StreamingResponseBody> result = forestsController.getForests("json", null, null, null, null, null).join();
 
         // Assert
         assertEquals(HttpStatus.OK, result.getStatusCode());
-        assertEquals(expectedResponse, result.getBody());
+        assertEquals(expectedResponse, bodyAsString(result));
         assertEquals("application/json", result.getHeaders().getFirst("Content-Type"));
 
-        verify(databaseClient).getClientImplementation();
         verify(okHttpClient).newCall(any(Request.class));
         verify(call).execute();
         verify(response).isSuccessful();
@@ -84,16 +83,15 @@ class ForestsControllerTest {
         when(response.isSuccessful()).thenReturn(true);
         when(response.body()).thenReturn(responseBody);
         when(response.header("Content-Type", "application/json")).thenReturn("application/json");
-        when(responseBody.string()).thenReturn(expectedResponse);
+        when(responseBody.source()).thenReturn(source(expectedResponse));
 
         // Act
-        ResponseEntity<String> result = forestsController.getForests("json", "default", null, null, null, null);
+        ResponseEntity<StreamingResponseBody> result = forestsController.getForests("json", "default", null, null, null, null).join();
 
         // Assert
         assertEquals(HttpStatus.OK, result.getStatusCode());
-        assertEquals(expectedResponse, result.getBody());
+        assertEquals(expectedResponse, bodyAsString(result));
 
-        verify(databaseClient).getClientImplementation();
         verify(okHttpClient).newCall(any(Request.class));
     }
 
@@ -109,13 +107,12 @@ class ForestsControllerTest {
         when(responseBody.string()).thenReturn(errorResponse);
 
         // Act
-        ResponseEntity<String> result = forestsController.getForests(null, null, null, null, null, null);
+        ResponseEntity<StreamingResponseBody> result = forestsController.getForests(null, null, null, null, null, null).join();
 
         // Assert
         assertEquals(HttpStatus.NOT_FOUND, result.getStatusCode());
-        assertEquals(errorResponse, result.getBody());
+        assertEquals(errorResponse, bodyAsString(result));
 
-        verify(databaseClient).getClientImplementation();
         verify(okHttpClient).newCall(any(Request.class));
         verify(call).execute();
     }
@@ -126,14 +123,13 @@ class ForestsControllerTest {
         when(call.execute()).thenThrow(new IOException("Connection failed"));
 
         // Act
-        ResponseEntity<String> result = forestsController.getForests(null, null, null, null, null, null);
+        ResponseEntity<StreamingResponseBody> result = forestsController.getForests(null, null, null, null, null, null).join();
 
         // Assert
         assertEquals(HttpStatus.INTERNAL_SERVER_ERROR, result.getStatusCode());
-        assertTrue(result.getBody().contains("Error communicating with MarkLogic"));
-        assertTrue(result.getBody().contains("Connection failed"));
+        assertTrue(bodyAsString(result).contains("Error communicating with MarkLogic"));
+        assertTrue(bodyAsString(result).contains("Connection failed"));
 
-        verify(databaseClient).getClientImplementation();
         verify(okHttpClient).newCall(any(Request.class));
         verify(call).execute();
     }
@@ -145,13 +141,12 @@ class ForestsControllerTest {
         when(response.body()).thenReturn(null);
 
         // Act
-        ResponseEntity<String> result = forestsController.getForests(null, null, null, null, null, null);
+        ResponseEntity<StreamingResponseBody> result = forestsController.getForests(null, null, null, null, null, null).join();
 
         // Assert assertEquals(HttpStatus.INTERNAL_SERVER_ERROR,
         // result.getStatusCode());
-        assertEquals("No response from MarkLogic server", result.getBody());
+        assertEquals("No response from MarkLogic server", bodyAsString(result));
 
-        verify(databaseClient).getClientImplementation();
         verify(okHttpClient).newCall(any(Request.class));
         verify(call).execute();
     }
@@ -164,47 +159,46 @@ class ForestsControllerTest {
         when(response.isSuccessful()).thenReturn(true);
         when(response.body()).thenReturn(responseBody);
         when(response.header("Content-Type", "application/json")).thenReturn("application/json");
-        when(responseBody.string()).thenReturn(expectedResponse);
+        when(responseBody.source()).thenReturn(source(expectedResponse));
 
         // Act
-        ResponseEntity<String> result = forestsController.getForests(null, null, null, null, null, null);
+        ResponseEntity<StreamingResponseBody> result = forestsController.getForests(null, null, null, null, null, null).join();
 
         // Assert
         assertEquals(HttpStatus.OK, result.getStatusCode());
-        assertEquals(expectedResponse, result.getBody());
+        assertEquals(expectedResponse, bodyAsString(result));
 
-        verify(databaseClient).getClientImplementation();
         verify(okHttpClient).newCall(any(Request.class));
     }
 
     @Test
     void testGetForestsInvalidFormatParameter() {
         // Act
-        ResponseEntity<String> result = forestsController.getForests("invalid", null, null, null, null, null);
+        ResponseEntity<StreamingResponseBody> result = forestsController.getForests("invalid", null, null, null, null, null).join();
 
         // Assert
         assertEquals(HttpStatus.BAD_REQUEST, result.getStatusCode());
-        assertTrue(result.getBody().contains("Invalid format parameter"));
+        assertTrue(bodyAsString(result).contains("Invalid format parameter"));
     }
 
     @Test
     void testGetForestsInvalidViewParameter() {
         // Act
-        ResponseEntity<String> result = forestsController.getForests("json", "invalid", null, null, null, null);
+        ResponseEntity<StreamingResponseBody> result = forestsController.getForests("json", "invalid", null, null, null, null).join();
 
         // Assert
         assertEquals(HttpStatus.BAD_REQUEST, result.getStatusCode());
-        assertTrue(result.getBody().contains("Invalid view parameter"));
+        assertTrue(bodyAsString(result).contains("Invalid view parameter"));
     }
 
     @Test
     void testGetForestsInvalidFullrefsParameter() {
         // Act
-        ResponseEntity<String> result = forestsController.getForests("json", null, null, null, null, "invalid");
+        ResponseEntity<StreamingResponseBody> result = forestsController.getForests("json", null, null, null, null, "invalid").join();
 
         // Assert
         assertEquals(HttpStatus.BAD_REQUEST, result.getStatusCode());
-        assertTrue(result.getBody().contains("Invalid fullrefs parameter"));
+        assertTrue(bodyAsString(result).contains("Invalid fullrefs parameter"));
     }
 
     @Test
@@ -216,17 +210,16 @@ class ForestsControllerTest {
         when(response.isSuccessful()).thenReturn(true);
         when(response.body()).thenReturn(responseBody);
         when(response.header("Content-Type", "application/json")).thenReturn("application/json");
-        when(responseBody.string()).thenReturn(expectedResponse);
+        when(responseBody.source()).thenReturn(source(expectedResponse));
 
         // Act
-        ResponseEntity<String> result = forestsController.getForestProperties("Documents", "json");
+        ResponseEntity<StreamingResponseBody> result = forestsController.getForestProperties("Documents", "json").join();
 
         // Assert
         assertEquals(HttpStatus.OK, result.getStatusCode());
-        assertEquals(expectedResponse, result.getBody());
+        assertEquals(expectedResponse, bodyAsString(result));
         assertEquals("application/json", result.getHeaders().getFirst("Content-Type"));
 
-        verify(databaseClient).getClientImplementation();
         verify(okHttpClient).newCall(any(Request.class));
         verify(call).execute();
         verify(response).isSuccessful();
@@ -241,17 +234,16 @@ class ForestsControllerTest {
         when(response.isSuccessful()).thenReturn(true);
         when(response.body()).thenReturn(responseBody);
         when(response.header("Content-Type", "application/json")).thenReturn("application/xml");
-        when(responseBody.string()).thenReturn(expectedResponse);
+        when(responseBody.source()).thenReturn(source(expectedResponse));
 
         // Act
-        ResponseEntity<String> result = forestsController.getForestProperties("Documents", "xml");
+        ResponseEntity<StreamingResponseBody> result = forestsController.getForestProperties("Documents", "xml").join();
 
         // Assert
         assertEquals(HttpStatus.OK, result.getStatusCode());
-        assertEquals(expectedResponse, result.getBody());
+        assertEquals(expectedResponse, bodyAsString(result));
         assertEquals("application/xml", result.getHeaders().getFirst("Content-Type"));
 
-        verify(databaseClient).getClientImplementation();
         verify(okHttpClient).newCall(any(Request.class));
         verify(call).execute();
         verify(response).isSuccessful();
@@ -260,11 +252,11 @@ class ForestsControllerTest {
     @Test
     void testGetForestPropertiesWithEmptyFormat() {
         // Act - Test with empty string format (should be invalid)
-        ResponseEntity<String> result = forestsController.getForestProperties("Security", "");
+        ResponseEntity<StreamingResponseBody> result = forestsController.getForestProperties("Security", "").join();
 
         // Assert
         assertEquals(HttpStatus.BAD_REQUEST, result.getStatusCode());
-        assertTrue(result.getBody().contains("Invalid format parameter"));
+        assertTrue(bodyAsString(result).contains("Invalid format parameter"));
     }
 
     @Test
@@ -276,27 +268,26 @@ class ForestsControllerTest {
         when(response.isSuccessful()).thenReturn(true);
         when(response.body()).thenReturn(responseBody);
         when(response.header("Content-Type", "application/json")).thenReturn("application/json");
-        when(responseBody.string()).thenReturn(expectedResponse);
+        when(responseBody.source()).thenReturn(source(expectedResponse));
 
         // Act - Test null format (should default to json)
-        ResponseEntity<String> result = forestsController.getForestProperties("Security", null);
+        ResponseEntity<StreamingResponseBody> result = forestsController.getForestProperties("Security", null).join();
 
         // Assert
         assertEquals(HttpStatus.OK, result.getStatusCode());
-        assertEquals(expectedResponse, result.getBody());
+        assertEquals(expectedResponse, bodyAsString(result));
 
-        verify(databaseClient).getClientImplementation();
         verify(okHttpClient).newCall(any(Request.class));
     }
 
     @Test
     void testGetForestPropertiesInvalidFormat() {
         // Act
-        ResponseEntity<String> result = forestsController.getForestProperties("Documents", "invalid");
+        ResponseEntity<StreamingResponseBody> result = forestsController.getForestProperties("Documents", "invalid").join();
 
         // Assert
         assertEquals(HttpStatus.BAD_REQUEST, result.getStatusCode());
-        assertTrue(result.getBody().contains("Invalid format parameter. Must be 'json' or 'xml'"));
+        assertTrue(bodyAsString(result).contains("Invalid format parameter. Must be 'json' or 'xml'"));
     }
 
     @Test
@@ -311,13 +302,12 @@ class ForestsControllerTest {
         when(responseBody.string()).thenReturn(errorResponse);
 
         // Act
-        ResponseEntity<String> result = forestsController.getForestProperties("NonExistent", "json");
+        ResponseEntity<StreamingResponseBody> result = forestsController.getForestProperties("NonExistent", "json").join();
 
         // Assert
         assertEquals(HttpStatus.NOT_FOUND, result.getStatusCode());
-        assertEquals(errorResponse, result.getBody());
+        assertEquals(errorResponse, bodyAsString(result));
 
-        verify(databaseClient).getClientImplementation();
         verify(okHttpClient).newCall(any(Request.class));
         verify(call).execute();
     }
@@ -328,14 +318,13 @@ class ForestsControllerTest {
         when(call.execute()).thenThrow(new IOException("Connection failed"));
 
         // Act
-        ResponseEntity<String> result = forestsController.getForestProperties("Documents", "json");
+        ResponseEntity<StreamingResponseBody> result = forestsController.getForestProperties("Documents", "json").join();
 
         // Assert
         assertEquals(HttpStatus.INTERNAL_SERVER_ERROR, result.getStatusCode());
-        assertTrue(result.getBody().contains("Error communicating with MarkLogic"));
-        assertTrue(result.getBody().contains("Connection failed"));
+        assertTrue(bodyAsString(result).contains("Error communicating with MarkLogic"));
+        assertTrue(bodyAsString(result).contains("Connection failed"));
 
-        verify(databaseClient).getClientImplementation();
         verify(okHttpClient).newCall(any(Request.class));
         verify(call).execute();
     }
@@ -347,13 +336,12 @@ class ForestsControllerTest {
         when(response.body()).thenReturn(null);
 
         // Act
-        ResponseEntity<String> result = forestsController.getForestProperties("Documents", "json");
+        ResponseEntity<StreamingResponseBody> result = forestsController.getForestProperties("Documents", "json").join();
 
         // Assert
         assertEquals(HttpStatus.INTERNAL_SERVER_ERROR, result.getStatusCode());
-        assertEquals("No response from MarkLogic server", result.getBody());
+        assertEquals("No response from MarkLogic server", bodyAsString(result));
 
-        verify(databaseClient).getClientImplementation();
         verify(okHttpClient).newCall(any(Request.class));
         verify(call).execute();
     }
@@ -364,15 +352,39 @@ class ForestsControllerTest {
         when(call.execute()).thenThrow(new RuntimeException("Unexpected error"));
 
         // Act
-        ResponseEntity<String> result = forestsController.getForestProperties("Documents", "json");
+        ResponseEntity<StreamingResponseBody> result = forestsController.getForestProperties("Documents", "json").join();
 
         // Assert
         assertEquals(HttpStatus.INTERNAL_SERVER_ERROR, result.getStatusCode());
-        assertTrue(result.getBody().contains("Unexpected error"));
-        assertTrue(result.getBody().contains("Unexpected error"));
+        assertTrue(bodyAsString(result).contains("Unexpected error"));
+        assertTrue(bodyAsString(result).contains("Unexpected error"));
 
-        verify(databaseClient).getClientImplementation();
         verify(okHttpClient).newCall(any(Request.class));
         verify(call).execute();
     }
+
+    @Test
+    void testGetForestPropertiesAsyncMode() throws IOException {
+        // Arrange
+        String expectedResponse = "{\"forest-properties\":{\"forest-name\":\"Documents\"}}";
+        ReflectionTestUtils.setField(forestsController, "asyncEnabled", true);
+
+        when(response.isSuccessful()).thenReturn(true);
+        when(response.body()).thenReturn(responseBody);
+        when(response.header("Content-Type", "application/json")).thenReturn("application/json");
+        when(responseBody.source()).thenReturn(source(expectedResponse));
+
+        // Act
+        CompletableFuture<ResponseEntity<StreamingResponseBody>> future = forestsController
+                .getForestProperties("Documents", "json");
+        ArgumentCaptor<Callback> callback = ArgumentCaptor.forClass(Callback.class);
+        verify(call).enqueue(callback.capture());
+        assertFalse(future.isDone());
+        callback.getValue().onResponse(call, response);
+
+        // Assert
+        ResponseEntity<StreamingResponseBody> result = future.join();
+        assertEquals(HttpStatus.OK, result.getStatusCode());
+        assertEquals(expectedResponse, bodyAsString(result));
+    }
 }
@@ -1,6 +1,5 @@
 package org.billFarber.marklogicadminproxy;
 
-import com.marklogic.client.DatabaseClient;
 import okhttp3.Call;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
@@ -14,16 +13,16 @@ import org.mockito.MockitoAnnotations;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import static org.billFarber.marklogicadminproxy.ResponseBodies.bodyAsString;
+import static org.billFarber.marklogicadminproxy.ResponseBodies.source;
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.*;
 
 class GroupsControllerTest {
 
-    @Mock
-    private DatabaseClient databaseClient;
-
     @Mock
     private OkHttpClient okHttpClient;
 
@@ -51,22 +50,20 @@ class GroupsControllerTest {
         // Arrange
         String mockJson = "{\"group-default-list\":{\"list-items\":{\"list-item\":[{\"nameref\":\"Default\"},{\"nameref\":\"Evaluator\"}]}}}";
 
-        when(databaseClient.getClientImplementation()).thenReturn(okHttpClient);
         when(okHttpClient.newCall(any(Request.class))).thenReturn(call);
         when(call.execute()).thenReturn(response);
         when(response.isSuccessful()).thenReturn(true);
         when(response.body()).thenReturn(responseBody);
-        when(responseBody.string()).thenReturn(mockJson);
+        when(responseBody.source()).thenReturn(source(mockJson));
 
         // Act
-        ResponseEntity<String> result = groupsController.getGroups("json", null);
+        ResponseEntity<StreamingResponseBody> result = groupsController.getGroups("json", null).join();
 
         // Assert
         assertEquals(200, result.getStatusCode().value());
         assertEquals(MediaType.APPLICATION_JSON, result.getHeaders().getContentType());
-        assertEquals(mockJson, result.getBody());
+        assertEquals(mockJson, bodyAsString(result));
 
-        verify(databaseClient).getClientImplementation();
         verify(okHttpClient).newCall(any(Request.class));
         verify(call).execute();
     }
@@ -76,19 +73,18 @@ class GroupsControllerTest {
         // Arrange
         String mockJson = "{\"group-default-list\":{\"list-items\":{\"list-item\":[{\"nameref\":\"Default\"}]}}}";
 
-        when(databaseClient.getClientImplementation()).thenReturn(okHttpClient);
         when(okHttpClient.newCall(any(Request.class))).thenReturn(call);
         when(call.execute()).thenReturn(response);
         when(response.isSuccessful()).thenReturn(true);
         when(response.body()).thenReturn(responseBody);
-        when(responseBody.string()).thenReturn(mockJson);
+        when(responseBody.source()).thenReturn(source(mockJson));
 
         // Act
-        ResponseEntity<String> result = groupsController.getGroups("json", "schema");
+        ResponseEntity<StreamingResponseBody> result = groupsController.getGroups("json", "schema").join();
 
         // Assert
         assertEquals(200, result.getStatusCode().value());
-        assertEquals(mockJson, result.getBody());
+        assertEquals(mockJson, bodyAsString(result));
     }
 
     @Test
@@ -96,20 +92,19 @@ class GroupsControllerTest {
         // Arrange
         String mockXml = "<group-default-list><list-items><list-item><nameref>Default</nameref></list-item></list-items></group-default-list>";
 
-        when(databaseClient.getClientImplementation()).thenReturn(okHttpClient);
         when(okHttpClient.newCall(any(Request.class))).thenReturn(call);
         when(call.execute()).thenReturn(response);
         when(response.isSuccessful()).thenReturn(true);
         when(response.body()).thenReturn(responseBody);
-        when(responseBody.string()).thenReturn(mockXml);
+        when(responseBody.source()).thenReturn(source(mockXml));
 
         // Act
-        ResponseEntity<String> result = groupsController.getGroups("xml", null);
+        ResponseEntity<StreamingResponseBody> result = groupsController.getGroups("xml", null).join();
 
         // Assert
         assertEquals(200, result.getStatusCode().value());
         assertEquals(MediaType.APPLICATION_XML, result.getHeaders().getContentType());
-        assertEquals(mockXml, result.getBody());
+        assertEquals(mockXml, bodyAsString(result));
     }
 
     @Test
@@ -117,73 +112,70 @@ class GroupsControllerTest {
         // Arrange
         String mockHtml = "<html><body><h1>Groups</h1></body></html>";
 
-        when(databaseClient.getClientImplementation()).thenReturn(okHttpClient);
         when(okHttpClient.newCall(any(Request.class))).thenReturn(call);
         when(call.execute()).thenReturn(response);
         when(response.isSuccessful()).thenReturn(true);
         when(response.body()).thenReturn(responseBody);
-        when(responseBody.string()).thenReturn(mockHtml);
+        when(responseBody.source()).thenReturn(source(mockHtml));
 
         // Act
-        ResponseEntity<String> result = groupsController.getGroups("html", null);
+        ResponseEntity<StreamingResponseBody> result = groupsController.getGroups("html", null).join();
 
         // Assert
         assertEquals(200, result.getStatusCode().value());
         assertEquals(MediaType.TEXT_HTML, result.getHeaders().getContentType());
-        assertEquals(mockHtml, result.getBody());
+        assertEquals(mockHtml, bodyAsString(result));
     }
 
     @Test
     void testGetGroups_InvalidFormat() {
         // Act
-        ResponseEntity<String> result = groupsController.getGroups("invalid", null);
+        ResponseEntity<StreamingResponseBody> result = groupsController.getGroups("invalid", null).join();
 
         // Assert
         assertEquals(400, result.getStatusCode().value());
-        assertTrue(result.getBody().contains("Invalid format parameter"));
+        assertTrue(bodyAsString(result).contains("Invalid format parameter"));
     }
 
     @Test
     void testGetGroups_InvalidView() {
         // Act
-        ResponseEntity<String> result = groupsController.getGroups("json", "invalid");
+        ResponseEntity<StreamingResponseBody> result = groupsController.getGroups("json", "invalid").join();
 
         // Assert
         assertEquals(400, result.getStatusCode().value());
-        assertTrue(result.getBody().contains("Invalid view parameter"));
+        assertTrue(bodyAsString(result).contains("Invalid view parameter"));
     }
 
     @Test
     void testGetGroups_MarkLogicError() throws Exception {
         // Arrange
-        when(databaseClient.getClientImplementation()).thenReturn(okHttpClient);
         when(okHttpClient.newCall(any(Request.class))).thenReturn(call);
         when(call.execute()).thenReturn(response);
         when(response.isSuccessful()).thenReturn(false);
         when(response.code()).thenReturn(404);
 
         // Act
-        ResponseEntity<String> result = groupsController.getGroups("json", null);
+        ResponseEntity<StreamingResponseBody> result = groupsController.getGroups("json", null).join();
 
         // Assert
         assertEquals(404, result.getStatusCode().value());
-        assertTrue(result.getBody().contains("MarkLogic returned status: 404"));
+        assertTrue(bodyAsString(result).contains("MarkLogic returned status: 404"));
     }
 
     @Test
     void testGetGroups_NetworkException() throws Exception {
         // Arrange
-        when(databaseClient.getClientImplementation()).thenReturn(okHttpClient);
         when(okHttpClient.newCall(any(Request.class))).thenReturn(call);
         when(call.execute()).thenThrow(new RuntimeException("Network error"));
 
         // Act
-        ResponseEntity<String> result = groupsController.getGroups("json", null);
+        ResponseEntity<StreamingResponseBody> result = groupsController.getGroups("json", null).join();
 
         // Assert
         assertEquals(502, result.getStatusCode().value());
-        assertTrue(result.getBody().contains("Failed to proxy to MarkLogic"));
-        assertTrue(result.getBody().contains("Network error"));
+        assertTrue(bodyAsString(result).contains("Failed to proxy to MarkLogic"));
+        assertTrue(bodyAsString(result).contains("Network error"));
     }
 
     @Test
@@ -191,22 +183,20 @@ class GroupsControllerTest {
         // Arrange
         String mockJson = "{\"group-properties\":{\"group-name\":\"Default\",\"cache-sizing\":\"automatic\"}}";
 
-        when(databaseClient.getClientImplementation()).thenReturn(okHttpClient);
         when(okHttpClient.newCall(any(Request.class))).thenReturn(call);
         when(call.execute()).thenReturn(response);
         when(response.isSuccessful()).thenReturn(true);
         when(response.body()).thenReturn(responseBody);
-        when(responseBody.string()).thenReturn(mockJson);
+        when(responseBody.source()).thenReturn(source(mockJson));
 
         // Act
-        ResponseEntity<String> result = groupsController.getGroupProperties("Default", "json");
+        ResponseEntity<StreamingResponseBody> result = groupsController.getGroupProperties("Default", "json").join();
 
         // Assert
         assertEquals(200, result.getStatusCode().value());
         assertEquals(MediaType.APPLICATION_JSON, result.getHeaders().getContentType());
-        assertEquals(mockJson, result.getBody());
+        assertEquals(mockJson, bodyAsString(result));
 
-        verify(databaseClient).getClientImplementation();
         verify(okHttpClient).newCall(any(Request.class));
         verify(call).execute();
     }
@@ -216,63 +206,60 @@ class GroupsControllerTest {
         // Arrange
         String mockXml = "<group-properties><group-name>Default</group-name><cache-sizing>automatic</cache-sizing></group-properties>";
 
-        when(databaseClient.getClientImplementation()).thenReturn(okHttpClient);
         when(okHttpClient.newCall(any(Request.class))).thenReturn(call);
         when(call.execute()).thenReturn(response);
         when(response.isSuccessful()).thenReturn(true);
         when(response.body()).thenReturn(responseBody);
-        when(responseBody.string()).thenReturn(mockXml);
+        when(responseBody.source()).thenReturn(source(mockXml));
 
         // Act
-        ResponseEntity<String> result = groupsController.getGroupProperties("Default", "xml");
+        ResponseEntity<StreamingResponseBody> result = groupsController.getGroupProperties("Default", "xml").join();
 
         // Assert
         assertEquals(200, result.getStatusCode().value());
         assertEquals(MediaType.APPLICATION_XML, result.getHeaders().getContentType());
-        assertEquals(mockXml, result.getBody());
+        assertEquals(mockXml, bodyAsString(result));
     }
 
     @Test
     void testGetGroupProperties_InvalidFormat() {
         // Act
-        ResponseEntity<String> result = groupsController.getGroupProperties("Default", "invalid");
+        ResponseEntity<StreamingResponseBody> result = groupsController.getGroupProperties("Default", "invalid").join();
 
         // Assert
         assertEquals(400, result.getStatusCode().value());
-        assertTrue(result.getBody().contains("Invalid format parameter"));
+        assertTrue(bodyAsString(result).contains("Invalid format parameter"));
     }
 
     @Test
     void testGetGroupProperties_MarkLogicError() throws Exception {
         // Arrange
-        when(databaseClient.getClientImplementation()).thenReturn(okHttpClient);
         when(okHttpClient.newCall(any(Request.class))).thenReturn(call);
         when(call.execute()).thenReturn(response);
         when(response.isSuccessful()).thenReturn(false);
         when(response.code()).thenReturn(404);
 
         // Act
-        ResponseEntity<String> result = groupsController.getGroupProperties("NonExistent", "json");
+        ResponseEntity<StreamingResponseBody> result = groupsController.getGroupProperties("NonExistent", "json").join();
 
         // Assert
         assertEquals(404, result.getStatusCode().value());
-        assertTrue(result.getBody().contains("MarkLogic returned status: 404"));
+        assertTrue(bodyAsString(result).contains("MarkLogic returned status: 404"));
     }
 
     @Test
     void testGetGroupProperties_NetworkException() throws Exception {
         // Arrange
-        when(databaseClient.getClientImplementation()).thenReturn(okHttpClient);
         when(okHttpClient.newCall(any(Request.class))).thenReturn(call);
         when(call.execute()).thenThrow(new RuntimeException("Network error"));
 
         // Act
-        ResponseEntity<String> result = groupsController.getGroupProperties("Default", "json");
+        ResponseEntity<StreamingResponseBody> result = groupsController.getGroupProperties("Default", "json").join();
 
         // Assert
         assertEquals(502, result.getStatusCode().value());
-        assertTrue(result.getBody().contains("Failed to proxy to MarkLogic"));
-        assertTrue(result.getBody().contains("Network error"));
+        assertTrue(bodyAsString(result).contains("Failed to proxy to MarkLogic"));
+        assertTrue(bodyAsString(result).contains("Network error"));
     }
 
     @Test
@@ -280,19 +267,18 @@ class GroupsControllerTest {
         // Arrange
         String mockJson = "{\"group-properties\":{\"group-name\":\"Default\"}}";
 
-        when(databaseClient.getClientImplementation()).thenReturn(okHttpClient);
         when(okHttpClient.newCall(any(Request.class))).thenReturn(call);
         when(call.execute()).thenReturn(response);
         when(response.isSuccessful()).thenReturn(true);
         when(response.body()).thenReturn(responseBody);
-        when(responseBody.string()).thenReturn(mockJson);
+        when(responseBody.source()).thenReturn(source(mockJson));
 
         // Act - No format parameter, should default to json
-        ResponseEntity<String> result = groupsController.getGroupProperties("Default", null);
+        ResponseEntity<StreamingResponseBody> result = groupsController.getGroupProperties("Default", null).join();
 
         // Assert
         assertEquals(200, result.getStatusCode().value());
         assertEquals(MediaType.APPLICATION_JSON, result.getHeaders().getContentType());
-        assertEquals(mockJson, result.getBody());
+        assertEquals(mockJson, bodyAsString(result));
     }
 }
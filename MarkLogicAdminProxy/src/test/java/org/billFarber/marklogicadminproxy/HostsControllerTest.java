@@ -1,6 +1,5 @@
 package org.billFarber.marklogicadminproxy;
 
-import com.marklogic.client.DatabaseClient;
 import okhttp3.Call;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
@@ -14,16 +13,16 @@ import org.mockito.MockitoAnnotations;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import static org.billFarber.marklogicadminproxy.ResponseBodies.bodyAsString;
+import static org.billFarber.marklogicadminproxy.ResponseBodies.source;
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.*;
 
 class HostsControllerTest {
 
-    @Mock
-    private DatabaseClient databaseClient;
-
     @Mock
     private OkHttpClient okHttpClient;
 
@@ -53,22 +52,20 @@ class HostsControllerTest {
         // Arrange
         String mockJson = "{\"host-default-list\":{\"list-items\":{\"list-item\":[{\"nameref\":\"host1\"},{\"nameref\":\"host2\"}]}}}";
 
-        when(databaseClient.getClientImplementation()).thenReturn(okHttpClient);
         when(okHttpClient.newCall(any(Request.class))).thenReturn(call);
         when(call.execute()).thenReturn(response);
         when(response.isSuccessful()).thenReturn(true);
         when(response.body()).thenReturn(responseBody);
-        when(responseBody.string()).thenReturn(mockJson);
+        when(responseBody.source()).thenReturn(source(mockJson));
 
         // Act
-        ResponseEntity<String> result = hostsController.getHosts(null, null, null);
+        ResponseEntity<StreamingResponseBody> result = hostsController.getHosts(null, null, null).join();
 
         // Assert
         assertEquals(200, result.getStatusCode().value());
         assertEquals(MediaType.APPLICATION_JSON, result.getHeaders().getContentType());
-        assertEquals(mockJson, result.getBody());
+        assertEquals(mockJson, bodyAsString(result));
 
-        verify(databaseClient).getClientImplementation();
         verify(okHttpClient).newCall(any(Request.class));
         verify(call).execute();
     }
@@ -78,20 +75,19 @@ class HostsControllerTest {
         // Arrange
         String mockJson = "{\"host-default-list\":{\"list-items\":{\"list-item\":[{\"nameref\":\"host1\"}]}}}";
 
-        when(databaseClient.getClientImplementation()).thenReturn(okHttpClient);
         when(okHttpClient.newCall(any(Request.class))).thenReturn(call);
         when(call.execute()).thenReturn(response);
         when(response.isSuccessful()).thenReturn(true);
         when(response.body()).thenReturn(responseBody);
-        when(responseBody.string()).thenReturn(mockJson);
+        when(responseBody.source()).thenReturn(source(mockJson));
 
         // Act
-        ResponseEntity<String> result = hostsController.getHosts("json", null, null);
+        ResponseEntity<StreamingResponseBody> result = hostsController.getHosts("json", null, null).join();
 
         // Assert
         assertEquals(200, result.getStatusCode().value());
         assertEquals(MediaType.APPLICATION_JSON, result.getHeaders().getContentType());
-        assertEquals(mockJson, result.getBody());
+        assertEquals(mockJson, bodyAsString(result));
     }
 
     @Test
@@ -99,20 +95,19 @@ class HostsControllerTest {
         // Arrange
         String mockXml = "<host-default-list><list-items><list-item><nameref>host1</nameref></list-item></list-items></host-default-list>";
 
-        when(databaseClient.getClientImplementation()).thenReturn(okHttpClient);
         when(okHttpClient.newCall(any(Request.class))).thenReturn(call);
         when(call.execute()).thenReturn(response);
         when(response.isSuccessful()).thenReturn(true);
         when(response.body()).thenReturn(responseBody);
-        when(responseBody.string()).thenReturn(mockXml);
+        when(responseBody.source()).thenReturn(source(mockXml));
 
         // Act
-        ResponseEntity<String> result = hostsController.getHosts("xml", null, null);
+        ResponseEntity<StreamingResponseBody> result = hostsController.getHosts("xml", null, null).join();
 
         // Assert
         assertEquals(200, result.getStatusCode().value());
         assertEquals(MediaType.APPLICATION_XML, result.getHeaders().getContentType());
-        assertEquals(mockXml, result.getBody());
+        assertEquals(mockXml, bodyAsString(result));
     }
 
     @Test
@@ -120,20 +115,19 @@ class HostsControllerTest {
         // Arrange
         String mockHtml = "<html><body><h1>Hosts List</h1></body></html>";
 
-        when(databaseClient.getClientImplementation()).thenReturn(okHttpClient);
         when(okHttpClient.newCall(any(Request.class))).thenReturn(call);
         when(call.execute()).thenReturn(response);
         when(response.isSuccessful()).thenReturn(true);
         when(response.body()).thenReturn(responseBody);
-        when(responseBody.string()).thenReturn(mockHtml);
+        when(responseBody.source()).thenReturn(source(mockHtml));
 
         // Act
-        ResponseEntity<String> result = hostsController.getHosts("html", null, null);
+        ResponseEntity<StreamingResponseBody> result = hostsController.getHosts("html", null, null).join();
 
         // Assert
         assertEquals(200, result.getStatusCode().value());
         assertEquals(MediaType.TEXT_HTML, result.getHeaders().getContentType());
-        assertEquals(mockHtml, result.getBody());
+        assertEquals(mockHtml, bodyAsString(result));
     }
 
     @Test
@@ -141,19 +135,18 @@ class HostsControllerTest {
         // Arrange
         String mockJson = "{\"host-default-list\":{\"list-items\":{\"list-item\":[{\"nameref\":\"host1\"}]}}}";
 
-        when(databaseClient.getClientImplementation()).thenReturn(okHttpClient);
         when(okHttpClient.newCall(any(Request.class))).thenReturn(call);
         when(call.execute()).thenReturn(response);
         when(response.isSuccessful()).thenReturn(true);
         when(response.body()).thenReturn(responseBody);
-        when(responseBody.string()).thenReturn(mockJson);
+        when(responseBody.source()).thenReturn(source(mockJson));
 
         // Act
-        ResponseEntity<String> result = hostsController.getHosts("json", "Default", null);
+        ResponseEntity<StreamingResponseBody> result = hostsController.getHosts("json", "Default", null).join();
 
         // Assert
         assertEquals(200, result.getStatusCode().value());
-        assertEquals(mockJson, result.getBody());
+        assertEquals(mockJson, bodyAsString(result));
     }
 
     @Test
@@ -161,19 +154,18 @@ class HostsControllerTest {
         // Arrange
         String mockJson = "{\"host-status-list\":{\"list-items\":{\"list-item\":[{\"nameref\":\"host1\"}]}}}";
 
-        when(databaseClient.getClientImplementation()).thenReturn(okHttpClient);
         when(okHttpClient.newCall(any(Request.class))).thenReturn(call);
         when(call.execute()).thenReturn(response);
         when(response.isSuccessful()).thenReturn(true);
         when(response.body()).thenReturn(responseBody);
-        when(responseBody.string()).thenReturn(mockJson);
+        when(responseBody.source()).thenReturn(source(mockJson));
 
         // Act
-        ResponseEntity<String> result = hostsController.getHosts("json", null, "status");
+        ResponseEntity<StreamingResponseBody> result = hostsController.getHosts("json", null, "status").join();
 
         // Assert
         assertEquals(200, result.getStatusCode().value());
-        assertEquals(mockJson, result.getBody());
+        assertEquals(mockJson, bodyAsString(result));
     }
 
     @Test
@@ -181,70 +173,67 @@ class HostsControllerTest {
         // Arrange
         String mockJson = "{\"host-metrics-list\":{\"list-items\":{\"list-item\":[{\"nameref\":\"host1\"}]}}}";
 
-        when(databaseClient.getClientImplementation()).thenReturn(okHttpClient);
         when(okHttpClient.newCall(any(Request.class))).thenReturn(call);
         when(call.execute()).thenReturn(response);
         when(response.isSuccessful()).thenReturn(true);
         when(response.body()).thenReturn(responseBody);
-        when(responseBody.string()).thenReturn(mockJson);
+        when(responseBody.source()).thenReturn(source(mockJson));
 
         // Act
-        ResponseEntity<String> result = hostsController.getHosts("json", "Default", "metrics");
+        ResponseEntity<StreamingResponseBody> result = hostsController.getHosts("json", "Default", "metrics").join();
 
         // Assert
         assertEquals(200, result.getStatusCode().value());
-        assertEquals(mockJson, result.getBody());
+        assertEquals(mockJson, bodyAsString(result));
     }
 
     @Test
     void testGetHosts_InvalidFormat() {
         // Act
-        ResponseEntity<String> result = hostsController.getHosts("invalid", null, null);
+        ResponseEntity<StreamingResponseBody> result = hostsController.getHosts("invalid", null, null).join();
 
         // Assert
         assertEquals(400, result.getStatusCode().value());
-        assertTrue(result.getBody().contains("Invalid format parameter. Must be 'html', 'json', or 'xml'"));
+        assertTrue(bodyAsString(result).contains("Invalid format parameter. Must be 'html', 'json', or 'xml'"));
     }
 
     @Test
     void testGetHosts_InvalidView() {
         // Act
-        ResponseEntity<String> result = hostsController.getHosts("json", null, "invalid");
+        ResponseEntity<StreamingResponseBody> result = hostsController.getHosts("json", null, "invalid").join();
 
         // Assert
         assertEquals(400, result.getStatusCode().value());
         assertTrue(
-                result.getBody().contains("Invalid view parameter. Must be one of: schema, status, metrics, default"));
+                bodyAsString(result).contains("Invalid view parameter. Must be one of: schema, status, metrics, default"));
     }
 
     @Test
     void testGetHosts_ValidViewParameters() throws Exception {
         // Arrange
         String mockJson = "{\"host-list\":{}}";
-        when(databaseClient.getClientImplementation()).thenReturn(okHttpClient);
         when(okHttpClient.newCall(any(Request.class))).thenReturn(call);
         when(call.execute()).thenReturn(response);
         when(response.isSuccessful()).thenReturn(true);
         when(response.body()).thenReturn(responseBody);
-        when(responseBody.string()).thenReturn(mockJson);
+        when(responseBody.source()).thenAnswer(invocation -> source(mockJson));
 
         // Test all valid view values
         String[] validViews = { "schema", "status", "metrics", "default" };
 
         for (String view : validViews) {
             // Act
-            ResponseEntity<String> result = hostsController.getHosts("json", null, view);
+            ResponseEntity<StreamingResponseBody> result = hostsController.getHosts("json", null, view).join();
 
             // Assert
             assertEquals(200, result.getStatusCode().value());
-            assertEquals(mockJson, result.getBody());
+            assertEquals(mockJson, bodyAsString(result));
         }
     }
 
     @Test
     void testGetHosts_MarkLogicError() throws Exception {
         // Arrange
-        when(databaseClient.getClientImplementation()).thenReturn(okHttpClient);
         when(okHttpClient.newCall(any(Request.class))).thenReturn(call);
         when(call.execute()).thenReturn(response);
         when(response.isSuccessful()).thenReturn(false);
@@ -253,57 +242,54 @@ class HostsControllerTest {
         when(responseBody.string()).thenReturn("Unauthorized");
 
         // Act
-        ResponseEntity<String> result = hostsController.getHosts("json", null, null);
+        ResponseEntity<StreamingResponseBody> result = hostsController.getHosts("json", null, null).join();
 
         // Assert
         assertEquals(401, result.getStatusCode().value());
-        assertTrue(result.getBody().contains("MarkLogic returned status: 401"));
+        assertTrue(bodyAsString(result).contains("MarkLogic returned status: 401"));
     }
 
     @Test
     void testGetHosts_IOException() throws Exception {
         // Arrange
-        when(databaseClient.getClientImplementation()).thenReturn(okHttpClient);
         when(okHttpClient.newCall(any(Request.class))).thenReturn(call);
         when(call.execute()).thenThrow(new java.io.IOException("Network error"));
 
         // Act
-        ResponseEntity<String> result = hostsController.getHosts("json", null, null);
+        ResponseEntity<StreamingResponseBody> result = hostsController.getHosts("json", null, null).join();
 
         // Assert
         assertEquals(502, result.getStatusCode().value());
-        assertTrue(result.getBody().contains("Failed to proxy to MarkLogic: Network error"));
+        assertTrue(bodyAsString(result).contains("Failed to proxy to MarkLogic: Network error"));
     }
 
     @Test
     void testGetHosts_GeneralException() throws Exception {
         // Arrange
-        when(databaseClient.getClientImplementation()).thenReturn(okHttpClient);
         when(okHttpClient.newCall(any(Request.class))).thenReturn(call);
         when(call.execute()).thenThrow(new RuntimeException("Unexpected error"));
 
         // Act
-        ResponseEntity<String> result = hostsController.getHosts("json", null, null);
+        ResponseEntity<StreamingResponseBody> result = hostsController.getHosts("json", null, null).join();
 
         // Assert
         assertEquals(500, result.getStatusCode().value());
-        assertTrue(result.getBody().contains("Unexpected error: Unexpected error"));
+        assertTrue(bodyAsString(result).contains("Unexpected error: Unexpected error"));
     }
 
     @Test
     void testGetHosts_NullResponseBody() throws Exception {
         // Arrange
-        when(databaseClient.getClientImplementation()).thenReturn(okHttpClient);
         when(okHttpClient.newCall(any(Request.class))).thenReturn(call);
         when(call.execute()).thenReturn(response);
         when(response.body()).thenReturn(null);
 
         // Act
-        ResponseEntity<String> result = hostsController.getHosts("json", null, null);
+        ResponseEntity<StreamingResponseBody> result = hostsController.getHosts("json", null, null).join();
 
         // Assert
         assertEquals(500, result.getStatusCode().value());
-        assertTrue(result.getBody().contains("No response from MarkLogic server"));
+        assertTrue(bodyAsString(result).contains("No response from MarkLogic server"));
     }
 
     // Tests for getHostProperties endpoint
@@ -313,22 +299,20 @@ class HostsControllerTest {
         // Arrange
         String mockJson = "{\"host-name\":\"host1\",\"group\":\"Default\",\"bind-port\":7999}";
 
-        when(databaseClient.getClientImplementation()).thenReturn(okHttpClient);
         when(okHttpClient.newCall(any(Request.class))).thenReturn(call);
         when(call.execute()).thenReturn(response);
         when(response.isSuccessful()).thenReturn(true);
         when(response.body()).thenReturn(responseBody);
-        when(responseBody.string()).thenReturn(mockJson);
+        when(responseBody.source()).thenReturn(source(mockJson));
 
         // Act
-        ResponseEntity<String> result = hostsController.getHostProperties("host1", "json");
+        ResponseEntity<StreamingResponseBody> result = hostsController.getHostProperties("host1", "json").join();
 
         // Assert
         assertEquals(200, result.getStatusCode().value());
         assertEquals(MediaType.APPLICATION_JSON, result.getHeaders().getContentType());
-        assertEquals(mockJson, result.getBody());
+        assertEquals(mockJson, bodyAsString(result));
 
-        verify(databaseClient).getClientImplementation();
         verify(okHttpClient).newCall(any(Request.class));
         verify(call).execute();
     }
@@ -338,20 +322,19 @@ class HostsControllerTest {
         // Arrange
         String mockXml = "<host-properties><host-name>host1</host-name><group>Default</group></host-properties>";
 
-        when(databaseClient.getClientImplementation()).thenReturn(okHttpClient);
         when(okHttpClient.newCall(any(Request.class))).thenReturn(call);
         when(call.execute()).thenReturn(response);
         when(response.isSuccessful()).thenReturn(true);
         when(response.body()).thenReturn(responseBody);
-        when(responseBody.string()).thenReturn(mockXml);
+        when(responseBody.source()).thenReturn(source(mockXml));
 
         // Act
-        ResponseEntity<String> result = hostsController.getHostProperties("host1", "xml");
+        ResponseEntity<StreamingResponseBody> result = hostsController.getHostProperties("host1", "xml").join();
 
         // Assert
         assertEquals(200, result.getStatusCode().value());
         assertEquals(MediaType.APPLICATION_XML, result.getHeaders().getContentType());
-        assertEquals(mockXml, result.getBody());
+        assertEquals(mockXml, bodyAsString(result));
     }
 
     @Test
@@ -359,36 +342,34 @@ class HostsControllerTest {
         // Arrange
         String mockJson = "{\"host-name\":\"host1\",\"group\":\"Default\"}";
 
-        when(databaseClient.getClientImplementation()).thenReturn(okHttpClient);
         when(okHttpClient.newCall(any(Request.class))).thenReturn(call);
         when(call.execute()).thenReturn(response);
         when(response.isSuccessful()).thenReturn(true);
         when(response.body()).thenReturn(responseBody);
-        when(responseBody.string()).thenReturn(mockJson);
+        when(responseBody.source()).thenReturn(source(mockJson));
 
         // Act
-        ResponseEntity<String> result = hostsController.getHostProperties("host1", null);
+        ResponseEntity<StreamingResponseBody> result = hostsController.getHostProperties("host1", null).join();
 
         // Assert
         assertEquals(200, result.getStatusCode().value());
         assertEquals(MediaType.APPLICATION_JSON, result.getHeaders().getContentType());
-        assertEquals(mockJson, result.getBody());
+        assertEquals(mockJson, bodyAsString(result));
     }
 
     @Test
     void testGetHostProperties_InvalidFormat() {
         // Act
-        ResponseEntity<String> result = hostsController.getHostProperties("host1", "html");
+        ResponseEntity<StreamingResponseBody> result = hostsController.getHostProperties("host1", "html").join();
 
         // Assert
         assertEquals(400, result.getStatusCode().value());
-        assertTrue(result.getBody().contains("Invalid format parameter. Must be 'json' or 'xml'"));
+        assertTrue(bodyAsString(result).contains("Invalid format parameter. Must be 'json' or 'xml'"));
     }
 
     @Test
     void testGetHostProperties_MarkLogicError() throws Exception {
         // Arrange
-        when(databaseClient.getClientImplementation()).thenReturn(okHttpClient);
         when(okHttpClient.newCall(any(Request.class))).thenReturn(call);
         when(call.execute()).thenReturn(response);
         when(response.isSuccessful()).thenReturn(false);
@@ -397,56 +378,53 @@ class HostsControllerTest {
         when(responseBody.string()).thenReturn("Host not found");
 
         // Act
-        ResponseEntity<String> result = hostsController.getHostProperties("nonexistent", "json");
+        ResponseEntity<StreamingResponseBody> result = hostsController.getHostProperties("nonexistent", "json").join();
 
         // Assert
         assertEquals(404, result.getStatusCode().value());
-        assertTrue(result.getBody().contains("MarkLogic returned status: 404"));
+        assertTrue(bodyAsString(result).contains("MarkLogic returned status: 404"));
     }
 
     @Test
     void testGetHostProperties_IOException() throws Exception {
         // Arrange
-        when(databaseClient.getClientImplementation()).thenReturn(okHttpClient);
         when(okHttpClient.newCall(any(Request.class))).thenReturn(call);
         when(call.execute()).thenThrow(new java.io.IOException("Connection timeout"));
 
         // Act
-        ResponseEntity<String> result = hostsController.getHostProperties("host1", "json");
+        ResponseEntity<StreamingResponseBody> result = hostsController.getHostProperties("host1", "json").join();
 
         // Assert
         assertEquals(502, result.getStatusCode().value());
-        assertTrue(result.getBody().contains("Failed to proxy to MarkLogic: Connection timeout"));
+        assertTrue(bodyAsString(result).contains("Failed to proxy to MarkLogic: Connection timeout"));
     }
 
     @Test
     void testGetHostProperties_GeneralException() throws Exception {
         // Arrange
-        when(databaseClient.getClientImplementation()).thenReturn(okHttpClient);
         when(okHttpClient.newCall(any(Request.class))).thenReturn(call);
         when(call.execute()).thenThrow(new RuntimeException("Unexpected error"));
 
         // Act
-        ResponseEntity<String> result = hostsController.getHostProperties("host1", "json");
+        ResponseEntity<StreamingResponseBody> result = hostsController.getHostProperties("host1", "json").join();
 
         // Assert
         assertEquals(500, result.getStatusCode().value());
-        assertTrue(result.getBody().contains("Unexpected error: Unexpected error"));
+        assertTrue(bodyAsString(result).contains("Unexpected error: Unexpected error"));
     }
 
     @Test
     void testGetHostProperties_NullResponseBody() throws Exception {
         // Arrange
-        when(databaseClient.getClientImplementation()).thenReturn(okHttpClient);
         when(okHttpClient.newCall(any(Request.class))).thenReturn(call);
         when(call.execute()).thenReturn(response);
         when(response.body()).thenReturn(null);
 
         // Act
-        ResponseEntity<String> result = hostsController.getHostProperties("host1", "json");
+        ResponseEntity<StreamingResponseBody> result = hostsController.getHostProperties("host1", "json").join();
 
         // Assert
         assertEquals(500, result.getStatusCode().value());
-        assertTrue(result.getBody().contains("No response from MarkLogic server"));
+        assertTrue(bodyAsString(result).contains("No response from MarkLogic server"));
     }
 }
@@ -0,0 +1,198 @@
+package org.billFarber.marklogicadminproxy;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.sun.management.GarbageCollectionNotificationInfo;
+
+import javax.management.NotificationEmitter;
+import javax.management.openmbean.CompositeData;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Results of a ProxyLoadTest run: latency percentiles, throughput and errors
+ * per endpoint, and allocation rate and GC pauses per scenario.
+ *
+ * Allocation and GC pauses are JVM-wide, so they cannot be split between
+ * endpoints that run at the same time; scenarios run one after another and
+ * each gets its own figures instead. Allocation counts the proxy's threads
+ * only: the load generator's (loadtest-*) and the simulator's
+ * (MockWebServer*) threads are left out, and so are threads that ended during
+ * the scenario. GC pauses cover the whole JVM.
+ */
+final class LoadTestReport {
+
+    private static final List<Long> GC_PAUSES_MS = new ArrayList<>();
+
+    static {
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            // Concurrent cycles (G1 Concurrent GC, ZGC Cycles) are not pauses
+            if (collector.getName().contains("Concurrent") || collector.getName().contains("Cycles")) {
+                continue;
+            }
+            ((NotificationEmitter) collector).addNotificationListener((notification, handback) -> {
+                if (notification.getType().equals(GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION)) {
+                    GarbageCollectionNotificationInfo info = GarbageCollectionNotificationInfo
+                            .from((CompositeData) notification.getUserData());
+                    synchronized (GC_PAUSES_MS) {
+                        GC_PAUSES_MS.add(info.getGcInfo().getDuration());
+                    }
+                }
+            }, null, null);
+        }
+    }
+
+    private final Map<String, ScenarioResult> scenarios = new LinkedHashMap<>();
+
+    record EndpointResult(long requests, long errors, double throughput, double p50Ms, double p95Ms, double p99Ms,
+            double maxMs) {
+
+        double errorRate() {
+            return requests == 0 ? 0 : (double) errors / requests;
+        }
+    }
+
+    record ScenarioResult(double seconds, double allocationMbPerSecond, int gcPauses, long gcPauseTotalMs,
+            long gcPauseMaxMs, Map<String, EndpointResult> endpoints) {
+    }
+
+    Map<String, ScenarioResult> scenarios() {
+        return scenarios;
+    }
+
+    /**
+     * Starts measuring a scenario; call Phase.end when its traffic stops.
+     */
+    Phase start(String scenario) {
+        return new Phase(scenario);
+    }
+
+    void print(PrintStream out) {
+        out.printf("%n%-18s %-22s %9s %7s %9s %9s %9s %9s %9s%n", "scenario", "endpoint", "requests", "errors",
+                "req/s", "p50 ms", "p95 ms", "p99 ms", "max ms");
+        scenarios.forEach((name, scenario) -> {
+            scenario.endpoints().forEach((endpoint, result) -> out.printf(
+                    "%-18s %-22s %,9d %7d %9.1f %9.2f %9.2f %9.2f %9.2f%n", name, endpoint, result.requests(),
+                    result.errors(), result.throughput(), result.p50Ms(), result.p95Ms(), result.p99Ms(),
+                    result.maxMs()));
+            out.printf("%-18s allocation %.1f MB/s, %d GC pauses totalling %d ms (max %d ms) in %.1f s%n", name,
+                    scenario.allocationMbPerSecond(), scenario.gcPauses(), scenario.gcPauseTotalMs(),
+                    scenario.gcPauseMaxMs(), scenario.seconds());
+        });
+    }
+
+    void write(Path file) throws IOException {
+        Files.createDirectories(file.getParent());
+        new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(file.toFile(), scenarios);
+    }
+
+    final class Phase {
+        private final String scenario;
+        private final long startNanos = System.nanoTime();
+        private final Map<Long, Long> allocatedAtStart = allocatedBytesByThread();
+        private final int gcPausesAtStart;
+        private final Map<String, Samples> endpoints = new ConcurrentHashMap<>();
+
+        private Phase(String scenario) {
+            this.scenario = scenario;
+            synchronized (GC_PAUSES_MS) {
+                gcPausesAtStart = GC_PAUSES_MS.size();
+            }
+        }
+
+        void record(String endpoint, long nanos, boolean ok) {
+            endpoints.computeIfAbsent(endpoint, e -> new Samples()).add(nanos, ok);
+        }
+
+        void end() {
+            double seconds = (System.nanoTime() - startNanos) / 1e9;
+            long allocated = 0;
+            for (Map.Entry<Long, Long> thread : allocatedBytesByThread().entrySet()) {
+                allocated += thread.getValue() - allocatedAtStart.getOrDefault(thread.getKey(), 0L);
+            }
+            List<Long> pauses;
+            synchronized (GC_PAUSES_MS) {
+                pauses = new ArrayList<>(GC_PAUSES_MS.subList(gcPausesAtStart, GC_PAUSES_MS.size()));
+            }
+
+            Map<String, EndpointResult> results = new TreeMap<>();
+            endpoints.forEach((endpoint, samples) -> results.put(endpoint, samples.result(seconds)));
+            scenarios.put(scenario, new ScenarioResult(seconds, allocated / 1_048_576.0 / seconds, pauses.size(),
+                    pauses.stream().mapToLong(Long::longValue).sum(),
+                    pauses.stream().mapToLong(Long::longValue).max().orElse(0), results));
+        }
+    }
+
+    private static final class Samples {
+        private long[] nanos = new long[1024];
+        private int count;
+        private final AtomicLong errors = new AtomicLong();
+
+        synchronized void add(long value, boolean ok) {
+            if (count == nanos.length) {
+                nanos = Arrays.copyOf(nanos, count * 2);
+            }
+            nanos[count++] = value;
+            if (!ok) {
+                errors.incrementAndGet();
+            }
+        }
+
+        synchronized EndpointResult result(double seconds) {
+            long[] sorted = Arrays.copyOf(nanos, count);
+            Arrays.sort(sorted);
+            return new EndpointResult(count, errors.get(), count / seconds, percentile(sorted, 50),
+                    percentile(sorted, 95), percentile(sorted, 99), count == 0 ? 0 : millis(sorted[count - 1]));
+        }
+
+        private static double percentile(long[] sorted, int percentile) {
+            if (sorted.length == 0) {
+                return 0;
+            }
+            int rank = (int) Math.ceil(percentile / 100.0 * sorted.length);
+            return millis(sorted[Math.max(0, rank - 1)]);
+        }
+
+        private static double millis(long nanos) {
+            return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+        }
+    }
+
+    private static Map<Long, Long> allocatedBytesByThread() {
+        Map<Long, Long> allocated = new HashMap<>();
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (!(threads instanceof com.sun.management.ThreadMXBean sunThreads)
+                || !sunThreads.isThreadAllocatedMemorySupported()) {
+            return allocated;
+        }
+        long[] ids = threads.getAllThreadIds();
+        long[] bytes = sunThreads.getThreadAllocatedBytes(ids);
+        ThreadInfo[] infos = threads.getThreadInfo(ids);
+        for (int i = 0; i < ids.length; i++) {
+            if (infos[i] == null || bytes[i] < 0) {
+                continue;
+            }
+            String name = infos[i].getThreadName();
+            if (!name.startsWith("loadtest-") && !name.startsWith("MockWebServer")) {
+                allocated.put(ids[i], bytes[i]);
+            }
+        }
+        return allocated;
+    }
+}
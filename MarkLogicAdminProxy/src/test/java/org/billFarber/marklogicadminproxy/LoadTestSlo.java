@@ -0,0 +1,87 @@
+package org.billFarber.marklogicadminproxy;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Service level objectives ProxyLoadTest checks its LoadTestReport against.
+ *
+ * Thresholds are read from loadtest-slo.properties and can be overridden with
+ * loadtest.slo.* system properties (or -Ploadtest.slo.* on the loadTest task).
+ * Keys are name.metric, where name is an endpoint or scenario from the report,
+ * or default to apply to all of them. A metric with no value is not checked.
+ *
+ * Endpoint metrics: p50-ms, p95-ms, p99-ms, max-error-rate, min-throughput
+ * (requests per second). Scenario metrics: max-allocation-mb-per-s,
+ * max-gc-pause-ms.
+ */
+final class LoadTestSlo {
+
+    static final String RESOURCE = "loadtest-slo.properties";
+    static final String OVERRIDE_PREFIX = "loadtest.slo.";
+
+    private final Properties thresholds;
+
+    LoadTestSlo(Properties thresholds) {
+        this.thresholds = thresholds;
+    }
+
+    static LoadTestSlo load() throws IOException {
+        Properties thresholds = new Properties();
+        try (InputStream in = LoadTestSlo.class.getClassLoader().getResourceAsStream(RESOURCE)) {
+            if (in != null) {
+                thresholds.load(in);
+            }
+        }
+        for (String name : System.getProperties().stringPropertyNames()) {
+            if (name.startsWith(OVERRIDE_PREFIX)) {
+                thresholds.setProperty(name.substring(OVERRIDE_PREFIX.length()), System.getProperty(name));
+            }
+        }
+        return new LoadTestSlo(thresholds);
+    }
+
+    /**
+     * @return one line per missed objective; empty when all are met
+     */
+    List<String> violations(LoadTestReport report) {
+        List<String> violations = new ArrayList<>();
+        for (Map.Entry<String, LoadTestReport.ScenarioResult> scenario : report.scenarios().entrySet()) {
+            String name = scenario.getKey();
+            LoadTestReport.ScenarioResult result = scenario.getValue();
+            atMost(violations, name, "max-allocation-mb-per-s", result.allocationMbPerSecond());
+            atMost(violations, name, "max-gc-pause-ms", result.gcPauseMaxMs());
+
+            for (Map.Entry<String, LoadTestReport.EndpointResult> endpoint : result.endpoints().entrySet()) {
+                String label = endpoint.getKey();
+                LoadTestReport.EndpointResult stats = endpoint.getValue();
+                atMost(violations, label, "p50-ms", stats.p50Ms());
+                atMost(violations, label, "p95-ms", stats.p95Ms());
+                atMost(violations, label, "p99-ms", stats.p99Ms());
+                atMost(violations, label, "max-error-rate", stats.errorRate());
+                Double minimum = threshold(label, "min-throughput");
+                if (minimum != null && stats.throughput() < minimum) {
+                    violations.add(String.format("%s min-throughput: %.1f req/s < %s", label, stats.throughput(),
+                            minimum));
+                }
+            }
+        }
+        return violations;
+    }
+
+    private void atMost(List<String> violations, String name, String metric, double actual) {
+        Double maximum = threshold(name, metric);
+        if (maximum != null && actual > maximum) {
+            violations.add(String.format("%s %s: %.3f > %s", name, metric, actual, maximum));
+        }
+    }
+
+    private Double threshold(String name, String metric) {
+        String value = thresholds.getProperty(name + "." + metric, thresholds.getProperty("default." + metric));
+        return value == null || value.isBlank() ? null : Double.valueOf(value.trim());
+    }
+}
@@ -0,0 +1,209 @@
+package org.billFarber.marklogicadminproxy;
+
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LogIndexTest {
+
+    private static final String ERROR_LOG = String.join("\n",
+            "2025-01-01 10:00:00.100 Info: Forest Documents state changed from open to open",
+            "2025-01-01 10:00:01.200 Warning: XDMP-FORESTERR: Error in merge of forest Meters",
+            "  in /MarkLogic/merge.xqy, at 10:4",
+            "2025-01-01 10:00:02.300 Info: Merged 2 MB in 1 sec at 2 MB/sec to Documents",
+            "2025-01-01 10:00:05.400 Error: forest Meters offline") + "\n";
+
+    @TempDir
+    Path directory;
+
+    private LogSpool spool;
+
+    @BeforeEach
+    void setUp() {
+        ManagementProperties.LogSpool settings = new ManagementProperties.LogSpool();
+        settings.setDirectory(directory.toString());
+        spool = new LogSpool(settings);
+    }
+
+    @AfterEach
+    void tearDown() {
+        spool.close();
+    }
+
+    @Test
+    void testTermsAreMatchedAsTokens() throws IOException {
+        // Arrange
+        try (LogIndex index = index(ERROR_LOG, null)) {
+
+            // Act
+            int[] forest = index.search(List.of("forest"), List.of(), 0, 5);
+            int[] both = index.search(List.of("xdmp", "foresterr"), List.of(), 0, 5);
+            int[] prefix = index.search(List.of("merge*"), List.of(), 0, 5);
+            int[] missing = index.search(List.of("fores"), List.of(), 0, 5);
+
+            // Assert
+            assertArrayEquals(new int[] { 0, 1, 4 }, forest);
+            assertArrayEquals(new int[] { 1 }, both);
+            assertArrayEquals(new int[] { 1, 2, 3 }, prefix);
+            assertArrayEquals(new int[0], missing);
+        }
+    }
+
+    @Test
+    void testPhraseMustOccurInOrder() throws IOException {
+        // Arrange
+        try (LogIndex index = index(ERROR_LOG, null)) {
+
+            // Act
+            int[] phrase = index.search(List.of(), List.of("Forest Meters"), 0, 5);
+            int[] reversed = index.search(List.of(), List.of("meters forest"), 0, 5);
+
+            // Assert
+            assertArrayEquals(new int[] { 1, 4 }, phrase);
+            assertArrayEquals(new int[0], reversed);
+        }
+    }
+
+    @Test
+    void testLinesAreFoundByTime() throws IOException {
+        // Arrange
+        try (LogIndex index = index(ERROR_LOG, null)) {
+
+            // Act
+            int from = index.firstLineAt(LocalDateTime.parse("2025-01-01T10:00:01"), false);
+            int to = index.firstLineAt(LocalDateTime.parse("2025-01-01T10:00:02"), true);
+            int[] range = index.search(List.of("forest"), List.of(), from, to);
+
+            // Assert
+            assertEquals(1, from);
+            assertEquals(4, to);
+            assertArrayEquals(new int[] { 1 }, range);
+            assertEquals(5, index.firstLineAt(LocalDateTime.parse("2025-01-02T00:00:00"), false));
+        }
+    }
+
+    @Test
+    void testAccessLogTimestamps() {
+        // Act
+        LocalDateTime time = LogIndex.timestamp(
+                "10.0.0.1 - admin [01/Jan/2025:10:15:30 +0000] \"GET /manage/v2 HTTP/1.1\" 200 512 - \"curl\"");
+
+        // Assert
+        assertEquals(LocalDateTime.parse("2025-01-01T10:15:30"), time);
+        assertNull(LogIndex.timestamp("  in /MarkLogic/merge.xqy"));
+    }
+
+    @Test
+    void testGrownLogExtendsIndex() throws IOException {
+        // Arrange
+        String first = ERROR_LOG + "2025-01-01 10:00:06.000 Info: forest Mete";
+        String grown = ERROR_LOG + "2025-01-01 10:00:06.000 Info: forest Meters online\n"
+                + "2025-01-01 10:00:07.000 Info: forest Meters merged\n";
+        try (LogIndex previous = index(first, null);
+                LogIndex index = index(grown, previous)) {
+
+            // Act
+            int[] meters = index.search(List.of("meters"), List.of(), 0, 7);
+            int[] partial = index.search(List.of("mete"), List.of(), 0, 7);
+
+            // Assert
+            assertTrue(index.extended());
+            assertArrayEquals(new int[] { 1, 4, 5, 6 }, meters);
+            assertArrayEquals(new int[0], partial);
+        }
+    }
+
+    @Test
+    void testRotatedLogIsReindexed() throws IOException {
+        // Arrange
+        try (LogIndex previous = index(ERROR_LOG, null);
+                LogIndex index = index("2025-01-02 00:00:00.000 Info: new day\n", previous)) {
+
+            // Act
+            int[] forest = index.search(List.of("forest"), List.of(), 0, 1);
+
+            // Assert
+            assertFalse(index.extended());
+            assertArrayEquals(new int[0], forest);
+        }
+    }
+
+    @Test
+    void testLinesPastMaxIndexSizeAreScanned() throws IOException {
+        // Arrange
+        try (LogIndex index = index(ERROR_LOG, null, 2000)) {
+
+            // Act
+            int[] forest = index.search(List.of("forest"), List.of(), 0, 5);
+            int[] prefix = index.search(List.of("merge*"), List.of(), 0, 5);
+            int[] phrase = index.search(List.of(), List.of("Forest Meters"), 0, 5);
+            int[] all = index.search(List.of(), List.of(), 2, 5);
+
+            // Assert
+            assertTrue(index.truncated());
+            assertTrue(index.termCount() < LogIndex.tokens(ERROR_LOG).stream().distinct().count());
+            assertArrayEquals(new int[] { 0, 1, 4 }, forest);
+            assertArrayEquals(new int[] { 1, 2, 3 }, prefix);
+            assertArrayEquals(new int[] { 1, 4 }, phrase);
+            assertArrayEquals(new int[] { 2, 3, 4 }, all);
+        }
+    }
+
+    @Test
+    void testTruncatedIndexIsExtended() throws IOException {
+        // Arrange
+        String grown = ERROR_LOG + "2025-01-01 10:00:06.000 Info: forest Meters online\n";
+        try (LogIndex previous = index(ERROR_LOG, null, 2000);
+                LogIndex index = index(grown, previous, 2000)) {
+
+            // Act
+            int[] meters = index.search(List.of("meters"), List.of(), 0, 6);
+
+            // Assert
+            assertTrue(index.extended());
+            assertTrue(index.truncated());
+            assertArrayEquals(new int[] { 1, 4, 5 }, meters);
+        }
+    }
+
+    @Test
+    void testQueryTokens() {
+        // Act
+        List<String> tokens = LogIndex.tokens("XDMP-FORESTERR: 10.0.0.1");
+
+        // Assert
+        assertEquals(List.of("xdmp", "foresterr", "10", "0", "0", "1"), tokens);
+    }
+
+    private LogIndex index(String body, LogIndex previous) throws IOException {
+        return index(body, previous, Long.MAX_VALUE);
+    }
+
+    private LogIndex index(String body, LogIndex previous, long maxBytes) throws IOException {
+        try (LogSpool.SpooledLog log = spool.put(body, response(body))) {
+            return LogIndex.build(log, previous, maxBytes);
+        }
+    }
+
+    private static Response response(String body) {
+        return new Response.Builder()
+                .request(new Request.Builder().url("http://localhost:8002/manage/v2/logs?filename=ErrorLog.txt").build())
+                .protocol(Protocol.HTTP_1_1)
+                .code(200)
+                .message("OK")
+                .body(ResponseBody.create(body, null))
+                .build();
+    }
+}
@@ -0,0 +1,239 @@
+package org.billFarber.marklogicadminproxy;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.billFarber.marklogicadminproxy.ResponseBodies.source;
+import static org.junit.jupiter.api.Assertions.*;
+
+class LogRecordParserTest {
+
+    private static final String ERROR_LOG = String.join("\n",
+            "  left over from the previous file",
+            "2025-01-01 10:00:00.100 Info: Forest Documents state changed from open to open",
+            "2025-01-01 10:00:01.200 Warning: XDMP-FORESTERR: Error in merge of forest Meters",
+            "  in /MarkLogic/merge.xqy, at 10:4",
+            "  in /MarkLogic/admin.xqy, at 3:1",
+            "2025-01-01 10:00:02.300 Debug: Merged 2 MB in 1 sec at 2 MB/sec to Documents",
+            "2025-01-01 10:00:05.400 Error: forest Meters offline") + "\n";
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    @Test
+    void testErrorLogMergesContinuationLines() throws IOException {
+        // Arrange
+        LogRecordParser parser = new LogRecordParser("8002_ErrorLog.txt", "host1", null, null, null);
+
+        // Act
+        List<JsonNode> records = parse(parser, ERROR_LOG);
+
+        // Assert
+        assertEquals(5, records.size());
+        assertTrue(records.get(0).get("timestamp").isNull());
+        assertEquals("  left over from the previous file", records.get(0).get("message").asText());
+        JsonNode warning = records.get(2);
+        assertEquals("2025-01-01T10:00:01.200", warning.get("timestamp").asText());
+        assertEquals("warning", warning.get("level").asText());
+        assertEquals("host1", warning.get("host").asText());
+        assertEquals("8002", warning.get("app-server").asText());
+        assertEquals("XDMP-FORESTERR: Error in merge of forest Meters\n  in /MarkLogic/merge.xqy, at 10:4\n"
+                + "  in /MarkLogic/admin.xqy, at 3:1", warning.get("message").asText());
+    }
+
+    @Test
+    void testFiltersByLevelAndTime() throws IOException {
+        // Arrange
+        LogRecordParser byLevel = new LogRecordParser("ErrorLog.txt", null, "Warning", null, null);
+        LogRecordParser byTime = new LogRecordParser("ErrorLog.txt", null, null,
+                LocalDateTime.parse("2025-01-01T10:00:01"), LocalDateTime.parse("2025-01-01T10:00:03"));
+
+        // Act
+        List<JsonNode> levelRecords = parse(byLevel, ERROR_LOG);
+        List<JsonNode> timeRecords = parse(byTime, ERROR_LOG);
+
+        // Assert
+        assertEquals(List.of("unknown", "warning", "error"), levels(levelRecords));
+        assertTrue(levelRecords.get(1).get("app-server").isNull());
+        assertEquals(List.of("unknown", "warning", "debug"), levels(timeRecords));
+    }
+
+    @Test
+    void testAccessLogRecords() throws IOException {
+        // Arrange
+        String log = String.join("\n",
+                "127.0.0.1 - admin [01/Jan/2025:10:00:00 +0000] \"GET /manage/v2/hosts HTTP/1.1\" 200 512 - \"curl\"",
+                "10.0.0.2 - - [01/Jan/2025:10:00:01 +0000] \"GET /missing HTTP/1.1\" 404 - - \"curl\"",
+                "10.0.0.2 - bob [01/Jan/2025:10:00:02 +0000] \"POST /v1/eval HTTP/1.1\" 500 80 - \"curl\"") + "\n";
+        LogRecordParser parser = new LogRecordParser("8002_AccessLog.txt", null, null, null, null);
+        LogRecordParser failures = new LogRecordParser("8002_AccessLog.txt", null, "warning", null, null);
+
+        // Act
+        List<JsonNode> records = parse(parser, log);
+        List<JsonNode> failed = parse(failures, log);
+
+        // Assert
+        assertEquals(3, records.size());
+        JsonNode first = records.get(0);
+        assertEquals("2025-01-01T10:00", first.get("timestamp").asText());
+        assertEquals("info", first.get("level").asText());
+        assertEquals("GET /manage/v2/hosts 200", first.get("message").asText());
+        assertEquals("127.0.0.1", first.get("client").asText());
+        assertEquals("admin", first.get("user").asText());
+        assertEquals(200, first.get("status").asInt());
+        assertEquals(512, first.get("bytes").asLong());
+        assertFalse(records.get(1).has("bytes"));
+        assertEquals(List.of("warning", "error"), levels(failed));
+    }
+
+    @Test
+    void testRequestLogKeepsTheRequest() throws IOException {
+        // Arrange
+        String log = "{\"time\":\"2025-01-01T10:00:00Z\", \"url\":\"/v1/search\", \"elapsedTime\":0.25}\n"
+                + "not json\n";
+        LogRecordParser parser = new LogRecordParser("8000_RequestLog.txt", null, null,
+                LocalDateTime.parse("2025-01-01T09:00:00"), null);
+
+        // Act
+        List<JsonNode> records = parse(parser, log);
+
+        // Assert
+        assertEquals(2, records.size());
+        assertEquals("2025-01-01T10:00", records.get(0).get("timestamp").asText());
+        assertEquals("/v1/search", records.get(0).get("message").asText());
+        assertEquals(0.25, records.get(0).get("request").get("elapsedTime").asDouble());
+        assertEquals("not json", records.get(1).get("message").asText());
+    }
+
+    @Test
+    void testRequestLogTimeKeepsItsLocalTime() throws IOException {
+        // Arrange
+        String log = "{\"time\":\"2025-01-01T10:00:00+02:00\", \"url\":\"/v1/search\"}\n";
+        LogRecordParser parser = new LogRecordParser("8000_RequestLog.txt", null, null,
+                LocalDateTime.parse("2025-01-01T09:00:00"), null);
+
+        // Act
+        List<JsonNode> records = parse(parser, log);
+
+        // Assert
+        assertEquals(1, records.size());
+        assertEquals("2025-01-01T10:00", records.get(0).get("timestamp").asText());
+    }
+
+    @Test
+    void testDroppedRecordsAreSkippedWithTheirContinuationLines() throws IOException {
+        // Arrange
+        String log = String.join("\r\n",
+                "2025-01-01 10:00:00.100 Debug: dropped",
+                "  dropped detail \u00e9",
+                "2025-01-01 10:00:01.200 Error: kept",
+                "  kept detail",
+                "2025-01-01 10:00:02.300 Info: dropped too") + "\r\n";
+        LogRecordParser parser = new LogRecordParser("ErrorLog.txt", null, "warning", null, null);
+
+        // Act
+        List<JsonNode> records = parse(parser, log);
+
+        // Assert
+        assertEquals(1, records.size());
+        assertEquals("kept\n  kept detail", records.get(0).get("message").asText());
+    }
+
+    @Test
+    void testAuditLogHasOneRecordPerLine() throws IOException {
+        // Arrange
+        String log = String.join("\n",
+                "2025-01-01 10:15:30.123 event=login; success=true; user=admin;",
+                "2025-01-01 10:15:31.000 event=login; success=false; user=bob;",
+                "2025-01-01 10:20:00.000 event=configuration-change; success=true; user=admin;") + "\n";
+        LogRecordParser parser = new LogRecordParser("AuditLog.txt", null, null, null,
+                LocalDateTime.parse("2025-01-01T10:16:00"));
+
+        // Act
+        List<JsonNode> records = parse(parser, log);
+
+        // Assert
+        assertEquals(2, records.size());
+        assertEquals("2025-01-01T10:15:30.123", records.get(0).get("timestamp").asText());
+        assertEquals("event=login; success=true; user=admin;", records.get(0).get("message").asText());
+        assertEquals(List.of("info", "warning"), levels(records));
+    }
+
+    @Test
+    void testTimestampedLinesWithoutLevelStartRecords() throws IOException {
+        // Arrange
+        String log = "2025-01-01 10:00:00.000 started\n  detail\n2025-01-01 10:00:01.000 stopped\n";
+        LogRecordParser parser = new LogRecordParser("CrashLog.txt", null, null, null, null);
+
+        // Act
+        List<JsonNode> records = parse(parser, log);
+
+        // Assert
+        assertEquals(2, records.size());
+        assertEquals("started\n  detail", records.get(0).get("message").asText());
+        assertTrue(records.get(1).get("level").isNull());
+        assertFalse(LogRecordParser.isErrorLog("AuditLog.txt"));
+        assertTrue(LogRecordParser.isErrorLog("8002_ErrorLog_1.txt"));
+    }
+
+    @Test
+    void testContinuationTextIsCapped() throws IOException {
+        // Arrange
+        StringBuilder log = new StringBuilder("2025-01-01 10:00:00.000 Error: start\n");
+        for (int i = 0; i < LogRecordParser.MAX_RECORD_LINES + 10; i++) {
+            log.append("  at line ").append(i).append('\n');
+        }
+        LogRecordParser parser = new LogRecordParser("ErrorLog.txt", null, "error", null, null);
+
+        // Act
+        List<JsonNode> records = parse(parser, log.toString());
+
+        // Assert
+        assertEquals(2, records.size());
+        assertEquals(LogRecordParser.MAX_RECORD_LINES, records.get(0).get("message").asText().split("\n").length);
+        assertEquals("2025-01-01T10:00", records.get(1).get("timestamp").asText());
+        assertEquals("error", records.get(1).get("level").asText());
+        assertTrue(records.get(1).get("message").asText().endsWith("at line " + (LogRecordParser.MAX_RECORD_LINES + 9)));
+    }
+
+    @Test
+    void testOneRecordPerLine() throws IOException {
+        // Arrange
+        LogRecordParser parser = new LogRecordParser("ErrorLog.txt", null, null, null, null);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        // Act
+        parser.write(source(ERROR_LOG), out);
+
+        // Assert
+        String[] lines = out.toString(StandardCharsets.UTF_8).split("\n", -1);
+        assertEquals(6, lines.length);
+        assertTrue(lines[1].startsWith("{\"timestamp\":\"2025-01-01T10:00:00.100\""));
+        assertEquals("", lines[5]);
+    }
+
+    private static List<JsonNode> parse(LogRecordParser parser, String log) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        parser.write(source(log), out);
+        List<JsonNode> records = new ArrayList<>();
+        for (String line : out.toString(StandardCharsets.UTF_8).split("\n")) {
+            records.add(MAPPER.readTree(line));
+        }
+        return records;
+    }
+
+    private static List<String> levels(List<JsonNode> records) {
+        List<String> levels = new ArrayList<>();
+        for (JsonNode record : records) {
+            levels.add(record.get("level").isNull() ? "unknown" : record.get("level").asText());
+        }
+        return levels;
+    }
+}
@@ -0,0 +1,146 @@
+package org.billFarber.marklogicadminproxy;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LogSearchControllerTest {
+
+    @TempDir
+    Path directory;
+
+    private LogSearchController controller;
+    private LogSpool spool;
+    private final List<String> fetched = new CopyOnWriteArrayList<>();
+    private volatile String log = String.join("\n",
+            "2025-01-01 10:00:00.100 Info: Forest Documents state changed",
+            "2025-01-01 10:00:01.200 Warning: XDMP-FORESTERR: Error in merge of forest Meters",
+            "2025-01-01 10:00:05.400 Error: forest Meters offline") + "\n";
+    private volatile int status = 200;
+
+    @BeforeEach
+    void setUp() {
+        OkHttpClient client = new OkHttpClient.Builder()
+                .addInterceptor(chain -> {
+                    fetched.add(chain.request().url().toString());
+                    return new Response.Builder()
+                            .request(chain.request())
+                            .protocol(Protocol.HTTP_1_1)
+                            .code(status)
+                            .message("OK")
+                            .body(ResponseBody.create(log, null))
+                            .build();
+                })
+                .build();
+        ManagementProperties properties = new ManagementProperties();
+        properties.getLogSpool().setDirectory(directory.toString());
+        properties.getLogSearch().setMaxIndexes(1);
+        spool = new LogSpool(properties.getLogSpool());
+
+        controller = new LogSearchController();
+        ReflectionTestUtils.setField(controller, "managementHttpClient", client);
+        ReflectionTestUtils.setField(controller, "logSpool", spool);
+        ReflectionTestUtils.setField(controller, "managementProperties", properties);
+        ReflectionTestUtils.setField(controller, "marklogicHost", "localhost");
+        ReflectionTestUtils.setField(controller, "marklogicSchema", "http");
+    }
+
+    @AfterEach
+    void tearDown() {
+        spool.close();
+    }
+
+    @Test
+    void testSearchReturnsMatchingLines() {
+        // Act
+        ResponseEntity<Map<String, Object>> result = controller.searchLogs("ErrorLog.txt", "host1",
+                "meters \"in merge\"", null, null, null, null).join();
+
+        // Assert
+        assertEquals(HttpStatus.OK, result.getStatusCode());
+        assertEquals(1, result.getBody().get("total"));
+        assertEquals(List.of(Map.of("line", 1,
+                "text", "2025-01-01 10:00:01.200 Warning: XDMP-FORESTERR: Error in merge of forest Meters")),
+                result.getBody().get("lines"));
+        assertEquals(List.of("http://localhost:8002/manage/v2/logs?filename=ErrorLog.txt&format=text&host=host1"),
+                fetched);
+    }
+
+    @Test
+    void testRepeatedSearchUsesIndex() {
+        // Arrange
+        controller.searchLogs("ErrorLog.txt", null, "forest", null, null, null, null).join();
+
+        // Act
+        ResponseEntity<Map<String, Object>> prefix = controller.searchLogs("ErrorLog.txt", null, "FOREST*",
+                null, null, 1, 1).join();
+        ResponseEntity<Map<String, Object>> range = controller.searchLogs("ErrorLog.txt", null, null,
+                "2025-01-01T10:00:01", "2025-01-01T10:00:04", null, null).join();
+
+        // Assert
+        assertEquals(3, prefix.getBody().get("total"));
+        assertEquals(1, ((List<?>) prefix.getBody().get("lines")).size());
+        assertEquals(1, range.getBody().get("total"));
+        assertEquals(1, fetched.size());
+        assertEquals(1, controller.indexCount());
+    }
+
+    @Test
+    void testOtherLogReplacesLeastRecentIndex() {
+        // Arrange
+        controller.searchLogs("ErrorLog.txt", null, "forest", null, null, null, null).join();
+
+        // Act
+        controller.searchLogs("8002_AccessLog.txt", null, "forest", null, null, null, null).join();
+
+        // Assert
+        assertEquals(2, fetched.size());
+        assertEquals(1, controller.indexCount());
+    }
+
+    @Test
+    void testUpstreamErrorIsReturned() {
+        // Arrange
+        status = 404;
+
+        // Act
+        ResponseEntity<Map<String, Object>> result = controller.searchLogs("Missing.txt", null, "x", null, null,
+                null, null).join();
+
+        // Assert
+        assertEquals(HttpStatus.NOT_FOUND, result.getStatusCode());
+        assertEquals("MarkLogic returned status: 404", result.getBody().get("error"));
+    }
+
+    @Test
+    void testInvalidRequestsAreRejected() {
+        // Act
+        ResponseEntity<Map<String, Object>> noFile = controller.searchLogs(null, null, "x", null, null, null, null)
+                .join();
+        ResponseEntity<Map<String, Object>> badTime = controller.searchLogs("ErrorLog.txt", null, "x", "yesterday",
+                null, null, null).join();
+        ResponseEntity<Map<String, Object>> badLimit = controller.searchLogs("ErrorLog.txt", null, "x", null, null,
+                null, 0).join();
+
+        // Assert
+        assertEquals(HttpStatus.BAD_REQUEST, noFile.getStatusCode());
+        assertEquals(HttpStatus.BAD_REQUEST, badTime.getStatusCode());
+        assertEquals(HttpStatus.BAD_REQUEST, badLimit.getStatusCode());
+        assertTrue(fetched.isEmpty());
+    }
+}
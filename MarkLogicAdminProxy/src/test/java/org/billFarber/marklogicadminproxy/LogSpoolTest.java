@@ -0,0 +1,182 @@
+package org.billFarber.marklogicadminproxy;
+
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LogSpoolTest {
+
+    @TempDir
+    Path directory;
+
+    private ManagementProperties.LogSpool settings;
+    private MutableClock clock;
+    private LogSpool spool;
+
+    @BeforeEach
+    void setUp() {
+        settings = new ManagementProperties.LogSpool();
+        settings.setDirectory(directory.toString());
+        clock = new MutableClock();
+        spool = new LogSpool(settings, clock);
+    }
+
+    @AfterEach
+    void tearDown() {
+        spool.close();
+    }
+
+    @Test
+    void testLinesAreIndexed() throws IOException {
+        // Act
+        try (LogSpool.SpooledLog log = spool.put("a", response("one\ntwo\n\nfour"))) {
+
+            // Assert
+            assertEquals(4, log.lineCount());
+            assertEquals(13, log.size());
+            assertEquals(0, log.lineStart(0));
+            assertEquals(4, log.lineStart(1));
+            assertEquals(8, log.lineStart(2));
+            assertEquals(9, log.lineStart(3));
+            assertEquals(13, log.lineStart(4));
+            assertEquals("two\n\n", read(log, log.lineStart(1), log.lineStart(3)));
+        }
+    }
+
+    @Test
+    void testLargeLogIsCopiedAcrossBuffers() throws IOException {
+        // Arrange
+        StringBuilder body = new StringBuilder();
+        for (int i = 0; i < 100_000; i++) {
+            body.append("2025-01-01 10:00:00.000 Info: line ").append(i).append('\n');
+        }
+
+        // Act
+        try (LogSpool.SpooledLog log = spool.put("a", response(body.toString()))) {
+
+            // Assert
+            assertEquals(100_000, log.lineCount());
+            assertEquals("2025-01-01 10:00:00.000 Info: line 99999\n",
+                    read(log, log.lineStart(99_999), log.lineStart(100_000)));
+            assertEquals(body.toString(), read(log, 0, log.size()));
+        }
+    }
+
+    @Test
+    void testSpooledLogIsReusedUntilTtl() throws IOException {
+        // Arrange
+        settings.setTtl(Duration.ofMinutes(1));
+        spool.put("a", response("one\n")).close();
+
+        // Act
+        LogSpool.SpooledLog fresh = spool.get("a");
+        clock.advance(Duration.ofMinutes(2));
+        LogSpool.SpooledLog expired = spool.get("a");
+
+        // Assert
+        assertNotNull(fresh);
+        assertNull(expired);
+        assertEquals("one\n", read(fresh, 0, fresh.size()));
+        fresh.close();
+        assertEquals(0, spooledFiles());
+    }
+
+    @Test
+    void testLeastRecentlyUsedIsEvictedOverMaxSize() throws IOException {
+        // Arrange
+        settings.setMaxSize(DataSize.ofBytes(10));
+        spool.put("a", response("aaaaaa\n")).close();
+        spool.put("b", response("bbbbbb\n")).close();
+
+        // Act
+        LogSpool.SpooledLog first = spool.get("a");
+        LogSpool.SpooledLog second = spool.get("b");
+
+        // Assert
+        assertNull(first);
+        assertNotNull(second);
+        assertEquals(1, spool.size());
+        second.close();
+        assertEquals(2, spooledFiles());
+    }
+
+    @Test
+    void testFilesAreKeptWhileReadersRemain() throws IOException {
+        // Arrange
+        LogSpool.SpooledLog reader = spool.put("a", response("one\n"));
+
+        // Act
+        spool.close();
+
+        // Assert
+        assertEquals(2, spooledFiles());
+        assertEquals("one\n", read(reader, 0, reader.size()));
+        reader.close();
+        assertEquals(0, spooledFiles());
+    }
+
+    private long spooledFiles() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.count();
+        }
+    }
+
+    private static String read(LogSpool.SpooledLog log, long first, long last) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        log.copy(first, last, out);
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    private static Response response(String body) {
+        return new Response.Builder()
+                .request(new Request.Builder().url("http://localhost:8002/manage/v2/logs?filename=ErrorLog.txt").build())
+                .protocol(Protocol.HTTP_1_1)
+                .code(200)
+                .message("OK")
+                .body(ResponseBody.create(body, null))
+                .build();
+    }
+
+    private static class MutableClock extends Clock {
+        private Instant now = Instant.parse("2025-01-01T00:00:00Z");
+
+        void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
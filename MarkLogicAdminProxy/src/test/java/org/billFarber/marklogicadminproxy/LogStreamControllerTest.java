@@ -0,0 +1,115 @@
+package org.billFarber.marklogicadminproxy;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LogStreamControllerTest {
+
+    private LogStreamController controller;
+    private final List<String> polled = new CopyOnWriteArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        OkHttpClient client = new OkHttpClient.Builder()
+                .addInterceptor(chain -> {
+                    polled.add(chain.request().url().toString());
+                    return new Response.Builder()
+                            .request(chain.request())
+                            .protocol(Protocol.HTTP_1_1)
+                            .code(200)
+                            .message("OK")
+                            .body(ResponseBody.create("", null))
+                            .build();
+                })
+                .build();
+        ManagementProperties properties = new ManagementProperties();
+        properties.getLogStream().setPollInterval(Duration.ofMinutes(1));
+
+        controller = new LogStreamController();
+        ReflectionTestUtils.setField(controller, "managementHttpClient", client);
+        ReflectionTestUtils.setField(controller, "managementProperties", properties);
+        ReflectionTestUtils.setField(controller, "marklogicHost", "localhost");
+        ReflectionTestUtils.setField(controller, "marklogicSchema", "http");
+    }
+
+    @AfterEach
+    void tearDown() {
+        controller.shutdown();
+    }
+
+    @Test
+    void testSubscribersToOneFileShareATail() throws Exception {
+        // Act
+        ResponseEntity<SseEmitter> first = controller.streamLogs("ErrorLog.txt", "host1");
+        ResponseEntity<SseEmitter> second = controller.streamLogs("ErrorLog.txt", "host1");
+        ResponseEntity<SseEmitter> other = controller.streamLogs("ErrorLog.txt", "host2");
+
+        // Assert
+        assertEquals(HttpStatus.OK, first.getStatusCode());
+        assertNotNull(second.getBody());
+        assertEquals("no", other.getHeaders().getFirst("X-Accel-Buffering"));
+        assertEquals(2, controller.tailCount());
+        long deadline = System.currentTimeMillis() + 5000;
+        while (polled.size() < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(2, polled.size());
+        assertTrue(polled.stream().allMatch(url -> url.startsWith("http://localhost:8002/manage/v2/logs?")));
+    }
+
+    @Test
+    void testLastUnsubscribeStopsTail() {
+        // Arrange
+        SseEmitter first = controller.streamLogs("ErrorLog.txt", null).getBody();
+        SseEmitter second = controller.streamLogs("ErrorLog.txt", null).getBody();
+
+        // Act
+        controller.unsubscribe("/ErrorLog.txt", first);
+        int afterFirst = controller.tailCount();
+        controller.unsubscribe("/ErrorLog.txt", second);
+
+        // Assert
+        assertEquals(1, afterFirst);
+        assertEquals(0, controller.tailCount());
+    }
+
+    @Test
+    void testInvalidFilenameIsRejected() {
+        // Act
+        ResponseEntity<SseEmitter> missing = controller.streamLogs(null, null);
+        ResponseEntity<SseEmitter> traversal = controller.streamLogs("../etc/passwd", null);
+
+        // Assert
+        assertEquals(HttpStatus.BAD_REQUEST, missing.getStatusCode());
+        assertEquals(HttpStatus.BAD_REQUEST, traversal.getStatusCode());
+        assertEquals(0, controller.tailCount());
+    }
+
+    @Test
+    void testLogWithoutStartIsRejected() {
+        // Act
+        ResponseEntity<SseEmitter> access = controller.streamLogs("8001_AccessLog.txt", "host1");
+        ResponseEntity<SseEmitter> request = controller.streamLogs("8002_RequestLog.txt", "host1");
+
+        // Assert
+        assertEquals(HttpStatus.BAD_REQUEST, access.getStatusCode());
+        assertEquals(HttpStatus.BAD_REQUEST, request.getStatusCode());
+        assertEquals(0, controller.tailCount());
+        assertTrue(polled.isEmpty());
+    }
+}
@@ -0,0 +1,182 @@
+package org.billFarber.marklogicadminproxy;
+
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LogTailTest {
+
+    private MockWebServer server;
+    private ManagementProperties.LogStream settings;
+    private final Clock clock = Clock.fixed(Instant.parse("2025-01-01T10:05:00Z"), ZoneOffset.UTC);
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = new MockWebServer();
+        server.start();
+        settings = new ManagementProperties.LogStream();
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        server.shutdown();
+    }
+
+    @Test
+    void testFirstPollStartsAtBacklog() throws Exception {
+        // Arrange
+        server.enqueue(text("2025-01-01 10:00:01.100 Info: one", "2025-01-01 10:00:02.200 Info: two"));
+        RecordingEmitter emitter = new RecordingEmitter();
+        LogTail tail = tail("ErrorLog.txt", emitter);
+
+        // Act
+        tail.poll();
+
+        // Assert
+        RecordedRequest request = server.takeRequest();
+        assertEquals("2025-01-01T10:00:00", request.getRequestUrl().queryParameter("start"));
+        assertEquals("text", request.getRequestUrl().queryParameter("format"));
+        assertEquals(List.of("event:log\ndata:2025-01-01 10:00:01.100 Info: one\n"
+                + "data:2025-01-01 10:00:02.200 Info: two\n\n"), emitter.events);
+    }
+
+    @Test
+    void testBoundarySecondIsNotSentAgain() throws Exception {
+        // Arrange
+        server.enqueue(text("2025-01-01 10:00:01.100 Info: one", "2025-01-01 10:00:02.200 Info: two"));
+        server.enqueue(text("2025-01-01 10:00:02.200 Info: two", "2025-01-01 10:00:02.200 Info: two",
+                "2025-01-01 10:00:02.700 Info: three", "2025-01-01 10:00:03.000 Info: four"));
+        server.enqueue(text("2025-01-01 10:00:03.000 Info: four"));
+        RecordingEmitter emitter = new RecordingEmitter();
+        LogTail tail = tail("ErrorLog.txt", emitter);
+        tail.poll();
+
+        // Act
+        tail.poll();
+        tail.poll();
+
+        // Assert
+        server.takeRequest();
+        assertEquals("2025-01-01T10:00:02", server.takeRequest().getRequestUrl().queryParameter("start"));
+        assertEquals("2025-01-01T10:00:03", server.takeRequest().getRequestUrl().queryParameter("start"));
+        assertEquals("event:log\ndata:2025-01-01 10:00:02.200 Info: two\n"
+                + "data:2025-01-01 10:00:02.700 Info: three\n"
+                + "data:2025-01-01 10:00:03.000 Info: four\n\n", emitter.events.get(1));
+        assertEquals(":no new lines\n\n", emitter.events.get(2));
+    }
+
+    @Test
+    void testContinuationLinesFollowTheirEntry() throws Exception {
+        // Arrange
+        server.enqueue(text("2025-01-01 10:00:01.100 Error: failed", "  in /app/main.xqy"));
+        server.enqueue(text("2025-01-01 10:00:01.100 Error: failed", "  in /app/main.xqy",
+                "2025-01-01 10:00:04.000 Info: recovered"));
+        RecordingEmitter emitter = new RecordingEmitter();
+        LogTail tail = tail("ErrorLog.txt", emitter);
+        tail.poll();
+
+        // Act
+        tail.poll();
+
+        // Assert
+        assertEquals("event:log\ndata:2025-01-01 10:00:04.000 Info: recovered\n\n", emitter.events.get(1));
+    }
+
+    @Test
+    void testUpstreamErrorIsSentAsEvent() throws Exception {
+        // Arrange
+        server.enqueue(new MockResponse().setResponseCode(404));
+        RecordingEmitter emitter = new RecordingEmitter();
+        LogTail tail = tail("ErrorLog.txt", emitter);
+
+        // Act
+        tail.poll();
+
+        // Assert
+        assertEquals(List.of("event:error\ndata:MarkLogic returned status: 404\n\n"), emitter.events);
+    }
+
+    @Test
+    void testNewSubscriberGetsRecentLines() throws Exception {
+        // Arrange
+        settings.setReplayLines(1);
+        server.enqueue(text("2025-01-01 10:00:01.100 Info: a", "2025-01-01 10:00:02.200 Info: b"));
+        LogTail tail = tail("ErrorLog.txt", new RecordingEmitter());
+        tail.poll();
+        RecordingEmitter late = new RecordingEmitter();
+        tail.add(late);
+
+        // Act
+        tail.replay(late);
+
+        // Assert
+        assertEquals(List.of("event:log\ndata:2025-01-01 10:00:02.200 Info: b\n\n"), late.events);
+    }
+
+    @Test
+    void testFailedSubscriberIsDropped() throws Exception {
+        // Arrange
+        server.enqueue(text("2025-01-01 10:00:01.100 Info: a"));
+        RecordingEmitter gone = new RecordingEmitter();
+        gone.failing = true;
+        LogTail tail = tail("ErrorLog.txt", gone);
+
+        // Act
+        tail.poll();
+
+        // Assert
+        assertTrue(tail.remove(new SseEmitter()));
+    }
+
+    private LogTail tail(String filename, RecordingEmitter emitter) {
+        LogTail tail = new LogTail(new OkHttpClient(),
+                server.url("/manage/v2/logs").newBuilder().addQueryParameter("filename", filename).build(),
+                settings, clock);
+        tail.add(emitter);
+        return tail;
+    }
+
+    private static MockResponse text(String... lines) {
+        return new MockResponse().setBody(String.join("\n", lines) + "\n");
+    }
+
+    /**
+     * Keeps what would be written to the client, one string per event.
+     */
+    private static class RecordingEmitter extends SseEmitter {
+        final List<String> events = new ArrayList<>();
+        boolean failing;
+
+        @Override
+        public void send(SseEventBuilder builder) throws IOException {
+            if (failing) {
+                throw new IOException("Broken pipe");
+            }
+            StringBuilder event = new StringBuilder();
+            Set<DataWithMediaType> parts = builder.build();
+            for (DataWithMediaType part : parts) {
+                event.append(part.getData());
+            }
+            events.add(event.toString());
+        }
+
+        @Override
+        public void completeWithError(Throwable ex) {
+        }
+    }
+}
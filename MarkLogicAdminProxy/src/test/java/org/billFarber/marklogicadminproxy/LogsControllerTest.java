@@ -1,13 +1,15 @@
 package org.billFarber.marklogicadminproxy;
 
-import com.marklogic.client.DatabaseClient;
 import okhttp3.Call;
+import okhttp3.Callback;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
 import okhttp3.Response;
 import okhttp3.ResponseBody;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
@@ -15,16 +17,19 @@ import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+
+import static org.billFarber.marklogicadminproxy.ResponseBodies.bodyAsString;
+import static org.billFarber.marklogicadminproxy.ResponseBodies.source;
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.*;
 
 class LogsControllerTest {
 
-    @Mock
-    private DatabaseClient databaseClient;
-
     @Mock
     private OkHttpClient okHttpClient;
 
@@ -40,32 +45,32 @@ class LogsControllerTest {
     @InjectMocks
     private LogsController logsController;
 
+    @TempDir
+    Path spoolDirectory;
+
     @BeforeEach
     void setUp() {
         MockitoAnnotations.openMocks(this);
         ReflectionTestUtils.setField(logsController, "marklogicHost", "localhost");
         ReflectionTestUtils.setField(logsController, "marklogicSchema", "http");
-
-        // Mock DatabaseClient to return OkHttpClient
-        when(databaseClient.getClientImplementation()).thenReturn(okHttpClient);
     }
 
     @Test
     void testGetLogs_Success_WithRequiredFilename() throws Exception {
         // Arrange
         String mockResponseBody = "<?xml version=\"1.0\" encoding=\"UTF-8\"?><log-data>Sample log content</log-data>";
-        when(responseBody.string()).thenReturn(mockResponseBody);
+        when(responseBody.source()).thenReturn(source(mockResponseBody));
         when(response.body()).thenReturn(responseBody);
         when(response.isSuccessful()).thenReturn(true);
         when(call.execute()).thenReturn(response);
         when(okHttpClient.newCall(any(Request.class))).thenReturn(call);
 
         // Act
-        ResponseEntity<String> result = logsController.getLogs(null, "ErrorLog.txt", null, null, null, null);
+        ResponseEntity<StreamingResponseBody> result = logsController.getLogs(null, "ErrorLog.txt", null, null, null, null, null, null, null, null).join();
 
         // Assert
         assertEquals(HttpStatus.OK, result.getStatusCode());
-        assertEquals(mockResponseBody, result.getBody());
+        assertEquals(mockResponseBody, bodyAsString(result));
         assertEquals(MediaType.APPLICATION_XML, result.getHeaders().getContentType());
     }
 
@@ -73,18 +78,18 @@ class LogsControllerTest {
     void testGetLogs_Success_WithJsonFormat() throws Exception {
         // Arrange
         String mockResponseBody = "{\"log-data\": \"Sample log content\"}";
-        when(responseBody.string()).thenReturn(mockResponseBody);
+        when(responseBody.source()).thenReturn(source(mockResponseBody));
         when(response.body()).thenReturn(responseBody);
         when(response.isSuccessful()).thenReturn(true);
         when(call.execute()).thenReturn(response);
         when(okHttpClient.newCall(any(Request.class))).thenReturn(call);
 
         // Act
-        ResponseEntity<String> result = logsController.getLogs("json", "ErrorLog.txt", null, null, null, null);
+        ResponseEntity<StreamingResponseBody> result = logsController.getLogs("json", "ErrorLog.txt", null, null, null, null, null, null, null, null).join();
 
         // Assert
         assertEquals(HttpStatus.OK, result.getStatusCode());
-        assertEquals(mockResponseBody, result.getBody());
+        assertEquals(mockResponseBody, bodyAsString(result));
         assertEquals(MediaType.APPLICATION_JSON, result.getHeaders().getContentType());
     }
 
@@ -92,42 +97,42 @@ class LogsControllerTest {
     void testGetLogs_Success_WithAllParameters() throws Exception {
         // Arrange
         String mockResponseBody = "Sample filtered log content";
-        when(responseBody.string()).thenReturn(mockResponseBody);
+        when(responseBody.source()).thenReturn(source(mockResponseBody));
         when(response.body()).thenReturn(responseBody);
         when(response.isSuccessful()).thenReturn(true);
         when(call.execute()).thenReturn(response);
         when(okHttpClient.newCall(any(Request.class))).thenReturn(call);
 
         // Act
-        ResponseEntity<String> result = logsController.getLogs(
+        ResponseEntity<StreamingResponseBody> result = logsController.getLogs(
                 "text",
                 "ErrorLog.txt",
                 "host1",
                 "2023-01-01T00:00:00",
                 "2023-01-02T00:00:00",
-                "ERROR.*");
+                "ERROR.*", null, null, null, null).join();
 
         // Assert
         assertEquals(HttpStatus.OK, result.getStatusCode());
-        assertEquals(mockResponseBody, result.getBody());
+        assertEquals(mockResponseBody, bodyAsString(result));
         assertEquals(MediaType.TEXT_PLAIN, result.getHeaders().getContentType());
     }
 
     @Test
     void testGetLogs_InvalidFormat() {
         // Act
-        ResponseEntity<String> result = logsController.getLogs("invalid", "ErrorLog.txt", null, null, null, null);
+        ResponseEntity<StreamingResponseBody> result = logsController.getLogs("invalid", "ErrorLog.txt", null, null, null, null, null, null, null, null).join();
 
         // Assert
         assertEquals(HttpStatus.BAD_REQUEST, result.getStatusCode());
         assertEquals(MediaType.APPLICATION_JSON, result.getHeaders().getContentType());
-        assertTrue(result.getBody().contains("Invalid format parameter"));
+        assertTrue(bodyAsString(result).contains("Invalid format parameter"));
     }
 
     @Test
     void testGetLogs_MissingFilename() {
         // Act
-        ResponseEntity<String> result = logsController.getLogs(null, null, null, null, null, null);
+        ResponseEntity<StreamingResponseBody> result = logsController.getLogs(null, null, null, null, null, null, null, null, null, null).join();
 
         // Assert - With optional filename, this should make a call to MarkLogic without
         // filename
@@ -139,7 +144,7 @@ class LogsControllerTest {
     @Test
     void testGetLogs_EmptyFilename() {
         // Act
-        ResponseEntity<String> result = logsController.getLogs(null, "  ", null, null, null, null);
+        ResponseEntity<StreamingResponseBody> result = logsController.getLogs(null, "  ", null, null, null, null, null, null, null, null).join();
 
         // Assert - With optional filename, this should make a call to MarkLogic without
         // filename
@@ -152,7 +157,7 @@ class LogsControllerTest {
     void testGetLogs_MarkLogicBadRequest() throws Exception {
         // Arrange
         String mockErrorBody = "Bad request: query parameters not supported for this log type";
-        when(responseBody.string()).thenReturn(mockErrorBody);
+        when(responseBody.source()).thenReturn(source(mockErrorBody));
         when(response.body()).thenReturn(responseBody);
         when(response.isSuccessful()).thenReturn(false);
         when(response.code()).thenReturn(400);
@@ -160,18 +165,18 @@ class LogsControllerTest {
         when(okHttpClient.newCall(any(Request.class))).thenReturn(call);
 
         // Act
-        ResponseEntity<String> result = logsController.getLogs("json", "AccessLog.txt", null, "2023-01-01", null, null);
+        ResponseEntity<StreamingResponseBody> result = logsController.getLogs("json", "AccessLog.txt", null, "2023-01-01", null, null, null, null, null, null).join();
 
         // Assert
         assertEquals(HttpStatus.BAD_REQUEST, result.getStatusCode());
-        assertEquals(mockErrorBody, result.getBody());
+        assertEquals(mockErrorBody, bodyAsString(result));
     }
 
     @Test
     void testGetLogs_MarkLogicUnauthorized() throws Exception {
         // Arrange
         String mockErrorBody = "Unauthorized: insufficient privileges";
-        when(responseBody.string()).thenReturn(mockErrorBody);
+        when(responseBody.source()).thenReturn(source(mockErrorBody));
         when(response.body()).thenReturn(responseBody);
         when(response.isSuccessful()).thenReturn(false);
         when(response.code()).thenReturn(401);
@@ -179,18 +184,18 @@ class LogsControllerTest {
         when(okHttpClient.newCall(any(Request.class))).thenReturn(call);
 
         // Act
-        ResponseEntity<String> result = logsController.getLogs("json", "ErrorLog.txt", null, null, null, null);
+        ResponseEntity<StreamingResponseBody> result = logsController.getLogs("json", "ErrorLog.txt", null, null, null, null, null, null, null, null).join();
 
         // Assert
         assertEquals(HttpStatus.UNAUTHORIZED, result.getStatusCode());
-        assertEquals(mockErrorBody, result.getBody());
+        assertEquals(mockErrorBody, bodyAsString(result));
     }
 
     @Test
     void testGetLogs_MarkLogicNotFound() throws Exception {
         // Arrange
         String mockErrorBody = "Log file not found";
-        when(responseBody.string()).thenReturn(mockErrorBody);
+        when(responseBody.source()).thenReturn(source(mockErrorBody));
         when(response.body()).thenReturn(responseBody);
         when(response.isSuccessful()).thenReturn(false);
         when(response.code()).thenReturn(404);
@@ -198,11 +203,11 @@ class LogsControllerTest {
         when(okHttpClient.newCall(any(Request.class))).thenReturn(call);
 
         // Act
-        ResponseEntity<String> result = logsController.getLogs("json", "NonExistentLog.txt", null, null, null, null);
+        ResponseEntity<StreamingResponseBody> result = logsController.getLogs("json", "NonExistentLog.txt", null, null, null, null, null, null, null, null).join();
 
         // Assert
         assertEquals(HttpStatus.NOT_FOUND, result.getStatusCode());
-        assertEquals(mockErrorBody, result.getBody());
+        assertEquals(mockErrorBody, bodyAsString(result));
     }
 
     @Test
@@ -212,31 +217,31 @@ class LogsControllerTest {
         when(call.execute()).thenThrow(new RuntimeException("Network error"));
 
         // Act
-        ResponseEntity<String> result = logsController.getLogs("json", "ErrorLog.txt", null, null, null, null);
+        ResponseEntity<StreamingResponseBody> result = logsController.getLogs("json", "ErrorLog.txt", null, null, null, null, null, null, null, null).join();
 
         // Assert
         assertEquals(HttpStatus.INTERNAL_SERVER_ERROR, result.getStatusCode());
         assertEquals(MediaType.APPLICATION_JSON, result.getHeaders().getContentType());
-        assertTrue(result.getBody().contains("Failed to retrieve logs"));
-        assertTrue(result.getBody().contains("Network error"));
+        assertTrue(bodyAsString(result).contains("Failed to retrieve logs"));
+        assertTrue(bodyAsString(result).contains("Network error"));
     }
 
     @Test
     void testGetLogs_HtmlFormat() throws Exception {
         // Arrange
         String mockResponseBody = "<html><body>Log content</body></html>";
-        when(responseBody.string()).thenReturn(mockResponseBody);
+        when(responseBody.source()).thenReturn(source(mockResponseBody));
         when(response.body()).thenReturn(responseBody);
         when(response.isSuccessful()).thenReturn(true);
         when(call.execute()).thenReturn(response);
         when(okHttpClient.newCall(any(Request.class))).thenReturn(call);
 
         // Act
-        ResponseEntity<String> result = logsController.getLogs("html", "ErrorLog.txt", null, null, null, null);
+        ResponseEntity<StreamingResponseBody> result = logsController.getLogs("html", "ErrorLog.txt", null, null, null, null, null, null, null, null).join();
 
         // Assert
         assertEquals(HttpStatus.OK, result.getStatusCode());
-        assertEquals(mockResponseBody, result.getBody());
+        assertEquals(mockResponseBody, bodyAsString(result));
         assertEquals(MediaType.TEXT_HTML, result.getHeaders().getContentType());
     }
 
@@ -249,14 +254,14 @@ class LogsControllerTest {
             try {
                 // Arrange
                 String mockResponseBody = "Sample content for " + format;
-                when(responseBody.string()).thenReturn(mockResponseBody);
+                when(responseBody.source()).thenReturn(source(mockResponseBody));
                 when(response.body()).thenReturn(responseBody);
                 when(response.isSuccessful()).thenReturn(true);
                 when(call.execute()).thenReturn(response);
                 when(okHttpClient.newCall(any(Request.class))).thenReturn(call);
 
                 // Act
-                ResponseEntity<String> result = logsController.getLogs(format, "ErrorLog.txt", null, null, null, null);
+                ResponseEntity<StreamingResponseBody> result = logsController.getLogs(format, "ErrorLog.txt", null, null, null, null, null, null, null, null).join();
 
                 // Assert
                 assertEquals(HttpStatus.OK, result.getStatusCode(), "Format " + format + " should be valid");
@@ -273,7 +278,7 @@ class LogsControllerTest {
     void testGetLogs_MarkLogicServerError() throws Exception {
         // Arrange
         String mockErrorBody = "Internal server error";
-        when(responseBody.string()).thenReturn(mockErrorBody);
+        when(responseBody.source()).thenReturn(source(mockErrorBody));
         when(response.body()).thenReturn(responseBody);
         when(response.isSuccessful()).thenReturn(false);
         when(response.code()).thenReturn(500);
@@ -281,10 +286,230 @@ class LogsControllerTest {
         when(okHttpClient.newCall(any(Request.class))).thenReturn(call);
 
         // Act
-        ResponseEntity<String> result = logsController.getLogs("json", "ErrorLog.txt", null, null, null, null);
+        ResponseEntity<StreamingResponseBody> result = logsController.getLogs("json", "ErrorLog.txt", null, null, null, null, null, null, null, null).join();
 
         // Assert
         assertEquals(HttpStatus.INTERNAL_SERVER_ERROR, result.getStatusCode());
-        assertEquals(mockErrorBody, result.getBody());
+        assertEquals(mockErrorBody, bodyAsString(result));
+    }
+
+    @Test
+    void testGetLogs_PageOfLines() throws Exception {
+        // Arrange
+        useSpool();
+        when(responseBody.source()).thenReturn(source("one\ntwo\nthree\nfour\n"));
+        when(response.body()).thenReturn(responseBody);
+        when(response.isSuccessful()).thenReturn(true);
+        when(call.execute()).thenReturn(response);
+        when(okHttpClient.newCall(any(Request.class))).thenReturn(call);
+
+        // Act
+        ResponseEntity<StreamingResponseBody> first = logsController.getLogs(null, "ErrorLog.txt", null, null, null, null, null, 0L, 2, null).join();
+        ResponseEntity<StreamingResponseBody> second = logsController.getLogs(null, "ErrorLog.txt", null, null, null, null, null, 2L, 2, null).join();
+        ResponseEntity<StreamingResponseBody> past = logsController.getLogs(null, "ErrorLog.txt", null, null, null, null, null, 9L, null, null).join();
+
+        // Assert
+        assertEquals(HttpStatus.OK, first.getStatusCode());
+        assertEquals(MediaType.TEXT_PLAIN, first.getHeaders().getContentType());
+        assertEquals("4", first.getHeaders().getFirst(LogsController.TOTAL_LINES));
+        assertEquals("one\ntwo\n", bodyAsString(first));
+        assertEquals("three\nfour\n", bodyAsString(second));
+        assertEquals("", bodyAsString(past));
+        verify(okHttpClient, times(1)).newCall(any(Request.class));
+    }
+
+    @Test
+    void testGetLogs_ByteRange() throws Exception {
+        // Arrange
+        useSpool();
+        when(responseBody.source()).thenReturn(source("0123456789"));
+        when(response.body()).thenReturn(responseBody);
+        when(response.isSuccessful()).thenReturn(true);
+        when(call.execute()).thenReturn(response);
+        when(okHttpClient.newCall(any(Request.class))).thenReturn(call);
+
+        // Act
+        ResponseEntity<StreamingResponseBody> middle = logsController.getLogs(null, "ErrorLog.txt", null, null, null, null, null, null, null, "bytes=2-4").join();
+        ResponseEntity<StreamingResponseBody> suffix = logsController.getLogs(null, "ErrorLog.txt", null, null, null, null, null, null, null, "bytes=-3").join();
+        ResponseEntity<StreamingResponseBody> beyond = logsController.getLogs(null, "ErrorLog.txt", null, null, null, null, null, null, null, "bytes=10-").join();
+        ResponseEntity<StreamingResponseBody> reversed = logsController.getLogs(null, "ErrorLog.txt", null, null, null, null, null, null, null, "bytes=5-2").join();
+
+        // Assert
+        assertEquals(HttpStatus.PARTIAL_CONTENT, middle.getStatusCode());
+        assertEquals("bytes 2-4/10", middle.getHeaders().getFirst("Content-Range"));
+        assertEquals("234", bodyAsString(middle));
+        assertEquals("789", bodyAsString(suffix));
+        assertEquals(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE, beyond.getStatusCode());
+        assertEquals("bytes */10", beyond.getHeaders().getFirst("Content-Range"));
+        assertEquals(HttpStatus.OK, reversed.getStatusCode());
+        assertNull(reversed.getHeaders().getFirst("Content-Range"));
+        assertEquals("0123456789", bodyAsString(reversed));
+    }
+
+    @Test
+    void testGetLogs_ConcurrentFirstPagesShareOneFetch() throws Exception {
+        // Arrange
+        useSpool();
+        ReflectionTestUtils.setField(logsController, "asyncEnabled", true);
+        when(responseBody.source()).thenReturn(source("one\ntwo\nthree\nfour\n"));
+        when(response.body()).thenReturn(responseBody);
+        when(response.isSuccessful()).thenReturn(true);
+        when(okHttpClient.newCall(any(Request.class))).thenReturn(call);
+
+        // Act
+        CompletableFuture<ResponseEntity<StreamingResponseBody>> first = logsController.getLogs(null, "ErrorLog.txt", null, null, null, null, null, 0L, 2, null);
+        CompletableFuture<ResponseEntity<StreamingResponseBody>> second = logsController.getLogs(null, "ErrorLog.txt", null, null, null, null, null, 2L, 2, null);
+        ArgumentCaptor<Callback> callback = ArgumentCaptor.forClass(Callback.class);
+        verify(call).enqueue(callback.capture());
+        callback.getValue().onResponse(call, response);
+
+        // Assert
+        assertEquals("one\ntwo\n", bodyAsString(first.join()));
+        assertEquals("three\nfour\n", bodyAsString(second.join()));
+        assertEquals("4", second.join().getHeaders().getFirst(LogsController.TOTAL_LINES));
+        verify(okHttpClient, times(1)).newCall(any(Request.class));
+    }
+
+    @Test
+    void testGetLogs_WaitersShareUpstreamFailure() throws Exception {
+        // Arrange
+        useSpool();
+        ReflectionTestUtils.setField(logsController, "asyncEnabled", true);
+        when(responseBody.source()).thenReturn(source("{\"error\": \"not found\"}"));
+        when(response.body()).thenReturn(responseBody);
+        when(response.isSuccessful()).thenReturn(false);
+        when(response.code()).thenReturn(404);
+        when(okHttpClient.newCall(any(Request.class))).thenReturn(call);
+
+        // Act
+        CompletableFuture<ResponseEntity<StreamingResponseBody>> first = logsController.getLogs(null, "Missing.txt", null, null, null, null, null, 0L, 2, null);
+        CompletableFuture<ResponseEntity<StreamingResponseBody>> second = logsController.getLogs(null, "Missing.txt", null, null, null, null, null, 2L, 2, null);
+        ArgumentCaptor<Callback> callback = ArgumentCaptor.forClass(Callback.class);
+        verify(call).enqueue(callback.capture());
+        callback.getValue().onResponse(call, response);
+
+        // Assert
+        assertEquals(HttpStatus.NOT_FOUND, first.join().getStatusCode());
+        assertEquals(HttpStatus.NOT_FOUND, second.join().getStatusCode());
+        assertTrue(bodyAsString(second.join()).contains("404"));
+        verify(okHttpClient, times(1)).newCall(any(Request.class));
+    }
+
+    @Test
+    void testGetLogs_PagingRequiresText() {
+        // Arrange
+        useSpool();
+
+        // Act
+        ResponseEntity<StreamingResponseBody> json = logsController.getLogs("json", "ErrorLog.txt", null, null, null, null, null, 0L, 10, null).join();
+        ResponseEntity<StreamingResponseBody> tooMany = logsController.getLogs(null, "ErrorLog.txt", null, null, null, null, null, 0L, 10001, null).join();
+
+        // Assert
+        assertEquals(HttpStatus.BAD_REQUEST, json.getStatusCode());
+        assertEquals(HttpStatus.BAD_REQUEST, tooMany.getStatusCode());
+        verify(okHttpClient, never()).newCall(any(Request.class));
+    }
+
+    @Test
+    void testGetLogs_NdjsonRecords() throws Exception {
+        // Arrange
+        String log = String.join("\n",
+                "2025-01-01 10:00:00.100 Info: Forest Documents state changed",
+                "2025-01-01 10:00:01.200 Error: XDMP-FORESTERR: Error in merge",
+                "  in /MarkLogic/merge.xqy, at 10:4") + "\n";
+        when(responseBody.source()).thenReturn(source(log));
+        when(response.body()).thenReturn(responseBody);
+        when(response.isSuccessful()).thenReturn(true);
+        when(call.execute()).thenReturn(response);
+        when(okHttpClient.newCall(any(Request.class))).thenReturn(call);
+
+        // Act
+        ResponseEntity<StreamingResponseBody> result = logsController.getLogs("ndjson", "ErrorLog.txt", "host1",
+                "2025-01-01T00:00:00", null, null, "warning", null, null, null).join();
+
+        // Assert
+        assertEquals(HttpStatus.OK, result.getStatusCode());
+        assertEquals(LogsController.NDJSON, result.getHeaders().getContentType());
+        assertEquals("{\"timestamp\":\"2025-01-01T10:00:01.200\",\"level\":\"error\",\"host\":\"host1\","
+                + "\"app-server\":null,\"message\":\"XDMP-FORESTERR: Error in merge\\n  in /MarkLogic/merge.xqy, at 10:4\"}\n",
+                bodyAsString(result));
+        ArgumentCaptor<Request> request = ArgumentCaptor.forClass(Request.class);
+        verify(okHttpClient).newCall(request.capture());
+        assertEquals("text", request.getValue().url().queryParameter("format"));
+        assertEquals("2025-01-01T00:00:00", request.getValue().url().queryParameter("start"));
+        verify(response).close();
+    }
+
+    @Test
+    void testGetLogs_NdjsonFiltersAccessLogTimeLocally() throws Exception {
+        // Arrange
+        String log = String.join("\n",
+                "127.0.0.1 - admin [01/Jan/2025:09:00:00 +0000] \"GET /a HTTP/1.1\" 200 5 - \"curl\"",
+                "127.0.0.1 - admin [01/Jan/2025:11:00:00 +0000] \"GET /b HTTP/1.1\" 200 5 - \"curl\"") + "\n";
+        when(responseBody.source()).thenReturn(source(log));
+        when(response.body()).thenReturn(responseBody);
+        when(response.isSuccessful()).thenReturn(true);
+        when(call.execute()).thenReturn(response);
+        when(okHttpClient.newCall(any(Request.class))).thenReturn(call);
+
+        // Act
+        ResponseEntity<StreamingResponseBody> result = logsController.getLogs("ndjson", "8002_AccessLog.txt", null,
+                "2025-01-01T10:00:00", null, null, null, null, null, null).join();
+
+        // Assert
+        String body = bodyAsString(result);
+        assertFalse(body.contains("GET /a"));
+        assertTrue(body.contains("\"message\":\"GET /b 200\""));
+        ArgumentCaptor<Request> request = ArgumentCaptor.forClass(Request.class);
+        verify(okHttpClient).newCall(request.capture());
+        assertNull(request.getValue().url().queryParameter("start"));
+    }
+
+    @Test
+    void testGetLogs_NdjsonAuditLog() throws Exception {
+        // Arrange
+        String log = String.join("\n",
+                "2025-01-01 09:00:00.000 event=login; success=true; user=admin;",
+                "2025-01-01 11:00:00.000 event=login; success=false; user=bob;") + "\n";
+        when(responseBody.source()).thenReturn(source(log));
+        when(response.body()).thenReturn(responseBody);
+        when(response.isSuccessful()).thenReturn(true);
+        when(call.execute()).thenReturn(response);
+        when(okHttpClient.newCall(any(Request.class))).thenReturn(call);
+
+        // Act
+        ResponseEntity<StreamingResponseBody> result = logsController.getLogs("ndjson", "AuditLog.txt", null,
+                "2025-01-01T10:00:00", "2025-01-01T12:00:00", null, null, null, null, null).join();
+
+        // Assert
+        assertEquals(HttpStatus.OK, result.getStatusCode());
+        assertEquals("{\"timestamp\":\"2025-01-01T11:00\",\"level\":\"warning\",\"host\":null,\"app-server\":null,"
+                + "\"message\":\"event=login; success=false; user=bob;\"}\n", bodyAsString(result));
+        ArgumentCaptor<Request> request = ArgumentCaptor.forClass(Request.class);
+        verify(okHttpClient).newCall(request.capture());
+        assertNull(request.getValue().url().queryParameter("start"));
+        assertNull(request.getValue().url().queryParameter("end"));
+    }
+
+    @Test
+    void testGetLogs_NdjsonRejectsBadFilters() {
+        // Act
+        ResponseEntity<StreamingResponseBody> badLevel = logsController.getLogs("ndjson", "ErrorLog.txt", null, null, null, null, "loud", null, null, null).join();
+        ResponseEntity<StreamingResponseBody> badTime = logsController.getLogs("ndjson", "ErrorLog.txt", null, "yesterday", null, null, null, null, null, null).join();
+        ResponseEntity<StreamingResponseBody> levelWithoutNdjson = logsController.getLogs("text", "ErrorLog.txt", null, null, null, null, "error", null, null, null).join();
+
+        // Assert
+        assertEquals(HttpStatus.BAD_REQUEST, badLevel.getStatusCode());
+        assertEquals(HttpStatus.BAD_REQUEST, badTime.getStatusCode());
+        assertEquals(HttpStatus.BAD_REQUEST, levelWithoutNdjson.getStatusCode());
+        verify(okHttpClient, never()).newCall(any(Request.class));
+    }
+
+    private void useSpool() {
+        ManagementProperties properties = new ManagementProperties();
+        properties.getLogSpool().setDirectory(spoolDirectory.toString());
+        LogSpool spool = new LogSpool(properties.getLogSpool());
+        ReflectionTestUtils.setField(logsController, "managementProperties", properties);
+        ReflectionTestUtils.setField(logsController, "logSpool", spool);
     }
 }
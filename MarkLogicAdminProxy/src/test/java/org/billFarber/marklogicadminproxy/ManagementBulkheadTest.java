@@ -0,0 +1,136 @@
+package org.billFarber.marklogicadminproxy;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import okhttp3.HttpUrl;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ManagementBulkheadTest {
+
+    private MockWebServer server;
+    private SimpleMeterRegistry registry;
+    private ManagementBulkhead bulkhead;
+    private OkHttpClient client;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = new MockWebServer();
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                return new MockResponse().setBody("line\n".repeat(100));
+            }
+        });
+        server.start();
+
+        ManagementProperties.Bulkhead settings = new ManagementProperties.Bulkhead();
+        settings.setMaxConcurrent(Map.of("logs", 1, "lists", 4));
+        settings.setMaxWait(Duration.ofMillis(50));
+        registry = new SimpleMeterRegistry();
+        bulkhead = new ManagementBulkhead(settings, registry);
+        client = new OkHttpClient.Builder().addInterceptor(bulkhead).build();
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        server.shutdown();
+    }
+
+    @Test
+    void testFullFamilyRejectsWithRetryAfter() throws IOException {
+        // Arrange
+        try (Response streaming = call("/manage/v2/logs?filename=ErrorLog.txt")) {
+            assertEquals(200, streaming.code());
+
+            // Act
+            try (Response rejected = call("/manage/v2/logs?filename=8002_AccessLog.txt")) {
+
+                // Assert
+                assertEquals(503, rejected.code());
+                assertEquals("1", rejected.header("Retry-After"));
+                assertTrue(rejected.body().string().contains("PROXY-BULKHEADFULL"));
+            }
+        }
+        assertEquals(1, server.getRequestCount());
+        assertEquals(1, registry.get(ManagementBulkhead.REJECTED).tag("family", "logs").counter().count());
+    }
+
+    @Test
+    void testSlotIsReleasedWhenBodyIsClosed() throws IOException {
+        // Arrange
+        try (Response first = call("/manage/v2/logs?filename=ErrorLog.txt")) {
+            first.body().string();
+        }
+
+        // Act
+        try (Response second = call("/manage/v2/logs?filename=ErrorLog.txt")) {
+
+            // Assert
+            assertEquals(200, second.code());
+            assertEquals(0, bulkhead.available().get(EndpointFamily.LOGS));
+        }
+        assertEquals(1, bulkhead.available().get(EndpointFamily.LOGS));
+    }
+
+    @Test
+    void testOtherFamiliesAreNotBlocked() throws IOException {
+        // Arrange
+        try (Response streaming = call("/manage/v2/logs?filename=ErrorLog.txt")) {
+            assertEquals(200, streaming.code());
+
+            // Act
+            try (Response list = call("/manage/v2/databases?format=json");
+                    Response properties = call("/manage/v2/databases/Documents/properties")) {
+
+                // Assert
+                assertEquals(200, list.code());
+                assertEquals(200, properties.code());
+            }
+        }
+        assertFalse(bulkhead.available().containsKey(EndpointFamily.PROPERTIES));
+    }
+
+    @Test
+    void testSlotIsReleasedWhenCallFails() throws IOException {
+        // Arrange
+        server.shutdown();
+
+        // Act
+        assertThrows(IOException.class, () -> call("/manage/v2/logs"));
+
+        // Assert
+        assertEquals(1, bulkhead.available().get(EndpointFamily.LOGS));
+    }
+
+    @Test
+    void testEndpointFamilies() {
+        assertEquals(EndpointFamily.LOGS, EndpointFamily.of(url("/manage/v2/logs?filename=ErrorLog.txt")));
+        assertEquals(EndpointFamily.METRICS, EndpointFamily.of(url("/manage/v2/hosts?view=metrics")));
+        assertEquals(EndpointFamily.METRICS, EndpointFamily.of(url("/manage/v2/forests/f1?view=STATUS")));
+        assertEquals(EndpointFamily.PROPERTIES, EndpointFamily.of(url("/manage/v2/databases/Documents/properties/")));
+        assertEquals(EndpointFamily.LISTS, EndpointFamily.of(url("/manage/v2/databases?format=json")));
+        assertEquals(EndpointFamily.LISTS, EndpointFamily.of(url("/manage/v2/servers/App-Services?group-id=Default")));
+    }
+
+    private Response call(String path) throws IOException {
+        return client.newCall(new Request.Builder().url(server.url(path)).build()).execute();
+    }
+
+    private static HttpUrl url(String path) {
+        return HttpUrl.get("http://localhost:8002" + path);
+    }
+}
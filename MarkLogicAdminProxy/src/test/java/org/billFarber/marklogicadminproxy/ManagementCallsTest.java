@@ -0,0 +1,225 @@
+package org.billFarber.marklogicadminproxy;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class ManagementCallsTest {
+
+    @Mock
+    private OkHttpClient okHttpClient;
+
+    @Mock
+    private Call call;
+
+    @Mock
+    private Response response;
+
+    private final Request request = new Request.Builder().url("http://localhost:8002/manage/v2/hosts").build();
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        when(okHttpClient.newCall(any(Request.class))).thenReturn(call);
+    }
+
+    @AfterEach
+    void tearDown() {
+        RequestContextHolder.resetRequestAttributes();
+    }
+
+    @Test
+    void testBlockingExchangeCompletesImmediately() throws IOException {
+        when(call.execute()).thenReturn(response);
+
+        CompletableFuture<ResponseEntity<StreamingResponseBody>> result = ManagementCalls.exchange(okHttpClient,
+                request, false, upstream -> ResponseEntity.ok().build());
+
+        assertTrue(result.isDone());
+        assertEquals(HttpStatus.OK, result.join().getStatusCode());
+        verify(call).execute();
+        verify(call, never()).enqueue(any());
+    }
+
+    @Test
+    void testBlockingExchangeFailsFutureOnIOException() throws IOException {
+        when(call.execute()).thenThrow(new IOException("Connection refused"));
+
+        CompletableFuture<ResponseEntity<StreamingResponseBody>> result = ManagementCalls.exchange(okHttpClient,
+                request, false, upstream -> ResponseEntity.ok().build());
+
+        assertTrue(result.isCompletedExceptionally());
+        CompletionException thrown = assertThrows(CompletionException.class, result::join);
+        assertEquals("Connection refused", ManagementCalls.unwrap(thrown).getMessage());
+    }
+
+    @Test
+    void testAsyncExchangeCompletesFromCallback() throws IOException {
+        CompletableFuture<ResponseEntity<StreamingResponseBody>> result = ManagementCalls.exchange(okHttpClient,
+                request, true, upstream -> ResponseEntity.status(HttpStatus.ACCEPTED).build());
+
+        ArgumentCaptor<Callback> callback = ArgumentCaptor.forClass(Callback.class);
+        verify(call).enqueue(callback.capture());
+        assertFalse(result.isDone());
+
+        callback.getValue().onResponse(call, response);
+
+        assertEquals(HttpStatus.ACCEPTED, result.join().getStatusCode());
+    }
+
+    @Test
+    void testAsyncExchangeFailsFromCallback() {
+        CompletableFuture<ResponseEntity<StreamingResponseBody>> result = ManagementCalls.exchange(okHttpClient,
+                request, true, upstream -> ResponseEntity.ok().build());
+
+        ArgumentCaptor<Callback> callback = ArgumentCaptor.forClass(Callback.class);
+        verify(call).enqueue(callback.capture());
+        callback.getValue().onFailure(call, new IOException("timeout"));
+
+        ExecutionException thrown = assertThrows(ExecutionException.class, result::get);
+        assertInstanceOf(IOException.class, ManagementCalls.unwrap(thrown));
+    }
+
+    @Test
+    void testAsyncHandlerFailureClosesResponse() throws IOException {
+        CompletableFuture<ResponseEntity<StreamingResponseBody>> result = ManagementCalls.exchange(okHttpClient,
+                request, true, upstream -> {
+                    throw new IOException("unreadable body");
+                });
+
+        ArgumentCaptor<Callback> callback = ArgumentCaptor.forClass(Callback.class);
+        verify(call).enqueue(callback.capture());
+        callback.getValue().onResponse(call, response);
+
+        assertTrue(result.isCompletedExceptionally());
+        verify(response).close();
+    }
+
+    @Test
+    void testAsyncHandlerSeesCallingRequestContext() throws Exception {
+        MockHttpServletRequest servletRequest = new MockHttpServletRequest();
+        servletRequest.addHeader("If-None-Match", "\"abc\"");
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(servletRequest));
+
+        CompletableFuture<ResponseEntity<StreamingResponseBody>> result = ManagementCalls.exchange(okHttpClient,
+                request, true, upstream -> {
+                    String header = ((ServletRequestAttributes) RequestContextHolder.currentRequestAttributes())
+                            .getRequest().getHeader("If-None-Match");
+                    return ResponseEntity.ok().eTag(header).build();
+                });
+
+        ArgumentCaptor<Callback> callback = ArgumentCaptor.forClass(Callback.class);
+        verify(call).enqueue(callback.capture());
+        RequestContextHolder.resetRequestAttributes();
+
+        // OkHttp invokes the callback on one of its dispatcher threads
+        Thread dispatcherThread = new Thread(() -> {
+            try {
+                callback.getValue().onResponse(call, response);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        dispatcherThread.start();
+        dispatcherThread.join();
+
+        assertEquals("\"abc\"", result.join().getHeaders().getETag());
+    }
+
+    @Test
+    void testCancellingAsyncExchangeCancelsCall() {
+        CompletableFuture<ResponseEntity<StreamingResponseBody>> result = ManagementCalls.exchange(okHttpClient,
+                request, true, upstream -> ResponseEntity.ok().build());
+
+        result.cancel(true);
+
+        verify(call).cancel();
+    }
+
+    @Test
+    void testResponseIsClosedWhenCancelledWhileHandling() throws IOException {
+        CompletableFuture<?>[] result = new CompletableFuture<?>[1];
+        result[0] = ManagementCalls.exchange(okHttpClient, request, true, upstream -> {
+            result[0].cancel(true);
+            return ResponseEntity.ok().body(upstream);
+        });
+
+        ArgumentCaptor<Callback> callback = ArgumentCaptor.forClass(Callback.class);
+        verify(call).enqueue(callback.capture());
+        callback.getValue().onResponse(call, response);
+
+        assertTrue(result[0].isCancelled());
+        verify(response).close();
+    }
+
+    @Test
+    void testAsyncTimeoutReleasesConnectionAndBulkheadSlot() throws Exception {
+        MockWebServer server = new MockWebServer();
+        server.enqueue(new MockResponse().setBody("late").setHeadersDelay(500, TimeUnit.MILLISECONDS));
+        server.enqueue(new MockResponse().setBody("next"));
+        server.start();
+        try {
+            ManagementProperties.Bulkhead settings = new ManagementProperties.Bulkhead();
+            settings.setMaxConcurrent(Map.of("logs", 1));
+            settings.setMaxWait(Duration.ofMillis(50));
+            OkHttpClient client = new OkHttpClient.Builder()
+                    .addInterceptor(new ManagementBulkhead(settings, new SimpleMeterRegistry()))
+                    .build();
+            Request logs = new Request.Builder().url(server.url("/manage/v2/logs?filename=ErrorLog.txt")).build();
+            MockHttpServletRequest servletRequest = new MockHttpServletRequest();
+            RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(servletRequest));
+            // The handler keeps the response open for streaming, as ProxyResponses.stream does
+            CompletableFuture<ResponseEntity<Response>> slow = ManagementCalls.exchange(client, logs, true,
+                    upstream -> ResponseEntity.ok().body(upstream));
+            RequestContextHolder.resetRequestAttributes();
+
+            boolean proceed = new ManagementAsyncConfig.PendingCallsInterceptor()
+                    .handleTimeout(new ServletWebRequest(servletRequest), new DeferredResult<>());
+
+            assertTrue(proceed);
+            assertTrue(slow.isCancelled());
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (client.dispatcher().runningCallsCount() > 0 && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(0, client.dispatcher().runningCallsCount());
+            assertEquals(client.connectionPool().connectionCount(), client.connectionPool().idleConnectionCount());
+            try (Response next = client.newCall(logs).execute()) {
+                assertEquals(200, next.code());
+            }
+        } finally {
+            server.shutdown();
+        }
+    }
+}
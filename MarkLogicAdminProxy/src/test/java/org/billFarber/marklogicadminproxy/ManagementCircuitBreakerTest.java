@@ -0,0 +1,202 @@
+package org.billFarber.marklogicadminproxy;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.billFarber.marklogicadminproxy.ManagementCircuitBreaker.State;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ManagementCircuitBreakerTest {
+
+    private static final String PROPERTIES = "/manage/v2/databases/Documents/properties";
+
+    private MockWebServer server;
+    private volatile int upstreamStatus = 200;
+    private SimpleMeterRegistry registry;
+    private MutableClock clock;
+    private ManagementCircuitBreaker breaker;
+    private OkHttpClient client;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = new MockWebServer();
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                return new MockResponse().setResponseCode(upstreamStatus).setBody("{}");
+            }
+        });
+        server.start();
+
+        ManagementProperties.CircuitBreaker settings = new ManagementProperties.CircuitBreaker();
+        settings.setSlidingWindowSize(4);
+        settings.setMinimumCalls(4);
+        settings.setHalfOpenCalls(2);
+        registry = new SimpleMeterRegistry();
+        clock = new MutableClock();
+        breaker = new ManagementCircuitBreaker(settings, registry, clock);
+        client = new OkHttpClient.Builder().addInterceptor(breaker).build();
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        server.shutdown();
+    }
+
+    @Test
+    void testOpensAtFailureRateAndFailsFast() throws IOException {
+        // Arrange
+        upstreamStatus = 500;
+        call(PROPERTIES);
+        call(PROPERTIES);
+        upstreamStatus = 200;
+        call(PROPERTIES);
+        upstreamStatus = 500;
+
+        // Act
+        call(PROPERTIES);
+        Response rejected = client.newCall(new Request.Builder().url(server.url(PROPERTIES)).build()).execute();
+
+        // Assert
+        assertEquals(State.OPEN, breaker.state(EndpointFamily.PROPERTIES));
+        assertEquals(503, rejected.code());
+        assertEquals("30", rejected.header("Retry-After"));
+        assertTrue(rejected.body().string().contains("PROXY-CIRCUITOPEN"));
+        assertEquals(4, server.getRequestCount());
+        assertEquals(1, registry.get(ManagementBulkhead.REJECTED)
+                .tag("family", "properties")
+                .tag("reason", "circuit-open")
+                .counter().count());
+        assertEquals(2, registry.get(ManagementCircuitBreaker.STATE).tag("family", "properties").gauge().value());
+    }
+
+    @Test
+    void testClientErrorsAreNotFailures() throws IOException {
+        // Arrange
+        upstreamStatus = 404;
+
+        // Act
+        for (int i = 0; i < 6; i++) {
+            assertEquals(404, call(PROPERTIES));
+        }
+
+        // Assert
+        assertEquals(State.CLOSED, breaker.state(EndpointFamily.PROPERTIES));
+        assertEquals(6, server.getRequestCount());
+    }
+
+    @Test
+    void testFamiliesAreIndependent() throws IOException {
+        // Arrange
+        open(PROPERTIES);
+        upstreamStatus = 200;
+
+        // Act
+        int status = call("/manage/v2/databases?format=json");
+
+        // Assert
+        assertEquals(200, status);
+        assertEquals(State.CLOSED, breaker.state(EndpointFamily.LISTS));
+        assertEquals(503, call(PROPERTIES));
+    }
+
+    @Test
+    void testClosesAfterSuccessfulTrialCalls() throws IOException {
+        // Arrange
+        open(PROPERTIES);
+        clock.advance(Duration.ofSeconds(30));
+        upstreamStatus = 200;
+
+        // Act
+        assertEquals(200, call(PROPERTIES));
+        assertEquals(State.HALF_OPEN, breaker.state(EndpointFamily.PROPERTIES));
+        assertEquals(200, call(PROPERTIES));
+
+        // Assert
+        assertEquals(State.CLOSED, breaker.state(EndpointFamily.PROPERTIES));
+    }
+
+    @Test
+    void testFailedTrialCallReopens() throws IOException {
+        // Arrange
+        open(PROPERTIES);
+        clock.advance(Duration.ofSeconds(30));
+        int requestsWhileOpen = server.getRequestCount();
+
+        // Act
+        assertEquals(500, call(PROPERTIES));
+
+        // Assert
+        assertEquals(State.OPEN, breaker.state(EndpointFamily.PROPERTIES));
+        assertEquals(503, call(PROPERTIES));
+        assertEquals(requestsWhileOpen + 1, server.getRequestCount());
+    }
+
+    @Test
+    void testUnreachableUpstreamCountsAsFailure() throws IOException {
+        // Arrange
+        server.shutdown();
+
+        // Act
+        for (int i = 0; i < 4; i++) {
+            assertThrows(IOException.class, () -> call(PROPERTIES));
+        }
+
+        // Assert
+        assertEquals(State.OPEN, breaker.state(EndpointFamily.PROPERTIES));
+        assertEquals(503, call(PROPERTIES));
+    }
+
+    private void open(String path) throws IOException {
+        upstreamStatus = 500;
+        for (int i = 0; i < 4; i++) {
+            call(path);
+        }
+        assertEquals(State.OPEN, breaker.state(EndpointFamily.of(server.url(path))));
+    }
+
+    private int call(String path) throws IOException {
+        try (Response response = client.newCall(new Request.Builder().url(server.url(path)).build()).execute()) {
+            return response.code();
+        }
+    }
+
+    private static class MutableClock extends Clock {
+        private Instant now = Instant.parse("2025-01-01T00:00:00Z");
+
+        void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
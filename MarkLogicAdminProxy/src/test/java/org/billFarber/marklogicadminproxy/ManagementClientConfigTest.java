@@ -0,0 +1,158 @@
+package org.billFarber.marklogicadminproxy;
+
+import com.marklogic.client.DatabaseClient;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import okhttp3.Authenticator;
+import okhttp3.EventListener;
+import okhttp3.Interceptor;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledForJreRange;
+import org.junit.jupiter.api.condition.JRE;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.mock.env.MockEnvironment;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class ManagementClientConfigTest {
+
+    @Test
+    void testManagementClientIsSeparateAndTuned() {
+        OkHttpClient baseClient = new OkHttpClient();
+        DatabaseClient databaseClient = mock(DatabaseClient.class);
+        when(databaseClient.getClientImplementation()).thenReturn(baseClient);
+
+        ManagementProperties properties = new ManagementProperties();
+        properties.setMaxRequests(300);
+        properties.setMaxRequestsPerHost(100);
+        properties.setConnectTimeout(Duration.ofSeconds(3));
+        properties.setReadTimeout(Duration.ofSeconds(45));
+
+        OkHttpClient client = new ManagementClientConfig().managementHttpClient(databaseClient, properties,
+                new MockEnvironment(), interceptors(), eventListeners(), authenticators());
+
+        assertNotSame(baseClient.connectionPool(), client.connectionPool());
+        assertNotSame(baseClient.dispatcher(), client.dispatcher());
+        assertEquals(300, client.dispatcher().getMaxRequests());
+        assertEquals(100, client.dispatcher().getMaxRequestsPerHost());
+        assertEquals(3_000, client.connectTimeoutMillis());
+        assertEquals(45_000, client.readTimeoutMillis());
+        assertSame(baseClient.authenticator(), client.authenticator());
+        assertEquals(List.of(Protocol.HTTP_2, Protocol.HTTP_1_1), client.protocols());
+    }
+
+    @Test
+    void testHttp2CanBeDisabled() {
+        DatabaseClient databaseClient = mock(DatabaseClient.class);
+        when(databaseClient.getClientImplementation()).thenReturn(new OkHttpClient());
+
+        ManagementProperties properties = new ManagementProperties();
+        properties.setHttp2Enabled(false);
+
+        OkHttpClient client = new ManagementClientConfig().managementHttpClient(databaseClient, properties,
+                new MockEnvironment(), interceptors(), eventListeners(), authenticators());
+
+        assertEquals(List.of(Protocol.HTTP_1_1), client.protocols());
+    }
+
+    @Test
+    void testDispatcherUsesPlatformThreadsByDefault() {
+        DatabaseClient databaseClient = mock(DatabaseClient.class);
+        when(databaseClient.getClientImplementation()).thenReturn(new OkHttpClient());
+
+        OkHttpClient client = new ManagementClientConfig().managementHttpClient(databaseClient,
+                new ManagementProperties(), new MockEnvironment(), interceptors(), eventListeners(), authenticators());
+
+        assertFalse(dispatcherThreadName(client).startsWith(ManagementClientConfig.VIRTUAL_THREAD_PREFIX));
+    }
+
+    @Test
+    @EnabledForJreRange(min = JRE.JAVA_21)
+    void testDispatcherUsesVirtualThreadsWhenEnabled() {
+        DatabaseClient databaseClient = mock(DatabaseClient.class);
+        when(databaseClient.getClientImplementation()).thenReturn(new OkHttpClient());
+        MockEnvironment environment = new MockEnvironment().withProperty("spring.threads.virtual.enabled", "true");
+
+        OkHttpClient client = new ManagementClientConfig().managementHttpClient(databaseClient,
+                new ManagementProperties(), environment, interceptors(), eventListeners(), authenticators());
+
+        assertTrue(dispatcherThreadName(client).startsWith(ManagementClientConfig.VIRTUAL_THREAD_PREFIX));
+    }
+
+    @Test
+    void testInterceptorBeansAreInstalled() {
+        DatabaseClient databaseClient = mock(DatabaseClient.class);
+        when(databaseClient.getClientImplementation()).thenReturn(new OkHttpClient());
+        ManagementProperties properties = new ManagementProperties();
+        ManagementResponseCache cache = new ManagementClientConfig().managementResponseCache(properties);
+
+        OkHttpClient client = new ManagementClientConfig().managementHttpClient(databaseClient, properties,
+                new MockEnvironment(), interceptors(cache), eventListeners(), authenticators());
+
+        assertEquals(List.of(cache), client.interceptors());
+    }
+
+    @Test
+    void testEventListenerFactoryIsInstalled() {
+        DatabaseClient databaseClient = mock(DatabaseClient.class);
+        when(databaseClient.getClientImplementation()).thenReturn(new OkHttpClient());
+        ManagementPhaseTimer.Factory phaseTimer = new ManagementClientConfig()
+                .managementPhaseTimer(new SimpleMeterRegistry());
+
+        OkHttpClient client = new ManagementClientConfig().managementHttpClient(databaseClient,
+                new ManagementProperties(), new MockEnvironment(), interceptors(), eventListeners(phaseTimer), authenticators());
+
+        assertSame(phaseTimer, client.eventListenerFactory());
+    }
+
+    @Test
+    void testDigestAuthReplacesAuthenticator() {
+        DatabaseClient databaseClient = mock(DatabaseClient.class);
+        when(databaseClient.getClientImplementation()).thenReturn(new OkHttpClient());
+        ManagementDigestAuth digestAuth = new ManagementClientConfig()
+                .managementDigestAuth(databaseClient, "admin", "admin", new SimpleMeterRegistry());
+
+        OkHttpClient client = new ManagementClientConfig().managementHttpClient(databaseClient,
+                new ManagementProperties(), new MockEnvironment(), interceptors(digestAuth), eventListeners(),
+                authenticators(digestAuth));
+
+        assertSame(digestAuth, client.authenticator());
+        assertEquals(List.of(digestAuth), client.interceptors());
+    }
+
+    private static ObjectProvider<Interceptor> interceptors(Interceptor... interceptors) {
+        StaticListableBeanFactory beanFactory = new StaticListableBeanFactory();
+        for (int i = 0; i < interceptors.length; i++) {
+            beanFactory.addBean("interceptor" + i, interceptors[i]);
+        }
+        return beanFactory.getBeanProvider(Interceptor.class);
+    }
+
+    private static ObjectProvider<EventListener.Factory> eventListeners(EventListener.Factory... factories) {
+        StaticListableBeanFactory beanFactory = new StaticListableBeanFactory();
+        for (int i = 0; i < factories.length; i++) {
+            beanFactory.addBean("eventListener" + i, factories[i]);
+        }
+        return beanFactory.getBeanProvider(EventListener.Factory.class);
+    }
+
+    private static ObjectProvider<Authenticator> authenticators(Authenticator... authenticators) {
+        StaticListableBeanFactory beanFactory = new StaticListableBeanFactory();
+        for (int i = 0; i < authenticators.length; i++) {
+            beanFactory.addBean("authenticator" + i, authenticators[i]);
+        }
+        return beanFactory.getBeanProvider(Authenticator.class);
+    }
+
+    private static String dispatcherThreadName(OkHttpClient client) {
+        return CompletableFuture.supplyAsync(() -> Thread.currentThread().getName(),
+                client.dispatcher().executorService()).join();
+    }
+}
@@ -0,0 +1,155 @@
+package org.billFarber.marklogicadminproxy;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okio.Buffer;
+import okio.GzipSink;
+import okio.GzipSource;
+import okio.Okio;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ManagementCompressionNegotiatorTest {
+
+    private static final String BODY = "{\"forest-default-list\":{\"list-items\":{\"list-item\":["
+            + "{\"nameref\":\"Documents\"}, {\"nameref\":\"Security\"}]}}}".repeat(20);
+
+    private MockWebServer server;
+    private OkHttpClient client;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = new MockWebServer();
+        server.start();
+        client = new OkHttpClient.Builder().addInterceptor(new ManagementCompressionNegotiator()).build();
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        server.shutdown();
+    }
+
+    @Test
+    void testRequestsGzipAndInflatesForReaders() throws Exception {
+        // Arrange
+        server.enqueue(gzipResponse(BODY));
+
+        // Act
+        try (Response response = get(client)) {
+            // Assert
+            assertInstanceOf(GzipResponseBody.class, response.body());
+            assertNull(response.header("Content-Encoding"));
+            assertNull(response.header("Content-Length"));
+            assertEquals(BODY, response.body().string());
+        }
+        RecordedRequest recorded = server.takeRequest();
+        assertEquals("gzip", recorded.getHeader("Accept-Encoding"));
+    }
+
+    @Test
+    void testCompressedBytesCanBeReadAsReceived() throws Exception {
+        // Arrange
+        Buffer compressed = gzip(BODY);
+        long compressedSize = compressed.size();
+        server.enqueue(new MockResponse().setHeader("Content-Encoding", "gzip").setBody(compressed));
+
+        // Act
+        try (Response response = get(client)) {
+            GzipResponseBody body = (GzipResponseBody) response.body();
+
+            // Assert
+            assertEquals(compressedSize, body.compressedLength());
+            Buffer received = new Buffer();
+            body.compressedSource().readAll(received);
+            assertEquals(compressedSize, received.size());
+            assertEquals(BODY, Okio.buffer(new GzipSource(received)).readUtf8());
+        }
+    }
+
+    @Test
+    void testUncompressedResponsePassesThrough() throws Exception {
+        // Arrange
+        server.enqueue(new MockResponse().setBody(BODY));
+
+        // Act
+        try (Response response = get(client)) {
+            // Assert
+            assertFalse(response.body() instanceof GzipResponseBody);
+            assertEquals(BODY, response.body().string());
+        }
+    }
+
+    @Test
+    void testCallerAcceptEncodingIsLeftAlone() throws Exception {
+        // Arrange
+        server.enqueue(gzipResponse(BODY));
+        Request request = new Request.Builder()
+                .url(server.url("/manage/v2/forests"))
+                .header("Accept-Encoding", "identity")
+                .build();
+
+        // Act
+        try (Response response = client.newCall(request).execute()) {
+            // Assert
+            assertFalse(response.body() instanceof GzipResponseBody);
+            assertEquals("gzip", response.header("Content-Encoding"));
+        }
+        assertEquals("identity", server.takeRequest().getHeader("Accept-Encoding"));
+    }
+
+    @Test
+    void testCacheStoresCompressedBytes() throws Exception {
+        // Arrange
+        ManagementResponseCache cache = new ManagementResponseCache(new ManagementProperties.Cache());
+        OkHttpClient cachingClient = client.newBuilder().addInterceptor(cache).build();
+        long compressedSize = gzip(BODY).size();
+        server.enqueue(gzipResponse(BODY));
+
+        // Act
+        String first;
+        String second;
+        try (Response response = get(cachingClient)) {
+            first = response.body().string();
+        }
+        try (Response response = get(cachingClient)) {
+            assertInstanceOf(GzipResponseBody.class, response.body());
+            second = response.body().string();
+        }
+
+        // Assert
+        assertEquals(BODY, first);
+        assertEquals(BODY, second);
+        assertEquals(1, server.getRequestCount());
+        assertEquals(compressedSize, cache.stats().bytes());
+    }
+
+    private Response get(OkHttpClient httpClient) throws IOException {
+        return httpClient.newCall(new Request.Builder().url(server.url("/manage/v2/forests?format=json")).build())
+                .execute();
+    }
+
+    private static MockResponse gzipResponse(String body) throws IOException {
+        return new MockResponse()
+                .setHeader("Content-Type", "application/json")
+                .setHeader("Content-Encoding", "gzip")
+                .setBody(gzip(body));
+    }
+
+    private static Buffer gzip(String body) throws IOException {
+        Buffer compressed = new Buffer();
+        try (GzipSink sink = new GzipSink(compressed)) {
+            Buffer source = new Buffer().writeUtf8(body);
+            sink.write(source, source.size());
+        }
+        return compressed;
+    }
+}
@@ -0,0 +1,302 @@
+package org.billFarber.marklogicadminproxy;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ManagementConcurrencyLimiterTest {
+
+    private MockWebServer server;
+    private SimpleMeterRegistry registry;
+    private ManagementProperties.Limiter settings;
+    private CountDownLatch blocked;
+    private volatile int headersDelayMillis;
+    private volatile int status;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = new MockWebServer();
+        blocked = new CountDownLatch(1);
+        status = 200;
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                if (request.getPath().contains("blocked")) {
+                    blocked.await(10, TimeUnit.SECONDS);
+                }
+                return new MockResponse()
+                        .setResponseCode(status)
+                        .setHeadersDelay(headersDelayMillis, TimeUnit.MILLISECONDS)
+                        .setBody("{}");
+            }
+        });
+        server.start();
+
+        registry = new SimpleMeterRegistry();
+        settings = new ManagementProperties.Limiter();
+        settings.setMaxWait(Duration.ofSeconds(5));
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        blocked.countDown();
+        server.shutdown();
+    }
+
+    @Test
+    void testLimitShrinksWhenLatencyRises() throws IOException {
+        // Arrange
+        settings.setInitialLimit(20);
+        ManagementConcurrencyLimiter limiter = new ManagementConcurrencyLimiter(settings, registry);
+        OkHttpClient client = client(limiter);
+        for (int i = 0; i < 20; i++) {
+            get(client, "/manage/v2/hosts");
+        }
+        double before = limiter.limit();
+
+        // Act
+        headersDelayMillis = 100;
+        for (int i = 0; i < 10; i++) {
+            get(client, "/manage/v2/hosts");
+        }
+
+        // Assert
+        assertEquals(20, before);
+        assertTrue(limiter.limit() < before, "limit " + limiter.limit());
+        assertEquals(0, limiter.inflight());
+    }
+
+    @Test
+    void testLimitGrowsWhileSaturated() throws Exception {
+        // Arrange
+        settings.setInitialLimit(2);
+        ManagementConcurrencyLimiter limiter = new ManagementConcurrencyLimiter(settings, registry);
+        OkHttpClient client = client(limiter);
+        headersDelayMillis = 20;
+
+        // Act
+        for (int i = 0; i < 20; i++) {
+            CompletableFuture<Integer> first = async(client, "/manage/v2/hosts", null);
+            CompletableFuture<Integer> second = async(client, "/manage/v2/databases", null);
+            first.get(5, TimeUnit.SECONDS);
+            second.get(5, TimeUnit.SECONDS);
+        }
+
+        // Assert
+        assertTrue(limiter.limit() > 2, "limit " + limiter.limit());
+        assertEquals(limiter.limit(), registry.get(ManagementConcurrencyLimiter.LIMIT).gauge().value());
+    }
+
+    @Test
+    void testOverloadedUpstreamCutsLimit() throws IOException {
+        // Arrange
+        settings.setInitialLimit(20);
+        ManagementConcurrencyLimiter limiter = new ManagementConcurrencyLimiter(settings, registry);
+        OkHttpClient client = client(limiter);
+        status = 503;
+
+        // Act
+        int code = get(client, "/manage/v2/hosts");
+
+        // Assert
+        assertEquals(503, code);
+        assertEquals(18, limiter.limit(), 0.001);
+    }
+
+    @Test
+    void testRejectionsFromInnerInterceptorsAreNotSamples() throws IOException {
+        // Arrange
+        settings.setInitialLimit(20);
+        ManagementConcurrencyLimiter limiter = new ManagementConcurrencyLimiter(settings, registry);
+        OkHttpClient client = new OkHttpClient.Builder()
+                .addInterceptor(limiter)
+                .addInterceptor(chain -> RejectedResponse.of(chain.request(), "PROXY-CIRCUITOPEN", "open",
+                        Duration.ofSeconds(10)))
+                .build();
+
+        // Act
+        int code = get(client, "/manage/v2/hosts");
+
+        // Assert
+        assertEquals(503, code);
+        assertEquals(20, limiter.limit());
+        assertEquals(0, limiter.inflight());
+        assertEquals(0, server.getRequestCount());
+    }
+
+    @Test
+    void testQueuedCallsRunByPriority() throws Exception {
+        // Arrange
+        fixedLimit(1, 10);
+        ManagementConcurrencyLimiter limiter = new ManagementConcurrencyLimiter(settings, registry);
+        OkHttpClient client = client(limiter);
+        CompletableFuture<Integer> holder = async(client, "/manage/v2/hosts?blocked", null);
+        awaitInflight(limiter, 1);
+        List<CompletableFuture<Integer>> queued = new ArrayList<>();
+        queued.add(async(client, "/manage/v2/logs?filename=ErrorLog.txt", null));
+        awaitQueued(limiter, 1);
+        queued.add(async(client, "/manage/v2/databases/Documents/properties", ManagementConcurrencyLimiter.Priority.LOW));
+        awaitQueued(limiter, 2);
+        queued.add(async(client, "/manage/v2/hosts?view=status", null));
+        awaitQueued(limiter, 3);
+        queued.add(async(client, "/manage/v2/databases", null));
+        awaitQueued(limiter, 4);
+
+        // Act
+        blocked.countDown();
+        assertEquals(200, holder.get(5, TimeUnit.SECONDS));
+        for (CompletableFuture<Integer> call : queued) {
+            assertEquals(200, call.get(5, TimeUnit.SECONDS));
+        }
+
+        // Assert
+        List<String> order = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            order.add(server.takeRequest().getPath());
+        }
+        assertEquals(List.of(
+                "/manage/v2/hosts?blocked",
+                "/manage/v2/databases",
+                "/manage/v2/hosts?view=status",
+                "/manage/v2/logs?filename=ErrorLog.txt",
+                "/manage/v2/databases/Documents/properties"), order);
+        assertEquals(0, registry.get(ManagementBulkhead.REJECTED).counter().count());
+    }
+
+    @Test
+    void testFullQueueRejectsLowerPriorityFirst() throws Exception {
+        // Arrange
+        fixedLimit(1, 1);
+        ManagementConcurrencyLimiter limiter = new ManagementConcurrencyLimiter(settings, registry);
+        OkHttpClient client = client(limiter);
+        CompletableFuture<Integer> holder = async(client, "/manage/v2/hosts?blocked", null);
+        awaitInflight(limiter, 1);
+        CompletableFuture<Integer> logs = async(client, "/manage/v2/logs?filename=ErrorLog.txt", null);
+        awaitQueued(limiter, 1);
+
+        // Act
+        CompletableFuture<Integer> lists = async(client, "/manage/v2/databases", null);
+        int displaced = logs.get(5, TimeUnit.SECONDS);
+        Response rejected = client.newCall(new Request.Builder().url(server.url("/manage/v2/forests")).build())
+                .execute();
+
+        // Assert
+        assertEquals(503, displaced);
+        try (rejected) {
+            assertEquals(503, rejected.code());
+            assertNotNull(rejected.header("Retry-After"));
+            assertTrue(rejected.body().string().contains("PROXY-LIMITERFULL"));
+        }
+        blocked.countDown();
+        assertEquals(200, holder.get(5, TimeUnit.SECONDS));
+        assertEquals(200, lists.get(5, TimeUnit.SECONDS));
+        assertEquals(2, server.getRequestCount());
+        assertEquals(1, rejected("logs", "limiter-queue-full"));
+        assertEquals(1, rejected("lists", "limiter-queue-full"));
+    }
+
+    @Test
+    void testWaitingTooLongIsRejected() throws Exception {
+        // Arrange
+        fixedLimit(1, 10);
+        settings.setMaxWait(Duration.ofMillis(50));
+        ManagementConcurrencyLimiter limiter = new ManagementConcurrencyLimiter(settings, registry);
+        OkHttpClient client = client(limiter);
+        CompletableFuture<Integer> holder = async(client, "/manage/v2/hosts?blocked", null);
+        awaitInflight(limiter, 1);
+
+        // Act
+        int code = get(client, "/manage/v2/databases");
+
+        // Assert
+        assertEquals(503, code);
+        assertEquals(0, limiter.queued());
+        assertEquals(1, rejected("lists", "limiter-timeout"));
+        blocked.countDown();
+        assertEquals(200, holder.get(5, TimeUnit.SECONDS));
+    }
+
+    private void fixedLimit(int limit, int maxQueue) {
+        settings.setInitialLimit(limit);
+        settings.setMinLimit(limit);
+        settings.setMaxLimit(limit);
+        settings.setMaxQueue(maxQueue);
+    }
+
+    private double rejected(String family, String reason) {
+        return registry.get(ManagementBulkhead.REJECTED).tags("family", family, "reason", reason).counter().count();
+    }
+
+    private static OkHttpClient client(ManagementConcurrencyLimiter limiter) {
+        okhttp3.Dispatcher dispatcher = new okhttp3.Dispatcher();
+        dispatcher.setMaxRequestsPerHost(20);
+        return new OkHttpClient.Builder().dispatcher(dispatcher).addInterceptor(limiter).build();
+    }
+
+    private int get(OkHttpClient client, String path) throws IOException {
+        try (Response response = client.newCall(new Request.Builder().url(server.url(path)).build()).execute()) {
+            response.body().string();
+            return response.code();
+        }
+    }
+
+    private CompletableFuture<Integer> async(OkHttpClient client, String path,
+            ManagementConcurrencyLimiter.Priority priority) {
+        CompletableFuture<Integer> result = new CompletableFuture<>();
+        Request request = new Request.Builder()
+                .url(server.url(path))
+                .tag(ManagementConcurrencyLimiter.Priority.class, priority)
+                .build();
+        client.newCall(request).enqueue(new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                result.completeExceptionally(e);
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) throws IOException {
+                try (response) {
+                    response.body().string();
+                    result.complete(response.code());
+                }
+            }
+        });
+        return result;
+    }
+
+    private static void awaitInflight(ManagementConcurrencyLimiter limiter, int inflight) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (limiter.inflight() < inflight && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(inflight, limiter.inflight());
+    }
+
+    private static void awaitQueued(ManagementConcurrencyLimiter limiter, int queued) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (limiter.queued() < queued && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(queued, limiter.queued());
+    }
+}
@@ -0,0 +1,211 @@
+package org.billFarber.marklogicadminproxy;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import okhttp3.Authenticator;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okio.ByteString;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ManagementDigestAuthTest {
+
+    private static final Pattern PARAM = Pattern.compile("(\\w+)=(?:\"([^\"]*)\"|([^,\\s]+))");
+
+    private MockWebServer server;
+    private SimpleMeterRegistry registry;
+    private AtomicInteger fallbackCalls;
+    private OkHttpClient client;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = new MockWebServer();
+        server.start();
+        registry = new SimpleMeterRegistry();
+        fallbackCalls = new AtomicInteger();
+        Authenticator fallback = (route, response) -> {
+            fallbackCalls.incrementAndGet();
+            return null;
+        };
+        ManagementDigestAuth digestAuth = new ManagementDigestAuth("admin", "secret", fallback, registry);
+        client = new OkHttpClient.Builder()
+                .addInterceptor(digestAuth)
+                .authenticator(digestAuth)
+                .build();
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        server.shutdown();
+    }
+
+    @Test
+    void testReusesNonceAfterFirstChallenge() throws Exception {
+        // Arrange
+        server.enqueue(challenge("nonce-1", false));
+        server.enqueue(new MockResponse().setBody("{}"));
+        server.enqueue(new MockResponse().setBody("{}"));
+
+        // Act
+        int first = get("/manage/v2/databases/Documents/properties?format=json");
+        int second = get("/manage/v2/forests/Documents-1/properties?format=json");
+
+        // Assert
+        assertEquals(200, first);
+        assertEquals(200, second);
+        assertEquals(3, server.getRequestCount());
+        assertNull(server.takeRequest().getHeader("Authorization"));
+
+        Map<String, String> retry = authorization(server.takeRequest());
+        assertEquals("nonce-1", retry.get("nonce"));
+        assertEquals("00000001", retry.get("nc"));
+
+        RecordedRequest preemptive = server.takeRequest();
+        Map<String, String> params = authorization(preemptive);
+        assertEquals("nonce-1", params.get("nonce"));
+        assertEquals("00000002", params.get("nc"));
+        assertEquals("opaque-1", params.get("opaque"));
+        assertEquals("/manage/v2/forests/Documents-1/properties?format=json", params.get("uri"));
+        assertEquals(expectedResponse(params, "GET"), params.get("response"));
+
+        assertEquals(1, registry.get(ManagementDigestAuth.PREEMPTIVE).counter().count());
+        assertEquals(1, challenges("none"));
+        assertEquals(0, challenges("stale"));
+    }
+
+    @Test
+    void testStaleNonceIsReplaced() throws Exception {
+        // Arrange
+        server.enqueue(challenge("nonce-1", false));
+        server.enqueue(new MockResponse().setBody("{}"));
+        server.enqueue(challenge("nonce-2", true));
+        server.enqueue(new MockResponse().setBody("{}"));
+        server.enqueue(new MockResponse().setBody("{}"));
+
+        // Act
+        get("/manage/v2/hosts");
+        int status = get("/manage/v2/hosts");
+        get("/manage/v2/hosts");
+
+        // Assert
+        assertEquals(200, status);
+        assertEquals(5, server.getRequestCount());
+        server.takeRequest();
+        server.takeRequest();
+        assertEquals("nonce-1", authorization(server.takeRequest()).get("nonce"));
+        Map<String, String> retry = authorization(server.takeRequest());
+        assertEquals("nonce-2", retry.get("nonce"));
+        assertEquals("00000001", retry.get("nc"));
+        assertEquals("00000002", authorization(server.takeRequest()).get("nc"));
+        assertEquals(1, challenges("stale"));
+    }
+
+    @Test
+    void testWrongCredentialsAreNotRetriedAgain() throws IOException {
+        // Arrange
+        server.enqueue(challenge("nonce-1", false));
+        server.enqueue(challenge("nonce-2", false));
+        server.enqueue(new MockResponse().setBody("{}"));
+
+        // Act
+        int status = get("/manage/v2/users");
+
+        // Assert
+        assertEquals(401, status);
+        assertEquals(2, server.getRequestCount());
+    }
+
+    @Test
+    void testOtherSchemesGoToFallback() throws IOException {
+        // Arrange
+        server.enqueue(new MockResponse().setResponseCode(401).setHeader("WWW-Authenticate", "Basic realm=\"public\""));
+
+        // Act
+        int status = get("/manage/v2/roles");
+
+        // Assert
+        assertEquals(401, status);
+        assertEquals(1, fallbackCalls.get());
+        assertEquals(0, challenges("none"));
+    }
+
+    @Test
+    void testNonceIsNotSentToOtherHosts() throws Exception {
+        // Arrange
+        server.enqueue(challenge("nonce-1", false));
+        server.enqueue(new MockResponse().setBody("{}"));
+        try (MockWebServer other = new MockWebServer()) {
+            other.enqueue(new MockResponse().setBody("{}"));
+            other.start();
+            get("/manage/v2/groups");
+
+            // Act
+            try (Response response = client.newCall(new Request.Builder().url(other.url("/manage/v2/groups")).build())
+                    .execute()) {
+                response.body().string();
+            }
+
+            // Assert
+            assertNull(other.takeRequest().getHeader("Authorization"));
+        }
+    }
+
+    private int get(String path) throws IOException {
+        try (Response response = client.newCall(new Request.Builder().url(server.url(path)).build()).execute()) {
+            response.body().string();
+            return response.code();
+        }
+    }
+
+    private double challenges(String reason) {
+        return registry.get(ManagementDigestAuth.CHALLENGES).tag("reason", reason).counter().count();
+    }
+
+    private static MockResponse challenge(String nonce, boolean stale) {
+        return new MockResponse()
+                .setResponseCode(401)
+                .setHeader("WWW-Authenticate", "Digest realm=\"public\", qop=\"auth\", nonce=\"" + nonce
+                        + "\", opaque=\"opaque-1\"" + (stale ? ", stale=true" : ""))
+                .setBody("Unauthorized");
+    }
+
+    private static Map<String, String> authorization(RecordedRequest request) {
+        String header = request.getHeader("Authorization");
+        assertNotNull(header);
+        assertTrue(header.startsWith("Digest "), header);
+        Map<String, String> params = new HashMap<>();
+        Matcher matcher = PARAM.matcher(header.substring("Digest ".length()));
+        while (matcher.find()) {
+            params.put(matcher.group(1), matcher.group(2) != null ? matcher.group(2) : matcher.group(3));
+        }
+        return params;
+    }
+
+    /**
+     * RFC 7616 response for qop=auth and MD5, from the parameters the client sent.
+     */
+    private static String expectedResponse(Map<String, String> params, String method) {
+        String ha1 = md5("admin:" + params.get("realm") + ":secret");
+        String ha2 = md5(method + ":" + params.get("uri"));
+        return md5(ha1 + ":" + params.get("nonce") + ":" + params.get("nc") + ":" + params.get("cnonce") + ":auth:"
+                + ha2);
+    }
+
+    private static String md5(String value) {
+        return ByteString.encodeUtf8(value).md5().hex();
+    }
+}
@@ -0,0 +1,203 @@
+package org.billFarber.marklogicadminproxy;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ManagementHedgingTest {
+
+    private static final String SLOW = "/manage/v2/forests/slow/properties?format=json";
+
+    private MockWebServer server;
+    private SimpleMeterRegistry registry;
+    private ManagementProperties.Hedging settings;
+    private ManagementHedging hedging;
+    private final AtomicInteger slowCalls = new AtomicInteger();
+    private volatile List<MockResponse> slowResponses;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = new MockWebServer();
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                if (request.getPath().contains("slow")) {
+                    int call = slowCalls.getAndIncrement();
+                    return slowResponses.get(Math.min(call, slowResponses.size() - 1));
+                }
+                return new MockResponse().setBody("{\"fast\":true}");
+            }
+        });
+        server.start();
+        slowResponses = List.of(
+                new MockResponse().setHeadersDelay(2, TimeUnit.SECONDS).setBody("{\"attempt\":1}"),
+                new MockResponse().setBody("{\"attempt\":2}"));
+
+        registry = new SimpleMeterRegistry();
+        settings = new ManagementProperties.Hedging();
+        settings.setEnabled(true);
+        settings.setMinSamples(5);
+        settings.setMinDelay(Duration.ofMillis(50));
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        if (hedging != null) {
+            hedging.close();
+        }
+        server.shutdown();
+    }
+
+    @Test
+    void testSlowCallIsHedged() throws Exception {
+        // Arrange
+        OkHttpClient client = client(new ManagementRequestCoalescer(new ManagementProperties.Coalescing()));
+        warmUp(client);
+        long start = System.nanoTime();
+
+        // Act
+        String body = get(client, SLOW);
+
+        // Assert
+        assertEquals("{\"attempt\":2}", body);
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(1));
+        assertEquals(2, slowCalls.get());
+        assertEquals(1, hedges("won"));
+        assertEquals(0, hedges("lost"));
+    }
+
+    @Test
+    void testFastCallIsNotHedged() throws Exception {
+        // Arrange
+        OkHttpClient client = client();
+        warmUp(client);
+        slowResponses = List.of(new MockResponse().setBody("{\"attempt\":1}"));
+
+        // Act
+        String body = get(client, SLOW);
+        Thread.sleep(100);
+
+        // Assert
+        assertEquals("{\"attempt\":1}", body);
+        assertEquals(1, slowCalls.get());
+        assertEquals(0, hedges("won") + hedges("lost") + hedges("skipped"));
+    }
+
+    @Test
+    void testNothingIsHedgedBeforeMinSamples() throws Exception {
+        // Arrange
+        OkHttpClient client = client();
+        slowResponses = List.of(
+                new MockResponse().setHeadersDelay(300, TimeUnit.MILLISECONDS).setBody("{\"attempt\":1}"),
+                new MockResponse().setBody("{\"attempt\":2}"));
+
+        // Act
+        String body = get(client, SLOW);
+
+        // Assert
+        assertEquals("{\"attempt\":1}", body);
+        assertEquals(1, slowCalls.get());
+        assertNull(hedging.delay());
+    }
+
+    @Test
+    void testEmptyBudgetSkipsHedge() throws Exception {
+        // Arrange
+        settings.setBudgetRatio(0);
+        settings.setMaxBurst(0);
+        OkHttpClient client = client();
+        warmUp(client);
+        slowResponses = List.of(
+                new MockResponse().setHeadersDelay(300, TimeUnit.MILLISECONDS).setBody("{\"attempt\":1}"),
+                new MockResponse().setBody("{\"attempt\":2}"));
+
+        // Act
+        String body = get(client, SLOW);
+
+        // Assert
+        assertEquals("{\"attempt\":1}", body);
+        assertEquals(1, slowCalls.get());
+        assertEquals(1, hedges("skipped"));
+    }
+
+    @Test
+    void testServerErrorWaitsForHedge() throws Exception {
+        // Arrange
+        OkHttpClient client = client();
+        warmUp(client);
+        slowResponses = List.of(
+                new MockResponse().setHeadersDelay(150, TimeUnit.MILLISECONDS).setResponseCode(500),
+                new MockResponse().setHeadersDelay(300, TimeUnit.MILLISECONDS).setBody("{\"attempt\":2}"));
+
+        // Act
+        String body = get(client, SLOW);
+
+        // Assert
+        assertEquals("{\"attempt\":2}", body);
+        assertEquals(1, hedges("won"));
+    }
+
+    @Test
+    void testHedgeGoesToOtherHost() throws Exception {
+        // Arrange
+        try (MockWebServer other = new MockWebServer()) {
+            other.enqueue(new MockResponse().setBody("{\"host\":\"other\"}"));
+            other.start();
+            settings.setHosts(List.of(other.getHostName() + ":" + other.getPort()));
+            OkHttpClient client = client();
+            warmUp(client);
+
+            // Act
+            String body = get(client, SLOW);
+
+            // Assert
+            assertEquals("{\"host\":\"other\"}", body);
+            assertEquals(1, slowCalls.get());
+            assertEquals("/manage/v2/forests/slow/properties?format=json", other.takeRequest().getPath());
+        }
+    }
+
+    private OkHttpClient client(okhttp3.Interceptor... outer) {
+        hedging = new ManagementHedging(settings, registry);
+        OkHttpClient.Builder builder = new OkHttpClient.Builder();
+        for (okhttp3.Interceptor interceptor : outer) {
+            builder.addInterceptor(interceptor);
+        }
+        return builder.addInterceptor(hedging).build();
+    }
+
+    private void warmUp(OkHttpClient client) throws Exception {
+        for (int i = 0; i < settings.getMinSamples(); i++) {
+            get(client, "/manage/v2/forests/fast-" + i + "/properties?format=json");
+        }
+        assertNotNull(hedging.delay());
+    }
+
+    private String get(OkHttpClient client, String path) throws Exception {
+        Request request = new Request.Builder().url(server.url(path)).build();
+        return ManagementCalls.exchange(client, request, true, response -> {
+            try (response) {
+                return response.body().string();
+            }
+        }).get(5, TimeUnit.SECONDS);
+    }
+
+    private double hedges(String result) {
+        return registry.get(ManagementHedging.HEDGES).tag("result", result).counter().count();
+    }
+}
@@ -0,0 +1,128 @@
+package org.billFarber.marklogicadminproxy;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import okhttp3.HttpUrl;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ManagementMetricsTest {
+
+    private MockWebServer server;
+    private SimpleMeterRegistry registry;
+    private OkHttpClient client;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = new MockWebServer();
+        server.start();
+        registry = new SimpleMeterRegistry();
+        client = new OkHttpClient.Builder()
+                .addInterceptor(new ManagementMetrics(registry))
+                .addInterceptor(new ManagementResponseCache(new ManagementProperties.Cache()))
+                .build();
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        server.shutdown();
+    }
+
+    @Test
+    void testRecordsTimerAndResponseSizePerEndpoint() throws IOException {
+        // Arrange
+        server.enqueue(new MockResponse().setBody("{\"forest-status\":{}}"));
+
+        // Act
+        try (Response response = get("/manage/v2/forests/Documents?format=json&view=status")) {
+            response.body().string();
+        }
+
+        // Assert
+        Timer timer = registry.get(ManagementMetrics.REQUESTS)
+                .tag("endpoint", "/manage/v2/forests/{id}")
+                .tag("view", "status")
+                .tag("status", "200")
+                .tag("cache", "miss")
+                .timer();
+        assertEquals(1, timer.count());
+        DistributionSummary size = registry.get(ManagementMetrics.RESPONSE_SIZE)
+                .tag("endpoint", "/manage/v2/forests/{id}")
+                .summary();
+        assertEquals(1, size.count());
+        assertEquals("{\"forest-status\":{}}".length(), size.totalAmount());
+    }
+
+    @Test
+    void testTagsCacheHits() throws IOException {
+        // Arrange
+        server.enqueue(new MockResponse().setBody("{}"));
+
+        // Act
+        get("/manage/v2/databases?format=json").close();
+        get("/manage/v2/databases?format=json").close();
+
+        // Assert
+        assertEquals(1, registry.get(ManagementMetrics.REQUESTS).tag("cache", "miss").timer().count());
+        assertEquals(1, registry.get(ManagementMetrics.REQUESTS).tag("cache", "hit").timer().count());
+        assertEquals(1, server.getRequestCount());
+    }
+
+    @Test
+    void testRecordsUnreachableUpstream() throws IOException {
+        // Arrange
+        server.shutdown();
+
+        // Act / Assert
+        assertThrows(IOException.class, () -> get("/manage/v2/hosts"));
+        assertEquals(1, registry.get(ManagementMetrics.REQUESTS).tag("status", "IO_ERROR").timer().count());
+    }
+
+    @Test
+    void testAddsCallToRequestSpan() throws IOException {
+        // Arrange
+        server.enqueue(new MockResponse().setBody("{}"));
+        MockHttpServletRequest servletRequest = new MockHttpServletRequest();
+        UpstreamSpan span = new UpstreamSpan();
+        servletRequest.setAttribute(UpstreamSpan.ATTRIBUTE, span);
+        Request request = new Request.Builder()
+                .url(server.url("/manage/v2/logs?format=json"))
+                .tag(RequestAttributes.class, new ServletRequestAttributes(servletRequest))
+                .build();
+
+        // Act
+        client.newCall(request).execute().close();
+
+        // Assert
+        assertTrue(span.nanos() > 0);
+    }
+
+    @Test
+    void testEndpointAndViewTags() {
+        assertEquals("/manage/v2/servers/{id}/properties",
+                ManagementMetrics.endpoint(HttpUrl.get("http://ml:8002/manage/v2/servers/App-Services/properties")));
+        assertEquals("/manage/v2/logs", ManagementMetrics.endpoint(HttpUrl.get("http://ml:8002/manage/v2/logs")));
+        assertEquals("other", ManagementMetrics.endpoint(HttpUrl.get("http://ml:8002/v1/documents")));
+        assertEquals("storage", ManagementMetrics.view(HttpUrl.get("http://ml:8002/manage/v2/forests?view=storage")));
+        assertEquals("default", ManagementMetrics.view(HttpUrl.get("http://ml:8002/manage/v2/forests")));
+        assertEquals("other", ManagementMetrics.view(HttpUrl.get("http://ml:8002/manage/v2/forests?view=x1")));
+    }
+
+    private Response get(String path) throws IOException {
+        return client.newCall(new Request.Builder().url(server.url(path)).build()).execute();
+    }
+}
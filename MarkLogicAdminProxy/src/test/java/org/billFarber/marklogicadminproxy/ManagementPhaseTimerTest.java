@@ -0,0 +1,192 @@
+package org.billFarber.marklogicadminproxy;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks which phases ManagementPhaseTimer attributes to the Server-Timing
+ * header and the phase timer. The digest challenge is simulated with an
+ * authenticator that answers any 401 once.
+ */
+class ManagementPhaseTimerTest {
+
+    private static final Pattern PHASE = Pattern.compile("(\\w+);dur=\\d+\\.\\d");
+
+    private MockWebServer server;
+    private SimpleMeterRegistry registry;
+    private OkHttpClient client;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = new MockWebServer();
+        server.start();
+        registry = new SimpleMeterRegistry();
+        client = new OkHttpClient.Builder()
+                .eventListenerFactory(new ManagementPhaseTimer.Factory(registry))
+                .authenticator((route, response) -> response.request().header("Authorization") != null
+                        ? null
+                        : response.request().newBuilder().header("Authorization", "Digest response=\"x\"").build())
+                .build();
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        server.shutdown();
+    }
+
+    @Test
+    void testRecordsConnectServerAndTransferOfFirstCall() throws IOException {
+        // Arrange
+        server.enqueue(new MockResponse().setBody("{\"forest-default-list\":{}}"));
+        ServletRequestAttributes attributes = incomingRequest();
+
+        // Act
+        call("/manage/v2/forests?format=json", attributes);
+
+        // Assert
+        List<String> phases = phases(ServerTiming.header(attributes));
+        assertTrue(phases.containsAll(List.of("connect", "server", "transfer")), phases.toString());
+        assertFalse(phases.contains("auth"));
+        assertFalse(phases.contains("tls"));
+        assertEquals(1, registry.get(ManagementPhaseTimer.PHASE)
+                .tag("endpoint", "/manage/v2/forests")
+                .tag("phase", "server")
+                .timer().count());
+    }
+
+    @Test
+    void testPooledConnectionHasNoConnectPhase() throws IOException {
+        // Arrange
+        server.enqueue(new MockResponse().setBody("{}"));
+        server.enqueue(new MockResponse().setBody("{}"));
+        call("/manage/v2/hosts?format=json", incomingRequest());
+        ServletRequestAttributes attributes = incomingRequest();
+
+        // Act
+        call("/manage/v2/hosts?format=json", attributes);
+
+        // Assert
+        assertEquals(List.of("server", "transfer"), phases(ServerTiming.header(attributes)));
+    }
+
+    @Test
+    void testDigestChallengeIsAuthNotServer() throws IOException {
+        // Arrange
+        server.enqueue(new MockResponse().setResponseCode(401)
+                .setHeader("WWW-Authenticate", "Digest realm=\"public\", nonce=\"n\"")
+                .setBody("Unauthorized"));
+        server.enqueue(new MockResponse().setBody("{}"));
+        ServletRequestAttributes attributes = incomingRequest();
+
+        // Act
+        call("/manage/v2/databases/Documents/properties?format=json", attributes);
+
+        // Assert
+        List<String> phases = phases(ServerTiming.header(attributes));
+        assertTrue(phases.containsAll(List.of("auth", "server", "transfer")), phases.toString());
+        String endpoint = "/manage/v2/databases/{id}/properties";
+        assertEquals(1, registry.get(ManagementPhaseTimer.PHASE).tag("endpoint", endpoint).tag("phase", "auth")
+                .timer().count());
+        assertEquals(1, registry.get(ManagementPhaseTimer.PHASE).tag("endpoint", endpoint).tag("phase", "server")
+                .timer().count());
+        assertEquals(1, registry.get(ManagementPhaseTimer.PHASE).tag("endpoint", endpoint).tag("phase", "transfer")
+                .timer().count());
+    }
+
+    @Test
+    void testRejectedCredentialsCountAsServer() throws IOException {
+        // Arrange
+        server.enqueue(new MockResponse().setResponseCode(401).setBody("Unauthorized"));
+        server.enqueue(new MockResponse().setResponseCode(401).setBody("Unauthorized"));
+        ServletRequestAttributes attributes = incomingRequest();
+
+        // Act
+        call("/manage/v2/users?format=json", attributes);
+
+        // Assert
+        assertEquals(1, registry.get(ManagementPhaseTimer.PHASE).tag("phase", "auth").timer().count());
+        assertEquals(1, registry.get(ManagementPhaseTimer.PHASE).tag("phase", "server").timer().count());
+        assertTrue(phases(ServerTiming.header(attributes)).contains("server"));
+    }
+
+    @Test
+    void testSumsCallsOfOneRequest() throws IOException {
+        // Arrange
+        server.enqueue(new MockResponse().setBody("{}"));
+        server.enqueue(new MockResponse().setBody("{}"));
+        ServletRequestAttributes attributes = incomingRequest();
+
+        // Act
+        call("/manage/v2/groups?format=json", attributes);
+        call("/manage/v2/roles?format=json", attributes);
+
+        // Assert
+        assertEquals(2, registry.get(ManagementPhaseTimer.PHASE).tag("phase", "server").timers().size());
+        assertEquals(1, phases(ServerTiming.header(attributes)).stream().filter("server"::equals).count());
+    }
+
+    @Test
+    void testCallsOutsideARequestOnlyRecordMetrics() throws IOException {
+        // Arrange
+        server.enqueue(new MockResponse().setBody("{}"));
+
+        // Act
+        try (Response response = client.newCall(new Request.Builder().url(server.url("/manage/v2/servers")).build())
+                .execute()) {
+            response.body().string();
+        }
+
+        // Assert
+        assertEquals(1, registry.get(ManagementPhaseTimer.PHASE).tag("phase", "server").timer().count());
+    }
+
+    @Test
+    void testHeaderFormat() {
+        ServerTiming timing = new ServerTiming();
+        assertNull(timing.header());
+
+        timing.add(ServerTiming.Phase.TRANSFER, 250_000);
+        timing.add(ServerTiming.Phase.DNS, 1_000_000);
+        timing.add(ServerTiming.Phase.SERVER, 40_000_000);
+        timing.add(ServerTiming.Phase.SERVER, 2_060_000);
+
+        assertEquals("dns;dur=1.0, server;dur=42.1, transfer;dur=0.3", timing.header());
+    }
+
+    private void call(String path, RequestAttributes attributes) throws IOException {
+        Request request = new Request.Builder()
+                .url(server.url(path))
+                .tag(RequestAttributes.class, attributes)
+                .build();
+        try (Response response = client.newCall(request).execute()) {
+            response.body().string();
+        }
+    }
+
+    private static ServletRequestAttributes incomingRequest() {
+        return new ServletRequestAttributes(new MockHttpServletRequest());
+    }
+
+    private static List<String> phases(String header) {
+        assertNotNull(header);
+        Matcher matcher = PHASE.matcher(header);
+        return matcher.results().map(result -> result.group(1)).toList();
+    }
+}
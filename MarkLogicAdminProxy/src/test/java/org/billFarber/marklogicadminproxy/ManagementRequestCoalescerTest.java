@@ -0,0 +1,246 @@
+package org.billFarber.marklogicadminproxy;
+
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import okio.ForwardingSource;
+import okio.Okio;
+import okio.Source;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class ManagementRequestCoalescerTest {
+
+    private static final String URL = "http://localhost:8002/manage/v2/forests?view=status&format=json";
+    private static final int CALLERS = 8;
+
+    private ManagementProperties.Coalescing settings;
+    private ManagementRequestCoalescer coalescer;
+    private CountDownLatch upstreamRelease;
+    private AtomicInteger upstreamCalls;
+    private String upstreamBody;
+    private IOException upstreamFailure;
+    private volatile Response upstreamResponse;
+    private final AtomicBoolean upstreamClosed = new AtomicBoolean();
+
+    @BeforeEach
+    void setUp() {
+        settings = new ManagementProperties.Coalescing();
+        coalescer = new ManagementRequestCoalescer(settings);
+        upstreamRelease = new CountDownLatch(1);
+        upstreamCalls = new AtomicInteger();
+        upstreamBody = "{\"forest-status-list\":{}}";
+    }
+
+    @Test
+    void testConcurrentIdenticalRequestsShareOneCall() throws Exception {
+        List<CompletableFuture<String>> results = startCallers(CALLERS, "application/json");
+        upstreamRelease.countDown();
+
+        for (CompletableFuture<String> result : results) {
+            assertEquals(upstreamBody, result.get());
+        }
+        assertEquals(1, upstreamCalls.get());
+        assertEquals(CALLERS - 1, coalescer.coalescedCount());
+    }
+
+    @Test
+    void testLeaderFailureIsSharedWithWaiters() throws Exception {
+        upstreamFailure = new IOException("Connection reset");
+        List<CompletableFuture<String>> results = startCallers(3, "application/json");
+        upstreamRelease.countDown();
+
+        for (CompletableFuture<String> result : results) {
+            ExecutionException thrown = assertThrows(ExecutionException.class, result::get);
+            IOException failure = assertInstanceOf(UncheckedIOException.class, thrown.getCause()).getCause();
+            assertTrue(failure.getMessage().contains("Connection reset"));
+        }
+        assertEquals(1, upstreamCalls.get());
+    }
+
+    @Test
+    void testBodyTooLargeToBufferIsTeedToWaiters() throws Exception {
+        settings.setMaxBodySize(DataSize.ofKilobytes(1));
+        upstreamBody = "{\"forest-status-list\":\"" + "x".repeat(256 * 1024) + "\"}";
+        List<CompletableFuture<String>> results = startCallers(CALLERS, "application/json");
+        upstreamRelease.countDown();
+
+        for (CompletableFuture<String> result : results) {
+            assertEquals(upstreamBody, result.get());
+        }
+        assertEquals(1, upstreamCalls.get());
+        assertEquals(CALLERS - 1, coalescer.coalescedCount());
+        assertTrue(upstreamClosed.get());
+    }
+
+    @Test
+    void testTeeContinuesWhenOneCallerCloses() throws Exception {
+        settings.setMaxBodySize(DataSize.ofBytes(16));
+        upstreamBody = "y".repeat(64 * 1024);
+        AtomicBoolean quit = new AtomicBoolean();
+        List<CompletableFuture<String>> results = startCallers(3, URL, "application/json", response -> {
+            if (quit.compareAndSet(false, true)) {
+                return response.body().source().readUtf8(100);
+            }
+            return response.body().string();
+        });
+        upstreamRelease.countDown();
+
+        List<String> bodies = new ArrayList<>();
+        for (CompletableFuture<String> result : results) {
+            bodies.add(result.get());
+        }
+        assertTrue(bodies.remove("y".repeat(100)));
+        assertEquals(List.of(upstreamBody, upstreamBody), bodies);
+        assertEquals(1, upstreamCalls.get());
+        assertTrue(upstreamClosed.get());
+    }
+
+    @Test
+    void testSingleCallerIsNotBuffered() throws Exception {
+        upstreamRelease.countDown();
+
+        try (Response response = intercept("application/json")) {
+            assertSame(upstreamResponse.body(), response.body());
+        }
+    }
+
+    @Test
+    void testSequentialRequestsAreNotCoalesced() throws IOException {
+        upstreamRelease.countDown();
+
+        intercept("application/json").close();
+        intercept("application/json").close();
+
+        assertEquals(2, upstreamCalls.get());
+        assertEquals(0, coalescer.coalescedCount());
+    }
+
+    @Test
+    void testDifferentAcceptHeadersAreNotCoalesced() throws Exception {
+        List<CompletableFuture<String>> results = new ArrayList<>();
+        results.addAll(startCallers(1, "application/json"));
+        results.addAll(startCallers(1, "application/xml"));
+        upstreamRelease.countDown();
+
+        for (CompletableFuture<String> result : results) {
+            result.get();
+        }
+        assertEquals(2, upstreamCalls.get());
+    }
+
+    @Test
+    void testPathsDifferingOnlyInCaseAreNotCoalesced() throws Exception {
+        List<CompletableFuture<String>> results = new ArrayList<>();
+        results.addAll(startCallers(1, "http://localhost:8002/manage/v2/users/Bob/properties", "application/json"));
+        results.addAll(startCallers(1, "http://localhost:8002/manage/v2/users/bob/properties", "application/json"));
+        upstreamRelease.countDown();
+
+        for (CompletableFuture<String> result : results) {
+            result.get();
+        }
+        assertEquals(2, upstreamCalls.get());
+        assertEquals(0, coalescer.coalescedCount());
+    }
+
+    private List<CompletableFuture<String>> startCallers(int count, String accept) throws InterruptedException {
+        return startCallers(count, URL, accept);
+    }
+
+    /**
+     * Starts the callers and returns once every one of them is blocked, either
+     * in the upstream call or waiting for it.
+     */
+    private List<CompletableFuture<String>> startCallers(int count, String url, String accept)
+            throws InterruptedException {
+        return startCallers(count, url, accept, response -> response.body().string());
+    }
+
+    private List<CompletableFuture<String>> startCallers(int count, String url, String accept, BodyReader reader)
+            throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(count);
+        List<Thread> threads = new ArrayList<>();
+        List<CompletableFuture<String>> results = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            results.add(CompletableFuture.supplyAsync(() -> {
+                synchronized (threads) {
+                    threads.add(Thread.currentThread());
+                }
+                try (Response response = intercept(url, accept)) {
+                    return reader.read(response);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }, executor));
+        }
+        executor.shutdown();
+
+        while (true) {
+            synchronized (threads) {
+                if (threads.size() == count
+                        && threads.stream().allMatch(thread -> thread.getState() == Thread.State.WAITING)) {
+                    return results;
+                }
+            }
+            Thread.sleep(5);
+        }
+    }
+
+    private Response intercept(String accept) throws IOException {
+        return intercept(URL, accept);
+    }
+
+    private Response intercept(String url, String accept) throws IOException {
+        Request request = new Request.Builder().url(url).header("Accept", accept).build();
+        Interceptor.Chain chain = mock(Interceptor.Chain.class);
+        when(chain.request()).thenReturn(request);
+        when(chain.proceed(request)).thenAnswer(invocation -> {
+            upstreamCalls.incrementAndGet();
+            upstreamRelease.await();
+            if (upstreamFailure != null) {
+                throw upstreamFailure;
+            }
+            Buffer body = new Buffer().writeUtf8(upstreamBody);
+            Source source = new ForwardingSource(body) {
+                @Override
+                public void close() throws IOException {
+                    upstreamClosed.set(true);
+                    super.close();
+                }
+            };
+            upstreamResponse = new Response.Builder()
+                    .request(request)
+                    .protocol(Protocol.HTTP_1_1)
+                    .code(200)
+                    .message("OK")
+                    .body(ResponseBody.create(Okio.buffer(source), MediaType.get("application/json"), body.size()))
+                    .build();
+            return upstreamResponse;
+        });
+        return coalescer.intercept(chain);
+    }
+
+    private interface BodyReader {
+        String read(Response response) throws IOException;
+    }
+}
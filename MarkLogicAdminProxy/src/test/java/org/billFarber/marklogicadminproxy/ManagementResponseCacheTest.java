@@ -0,0 +1,264 @@
+package org.billFarber.marklogicadminproxy;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ManagementResponseCacheTest {
+
+    private MockWebServer server;
+    private ManagementProperties.Cache settings;
+    private MutableClock clock;
+    private ManagementResponseCache cache;
+    private OkHttpClient client;
+    private volatile boolean upstreamFailing;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = new MockWebServer();
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                String path = request.getPath();
+                if (upstreamFailing) {
+                    return new MockResponse().setResponseCode(503).setBody("{\"error\":\"unavailable\"}");
+                }
+                if (path.contains("missing")) {
+                    return new MockResponse().setResponseCode(404).setBody("{\"error\":\"not found\"}");
+                }
+                if (path.contains("large")) {
+                    return new MockResponse().setBody("x".repeat(2_048));
+                }
+                return new MockResponse()
+                        .setHeader("Content-Type", "application/json")
+                        .setBody("{\"path\":\"" + path + "\",\"n\":" + request.getSequenceNumber() + "}");
+            }
+        });
+        server.start();
+
+        settings = new ManagementProperties.Cache();
+        settings.setMaxEntrySize(DataSize.ofKilobytes(1));
+        clock = new MutableClock();
+        cache = new ManagementResponseCache(settings, clock);
+        client = new OkHttpClient.Builder().addInterceptor(cache).build();
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        server.shutdown();
+    }
+
+    @Test
+    void testRepeatedGetIsServedFromCache() throws IOException {
+        String first = get("/manage/v2/databases?format=json");
+        String second = get("/manage/v2/databases?format=json");
+
+        assertEquals(first, second);
+        assertEquals(1, server.getRequestCount());
+        ManagementResponseCache.Stats stats = cache.stats();
+        assertEquals(1, stats.hits());
+        assertEquals(1, stats.misses());
+        assertEquals(1, stats.entries());
+        assertEquals(first.length(), stats.bytes());
+    }
+
+    @Test
+    void testKeyIgnoresQueryParameterOrder() throws IOException {
+        get("/manage/v2/forests?format=json&view=default&database-id=Documents");
+        get("/manage/v2/forests/?database-id=Documents&view=default&format=json");
+
+        assertEquals(1, server.getRequestCount());
+    }
+
+    @Test
+    void testDifferentParametersAreCachedSeparately() throws IOException {
+        get("/manage/v2/forests?format=json&group-id=Default");
+        get("/manage/v2/forests?format=json&group-id=Other");
+
+        assertEquals(2, server.getRequestCount());
+    }
+
+    @Test
+    void testPathsDifferingOnlyInCaseAreCachedSeparately() throws IOException {
+        String upper = get("/manage/v2/users/Bob/properties?format=json");
+        String lower = get("/manage/v2/users/bob/properties?format=json");
+
+        assertNotEquals(upper, lower);
+        assertEquals(2, server.getRequestCount());
+        assertEquals(2, cache.stats().misses());
+        assertEquals(0, cache.stats().hits());
+    }
+
+    @Test
+    void testStatusViewExpiresBeforeConfiguration() throws IOException {
+        get("/manage/v2/hosts?format=json&view=status");
+        get("/manage/v2/hosts/node1/properties?format=json");
+
+        clock.advance(Duration.ofSeconds(6));
+        get("/manage/v2/hosts?format=json&view=status");
+        get("/manage/v2/hosts/node1/properties?format=json");
+
+        assertEquals(3, server.getRequestCount());
+
+        clock.advance(Duration.ofSeconds(60));
+        get("/manage/v2/hosts/node1/properties?format=json");
+
+        assertEquals(4, server.getRequestCount());
+    }
+
+    @Test
+    void testLogsAreNotCached() throws IOException {
+        get("/manage/v2/logs?filename=ErrorLog.txt");
+        get("/manage/v2/logs?filename=ErrorLog.txt");
+
+        assertEquals(2, server.getRequestCount());
+        assertEquals(0, cache.stats().hits());
+    }
+
+    @Test
+    void testEndpointTtlOverride() throws IOException {
+        settings.getEndpointTtls().put("users", Duration.ZERO);
+
+        get("/manage/v2/users?format=json");
+        get("/manage/v2/users?format=json");
+
+        assertEquals(2, server.getRequestCount());
+    }
+
+    @Test
+    void testErrorResponsesAreNotCached() throws IOException {
+        try (Response first = call("/manage/v2/databases/missing/properties")) {
+            assertEquals(404, first.code());
+        }
+        try (Response second = call("/manage/v2/databases/missing/properties")) {
+            assertEquals(404, second.code());
+        }
+
+        assertEquals(2, server.getRequestCount());
+    }
+
+    @Test
+    void testResponsesOverEntryLimitAreStreamedAndNotCached() throws IOException {
+        assertEquals(2_048, get("/manage/v2/groups/large").length());
+        assertEquals(2_048, get("/manage/v2/groups/large").length());
+
+        assertEquals(2, server.getRequestCount());
+        assertEquals(0, cache.stats().entries());
+    }
+
+    @Test
+    void testLeastRecentlyUsedEntriesAreEvicted() throws IOException {
+        String first = get("/manage/v2/servers/a/properties");
+        settings.setMaxSize(DataSize.ofBytes(first.length() * 2L + 1));
+        get("/manage/v2/servers/b/properties");
+        get("/manage/v2/servers/a/properties");
+        get("/manage/v2/servers/c/properties");
+
+        // b was the least recently used, so it is the one evicted
+        ManagementResponseCache.Stats stats = cache.stats();
+        assertEquals(1, stats.evictions());
+        assertEquals(2, stats.entries());
+        get("/manage/v2/servers/a/properties");
+        assertEquals(3, server.getRequestCount());
+        get("/manage/v2/servers/b/properties");
+        assertEquals(4, server.getRequestCount());
+    }
+
+    @Test
+    void testStaleEntryIsServedWhenUpstreamFails() throws IOException {
+        String cached = get("/manage/v2/databases?format=json");
+        clock.advance(Duration.ofSeconds(61));
+        upstreamFailing = true;
+
+        assertEquals(cached, get("/manage/v2/databases?format=json"));
+        assertEquals(2, server.getRequestCount());
+        assertEquals(1, cache.staleCount());
+    }
+
+    @Test
+    void testStaleEntryIsServedWhenUpstreamIsUnreachable() throws IOException {
+        String cached = get("/manage/v2/databases?format=json");
+        clock.advance(Duration.ofSeconds(61));
+        server.shutdown();
+
+        assertEquals(cached, get("/manage/v2/databases?format=json"));
+        assertEquals(1, cache.staleCount());
+    }
+
+    @Test
+    void testStaleEntryIsNotServedPastStaleIfError() throws IOException {
+        get("/manage/v2/databases?format=json");
+        clock.advance(Duration.ofSeconds(60).plus(settings.getStaleIfError()).plusSeconds(1));
+        upstreamFailing = true;
+
+        try (Response response = call("/manage/v2/databases?format=json")) {
+            assertEquals(503, response.code());
+        }
+        assertEquals(0, cache.staleCount());
+        assertEquals(0, cache.stats().entries());
+    }
+
+    @Test
+    void testStaleEntryIsNotServedWhileUpstreamIsHealthy() throws IOException {
+        String cached = get("/manage/v2/databases?format=json");
+        clock.advance(Duration.ofSeconds(61));
+
+        assertNotEquals(cached, get("/manage/v2/databases?format=json"));
+        assertEquals(0, cache.staleCount());
+    }
+
+    private String get(String path) throws IOException {
+        try (Response response = call(path)) {
+            assertEquals(200, response.code());
+            return response.body().string();
+        }
+    }
+
+    private Response call(String path) throws IOException {
+        Request request = new Request.Builder()
+                .url(server.url(path))
+                .addHeader("Accept", "application/json")
+                .build();
+        return client.newCall(request).execute();
+    }
+
+    private static class MutableClock extends Clock {
+        private Instant now = Instant.parse("2025-01-01T00:00:00Z");
+
+        void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package org.billFarber.marklogicadminproxy;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.SocketPolicy;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ManagementRetryTest {
+
+    private MockWebServer server;
+    private SimpleMeterRegistry registry;
+    private ManagementProperties.Retry settings;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = new MockWebServer();
+        server.start();
+        registry = new SimpleMeterRegistry();
+        settings = new ManagementProperties.Retry();
+        settings.setInitialBackoff(Duration.ofMillis(1));
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        server.shutdown();
+    }
+
+    @Test
+    void testResetConnectionIsRetried() throws IOException {
+        // Arrange
+        server.enqueue(new MockResponse().setSocketPolicy(SocketPolicy.DISCONNECT_AT_START));
+        server.enqueue(new MockResponse().setBody("{}"));
+
+        // Act
+        int code = get(client(), "/manage/v2/hosts");
+
+        // Assert
+        assertEquals(200, code);
+        assertEquals(2, server.getRequestCount());
+        assertEquals(1, retries("lists", "retry"));
+    }
+
+    @Test
+    void testServerErrorsAreRetried() throws IOException {
+        // Arrange
+        server.enqueue(new MockResponse().setResponseCode(503));
+        server.enqueue(new MockResponse().setResponseCode(502));
+        server.enqueue(new MockResponse().setBody("{}"));
+
+        // Act
+        int code = get(client(), "/manage/v2/databases/Documents/properties");
+
+        // Assert
+        assertEquals(200, code);
+        assertEquals(3, server.getRequestCount());
+        assertEquals(2, retries("properties", "retry"));
+    }
+
+    @Test
+    void testGivesUpAfterMaxAttempts() throws IOException {
+        // Arrange
+        for (int i = 0; i < 4; i++) {
+            server.enqueue(new MockResponse().setResponseCode(504));
+        }
+
+        // Act
+        int code = get(client(), "/manage/v2/hosts");
+
+        // Assert
+        assertEquals(504, code);
+        assertEquals(3, server.getRequestCount());
+        assertEquals(1, retries("lists", "exhausted"));
+    }
+
+    @Test
+    void testEndpointFamilyOverridesMaxAttempts() throws IOException {
+        // Arrange
+        settings.setEndpointMaxAttempts(Map.of("logs", 1));
+        server.enqueue(new MockResponse().setResponseCode(502));
+        server.enqueue(new MockResponse().setBody("log"));
+
+        // Act
+        int code = get(client(), "/manage/v2/logs?filename=ErrorLog.txt");
+
+        // Assert
+        assertEquals(502, code);
+        assertEquals(1, server.getRequestCount());
+    }
+
+    @Test
+    void testEmptyBudgetStopsRetries() throws IOException {
+        // Arrange
+        settings.setMaxBurst(1);
+        settings.setBudgetRatio(0);
+        for (int i = 0; i < 4; i++) {
+            server.enqueue(new MockResponse().setResponseCode(503));
+        }
+        OkHttpClient client = client();
+
+        // Act
+        int first = get(client, "/manage/v2/hosts");
+        int second = get(client, "/manage/v2/hosts");
+
+        // Assert
+        assertEquals(503, first);
+        assertEquals(503, second);
+        assertEquals(3, server.getRequestCount());
+        assertEquals(1, retries("lists", "retry"));
+        assertEquals(2, retries("lists", "no-budget"));
+    }
+
+    @Test
+    void testLongRetryAfterIsPassedThrough() throws IOException {
+        // Arrange
+        server.enqueue(new MockResponse().setResponseCode(503).setHeader("Retry-After", "120"));
+        server.enqueue(new MockResponse().setBody("{}"));
+
+        // Act
+        int code = get(client(), "/manage/v2/hosts");
+
+        // Assert
+        assertEquals(503, code);
+        assertEquals(1, server.getRequestCount());
+    }
+
+    @Test
+    void testPostIsNotRetried() throws IOException {
+        // Arrange
+        server.enqueue(new MockResponse().setResponseCode(503));
+        Request request = new Request.Builder()
+                .url(server.url("/manage/v2/databases"))
+                .post(RequestBody.create("{}", MediaType.get("application/json")))
+                .build();
+
+        // Act
+        try (Response response = client().newCall(request).execute()) {
+
+            // Assert
+            assertEquals(503, response.code());
+        }
+        assertEquals(1, server.getRequestCount());
+    }
+
+    @Test
+    void testProxyRejectionsAreNotRetried() throws IOException {
+        // Arrange
+        OkHttpClient client = new OkHttpClient.Builder()
+                .addInterceptor(new ManagementRetry(settings, registry))
+                .addInterceptor(chain -> RejectedResponse.of(chain.request(), "PROXY-BULKHEADFULL", "full",
+                        Duration.ofMillis(1)))
+                .build();
+
+        // Act
+        int code = get(client, "/manage/v2/hosts");
+
+        // Assert
+        assertEquals(503, code);
+        assertEquals(0, retries("lists", "retry"));
+    }
+
+    private OkHttpClient client() {
+        return new OkHttpClient.Builder()
+                .retryOnConnectionFailure(false)
+                .addInterceptor(new ManagementRetry(settings, registry))
+                .build();
+    }
+
+    private int get(OkHttpClient client, String path) throws IOException {
+        try (Response response = client.newCall(new Request.Builder().url(server.url(path)).build()).execute()) {
+            response.body().string();
+            return response.code();
+        }
+    }
+
+    private double retries(String family, String outcome) {
+        return registry.get(ManagementRetry.RETRIES).tags("family", family, "outcome", outcome).counter().count();
+    }
+}
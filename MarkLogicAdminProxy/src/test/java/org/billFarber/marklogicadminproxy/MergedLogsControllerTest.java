@@ -0,0 +1,272 @@
+package org.billFarber.marklogicadminproxy;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Stream;
+
+import static org.billFarber.marklogicadminproxy.ResponseBodies.bodyAsString;
+import static org.junit.jupiter.api.Assertions.*;
+
+class MergedLogsControllerTest {
+
+    private static final String HOSTS = "{\"host-default-list\":{\"list-items\":{\"list-item\":["
+            + "{\"idref\":\"1\",\"nameref\":\"node1\"},{\"idref\":\"2\",\"nameref\":\"node2\"},"
+            + "{\"idref\":\"3\",\"nameref\":\"node3\"}]}}}";
+
+    @TempDir
+    Path directory;
+
+    private MergedLogsController controller;
+    private LogSpool spool;
+    private ManagementProperties properties;
+    private final Map<String, String> logs = new ConcurrentHashMap<>();
+    private final Map<String, Integer> statuses = new ConcurrentHashMap<>();
+    private final Map<String, IOException> failures = new ConcurrentHashMap<>();
+    private final Map<String, CountDownLatch> blocked = new ConcurrentHashMap<>();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+
+    @BeforeEach
+    void setUp() {
+        OkHttpClient client = new OkHttpClient.Builder()
+                .addInterceptor(chain -> {
+                    String host = chain.request().url().queryParameter("host");
+                    String body = host == null ? HOSTS : logs.getOrDefault(host, "");
+                    int status = statuses.getOrDefault(host == null ? "" : host, 200);
+                    if (host != null && failures.containsKey(host)) {
+                        throw failures.get(host);
+                    }
+                    maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+                    try {
+                        if (host != null && blocked.containsKey(host)) {
+                            blocked.get(host).await(5, TimeUnit.SECONDS);
+                        }
+                        Thread.sleep(20);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    inFlight.decrementAndGet();
+                    return new Response.Builder()
+                            .request(chain.request())
+                            .protocol(Protocol.HTTP_1_1)
+                            .code(status)
+                            .message("OK")
+                            .body(ResponseBody.create(body, null))
+                            .build();
+                })
+                .build();
+        properties = new ManagementProperties();
+        properties.getLogSpool().setDirectory(directory.toString());
+        spool = new LogSpool(properties.getLogSpool());
+
+        controller = new MergedLogsController();
+        ReflectionTestUtils.setField(controller, "managementHttpClient", client);
+        ReflectionTestUtils.setField(controller, "logSpool", spool);
+        ReflectionTestUtils.setField(controller, "managementProperties", properties);
+        ReflectionTestUtils.setField(controller, "marklogicHost", "localhost");
+        ReflectionTestUtils.setField(controller, "marklogicSchema", "http");
+
+        logs.put("node1", "2025-01-01 10:00:00.100 Info: one\n"
+                + "2025-01-01 10:00:02.000 Error: failed\n"
+                + "  in /app/main.xqy\n");
+        logs.put("node2", "2025-01-01 10:00:01.000 Info: two\n"
+                + "2025-01-01 10:00:02.000 Info: same time\n");
+        logs.put("node3", "2025-01-01 09:59:59.999 Info: first\n");
+    }
+
+    @AfterEach
+    void tearDown() {
+        blocked.values().forEach(CountDownLatch::countDown);
+        RequestContextHolder.resetRequestAttributes();
+        spool.close();
+    }
+
+    @Test
+    void testLogsAreMergedByTimestamp() throws Exception {
+        // Act
+        ResponseEntity<StreamingResponseBody> result = controller.getMergedLogs("ErrorLog.txt", null, null, null)
+                .get(5, TimeUnit.SECONDS);
+
+        // Assert
+        assertEquals(HttpStatus.OK, result.getStatusCode());
+        assertEquals(MediaType.TEXT_PLAIN, result.getHeaders().getContentType());
+        assertEquals("node1, node2, node3", result.getHeaders().getFirst(MergedLogsController.MERGED_HOSTS));
+        assertEquals("[node3] 2025-01-01 09:59:59.999 Info: first\n"
+                + "[node1] 2025-01-01 10:00:00.100 Info: one\n"
+                + "[node2] 2025-01-01 10:00:01.000 Info: two\n"
+                + "[node1] 2025-01-01 10:00:02.000 Error: failed\n"
+                + "[node1]   in /app/main.xqy\n"
+                + "[node2] 2025-01-01 10:00:02.000 Info: same time\n", bodyAsString(result));
+        assertEquals(3, spool.size());
+    }
+
+    @Test
+    void testAccessLogsAreMerged() throws Exception {
+        // Arrange
+        logs.put("node1", "10.0.0.1 - admin [01/Jan/2025:10:00:02 +0000] \"GET /b HTTP/1.1\" 200 1\n");
+        logs.put("node2", "10.0.0.2 - admin [01/Jan/2025:10:00:01 +0000] \"GET /a HTTP/1.1\" 200 1\n");
+        logs.put("node3", "");
+
+        // Act
+        ResponseEntity<StreamingResponseBody> result = controller.getMergedLogs("8002_AccessLog.txt", null, null,
+                null).get(5, TimeUnit.SECONDS);
+
+        // Assert
+        assertEquals("[node2] 10.0.0.2 - admin [01/Jan/2025:10:00:01 +0000] \"GET /a HTTP/1.1\" 200 1\n"
+                + "[node1] 10.0.0.1 - admin [01/Jan/2025:10:00:02 +0000] \"GET /b HTTP/1.1\" 200 1\n",
+                bodyAsString(result));
+    }
+
+    @Test
+    void testFailedHostIsReported() throws Exception {
+        // Arrange
+        statuses.put("node2", 500);
+
+        // Act
+        ResponseEntity<StreamingResponseBody> result = controller.getMergedLogs("ErrorLog.txt", null, null, null)
+                .get(5, TimeUnit.SECONDS);
+
+        // Assert
+        assertEquals(HttpStatus.OK, result.getStatusCode());
+        assertEquals("node1, node3", result.getHeaders().getFirst(MergedLogsController.MERGED_HOSTS));
+        assertEquals("node2 (status 500)", result.getHeaders().getFirst(MergedLogsController.FAILED_HOSTS));
+        assertFalse(bodyAsString(result).contains("[node2]"));
+    }
+
+    @Test
+    void testFailureReasonsAreShortAndHeaderSafe() throws Exception {
+        // Arrange
+        failures.put("node2", new SocketTimeoutException("timeout\r\nwaiting for 10.1.2.3:8002"));
+        failures.put("node3", new ConnectException("Failed to connect to /10.1.2.3:8002 (refused)"));
+
+        // Act
+        ResponseEntity<StreamingResponseBody> result = controller.getMergedLogs("ErrorLog.txt", null, null, null)
+                .get(5, TimeUnit.SECONDS);
+
+        // Assert
+        assertEquals("node1", result.getHeaders().getFirst(MergedLogsController.MERGED_HOSTS));
+        assertEquals("node2 (timeout), node3 (connect-failed)",
+                result.getHeaders().getFirst(MergedLogsController.FAILED_HOSTS));
+        assertEquals("io-error", MergedLogsController.failureReason(new IOException("stream reset")));
+    }
+
+    @Test
+    void testNoHostReturnedTheLog() throws Exception {
+        // Arrange
+        statuses.put("node1", 404);
+        statuses.put("node2", 404);
+        statuses.put("node3", 404);
+
+        // Act
+        ResponseEntity<StreamingResponseBody> result = controller.getMergedLogs("Missing.txt", null, null, null)
+                .get(5, TimeUnit.SECONDS);
+
+        // Assert
+        assertEquals(HttpStatus.BAD_GATEWAY, result.getStatusCode());
+        assertTrue(bodyAsString(result).contains("No host returned the log"));
+    }
+
+    @Test
+    void testFetchesAreBounded() throws Exception {
+        // Arrange
+        properties.getLogMerge().setMaxConcurrency(1);
+
+        // Act
+        ResponseEntity<StreamingResponseBody> result = controller.getMergedLogs("ErrorLog.txt", null, null, null)
+                .get(5, TimeUnit.SECONDS);
+
+        // Assert
+        assertEquals(HttpStatus.OK, result.getStatusCode());
+        assertEquals(1, maxInFlight.get());
+    }
+
+    @Test
+    void testTimeoutReleasesSpooledLogs() throws Exception {
+        // Arrange
+        properties.getLogMerge().setMaxConcurrency(1);
+        CountDownLatch slowHost = new CountDownLatch(1);
+        blocked.put("node2", slowHost);
+        ServletRequestAttributes request = new ServletRequestAttributes(new MockHttpServletRequest());
+        RequestContextHolder.setRequestAttributes(request);
+        CompletableFuture<ResponseEntity<StreamingResponseBody>> result = controller.getMergedLogs("ErrorLog.txt",
+                null, null, null);
+        waitFor(() -> spool.size() == 1 && inFlight.get() == 1);
+
+        // Act
+        // What ManagementAsyncConfig does when spring.mvc.async.request-timeout expires
+        ManagementCalls.cancelPending(request);
+        slowHost.countDown();
+        waitFor(() -> inFlight.get() == 0);
+        spool.close();
+
+        // Assert
+        assertTrue(result.isCancelled());
+        waitFor(() -> isEmpty(directory));
+        assertTrue(isEmpty(directory));
+    }
+
+    @Test
+    void testHostsListErrorIsReturned() throws Exception {
+        // Arrange
+        statuses.put("", 401);
+
+        // Act
+        ResponseEntity<StreamingResponseBody> result = controller.getMergedLogs("ErrorLog.txt", null, null, null)
+                .get(5, TimeUnit.SECONDS);
+
+        // Assert
+        assertEquals(HttpStatus.UNAUTHORIZED, result.getStatusCode());
+    }
+
+    @Test
+    void testMissingFilename() throws Exception {
+        // Act
+        ResponseEntity<StreamingResponseBody> result = controller.getMergedLogs(" ", null, null, null)
+                .get(5, TimeUnit.SECONDS);
+
+        // Assert
+        assertEquals(HttpStatus.BAD_REQUEST, result.getStatusCode());
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean() && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+
+    private static boolean isEmpty(Path directory) {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.findAny().isEmpty();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,315 @@
+package org.billFarber.marklogicadminproxy;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.HttpUrl;
+import okhttp3.Interceptor;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import org.billFarber.marklogicadminproxy.simulator.ClusterSize;
+import org.billFarber.marklogicadminproxy.simulator.FaultProfile;
+import org.billFarber.marklogicadminproxy.simulator.ManagementApiSimulator;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.context.annotation.Bean;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Drives the whole application against the Management API simulator with
+ * UI-like traffic and checks the results against the SLOs in
+ * loadtest-slo.properties. Three scenarios run one after another, each with
+ * loadtest.users concurrent users and no think time:
+ *
+ * - browse-resources: a resource list, then the properties of
+ * loadtest.properties-per-list of its items in parallel, as the UI tabs do
+ * - browse-logs: the log file list, then one whole file as text
+ * - poll-metrics: hosts view=metrics, forests view=status and the cache stats
+ *
+ * The report is printed and written to loadtest.reports-dir/results.json.
+ * Run with ./gradlew loadTest; settings are loadtest.* Gradle properties, e.g.
+ * -Ploadtest.duration=30s -Ploadtest.users=64 -Ploadtest.upstream-latency=20ms
+ * -Ploadtest.cluster.forests=5000.
+ * It is excluded from the normal test task.
+ */
+@Tag("loadtest")
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = "logging.level.org.billFarber.marklogicadminproxy=WARN")
+@ActiveProfiles("test")
+class ProxyLoadTest {
+
+    private static final List<String> RESOURCES = List.of("databases", "forests", "hosts", "servers", "groups",
+            "users", "roles");
+
+    private static ManagementApiSimulator simulator;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @LocalServerPort
+    private int port;
+
+    private OkHttpClient client;
+
+    @TestConfiguration
+    static class SimulatorConfig {
+
+        /**
+         * The controllers always call port 8002, so point them at the simulator.
+         * Runs last, so the cache and metrics still see the original URL.
+         */
+        @Bean
+        @Order(Ordered.LOWEST_PRECEDENCE)
+        Interceptor simulatorPort() {
+            return chain -> chain.proceed(chain.request().newBuilder()
+                    .url(chain.request().url().newBuilder().port(simulator.getPort()).build())
+                    .build());
+        }
+    }
+
+    @BeforeAll
+    static void startSimulator() throws IOException {
+        ClusterSize size = new ClusterSize();
+        size.setHosts(intSetting("cluster.hosts", 50));
+        size.setGroups(intSetting("cluster.groups", 4));
+        size.setDatabases(intSetting("cluster.databases", 100));
+        size.setForests(intSetting("cluster.forests", 1000));
+        size.setServers(intSetting("cluster.servers", 100));
+        size.setUsers(intSetting("cluster.users", 5000));
+        size.setRoles(intSetting("cluster.roles", 500));
+
+        FaultProfile faults = new FaultProfile();
+        faults.setLatency(durationSetting("upstream-latency", "5ms"));
+        faults.setJitter(durationSetting("upstream-jitter", "5ms"));
+        faults.setErrorRate(Double.parseDouble(setting("upstream-error-rate", "0")));
+
+        simulator = new ManagementApiSimulator(size, faults);
+        simulator.start();
+    }
+
+    @AfterAll
+    static void stopSimulator() throws IOException {
+        simulator.close();
+    }
+
+    @Test
+    void meetsServiceLevelObjectives() throws Exception {
+        int users = intSetting("users", 8);
+        Duration warmup = durationSetting("warmup", "3s");
+        Duration duration = durationSetting("duration", "10s");
+
+        ExecutorService callbacks = Executors.newCachedThreadPool(named("loadtest-okhttp-"));
+        Dispatcher dispatcher = new Dispatcher(callbacks);
+        dispatcher.setMaxRequests(1024);
+        dispatcher.setMaxRequestsPerHost(1024);
+        client = new OkHttpClient.Builder()
+                .dispatcher(dispatcher)
+                .connectionPool(new ConnectionPool(1024, 1, TimeUnit.MINUTES))
+                .readTimeout(Duration.ofSeconds(60))
+                .build();
+
+        LoadTestReport report = new LoadTestReport();
+        try {
+            run(report, "browse-resources", users, warmup, duration, this::browseResources);
+            run(report, "browse-logs", users, warmup, duration, this::browseLogs);
+            run(report, "poll-metrics", users, warmup, duration, this::pollMetrics);
+        } finally {
+            callbacks.shutdownNow();
+        }
+
+        report.print(System.out);
+        report.write(Path.of(setting("reports-dir", "build/reports/loadtest"), "results.json"));
+
+        List<String> violations = LoadTestSlo.load().violations(report);
+        assertTrue(violations.isEmpty(), "Missed SLOs:\n" + String.join("\n", violations));
+    }
+
+    /**
+     * One iteration of a simulated user; latencies go to the phase, or nowhere
+     * during warm-up.
+     */
+    @FunctionalInterface
+    private interface Scenario {
+        void iterate(LoadTestReport.Phase phase) throws Exception;
+    }
+
+    private void run(LoadTestReport report, String name, int users, Duration warmup, Duration duration,
+            Scenario scenario) throws Exception {
+        drive(users, warmup, null, scenario);
+        LoadTestReport.Phase phase = report.start(name);
+        drive(users, duration, phase, scenario);
+        phase.end();
+    }
+
+    private void drive(int users, Duration duration, LoadTestReport.Phase phase, Scenario scenario)
+            throws Exception {
+        long deadline = System.nanoTime() + duration.toNanos();
+        ExecutorService pool = Executors.newFixedThreadPool(users, named("loadtest-user-"));
+        List<Future<?>> running = new ArrayList<>();
+        for (int i = 0; i < users; i++) {
+            running.add(pool.submit(() -> {
+                while (System.nanoTime() < deadline) {
+                    scenario.iterate(phase);
+                }
+                return null;
+            }));
+        }
+        try {
+            for (Future<?> user : running) {
+                user.get();
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private void browseResources(LoadTestReport.Phase phase) throws Exception {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        String resource = RESOURCES.get(random.nextInt(RESOURCES.size()));
+        JsonNode list = getJson(phase, resource + "-list", "/manage/v2/" + resource + "?format=json");
+        if (list == null) {
+            return;
+        }
+        JsonNode items = list.path(resource.substring(0, resource.length() - 1) + "-default-list")
+                .path("list-items").path("list-item");
+        if (items.isEmpty()) {
+            return;
+        }
+
+        int count = Math.min(intSetting("properties-per-list", 10), items.size());
+        CountDownLatch done = new CountDownLatch(count);
+        for (int i = 0; i < count; i++) {
+            JsonNode item = items.get(random.nextInt(items.size()));
+            HttpUrl.Builder url = proxyUrl("/manage/v2/" + resource).newBuilder()
+                    .addPathSegment(item.path("nameref").asText())
+                    .addPathSegment("properties")
+                    .addQueryParameter("format", "json");
+            if (resource.equals("servers")) {
+                url.addQueryParameter("group-id", item.path("groupnameref").asText());
+            }
+            enqueue(phase, resource + "-properties", url.build(), done);
+        }
+        done.await();
+    }
+
+    private void browseLogs(LoadTestReport.Phase phase) throws Exception {
+        JsonNode list = getJson(phase, "logs-list", "/manage/v2/logs?format=json");
+        if (list == null) {
+            return;
+        }
+        JsonNode items = list.path("log-default-list").path("list-items").path("list-item");
+        JsonNode file = items.get(ThreadLocalRandom.current().nextInt(items.size()));
+        HttpUrl url = proxyUrl("/manage/v2/logs").newBuilder()
+                .addQueryParameter("filename", file.path("nameref").asText())
+                .addQueryParameter("host", file.path("hostnameref").asText())
+                .addQueryParameter("format", "text")
+                .build();
+        get(phase, "logs-file", url);
+    }
+
+    private void pollMetrics(LoadTestReport.Phase phase) throws IOException {
+        get(phase, "hosts-metrics", proxyUrl("/manage/v2/hosts?view=metrics&format=json"));
+        get(phase, "forests-status", proxyUrl("/manage/v2/forests?view=status&format=json"));
+        get(phase, "cache-stats", proxyUrl("/proxy/cache/stats"));
+    }
+
+    private JsonNode getJson(LoadTestReport.Phase phase, String endpoint, String path) throws IOException {
+        byte[] body = get(phase, endpoint, proxyUrl(path));
+        return body == null ? null : mapper.readTree(body);
+    }
+
+    /**
+     * @return the body, or null if the request failed
+     */
+    private byte[] get(LoadTestReport.Phase phase, String endpoint, HttpUrl url) {
+        long start = System.nanoTime();
+        try (Response response = client.newCall(new Request.Builder().url(url).build()).execute()) {
+            byte[] body = response.body().bytes();
+            record(phase, endpoint, start, response.isSuccessful());
+            return response.isSuccessful() ? body : null;
+        } catch (IOException e) {
+            record(phase, endpoint, start, false);
+            return null;
+        }
+    }
+
+    private void enqueue(LoadTestReport.Phase phase, String endpoint, HttpUrl url, CountDownLatch done) {
+        long start = System.nanoTime();
+        client.newCall(new Request.Builder().url(url).build()).enqueue(new Callback() {
+            @Override
+            public void onResponse(Call call, Response response) {
+                try (response) {
+                    response.body().bytes();
+                    record(phase, endpoint, start, response.isSuccessful());
+                } catch (IOException e) {
+                    record(phase, endpoint, start, false);
+                } finally {
+                    done.countDown();
+                }
+            }
+
+            @Override
+            public void onFailure(Call call, IOException e) {
+                record(phase, endpoint, start, false);
+                done.countDown();
+            }
+        });
+    }
+
+    private static void record(LoadTestReport.Phase phase, String endpoint, long start, boolean ok) {
+        if (phase != null) {
+            phase.record(endpoint, System.nanoTime() - start, ok);
+        }
+    }
+
+    private HttpUrl proxyUrl(String pathAndQuery) {
+        return HttpUrl.parse("http://localhost:" + port + pathAndQuery);
+    }
+
+    private static ThreadFactory named(String prefix) {
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private static String setting(String name, String defaultValue) {
+        return System.getProperty("loadtest." + name, defaultValue);
+    }
+
+    private static int intSetting(String name, int defaultValue) {
+        return Integer.parseInt(setting(name, String.valueOf(defaultValue)));
+    }
+
+    private static Duration durationSetting(String name, String defaultValue) {
+        return ManagementApiSimulator.duration(setting(name, defaultValue));
+    }
+}
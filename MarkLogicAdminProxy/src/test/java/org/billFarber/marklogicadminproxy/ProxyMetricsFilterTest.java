@@ -0,0 +1,69 @@
+package org.billFarber.marklogicadminproxy;
+
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProxyMetricsFilterTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final ProxyMetricsFilter filter = new ProxyMetricsFilter(registry);
+
+    @Test
+    void testRecordsOverheadWithoutUpstreamTime() throws Exception {
+        // Arrange
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/manage/v2/databases");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        MockFilterChain chain = new MockFilterChain(new HttpServlet() {
+            @Override
+            protected void service(HttpServletRequest req, HttpServletResponse resp) throws ServletException {
+                req.setAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE, "/manage/v2/databases");
+                UpstreamSpan span = (UpstreamSpan) req.getAttribute(UpstreamSpan.ATTRIBUTE);
+                // A 200ms upstream call
+                long start = System.nanoTime();
+                try {
+                    Thread.sleep(200);
+                } catch (InterruptedException e) {
+                    throw new ServletException(e);
+                }
+                span.add(start, System.nanoTime());
+            }
+        });
+
+        // Act
+        filter.doFilter(request, response, chain);
+
+        // Assert
+        Timer overhead = registry.get(ProxyMetricsFilter.OVERHEAD)
+                .tag("uri", "/manage/v2/databases")
+                .tag("status", "200")
+                .timer();
+        assertEquals(1, overhead.count());
+        assertTrue(overhead.totalTime(TimeUnit.MILLISECONDS) < 100,
+                "Upstream time should be excluded but overhead was " + overhead.totalTime(TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    void testSkipsActuator() throws Exception {
+        // Arrange
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/actuator/prometheus");
+
+        // Act
+        filter.doFilter(request, new MockHttpServletResponse(), new MockFilterChain());
+
+        // Assert
+        assertNull(registry.find(ProxyMetricsFilter.OVERHEAD).timer());
+    }
+}
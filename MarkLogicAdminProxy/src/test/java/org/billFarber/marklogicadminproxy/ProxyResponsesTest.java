@@ -0,0 +1,297 @@
+package org.billFarber.marklogicadminproxy;
+
+import okhttp3.MediaType;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import okio.ByteString;
+import okio.GzipSink;
+import okio.GzipSource;
+import okio.Okio;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+
+import static org.billFarber.marklogicadminproxy.ResponseBodies.bodyAsString;
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProxyResponsesTest {
+
+    private static final String BODY = "{\"database-properties\":{\"database-name\":\"Documents\"}}";
+    private static final String BODY_ETAG = "W/\"" + ByteString.encodeUtf8(BODY).sha256().hex() + "\"";
+
+    @AfterEach
+    void tearDown() {
+        RequestContextHolder.resetRequestAttributes();
+    }
+
+    @Test
+    void testStreamCopiesBodyAndContentLength() throws IOException {
+        String body = "{\"forest-default-list\":{}}";
+        Response upstream = upstream(ResponseBody.create(body, MediaType.get("application/json")));
+
+        ResponseEntity<StreamingResponseBody> result = ProxyResponses.stream(
+                ResponseEntity.ok().contentType(org.springframework.http.MediaType.APPLICATION_JSON), upstream);
+
+        assertEquals(HttpStatus.OK, result.getStatusCode());
+        assertEquals(body.length(), result.getHeaders().getContentLength());
+        assertEquals(body, bodyAsString(result));
+    }
+
+    @Test
+    void testStreamOmitsUnknownContentLength() throws IOException {
+        Buffer source = new Buffer().writeUtf8("<log-data/>");
+        Response upstream = upstream(ResponseBody.create(source, null, -1));
+
+        ResponseEntity<StreamingResponseBody> result = ProxyResponses.stream(ResponseEntity.ok(), upstream);
+
+        assertEquals(-1, result.getHeaders().getContentLength());
+        assertEquals("<log-data/>", bodyAsString(result));
+    }
+
+    @Test
+    void testStreamHandlesLargeBodies() throws IOException {
+        Buffer source = new Buffer();
+        for (int i = 0; i < 100_000; i++) {
+            source.writeUtf8("line ").writeUtf8(Integer.toString(i)).writeUtf8("\n");
+        }
+        long size = source.size();
+        Response upstream = upstream(ResponseBody.create(source, null, size));
+
+        ResponseEntity<StreamingResponseBody> result = ProxyResponses.stream(ResponseEntity.ok(), upstream);
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        result.getBody().writeTo(outputStream);
+
+        assertEquals(size, outputStream.size());
+        assertTrue(outputStream.toString(StandardCharsets.UTF_8).endsWith("line 99999\n"));
+    }
+
+    @Test
+    void testStreamAddsContentHashETag() throws IOException {
+        Response upstream = upstream(ResponseBody.create(BODY, MediaType.get("application/json")));
+
+        ResponseEntity<StreamingResponseBody> result = ProxyResponses.stream(ResponseEntity.ok(), upstream);
+
+        assertEquals(BODY_ETAG, result.getHeaders().getETag());
+        assertEquals("no-cache", result.getHeaders().getCacheControl());
+        assertEquals(BODY, bodyAsString(result));
+    }
+
+    @Test
+    void testStreamReturnsNotModifiedWhenETagMatches() throws IOException {
+        ifNoneMatch(BODY_ETAG);
+        Response upstream = upstream(ResponseBody.create(BODY, MediaType.get("application/json")));
+
+        ResponseEntity<StreamingResponseBody> result = ProxyResponses.stream(ResponseEntity.ok(), upstream);
+
+        assertEquals(HttpStatus.NOT_MODIFIED, result.getStatusCode());
+        assertEquals(BODY_ETAG, result.getHeaders().getETag());
+        assertNull(result.getBody());
+    }
+
+    @Test
+    void testStreamReturnsBodyWhenETagDiffers() throws IOException {
+        ifNoneMatch("\"stale\"");
+        Response upstream = upstream(ResponseBody.create(BODY, MediaType.get("application/json")));
+
+        ResponseEntity<StreamingResponseBody> result = ProxyResponses.stream(ResponseEntity.ok(), upstream);
+
+        assertEquals(HttpStatus.OK, result.getStatusCode());
+        assertEquals(BODY, bodyAsString(result));
+    }
+
+    @Test
+    void testStreamPrefersUpstreamStrongETagMadeWeak() throws IOException {
+        Response upstream = upstream(ResponseBody.create(BODY, MediaType.get("application/json"))).newBuilder()
+                .header("ETag", "\"ml-42\"")
+                .build();
+
+        ResponseEntity<StreamingResponseBody> result = ProxyResponses.stream(ResponseEntity.ok(), upstream);
+
+        assertEquals("W/\"ml-42\"", result.getHeaders().getETag());
+    }
+
+    @Test
+    void testStreamDerivesUpstreamETagPerEncoding() throws IOException {
+        Response forwarded = upstream(new GzipResponseBody(ResponseBody.create(gzip(BODY), null, -1)))
+                .newBuilder()
+                .header("ETag", "\"ml-42\"")
+                .build();
+        Response inflated = forwarded.newBuilder()
+                .body(new GzipResponseBody(ResponseBody.create(gzip(BODY), null, -1)))
+                .build();
+
+        requestHeader("Accept-Encoding", "gzip");
+        ResponseEntity<StreamingResponseBody> gzipResult = ProxyResponses.stream(ResponseEntity.ok(), forwarded);
+        RequestContextHolder.resetRequestAttributes();
+        ResponseEntity<StreamingResponseBody> identityResult = ProxyResponses.stream(ResponseEntity.ok(), inflated);
+
+        assertEquals("\"ml-42-gzip\"", gzipResult.getHeaders().getETag());
+        assertEquals("W/\"ml-42\"", identityResult.getHeaders().getETag());
+    }
+
+    @Test
+    void testStreamSkipsETagForLargeBodies() throws IOException {
+        Buffer source = new Buffer().write(new byte[(int) ProxyResponses.ETAG_MAX_BYTES + 1]);
+        Response upstream = upstream(ResponseBody.create(source, null, source.size()));
+
+        ResponseEntity<StreamingResponseBody> result = ProxyResponses.stream(ResponseEntity.ok(), upstream);
+
+        assertNull(result.getHeaders().getETag());
+    }
+
+    @Test
+    void testStreamSkipsETagForErrorResponses() throws IOException {
+        Response upstream = upstream(ResponseBody.create(BODY, MediaType.get("application/json"))).newBuilder()
+                .code(500)
+                .build();
+
+        ResponseEntity<StreamingResponseBody> result = ProxyResponses.stream(
+                ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR), upstream);
+
+        assertNull(result.getHeaders().getETag());
+        assertEquals(BODY, bodyAsString(result));
+    }
+
+    @Test
+    void testStreamForwardsGzipWhenClientAcceptsIt() throws IOException {
+        requestHeader("Accept-Encoding", "gzip, deflate, br");
+        Buffer compressed = gzip(BODY);
+        long compressedSize = compressed.size();
+        Response upstream = upstream(new GzipResponseBody(ResponseBody.create(compressed, null, compressedSize)));
+
+        ResponseEntity<StreamingResponseBody> result = ProxyResponses.stream(ResponseEntity.ok(), upstream);
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        result.getBody().writeTo(outputStream);
+
+        assertEquals("gzip", result.getHeaders().getFirst("Content-Encoding"));
+        assertEquals(List.of("Accept-Encoding"), result.getHeaders().getVary());
+        assertEquals(compressedSize, result.getHeaders().getContentLength());
+        assertEquals(compressedSize, outputStream.size());
+        assertEquals(BODY, Okio.buffer(new GzipSource(new Buffer().write(outputStream.toByteArray()))).readUtf8());
+        assertNotEquals(BODY_ETAG, result.getHeaders().getETag());
+        assertFalse(result.getHeaders().getETag().startsWith("W/"));
+    }
+
+    @Test
+    void testStreamInflatesGzipForClientsWithoutGzip() throws IOException {
+        Buffer compressed = gzip(BODY);
+        Response upstream = upstream(new GzipResponseBody(ResponseBody.create(compressed, null, compressed.size())));
+
+        ResponseEntity<StreamingResponseBody> result = ProxyResponses.stream(ResponseEntity.ok(), upstream);
+
+        assertNull(result.getHeaders().getFirst("Content-Encoding"));
+        assertEquals(List.of("Accept-Encoding"), result.getHeaders().getVary());
+        assertEquals(-1, result.getHeaders().getContentLength());
+        assertEquals(BODY_ETAG, result.getHeaders().getETag());
+        assertEquals(BODY, bodyAsString(result));
+    }
+
+    @Test
+    void testStreamAddsServerTimingOfCurrentRequest() throws IOException {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        ServletRequestAttributes attributes = new ServletRequestAttributes(request);
+        RequestContextHolder.setRequestAttributes(attributes);
+        ServerTiming timing = ServerTiming.of(attributes);
+        timing.add(ServerTiming.Phase.SERVER, 12_340_000);
+        timing.add(ServerTiming.Phase.TRANSFER, 500_000);
+
+        ResponseEntity<StreamingResponseBody> result = ProxyResponses.stream(ResponseEntity.ok(),
+                upstream(ResponseBody.create(BODY, MediaType.get("application/json"))));
+
+        assertEquals("server;dur=12.3, transfer;dur=0.5", result.getHeaders().getFirst(ServerTiming.HEADER));
+        assertEquals(BODY_ETAG, result.getHeaders().getETag());
+    }
+
+    @Test
+    void testStreamOmitsServerTimingWithoutUpstreamCalls() throws IOException {
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(new MockHttpServletRequest()));
+
+        ResponseEntity<StreamingResponseBody> result = ProxyResponses.stream(ResponseEntity.ok(),
+                upstream(ResponseBody.create(BODY, MediaType.get("application/json"))));
+
+        assertFalse(result.getHeaders().containsKey(ServerTiming.HEADER));
+    }
+
+    @Test
+    void testAcceptsGzip() {
+        assertTrue(ProxyResponses.acceptsGzip("gzip"));
+        assertTrue(ProxyResponses.acceptsGzip("br;q=1.0, GZIP;q=0.5"));
+        assertTrue(ProxyResponses.acceptsGzip("*"));
+        assertFalse(ProxyResponses.acceptsGzip("gzip;q=0, *"));
+        assertFalse(ProxyResponses.acceptsGzip("identity"));
+        assertFalse(ProxyResponses.acceptsGzip("*;q=0.0"));
+        assertFalse(ProxyResponses.acceptsGzip(null));
+    }
+
+    @Test
+    void testMatches() {
+        assertTrue(ProxyResponses.matches("\"a\"", "\"a\""));
+        assertTrue(ProxyResponses.matches("\"x\", W/\"a\"", "\"a\""));
+        assertTrue(ProxyResponses.matches("*", "\"a\""));
+        assertFalse(ProxyResponses.matches("\"b\"", "\"a\""));
+        assertFalse(ProxyResponses.matches(null, "\"a\""));
+    }
+
+    @Test
+    void testText() throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        ProxyResponses.text("{\"error\":\"é\"}").writeTo(outputStream);
+
+        assertEquals("{\"error\":\"é\"}", outputStream.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void testErrorKeepsRejectionHeaders() throws IOException {
+        Request request = new Request.Builder().url("http://localhost:8002/manage/v2/forests").build();
+        Response rejected = RejectedResponse.of(request, "PROXY-LIMITERFULL", "busy", Duration.ofMillis(1500));
+
+        ResponseEntity<StreamingResponseBody> result = ProxyResponses.error(rejected, "{\"error\":\"busy\"}");
+
+        assertEquals(503, result.getStatusCode().value());
+        assertEquals("2", result.getHeaders().getFirst("Retry-After"));
+        assertEquals("{\"error\":\"busy\"}", bodyAsString(result));
+    }
+
+    private static void ifNoneMatch(String value) {
+        requestHeader("If-None-Match", value);
+    }
+
+    private static void requestHeader(String name, String value) {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.addHeader(name, value);
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request));
+    }
+
+    private static Buffer gzip(String body) throws IOException {
+        Buffer compressed = new Buffer();
+        try (GzipSink sink = new GzipSink(compressed)) {
+            Buffer source = new Buffer().writeUtf8(body);
+            sink.write(source, source.size());
+        }
+        return compressed;
+    }
+
+    private static Response upstream(ResponseBody body) {
+        return new Response.Builder()
+                .request(new Request.Builder().url("http://localhost:8002/manage/v2/forests").build())
+                .protocol(Protocol.HTTP_1_1)
+                .code(200)
+                .message("OK")
+                .body(body)
+                .build();
+    }
+}
@@ -0,0 +1,178 @@
+package org.billFarber.marklogicadminproxy;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.Interceptor;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Checks that the 503s the proxy answers with instead of calling MarkLogic
+ * reach the client with their Retry-After, through a controller.
+ */
+class RejectedResponseTest {
+
+    private static final String BLOCKED = "http://localhost:8002/manage/v2/hosts?blocked=true";
+    private static final String FAILING = "http://localhost:8002/manage/v2/hosts?fail=true";
+
+    private MockWebServer server;
+    private CountDownLatch blocked;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = new MockWebServer();
+        blocked = new CountDownLatch(1);
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                if (request.getPath().contains("blocked")) {
+                    blocked.await(10, TimeUnit.SECONDS);
+                }
+                if (request.getPath().contains("fail")) {
+                    return new MockResponse().setResponseCode(500);
+                }
+                return new MockResponse().setBody("{}");
+            }
+        });
+        server.start();
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        blocked.countDown();
+        server.shutdown();
+    }
+
+    @Test
+    void testLimiterRejectionKeepsRetryAfter() throws Exception {
+        // Arrange
+        ManagementProperties.Limiter settings = new ManagementProperties.Limiter();
+        settings.setInitialLimit(1);
+        settings.setMinLimit(1);
+        settings.setMaxQueue(0);
+        OkHttpClient client = client(new ManagementConcurrencyLimiter(settings, new SimpleMeterRegistry()));
+        occupy(client);
+
+        // Act
+        MvcResult result = mockMvc(client).perform(get("/manage/v2/databases"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        // Assert
+        mockMvc(client).perform(asyncDispatch(result))
+                .andExpect(status().isServiceUnavailable())
+                .andExpect(header().exists("Retry-After"));
+        assertEquals(1, server.getRequestCount());
+    }
+
+    @Test
+    void testBulkheadRejectionKeepsRetryAfter() throws Exception {
+        // Arrange
+        ManagementProperties.Bulkhead settings = new ManagementProperties.Bulkhead();
+        settings.setMaxConcurrent(Map.of("lists", 1));
+        settings.setMaxWait(Duration.ofMillis(50));
+        OkHttpClient client = client(new ManagementBulkhead(settings, new SimpleMeterRegistry()));
+        occupy(client);
+
+        // Act
+        MvcResult result = mockMvc(client).perform(get("/manage/v2/databases"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        // Assert
+        mockMvc(client).perform(asyncDispatch(result))
+                .andExpect(status().isServiceUnavailable())
+                .andExpect(header().string("Retry-After", "1"));
+        assertEquals(1, server.getRequestCount());
+    }
+
+    @Test
+    void testOpenCircuitRejectionKeepsRetryAfter() throws Exception {
+        // Arrange
+        ManagementProperties.CircuitBreaker settings = new ManagementProperties.CircuitBreaker();
+        settings.setMinimumCalls(2);
+        settings.setOpenDuration(Duration.ofSeconds(30));
+        OkHttpClient client = client(new ManagementCircuitBreaker(settings, new SimpleMeterRegistry()));
+        for (int i = 0; i < 2; i++) {
+            try (Response failed = client.newCall(new Request.Builder().url(FAILING).build()).execute()) {
+                assertEquals(500, failed.code());
+            }
+        }
+
+        // Act
+        MvcResult result = mockMvc(client).perform(get("/manage/v2/databases"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        // Assert
+        mockMvc(client).perform(asyncDispatch(result))
+                .andExpect(status().isServiceUnavailable())
+                .andExpect(header().exists("Retry-After"));
+        assertEquals(2, server.getRequestCount());
+    }
+
+    /**
+     * Starts a call that MarkLogic does not answer until the test ends, and
+     * returns once it has reached the server.
+     */
+    private void occupy(OkHttpClient client) throws InterruptedException {
+        client.newCall(new Request.Builder().url(BLOCKED).build()).enqueue(new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) {
+                response.close();
+            }
+        });
+        assertNotNull(server.takeRequest(5, TimeUnit.SECONDS));
+    }
+
+    private MockMvc mockMvc(OkHttpClient client) {
+        DatabasesController controller = new DatabasesController();
+        ReflectionTestUtils.setField(controller, "managementHttpClient", client);
+        ReflectionTestUtils.setField(controller, "marklogicHost", "localhost");
+        ReflectionTestUtils.setField(controller, "marklogicSchema", "http");
+        return MockMvcBuilders.standaloneSetup(controller).build();
+    }
+
+    /**
+     * A client with the given interceptor whose calls to port 8002 go to the
+     * mock server.
+     */
+    private OkHttpClient client(Interceptor interceptor) {
+        return new OkHttpClient.Builder()
+                .addInterceptor(interceptor)
+                .addInterceptor(chain -> chain.proceed(chain.request().newBuilder()
+                        .url(chain.request().url().newBuilder().port(server.getPort()).build())
+                        .build()))
+                .build();
+    }
+}
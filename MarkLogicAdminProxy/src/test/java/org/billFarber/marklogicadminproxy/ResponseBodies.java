@@ -0,0 +1,43 @@
+package org.billFarber.marklogicadminproxy;
+
+import okio.Buffer;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Test helpers for controllers that stream their response bodies.
+ */
+final class ResponseBodies {
+
+    private ResponseBodies() {
+    }
+
+    /**
+     * Writes the streaming body of a controller response and returns it as a
+     * String, or null when the response has no body.
+     */
+    static String bodyAsString(ResponseEntity<StreamingResponseBody> entity) {
+        if (entity.getBody() == null) {
+            return null;
+        }
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        try {
+            entity.getBody().writeTo(outputStream);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return outputStream.toString(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Creates an upstream body source as OkHttp would hand it to the controller.
+     */
+    static Buffer source(String body) {
+        return new Buffer().writeUtf8(body);
+    }
+}
@@ -0,0 +1,97 @@
+package org.billFarber.marklogicadminproxy;
+
+import okhttp3.Interceptor;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okio.GzipSource;
+import okio.Okio;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.context.annotation.Bean;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs the whole application against a MockWebServer to check that the
+ * server's response compression applies to proxied bodies, which Tomcat skips
+ * for responses with a strong ETag.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ActiveProfiles("test")
+class ResponseCompressionTest {
+
+    private static final String BODY = "{\"database-default-list\":{\"list-items\":{\"list-item\":["
+            + "{\"nameref\":\"Documents\"},".repeat(200) + "{\"nameref\":\"Modules\"}]}}}";
+
+    private static MockWebServer upstream;
+
+    @LocalServerPort
+    private int port;
+
+    @TestConfiguration
+    static class UpstreamConfig {
+
+        /**
+         * The controllers always call port 8002, so point them at the mock
+         * server. Runs last, so the cache and metrics still see the original URL.
+         */
+        @Bean
+        @Order(Ordered.LOWEST_PRECEDENCE)
+        Interceptor upstreamPort() {
+            return chain -> chain.proceed(chain.request().newBuilder()
+                    .url(chain.request().url().newBuilder().port(upstream.getPort()).build())
+                    .build());
+        }
+    }
+
+    @BeforeAll
+    static void startUpstream() throws IOException {
+        upstream = new MockWebServer();
+        upstream.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                return new MockResponse().setHeader("Content-Type", "application/json").setBody(BODY);
+            }
+        });
+        upstream.start();
+    }
+
+    @AfterAll
+    static void stopUpstream() throws IOException {
+        upstream.shutdown();
+    }
+
+    @Test
+    void testUncompressedUpstreamBodyIsGzipped() throws IOException {
+        // Arrange
+        OkHttpClient client = new OkHttpClient();
+        Request request = new Request.Builder()
+                .url("http://localhost:" + port + "/manage/v2/databases?format=json")
+                .header("Accept-Encoding", "gzip")
+                .build();
+
+        // Act
+        try (Response response = client.newCall(request).execute()) {
+
+            // Assert
+            assertEquals(200, response.code());
+            assertEquals("gzip", response.header("Content-Encoding"));
+            assertTrue(response.header("ETag").startsWith("W/\""), response.header("ETag"));
+            assertEquals(BODY, Okio.buffer(new GzipSource(response.body().source())).readUtf8());
+        }
+    }
+}
@@ -1,6 +1,5 @@
 package org.billFarber.marklogicadminproxy;
 
-import com.marklogic.client.DatabaseClient;
 import okhttp3.Call;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
@@ -15,16 +14,16 @@ import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import static org.billFarber.marklogicadminproxy.ResponseBodies.bodyAsString;
+import static org.billFarber.marklogicadminproxy.ResponseBodies.source;
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.*;
 
 class RolesControllerTest {
 
-    @Mock
-    private DatabaseClient databaseClient;
-
     @Mock
     private OkHttpClient okHttpClient;
 
@@ -52,20 +51,19 @@ class RolesControllerTest {
         // Setup
         String mockResponseBody = "{\"role-default-list\":{\"list-items\":{\"list-item\":[{\"nameref\":\"admin\",\"idref\":\"123\"}]}}}";
 
-        when(databaseClient.getClientImplementation()).thenReturn(okHttpClient);
         when(okHttpClient.newCall(any(Request.class))).thenReturn(call);
         when(call.execute()).thenReturn(response);
         when(response.isSuccessful()).thenReturn(true);
         when(response.body()).thenReturn(responseBody);
-        when(responseBody.string()).thenReturn(mockResponseBody);
+        when(responseBody.source()).thenReturn(source(mockResponseBody));
 
         // Execute
-        ResponseEntity<String> result = rolesController.getRoles("json");
+        ResponseEntity<StreamingResponseBody> result = rolesController.getRoles("json").join();
 
         // Verify
         assertEquals(HttpStatus.OK, result.getStatusCode());
         assertEquals(MediaType.APPLICATION_JSON, result.getHeaders().getContentType());
-        assertEquals(mockResponseBody, result.getBody());
+        assertEquals(mockResponseBody, bodyAsString(result));
 
         verify(okHttpClient).newCall(any(Request.class));
         verify(call).execute();
@@ -76,20 +74,19 @@ class RolesControllerTest {
         // Setup
         String mockResponseBody = "<role-default-list><list-items><list-item><nameref>admin</nameref><idref>123</idref></list-item></list-items></role-default-list>";
 
-        when(databaseClient.getClientImplementation()).thenReturn(okHttpClient);
         when(okHttpClient.newCall(any(Request.class))).thenReturn(call);
         when(call.execute()).thenReturn(response);
         when(response.isSuccessful()).thenReturn(true);
         when(response.body()).thenReturn(responseBody);
-        when(responseBody.string()).thenReturn(mockResponseBody);
+        when(responseBody.source()).thenReturn(source(mockResponseBody));
 
         // Execute - no format parameter should default to xml
-        ResponseEntity<String> result = rolesController.getRoles(null);
+        ResponseEntity<StreamingResponseBody> result = rolesController.getRoles(null).join();
 
         // Verify
         assertEquals(HttpStatus.OK, result.getStatusCode());
         assertEquals(MediaType.APPLICATION_XML, result.getHeaders().getContentType());
-        assertEquals(mockResponseBody, result.getBody());
+        assertEquals(mockResponseBody, bodyAsString(result));
     }
 
     @Test
@@ -97,20 +94,19 @@ class RolesControllerTest {
         // Setup
         String mockResponseBody = "<role-default-list><list-items><list-item><nameref>admin</nameref><idref>123</idref></list-item></list-items></role-default-list>";
 
-        when(databaseClient.getClientImplementation()).thenReturn(okHttpClient);
         when(okHttpClient.newCall(any(Request.class))).thenReturn(call);
         when(call.execute()).thenReturn(response);
         when(response.isSuccessful()).thenReturn(true);
         when(response.body()).thenReturn(responseBody);
-        when(responseBody.string()).thenReturn(mockResponseBody);
+        when(responseBody.source()).thenReturn(source(mockResponseBody));
 
         // Execute
-        ResponseEntity<String> result = rolesController.getRoles("xml");
+        ResponseEntity<StreamingResponseBody> result = rolesController.getRoles("xml").join();
 
         // Verify
         assertEquals(HttpStatus.OK, result.getStatusCode());
         assertEquals(MediaType.APPLICATION_XML, result.getHeaders().getContentType());
-        assertEquals(mockResponseBody, result.getBody());
+        assertEquals(mockResponseBody, bodyAsString(result));
     }
 
     @Test
@@ -118,62 +114,59 @@ class RolesControllerTest {
         // Setup
         String mockResponseBody = "<html><body><h1>Roles</h1></body></html>";
 
-        when(databaseClient.getClientImplementation()).thenReturn(okHttpClient);
         when(okHttpClient.newCall(any(Request.class))).thenReturn(call);
         when(call.execute()).thenReturn(response);
         when(response.isSuccessful()).thenReturn(true);
         when(response.body()).thenReturn(responseBody);
-        when(responseBody.string()).thenReturn(mockResponseBody);
+        when(responseBody.source()).thenReturn(source(mockResponseBody));
 
         // Execute
-        ResponseEntity<String> result = rolesController.getRoles("html");
+        ResponseEntity<StreamingResponseBody> result = rolesController.getRoles("html").join();
 
         // Verify
         assertEquals(HttpStatus.OK, result.getStatusCode());
         assertEquals(MediaType.TEXT_HTML, result.getHeaders().getContentType());
-        assertEquals(mockResponseBody, result.getBody());
+        assertEquals(mockResponseBody, bodyAsString(result));
     }
 
     @Test
     void testGetRoles_InvalidFormat() {
         // Execute
-        ResponseEntity<String> result = rolesController.getRoles("invalid");
+        ResponseEntity<StreamingResponseBody> result = rolesController.getRoles("invalid").join();
 
         // Verify
         assertEquals(HttpStatus.BAD_REQUEST, result.getStatusCode());
-        assertTrue(result.getBody().contains("Invalid format parameter"));
+        assertTrue(bodyAsString(result).contains("Invalid format parameter"));
     }
 
     @Test
     void testGetRoles_MarkLogicError() throws Exception {
         // Setup
-        when(databaseClient.getClientImplementation()).thenReturn(okHttpClient);
         when(okHttpClient.newCall(any(Request.class))).thenReturn(call);
         when(call.execute()).thenReturn(response);
         when(response.isSuccessful()).thenReturn(false);
         when(response.code()).thenReturn(500);
 
         // Execute
-        ResponseEntity<String> result = rolesController.getRoles("json");
+        ResponseEntity<StreamingResponseBody> result = rolesController.getRoles("json").join();
 
         // Verify
         assertEquals(HttpStatus.INTERNAL_SERVER_ERROR, result.getStatusCode());
-        assertTrue(result.getBody().contains("MarkLogic returned status: 500"));
+        assertTrue(bodyAsString(result).contains("MarkLogic returned status: 500"));
     }
 
     @Test
     void testGetRoles_Exception() throws Exception {
         // Setup
-        when(databaseClient.getClientImplementation()).thenReturn(okHttpClient);
         when(okHttpClient.newCall(any(Request.class))).thenReturn(call);
         when(call.execute()).thenThrow(new RuntimeException("Connection failed"));
 
         // Execute
-        ResponseEntity<String> result = rolesController.getRoles("json");
+        ResponseEntity<StreamingResponseBody> result = rolesController.getRoles("json").join();
 
         // Verify
         assertEquals(HttpStatus.BAD_GATEWAY, result.getStatusCode());
-        assertTrue(result.getBody().contains("Failed to proxy to MarkLogic"));
+        assertTrue(bodyAsString(result).contains("Failed to proxy to MarkLogic"));
     }
 
     @Test
@@ -181,20 +174,19 @@ class RolesControllerTest {
         // Setup
         String mockResponseBody = "{\"role-name\":\"admin\",\"description\":\"Administrator role\",\"permissions\":{\"permission\":[{\"role-name\":\"security\",\"capability\":\"read\"}]}}";
 
-        when(databaseClient.getClientImplementation()).thenReturn(okHttpClient);
         when(okHttpClient.newCall(any(Request.class))).thenReturn(call);
         when(call.execute()).thenReturn(response);
         when(response.isSuccessful()).thenReturn(true);
         when(response.body()).thenReturn(responseBody);
-        when(responseBody.string()).thenReturn(mockResponseBody);
+        when(responseBody.source()).thenReturn(source(mockResponseBody));
 
         // Execute
-        ResponseEntity<String> result = rolesController.getRoleProperties("admin", "json");
+        ResponseEntity<StreamingResponseBody> result = rolesController.getRoleProperties("admin", "json").join();
 
         // Verify
         assertEquals(HttpStatus.OK, result.getStatusCode());
         assertEquals(MediaType.APPLICATION_JSON, result.getHeaders().getContentType());
-        assertEquals(mockResponseBody, result.getBody());
+        assertEquals(mockResponseBody, bodyAsString(result));
 
         verify(okHttpClient).newCall(any(Request.class));
         verify(call).execute();
@@ -205,20 +197,19 @@ class RolesControllerTest {
         // Setup
         String mockResponseBody = "<role-properties><role-name>admin</role-name><description>Administrator role</description></role-properties>";
 
-        when(databaseClient.getClientImplementation()).thenReturn(okHttpClient);
         when(okHttpClient.newCall(any(Request.class))).thenReturn(call);
         when(call.execute()).thenReturn(response);
         when(response.isSuccessful()).thenReturn(true);
         when(response.body()).thenReturn(responseBody);
-        when(responseBody.string()).thenReturn(mockResponseBody);
+        when(responseBody.source()).thenReturn(source(mockResponseBody));
 
         // Execute - no format parameter should default to xml
-        ResponseEntity<String> result = rolesController.getRoleProperties("admin", null);
+        ResponseEntity<StreamingResponseBody> result = rolesController.getRoleProperties("admin", null).join();
 
         // Verify
         assertEquals(HttpStatus.OK, result.getStatusCode());
         assertEquals(MediaType.APPLICATION_XML, result.getHeaders().getContentType());
-        assertEquals(mockResponseBody, result.getBody());
+        assertEquals(mockResponseBody, bodyAsString(result));
     }
 
     @Test
@@ -226,46 +217,44 @@ class RolesControllerTest {
         // Setup
         String mockResponseBody = "<role-properties><role-name>admin</role-name><description>Administrator role</description></role-properties>";
 
-        when(databaseClient.getClientImplementation()).thenReturn(okHttpClient);
         when(okHttpClient.newCall(any(Request.class))).thenReturn(call);
         when(call.execute()).thenReturn(response);
         when(response.isSuccessful()).thenReturn(true);
         when(response.body()).thenReturn(responseBody);
-        when(responseBody.string()).thenReturn(mockResponseBody);
+        when(responseBody.source()).thenReturn(source(mockResponseBody));
 
         // Execute
-        ResponseEntity<String> result = rolesController.getRoleProperties("admin", "xml");
+        ResponseEntity<StreamingResponseBody> result = rolesController.getRoleProperties("admin", "xml").join();
 
         // Verify
         assertEquals(HttpStatus.OK, result.getStatusCode());
         assertEquals(MediaType.APPLICATION_XML, result.getHeaders().getContentType());
-        assertEquals(mockResponseBody, result.getBody());
+        assertEquals(mockResponseBody, bodyAsString(result));
     }
 
     @Test
     void testGetRoleProperties_InvalidFormat() {
         // Execute
-        ResponseEntity<String> result = rolesController.getRoleProperties("admin", "html");
+        ResponseEntity<StreamingResponseBody> result = rolesController.getRoleProperties("admin", "html").join();
 
         // Verify
         assertEquals(HttpStatus.BAD_REQUEST, result.getStatusCode());
-        assertTrue(result.getBody().contains("Invalid format parameter"));
+        assertTrue(bodyAsString(result).contains("Invalid format parameter"));
     }
 
     @Test
     void testGetRoleProperties_InvalidFormat_Random() {
         // Execute
-        ResponseEntity<String> result = rolesController.getRoleProperties("admin", "invalid");
+        ResponseEntity<StreamingResponseBody> result = rolesController.getRoleProperties("admin", "invalid").join();
 
         // Verify
         assertEquals(HttpStatus.BAD_REQUEST, result.getStatusCode());
-        assertTrue(result.getBody().contains("Invalid format parameter"));
+        assertTrue(bodyAsString(result).contains("Invalid format parameter"));
     }
 
     @Test
     void testGetRoleProperties_MarkLogicError() throws Exception {
         // Setup
-        when(databaseClient.getClientImplementation()).thenReturn(okHttpClient);
         when(okHttpClient.newCall(any(Request.class))).thenReturn(call);
         when(call.execute()).thenReturn(response);
         when(response.isSuccessful()).thenReturn(false);
@@ -274,17 +263,16 @@ class RolesControllerTest {
         when(responseBody.string()).thenReturn("{\"error\":\"Role not found\"}");
 
         // Execute
-        ResponseEntity<String> result = rolesController.getRoleProperties("nonexistent", "json");
+        ResponseEntity<StreamingResponseBody> result = rolesController.getRoleProperties("nonexistent", "json").join();
 
         // Verify
         assertEquals(HttpStatus.NOT_FOUND, result.getStatusCode());
-        assertTrue(result.getBody().contains("MarkLogic returned status: 404"));
+        assertTrue(bodyAsString(result).contains("MarkLogic returned status: 404"));
     }
 
     @Test
     void testGetRoleProperties_MarkLogicUnauthorized() throws Exception {
         // Setup
-        when(databaseClient.getClientImplementation()).thenReturn(okHttpClient);
         when(okHttpClient.newCall(any(Request.class))).thenReturn(call);
         when(call.execute()).thenReturn(response);
         when(response.isSuccessful()).thenReturn(false);
@@ -293,42 +281,40 @@ class RolesControllerTest {
         when(responseBody.string()).thenReturn("{\"error\":\"Unauthorized\"}");
 
         // Execute
-        ResponseEntity<String> result = rolesController.getRoleProperties("admin", "json");
+        ResponseEntity<StreamingResponseBody> result = rolesController.getRoleProperties("admin", "json").join();
 
         // Verify
         assertEquals(HttpStatus.UNAUTHORIZED, result.getStatusCode());
-        assertTrue(result.getBody().contains("MarkLogic returned status: 401"));
+        assertTrue(bodyAsString(result).contains("MarkLogic returned status: 401"));
     }
 
     @Test
     void testGetRoleProperties_Exception() throws Exception {
         // Setup
-        when(databaseClient.getClientImplementation()).thenReturn(okHttpClient);
         when(okHttpClient.newCall(any(Request.class))).thenReturn(call);
         when(call.execute()).thenThrow(new RuntimeException("Connection failed"));
 
         // Execute
-        ResponseEntity<String> result = rolesController.getRoleProperties("admin", "json");
+        ResponseEntity<StreamingResponseBody> result = rolesController.getRoleProperties("admin", "json").join();
 
         // Verify
         assertEquals(HttpStatus.BAD_GATEWAY, result.getStatusCode());
-        assertTrue(result.getBody().contains("Failed to proxy to MarkLogic"));
+        assertTrue(bodyAsString(result).contains("Failed to proxy to MarkLogic"));
     }
 
     @Test
     void testGetRoleProperties_NoResponseBody() throws Exception {
         // Setup
-        when(databaseClient.getClientImplementation()).thenReturn(okHttpClient);
         when(okHttpClient.newCall(any(Request.class))).thenReturn(call);
         when(call.execute()).thenReturn(response);
         when(response.body()).thenReturn(null);
 
         // Execute
-        ResponseEntity<String> result = rolesController.getRoleProperties("admin", "json");
+        ResponseEntity<StreamingResponseBody> result = rolesController.getRoleProperties("admin", "json").join();
 
         // Verify
         assertEquals(HttpStatus.BAD_GATEWAY, result.getStatusCode());
-        assertTrue(result.getBody().contains("No response from MarkLogic server"));
+        assertTrue(bodyAsString(result).contains("No response from MarkLogic server"));
     }
 
     @Test
@@ -336,19 +322,18 @@ class RolesControllerTest {
         // Setup
         String mockResponseBody = "{\"role-name\":\"test-role-123\",\"description\":\"Test role with special chars\"}";
 
-        when(databaseClient.getClientImplementation()).thenReturn(okHttpClient);
         when(okHttpClient.newCall(any(Request.class))).thenReturn(call);
         when(call.execute()).thenReturn(response);
         when(response.isSuccessful()).thenReturn(true);
         when(response.body()).thenReturn(responseBody);
-        when(responseBody.string()).thenReturn(mockResponseBody);
+        when(responseBody.source()).thenReturn(source(mockResponseBody));
 
         // Execute with role name containing special characters
-        ResponseEntity<String> result = rolesController.getRoleProperties("test-role-123", "json");
+        ResponseEntity<StreamingResponseBody> result = rolesController.getRoleProperties("test-role-123", "json").join();
 
         // Verify
         assertEquals(HttpStatus.OK, result.getStatusCode());
         assertEquals(MediaType.APPLICATION_JSON, result.getHeaders().getContentType());
-        assertEquals(mockResponseBody, result.getBody());
+        assertEquals(mockResponseBody, bodyAsString(result));
     }
 }
@@ -1,6 +1,5 @@
 package org.billFarber.marklogicadminproxy;
 
-import com.marklogic.client.DatabaseClient;
 import okhttp3.Call;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
@@ -14,16 +13,16 @@ import org.mockito.MockitoAnnotations;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import static org.billFarber.marklogicadminproxy.ResponseBodies.bodyAsString;
+import static org.billFarber.marklogicadminproxy.ResponseBodies.source;
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.*;
 
 class ServersControllerTest {
 
-    @Mock
-    private DatabaseClient databaseClient;
-
     @Mock
     private OkHttpClient okHttpClient;
 
@@ -51,22 +50,20 @@ class ServersControllerTest {
         // Arrange
         String mockJson = "{\"server-default-list\":{\"list-items\":{\"list-item\":[{\"nameref\":\"Admin\",\"kindref\":\"http\"},{\"nameref\":\"App-Services\",\"kindref\":\"http\"}]}}}";
 
-        when(databaseClient.getClientImplementation()).thenReturn(okHttpClient);
         when(okHttpClient.newCall(any(Request.class))).thenReturn(call);
         when(call.execute()).thenReturn(response);
         when(response.isSuccessful()).thenReturn(true);
         when(response.body()).thenReturn(responseBody);
-        when(responseBody.string()).thenReturn(mockJson);
+        when(responseBody.source()).thenReturn(source(mockJson));
 
         // Act
-        ResponseEntity<String> result = serversController.getServers("json", null, null, null);
+        ResponseEntity<StreamingResponseBody> result = serversController.getServers("json", null, null, null).join();
 
         // Assert
         assertEquals(200, result.getStatusCode().value());
         assertEquals(MediaType.APPLICATION_JSON, result.getHeaders().getContentType());
-        assertEquals(mockJson, result.getBody());
+        assertEquals(mockJson, bodyAsString(result));
 
-        verify(databaseClient).getClientImplementation();
         verify(okHttpClient).newCall(any(Request.class));
         verify(call).execute();
     }
@@ -76,20 +73,19 @@ class ServersControllerTest {
         // Arrange
         String mockJson = "{\"server-default-list\":{\"list-items\":{\"list-item\":[{\"nameref\":\"Admin\",\"kindref\":\"http\"}]}}}";
 
-        when(databaseClient.getClientImplementation()).thenReturn(okHttpClient);
         when(okHttpClient.newCall(any(Request.class))).thenReturn(call);
         when(call.execute()).thenReturn(response);
         when(response.isSuccessful()).thenReturn(true);
         when(response.body()).thenReturn(responseBody);
-        when(responseBody.string()).thenReturn(mockJson);
+        when(responseBody.source()).thenReturn(source(mockJson));
 
         // Act
-        ResponseEntity<String> result = serversController.getServers("json", "Default", "status", "true");
+        ResponseEntity<StreamingResponseBody> result = serversController.getServers("json", "Default", "status", "true").join();
 
         // Assert
         assertEquals(200, result.getStatusCode().value());
         assertEquals(MediaType.APPLICATION_JSON, result.getHeaders().getContentType());
-        assertEquals(mockJson, result.getBody());
+        assertEquals(mockJson, bodyAsString(result));
     }
 
     @Test
@@ -97,20 +93,19 @@ class ServersControllerTest {
         // Arrange
         String mockXml = "<server-default-list><list-items><list-item><nameref>Admin</nameref></list-item></list-items></server-default-list>";
 
-        when(databaseClient.getClientImplementation()).thenReturn(okHttpClient);
         when(okHttpClient.newCall(any(Request.class))).thenReturn(call);
         when(call.execute()).thenReturn(response);
         when(response.isSuccessful()).thenReturn(true);
         when(response.body()).thenReturn(responseBody);
-        when(responseBody.string()).thenReturn(mockXml);
+        when(responseBody.source()).thenReturn(source(mockXml));
 
         // Act
-        ResponseEntity<String> result = serversController.getServers("xml", null, null, null);
+        ResponseEntity<StreamingResponseBody> result = serversController.getServers("xml", null, null, null).join();
 
         // Assert
         assertEquals(200, result.getStatusCode().value());
         assertEquals(MediaType.APPLICATION_XML, result.getHeaders().getContentType());
-        assertEquals(mockXml, result.getBody());
+        assertEquals(mockXml, bodyAsString(result));
     }
 
     @Test
@@ -118,50 +113,49 @@ class ServersControllerTest {
         // Arrange
         String mockHtml = "<html><body><h1>Servers</h1></body></html>";
 
-        when(databaseClient.getClientImplementation()).thenReturn(okHttpClient);
         when(okHttpClient.newCall(any(Request.class))).thenReturn(call);
         when(call.execute()).thenReturn(response);
         when(response.isSuccessful()).thenReturn(true);
         when(response.body()).thenReturn(responseBody);
-        when(responseBody.string()).thenReturn(mockHtml);
+        when(responseBody.source()).thenReturn(source(mockHtml));
 
         // Act
-        ResponseEntity<String> result = serversController.getServers("html", null, null, null);
+        ResponseEntity<StreamingResponseBody> result = serversController.getServers("html", null, null, null).join();
 
         // Assert
         assertEquals(200, result.getStatusCode().value());
         assertEquals(MediaType.TEXT_HTML, result.getHeaders().getContentType());
-        assertEquals(mockHtml, result.getBody());
+        assertEquals(mockHtml, bodyAsString(result));
     }
 
     @Test
     void testGetServers_InvalidFormat() {
         // Act
-        ResponseEntity<String> result = serversController.getServers("invalid", null, null, null);
+        ResponseEntity<StreamingResponseBody> result = serversController.getServers("invalid", null, null, null).join();
 
         // Assert
         assertEquals(400, result.getStatusCode().value());
-        assertTrue(result.getBody().contains("Invalid format parameter"));
+        assertTrue(bodyAsString(result).contains("Invalid format parameter"));
     }
 
     @Test
     void testGetServers_InvalidView() {
         // Act
-        ResponseEntity<String> result = serversController.getServers("json", null, "invalid", null);
+        ResponseEntity<StreamingResponseBody> result = serversController.getServers("json", null, "invalid", null).join();
 
         // Assert
         assertEquals(400, result.getStatusCode().value());
-        assertTrue(result.getBody().contains("Invalid view parameter"));
+        assertTrue(bodyAsString(result).contains("Invalid view parameter"));
     }
 
     @Test
     void testGetServers_InvalidFullrefs() {
         // Act
-        ResponseEntity<String> result = serversController.getServers("json", null, null, "invalid");
+        ResponseEntity<StreamingResponseBody> result = serversController.getServers("json", null, null, "invalid").join();
 
         // Assert
         assertEquals(400, result.getStatusCode().value());
-        assertTrue(result.getBody().contains("Invalid fullrefs parameter"));
+        assertTrue(bodyAsString(result).contains("Invalid fullrefs parameter"));
     }
 
     @Test
@@ -171,19 +165,18 @@ class ServersControllerTest {
         String mockJson = "{\"server-default-list\":{\"list-items\":{\"list-item\":[]}}}";
 
         for (String view : validViews) {
-            when(databaseClient.getClientImplementation()).thenReturn(okHttpClient);
             when(okHttpClient.newCall(any(Request.class))).thenReturn(call);
             when(call.execute()).thenReturn(response);
             when(response.isSuccessful()).thenReturn(true);
             when(response.body()).thenReturn(responseBody);
-            when(responseBody.string()).thenReturn(mockJson);
+            when(responseBody.source()).thenReturn(source(mockJson));
 
             // Act
-            ResponseEntity<String> result = serversController.getServers("json", null, view, null);
+            ResponseEntity<StreamingResponseBody> result = serversController.getServers("json", null, view, null).join();
 
             // Assert
             assertEquals(200, result.getStatusCode().value());
-            assertEquals(mockJson, result.getBody());
+            assertEquals(mockJson, bodyAsString(result));
         }
     }
 
@@ -194,53 +187,50 @@ class ServersControllerTest {
         String mockJson = "{\"server-default-list\":{\"list-items\":{\"list-item\":[]}}}";
 
         for (String fullref : validFullrefs) {
-            when(databaseClient.getClientImplementation()).thenReturn(okHttpClient);
             when(okHttpClient.newCall(any(Request.class))).thenReturn(call);
             when(call.execute()).thenReturn(response);
             when(response.isSuccessful()).thenReturn(true);
             when(response.body()).thenReturn(responseBody);
-            when(responseBody.string()).thenReturn(mockJson);
+            when(responseBody.source()).thenReturn(source(mockJson));
 
             // Act
-            ResponseEntity<String> result = serversController.getServers("json", null, null, fullref);
+            ResponseEntity<StreamingResponseBody> result = serversController.getServers("json", null, null, fullref).join();
 
             // Assert
             assertEquals(200, result.getStatusCode().value());
-            assertEquals(mockJson, result.getBody());
+            assertEquals(mockJson, bodyAsString(result));
         }
     }
 
     @Test
     void testGetServers_MarkLogicError() throws Exception {
         // Arrange
-        when(databaseClient.getClientImplementation()).thenReturn(okHttpClient);
         when(okHttpClient.newCall(any(Request.class))).thenReturn(call);
         when(call.execute()).thenReturn(response);
         when(response.isSuccessful()).thenReturn(false);
         when(response.code()).thenReturn(500);
 
         // Act
-        ResponseEntity<String> result = serversController.getServers("json", null, null, null);
+        ResponseEntity<StreamingResponseBody> result = serversController.getServers("json", null, null, null).join();
 
         // Assert
         assertEquals(500, result.getStatusCode().value());
-        assertTrue(result.getBody().contains("MarkLogic returned status: 500"));
+        assertTrue(bodyAsString(result).contains("MarkLogic returned status: 500"));
     }
 
     @Test
     void testGetServers_Exception() throws Exception {
         // Arrange
-        when(databaseClient.getClientImplementation()).thenReturn(okHttpClient);
         when(okHttpClient.newCall(any(Request.class))).thenReturn(call);
         when(call.execute()).thenThrow(new RuntimeException("Connection failed"));
 
         // Act
-        ResponseEntity<String> result = serversController.getServers("json", null, null, null);
+        ResponseEntity<StreamingResponseBody> result = serversController.getServers("json", null, null, null).join();
 
         // Assert
         assertEquals(502, result.getStatusCode().value());
-        assertTrue(result.getBody().contains("Failed to proxy to MarkLogic"));
-        assertTrue(result.getBody().contains("Connection failed"));
+        assertTrue(bodyAsString(result).contains("Failed to proxy to MarkLogic"));
+        assertTrue(bodyAsString(result).contains("Connection failed"));
     }
 
     @Test
@@ -248,18 +238,17 @@ class ServersControllerTest {
         // Arrange - test that empty strings are handled properly
         String mockJson = "{\"server-default-list\":{\"list-items\":{\"list-item\":[]}}}";
 
-        when(databaseClient.getClientImplementation()).thenReturn(okHttpClient);
         when(okHttpClient.newCall(any(Request.class))).thenReturn(call);
         when(call.execute()).thenReturn(response);
         when(response.isSuccessful()).thenReturn(true);
         when(response.body()).thenReturn(responseBody);
-        when(responseBody.string()).thenReturn(mockJson);
+        when(responseBody.source()).thenReturn(source(mockJson));
 
         // Act
-        ResponseEntity<String> result = serversController.getServers("json", "", "", "");
+        ResponseEntity<StreamingResponseBody> result = serversController.getServers("json", "", "", "").join();
 
         // Assert
         assertEquals(200, result.getStatusCode().value());
-        assertEquals(mockJson, result.getBody());
+        assertEquals(mockJson, bodyAsString(result));
     }
 }
@@ -0,0 +1,163 @@
+package org.billFarber.marklogicadminproxy;
+
+import okhttp3.ConnectionPool;
+import okhttp3.HttpUrl;
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledForJreRange;
+import org.junit.jupiter.api.condition.JRE;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Compares how many proxied requests per second the controllers sustain when
+ * MarkLogic is slow, for the three ways the proxy can be run:
+ *
+ * - platform: blocking calls on a 200 thread pool, like the default Tomcat
+ * connector
+ * - platform-async: the same pool with marklogic.management.async-enabled, so
+ * request threads are released while the call is in flight
+ * - virtual: blocking calls with one virtual thread per request, like the
+ * virtual-threads profile (Java 21 only)
+ *
+ * Run with ./gradlew benchmark -PjavaVersion=21. It is excluded from the
+ * normal test task.
+ */
+@Tag("benchmark")
+class ThreadingBenchmarkTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(ThreadingBenchmarkTest.class);
+
+    private static final int TOMCAT_MAX_THREADS = 200;
+    private static final int REQUESTS = 4_000;
+    private static final long UPSTREAM_LATENCY_MS = 50;
+
+    private MockWebServer server;
+    private DatabasesController controller;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = new MockWebServer();
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                return new MockResponse()
+                        .setHeader("Content-Type", "application/json")
+                        .setBody("{\"database-default-list\":{\"list-items\":{\"list-count\":{\"value\":12}}}}")
+                        .setHeadersDelay(UPSTREAM_LATENCY_MS, TimeUnit.MILLISECONDS);
+            }
+        });
+        server.start();
+
+        // The controllers always call port 8002, so point them at the mock server
+        HttpUrl target = server.url("/");
+        OkHttpClient client = new OkHttpClient.Builder()
+                .connectionPool(new ConnectionPool(REQUESTS, 1, TimeUnit.MINUTES))
+                .addInterceptor(chain -> chain.proceed(chain.request().newBuilder()
+                        .url(chain.request().url().newBuilder().port(target.port()).build())
+                        .build()))
+                .build();
+        client.dispatcher().setMaxRequests(REQUESTS);
+        client.dispatcher().setMaxRequestsPerHost(REQUESTS);
+
+        controller = new DatabasesController();
+        ReflectionTestUtils.setField(controller, "managementHttpClient", client);
+        ReflectionTestUtils.setField(controller, "marklogicHost", target.host());
+        ReflectionTestUtils.setField(controller, "marklogicSchema", "http");
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        server.shutdown();
+    }
+
+    @Test
+    void platformThreads() throws Exception {
+        ExecutorService tomcat = Executors.newFixedThreadPool(TOMCAT_MAX_THREADS);
+        try {
+            run("platform", request -> CompletableFuture.runAsync(request, tomcat));
+        } finally {
+            tomcat.shutdownNow();
+        }
+    }
+
+    @Test
+    void platformThreadsWithAsyncCalls() throws Exception {
+        ReflectionTestUtils.setField(controller, "asyncEnabled", true);
+        ExecutorService tomcat = Executors.newFixedThreadPool(TOMCAT_MAX_THREADS);
+        try {
+            // The request thread only starts the call; the body is written when
+            // the future completes, as Spring MVC does for async handlers
+            run("platform-async", request -> CompletableFuture
+                    .supplyAsync(() -> controller.getDatabases("json", null), tomcat)
+                    .thenCompose(Function.identity())
+                    .thenAccept(ThreadingBenchmarkTest::writeBody));
+        } finally {
+            tomcat.shutdownNow();
+        }
+    }
+
+    @Test
+    @EnabledForJreRange(min = JRE.JAVA_21)
+    void virtualThreads() throws Exception {
+        SimpleAsyncTaskExecutor perRequest = new SimpleAsyncTaskExecutor("benchmark-");
+        perRequest.setVirtualThreads(true);
+        run("virtual", request -> CompletableFuture.runAsync(request, perRequest));
+    }
+
+    private void run(String mode, Function<Runnable, CompletableFuture<Void>> submit) throws Exception {
+        Runnable blockingRequest = () -> writeBody(controller.getDatabases("json", null).join());
+
+        // Warm up connections and JIT before timing
+        submitAll(submit, blockingRequest, TOMCAT_MAX_THREADS);
+
+        long start = System.nanoTime();
+        submitAll(submit, blockingRequest, REQUESTS);
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        logger.info("{}: {} requests in {} ms = {} req/s (upstream latency {} ms)",
+                mode, REQUESTS, elapsedMs, Math.round(REQUESTS * 1000.0 / elapsedMs), UPSTREAM_LATENCY_MS);
+        assertTrue(elapsedMs >= UPSTREAM_LATENCY_MS);
+    }
+
+    private static void submitAll(Function<Runnable, CompletableFuture<Void>> submit, Runnable request,
+            int count) {
+        List<CompletableFuture<Void>> futures = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            futures.add(submit.apply(request));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).join();
+    }
+
+    private static void writeBody(ResponseEntity<StreamingResponseBody> response) {
+        assertEquals(200, response.getStatusCode().value());
+        try {
+            response.getBody().writeTo(OutputStream.nullOutputStream());
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
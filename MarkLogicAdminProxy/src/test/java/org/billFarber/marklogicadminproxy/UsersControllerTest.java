@@ -1,6 +1,5 @@
 package org.billFarber.marklogicadminproxy;
 
-import com.marklogic.client.DatabaseClient;
 import okhttp3.Call;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
@@ -15,16 +14,16 @@ import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import static org.billFarber.marklogicadminproxy.ResponseBodies.bodyAsString;
+import static org.billFarber.marklogicadminproxy.ResponseBodies.source;
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.*;
 
 class UsersControllerTest {
 
-    @Mock
-    private DatabaseClient databaseClient;
-
     @Mock
     private OkHttpClient okHttpClient;
 
@@ -52,20 +51,19 @@ class UsersControllerTest {
         // Setup
         String mockResponseBody = "{\"user-default-list\":{\"list-items\":{\"list-item\":[{\"nameref\":\"admin\",\"idref\":\"123\"}]}}}";
 
-        when(databaseClient.getClientImplementation()).thenReturn(okHttpClient);
         when(okHttpClient.newCall(any(Request.class))).thenReturn(call);
         when(call.execute()).thenReturn(response);
         when(response.isSuccessful()).thenReturn(true);
         when(response.body()).thenReturn(responseBody);
-        when(responseBody.string()).thenReturn(mockResponseBody);
+        when(responseBody.source()).thenReturn(source(mockResponseBody));
 
         // Execute
-        ResponseEntity<String> result = usersController.getUsers("json");
+        ResponseEntity<StreamingResponseBody> result = usersController.getUsers("json").join();
 
         // Verify
         assertEquals(HttpStatus.OK, result.getStatusCode());
         assertEquals(MediaType.APPLICATION_JSON, result.getHeaders().getContentType());
-        assertEquals(mockResponseBody, result.getBody());
+        assertEquals(mockResponseBody, bodyAsString(result));
 
         verify(okHttpClient).newCall(any(Request.class));
         verify(call).execute();
@@ -76,20 +74,19 @@ class UsersControllerTest {
         // Setup
         String mockResponseBody = "{\"user-default-list\":{\"list-items\":{\"list-item\":[{\"nameref\":\"admin\",\"idref\":\"123\"}]}}}";
 
-        when(databaseClient.getClientImplementation()).thenReturn(okHttpClient);
         when(okHttpClient.newCall(any(Request.class))).thenReturn(call);
         when(call.execute()).thenReturn(response);
         when(response.isSuccessful()).thenReturn(true);
         when(response.body()).thenReturn(responseBody);
-        when(responseBody.string()).thenReturn(mockResponseBody);
+        when(responseBody.source()).thenReturn(source(mockResponseBody));
 
         // Execute - no format parameter should default to json
-        ResponseEntity<String> result = usersController.getUsers(null);
+        ResponseEntity<StreamingResponseBody> result = usersController.getUsers(null).join();
 
         // Verify
         assertEquals(HttpStatus.OK, result.getStatusCode());
         assertEquals(MediaType.APPLICATION_JSON, result.getHeaders().getContentType());
-        assertEquals(mockResponseBody, result.getBody());
+        assertEquals(mockResponseBody, bodyAsString(result));
     }
 
     @Test
@@ -97,20 +94,19 @@ class UsersControllerTest {
         // Setup
         String mockResponseBody = "<user-default-list><list-items><list-item><nameref>admin</nameref><idref>123</idref></list-item></list-items></user-default-list>";
 
-        when(databaseClient.getClientImplementation()).thenReturn(okHttpClient);
         when(okHttpClient.newCall(any(Request.class))).thenReturn(call);
         when(call.execute()).thenReturn(response);
         when(response.isSuccessful()).thenReturn(true);
         when(response.body()).thenReturn(responseBody);
-        when(responseBody.string()).thenReturn(mockResponseBody);
+        when(responseBody.source()).thenReturn(source(mockResponseBody));
 
         // Execute
-        ResponseEntity<String> result = usersController.getUsers("xml");
+        ResponseEntity<StreamingResponseBody> result = usersController.getUsers("xml").join();
 
         // Verify
         assertEquals(HttpStatus.OK, result.getStatusCode());
         assertEquals(MediaType.APPLICATION_XML, result.getHeaders().getContentType());
-        assertEquals(mockResponseBody, result.getBody());
+        assertEquals(mockResponseBody, bodyAsString(result));
     }
 
     @Test
@@ -118,62 +114,59 @@ class UsersControllerTest {
         // Setup
         String mockResponseBody = "<html><body><h1>Users</h1></body></html>";
 
-        when(databaseClient.getClientImplementation()).thenReturn(okHttpClient);
         when(okHttpClient.newCall(any(Request.class))).thenReturn(call);
         when(call.execute()).thenReturn(response);
         when(response.isSuccessful()).thenReturn(true);
         when(response.body()).thenReturn(responseBody);
-        when(responseBody.string()).thenReturn(mockResponseBody);
+        when(responseBody.source()).thenReturn(source(mockResponseBody));
 
         // Execute
-        ResponseEntity<String> result = usersController.getUsers("html");
+        ResponseEntity<StreamingResponseBody> result = usersController.getUsers("html").join();
 
         // Verify
         assertEquals(HttpStatus.OK, result.getStatusCode());
         assertEquals(MediaType.TEXT_HTML, result.getHeaders().getContentType());
-        assertEquals(mockResponseBody, result.getBody());
+        assertEquals(mockResponseBody, bodyAsString(result));
     }
 
     @Test
     void testGetUsers_InvalidFormat() {
         // Execute
-        ResponseEntity<String> result = usersController.getUsers("invalid");
+        ResponseEntity<StreamingResponseBody> result = usersController.getUsers("invalid").join();
 
         // Verify
         assertEquals(HttpStatus.BAD_REQUEST, result.getStatusCode());
-        assertTrue(result.getBody().contains("Invalid format parameter"));
+        assertTrue(bodyAsString(result).contains("Invalid format parameter"));
     }
 
     @Test
     void testGetUsers_MarkLogicError() throws Exception {
         // Setup
-        when(databaseClient.getClientImplementation()).thenReturn(okHttpClient);
         when(okHttpClient.newCall(any(Request.class))).thenReturn(call);
         when(call.execute()).thenReturn(response);
         when(response.isSuccessful()).thenReturn(false);
         when(response.code()).thenReturn(500);
 
         // Execute
-        ResponseEntity<String> result = usersController.getUsers("json");
+        ResponseEntity<StreamingResponseBody> result = usersController.getUsers("json").join();
 
         // Verify
         assertEquals(HttpStatus.INTERNAL_SERVER_ERROR, result.getStatusCode());
-        assertTrue(result.getBody().contains("MarkLogic returned status: 500"));
+        assertTrue(bodyAsString(result).contains("MarkLogic returned status: 500"));
     }
 
     @Test
     void testGetUsers_Exception() throws Exception {
         // Setup
-        when(databaseClient.getClientImplementation()).thenReturn(okHttpClient);
         when(okHttpClient.newCall(any(Request.class))).thenReturn(call);
         when(call.execute()).thenThrow(new RuntimeException("Connection failed"));
 
         // Execute
-        ResponseEntity<String> result = usersController.getUsers("json");
+        ResponseEntity<StreamingResponseBody> result = usersController.getUsers("json").join();
 
         // Verify
         assertEquals(HttpStatus.BAD_GATEWAY, result.getStatusCode());
-        assertTrue(result.getBody().contains("Failed to proxy to MarkLogic"));
+        assertTrue(bodyAsString(result).contains("Failed to proxy to MarkLogic"));
     }
 
     @Test
@@ -181,18 +174,17 @@ class UsersControllerTest {
         // Setup
         String mockResponseBody = "{\"user-name\":\"admin\",\"description\":\"Administrator\",\"roles\":{\"role\":[\"admin\"]}}";
 
-        when(databaseClient.getClientImplementation()).thenReturn(okHttpClient);
         when(okHttpClient.newCall(any(Request.class))).thenReturn(call);
         when(call.execute()).thenReturn(response);
         when(response.isSuccessful()).thenReturn(true);
         when(response.body()).thenReturn(responseBody);
-        when(responseBody.string()).thenReturn(mockResponseBody); // Execute
-        ResponseEntity<String> result = usersController.getUserProperties("admin", "json");
+        when(responseBody.source()).thenReturn(source(mockResponseBody)); // Execute
+        ResponseEntity<StreamingResponseBody> result = usersController.getUserProperties("admin", "json").join();
 
         // Verify
         assertEquals(HttpStatus.OK, result.getStatusCode());
         assertEquals(MediaType.APPLICATION_JSON, result.getHeaders().getContentType());
-        assertEquals(mockResponseBody, result.getBody());
+        assertEquals(mockResponseBody, bodyAsString(result));
 
         verify(okHttpClient).newCall(any(Request.class));
         verify(call).execute();
@@ -203,20 +195,19 @@ class UsersControllerTest {
         // Setup
         String mockResponseBody = "<user-properties><user-name>admin</user-name><description>Administrator</description></user-properties>";
 
-        when(databaseClient.getClientImplementation()).thenReturn(okHttpClient);
         when(okHttpClient.newCall(any(Request.class))).thenReturn(call);
         when(call.execute()).thenReturn(response);
         when(response.isSuccessful()).thenReturn(true);
         when(response.body()).thenReturn(responseBody);
-        when(responseBody.string()).thenReturn(mockResponseBody);
+        when(responseBody.source()).thenReturn(source(mockResponseBody));
 
         // Execute - no format parameter should default to xml
-        ResponseEntity<String> result = usersController.getUserProperties("admin", null);
+        ResponseEntity<StreamingResponseBody> result = usersController.getUserProperties("admin", null).join();
 
         // Verify
         assertEquals(HttpStatus.OK, result.getStatusCode());
         assertEquals(MediaType.APPLICATION_XML, result.getHeaders().getContentType());
-        assertEquals(mockResponseBody, result.getBody());
+        assertEquals(mockResponseBody, bodyAsString(result));
     }
 
     @Test
@@ -224,36 +215,34 @@ class UsersControllerTest {
         // Setup
         String mockResponseBody = "<user-properties><user-name>admin</user-name><description>Administrator</description></user-properties>";
 
-        when(databaseClient.getClientImplementation()).thenReturn(okHttpClient);
         when(okHttpClient.newCall(any(Request.class))).thenReturn(call);
         when(call.execute()).thenReturn(response);
         when(response.isSuccessful()).thenReturn(true);
         when(response.body()).thenReturn(responseBody);
-        when(responseBody.string()).thenReturn(mockResponseBody);
+        when(responseBody.source()).thenReturn(source(mockResponseBody));
 
         // Execute
-        ResponseEntity<String> result = usersController.getUserProperties("admin", "xml");
+        ResponseEntity<StreamingResponseBody> result = usersController.getUserProperties("admin", "xml").join();
 
         // Verify
         assertEquals(HttpStatus.OK, result.getStatusCode());
         assertEquals(MediaType.APPLICATION_XML, result.getHeaders().getContentType());
-        assertEquals(mockResponseBody, result.getBody());
+        assertEquals(mockResponseBody, bodyAsString(result));
     }
 
     @Test
     void testGetUserProperties_InvalidFormat() {
         // Execute - user properties doesn't support html format
-        ResponseEntity<String> result = usersController.getUserProperties("admin", "html");
+        ResponseEntity<StreamingResponseBody> result = usersController.getUserProperties("admin", "html").join();
 
         // Verify
         assertEquals(HttpStatus.BAD_REQUEST, result.getStatusCode());
-        assertTrue(result.getBody().contains("Invalid format parameter"));
+        assertTrue(bodyAsString(result).contains("Invalid format parameter"));
     }
 
     @Test
     void testGetUserProperties_UserNotFound() throws Exception {
         // Setup
-        when(databaseClient.getClientImplementation()).thenReturn(okHttpClient);
         when(okHttpClient.newCall(any(Request.class))).thenReturn(call);
         when(call.execute()).thenReturn(response);
         when(response.isSuccessful()).thenReturn(false);
@@ -262,17 +251,16 @@ class UsersControllerTest {
         when(responseBody.string()).thenReturn("{\"error\":\"User not found\"}");
 
         // Execute
-        ResponseEntity<String> result = usersController.getUserProperties("nonexistent", "json");
+        ResponseEntity<StreamingResponseBody> result = usersController.getUserProperties("nonexistent", "json").join();
 
         // Verify
         assertEquals(HttpStatus.NOT_FOUND, result.getStatusCode());
-        assertTrue(result.getBody().contains("MarkLogic returned status: 404"));
+        assertTrue(bodyAsString(result).contains("MarkLogic returned status: 404"));
     }
 
     @Test
     void testGetUserProperties_MarkLogicError() throws Exception {
         // Setup
-        when(databaseClient.getClientImplementation()).thenReturn(okHttpClient);
         when(okHttpClient.newCall(any(Request.class))).thenReturn(call);
         when(call.execute()).thenReturn(response);
         when(response.isSuccessful()).thenReturn(false);
@@ -281,41 +269,39 @@ class UsersControllerTest {
         when(responseBody.string()).thenReturn("{\"error\":\"Internal server error\"}");
 
         // Execute
-        ResponseEntity<String> result = usersController.getUserProperties("admin", "json");
+        ResponseEntity<StreamingResponseBody> result = usersController.getUserProperties("admin", "json").join();
 
         // Verify
         assertEquals(HttpStatus.INTERNAL_SERVER_ERROR, result.getStatusCode());
-        assertTrue(result.getBody().contains("MarkLogic returned status: 500"));
+        assertTrue(bodyAsString(result).contains("MarkLogic returned status: 500"));
     }
 
     @Test
     void testGetUserProperties_Exception() throws Exception {
         // Setup
-        when(databaseClient.getClientImplementation()).thenReturn(okHttpClient);
         when(okHttpClient.newCall(any(Request.class))).thenReturn(call);
         when(call.execute()).thenThrow(new RuntimeException("Connection failed"));
 
         // Execute
-        ResponseEntity<String> result = usersController.getUserProperties("admin", "json");
+        ResponseEntity<StreamingResponseBody> result = usersController.getUserProperties("admin", "json").join();
 
         // Verify
         assertEquals(HttpStatus.BAD_GATEWAY, result.getStatusCode());
-        assertTrue(result.getBody().contains("Failed to proxy to MarkLogic"));
+        assertTrue(bodyAsString(result).contains("Failed to proxy to MarkLogic"));
     }
 
     @Test
     void testGetUserProperties_NoResponseBody() throws Exception {
         // Setup
-        when(databaseClient.getClientImplementation()).thenReturn(okHttpClient);
         when(okHttpClient.newCall(any(Request.class))).thenReturn(call);
         when(call.execute()).thenReturn(response);
         when(response.body()).thenReturn(null);
 
         // Execute
-        ResponseEntity<String> result = usersController.getUserProperties("admin", "json");
+        ResponseEntity<StreamingResponseBody> result = usersController.getUserProperties("admin", "json").join();
 
         // Verify
         assertEquals(HttpStatus.BAD_GATEWAY, result.getStatusCode());
-        assertTrue(result.getBody().contains("No response from MarkLogic server"));
+        assertTrue(bodyAsString(result).contains("No response from MarkLogic server"));
     }
 }
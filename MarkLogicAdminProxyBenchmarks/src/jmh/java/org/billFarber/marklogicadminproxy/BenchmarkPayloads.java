@@ -0,0 +1,29 @@
+package org.billFarber.marklogicadminproxy;
+
+/**
+ * Management API shaped bodies of a given size for the benchmarks.
+ */
+
+final class BenchmarkPayloads {
+
+    private BenchmarkPayloads() {
+    }
+
+    /**
+     * @return a forest-default-list style JSON document of about size bytes
+     */
+    static String json(int size) {
+        StringBuilder body = new StringBuilder(size + 128)
+                .append("{\"forest-default-list\":{\"list-items\":{\"list-item\":[");
+        for (int i = 0; body.length() < size; i++) {
+            if (i > 0) {
+                body.append(',');
+            }
+            body.append("{\"idref\":\"").append(1_000_000 + i)
+                    .append("\",\"nameref\":\"forest-").append(i)
+                    .append("\",\"uriref\":\"/manage/v2/forests/forest-").append(i)
+                    .append("\",\"kindref\":\"forest\"}");
+        }
+        return body.append("]}}}").toString();
+    }
+}
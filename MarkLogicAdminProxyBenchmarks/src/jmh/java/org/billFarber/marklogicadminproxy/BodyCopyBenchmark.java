@@ -0,0 +1,123 @@
+package org.billFarber.marklogicadminproxy;
+
+/**
+ * Cost of copying an upstream body to the client for a range of body sizes.
+ *
+ *   string              read the body into a String and write its bytes, as the
+ *                       controllers originally did
+ *   byteStreamTransfer  InputStream.transferTo, one byte[] per copy
+ *   okioReadAll         Okio readAll into the output stream, moving pooled
+ *                       segments
+ *   proxyResponses      ProxyResponses.stream as the controllers use it now,
+ *                       including the ETag hash for bodies up to 1 MB
+ *
+ * Every variant pays the same cost to build the upstream body, so differences
+ * are down to the copy.
+ */
+
+import okhttp3.MediaType;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import okio.Okio;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class BodyCopyBenchmark {
+
+    private static final MediaType JSON = MediaType.get("application/json");
+    private static final Request REQUEST = new Request.Builder()
+            .url("http://localhost:8002/manage/v2/forests?format=json&view=storage")
+            .build();
+
+    @Param({ "1024", "65536", "1048576", "8388608" })
+    public int size;
+
+    private byte[] payload;
+
+    @Setup
+    public void setUp() {
+        payload = BenchmarkPayloads.json(size).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public void string(Blackhole blackhole) throws IOException {
+        try (Response response = upstream()) {
+            String body = response.body().string();
+            new BlackholeOutputStream(blackhole).write(body.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    @Benchmark
+    public void byteStreamTransfer(Blackhole blackhole) throws IOException {
+        try (Response response = upstream()) {
+            response.body().byteStream().transferTo(new BlackholeOutputStream(blackhole));
+        }
+    }
+
+    @Benchmark
+    public void okioReadAll(Blackhole blackhole) throws IOException {
+        try (Response response = upstream()) {
+            response.body().source().readAll(Okio.sink(new BlackholeOutputStream(blackhole)));
+        }
+    }
+
+    @Benchmark
+    public void proxyResponses(Blackhole blackhole) throws IOException {
+        ResponseEntity<StreamingResponseBody> entity = ProxyResponses.stream(ResponseEntity.ok(), upstream());
+        entity.getBody().writeTo(new BlackholeOutputStream(blackhole));
+        blackhole.consume(entity.getHeaders());
+    }
+
+    private Response upstream() {
+        Buffer body = new Buffer().write(payload);
+        return new Response.Builder()
+                .request(REQUEST)
+                .protocol(Protocol.HTTP_1_1)
+                .code(200)
+                .message("OK")
+                .body(ResponseBody.create(body, JSON, payload.length))
+                .build();
+    }
+
+    /**
+     * Sink for the copied bytes that the JIT cannot optimize away.
+     */
+    static final class BlackholeOutputStream extends OutputStream {
+        private final Blackhole blackhole;
+
+        BlackholeOutputStream(Blackhole blackhole) {
+            this.blackhole = blackhole;
+        }
+
+        @Override
+        public void write(int b) {
+            blackhole.consume(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            blackhole.consume(b);
+            blackhole.consume(len);
+        }
+    }
+}
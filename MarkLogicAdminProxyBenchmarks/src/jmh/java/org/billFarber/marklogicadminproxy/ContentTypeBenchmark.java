@@ -0,0 +1,55 @@
+package org.billFarber.marklogicadminproxy;
+
+/**
+ * Cost of choosing the Accept header and response content type from the
+ * format parameter, and of building the ResponseEntity headers with it.
+ *
+ *   constants     the controllers' format.equals("json") ? APPLICATION_JSON :
+ *                 APPLICATION_XML
+ *   parse         MediaType.parseMediaType for the same value
+ *   responseEntity  constants plus ResponseEntity.ok().contentType(...).body(...)
+ */
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ContentTypeBenchmark {
+
+    private static final StreamingResponseBody BODY = ProxyResponses.text("{}");
+
+    @Param({ "json", "xml" })
+    public String format;
+
+    @Benchmark
+    public void constants(Blackhole blackhole) {
+        blackhole.consume(format.equals("json") ? "application/json" : "application/xml");
+        blackhole.consume(format.equals("json") ? MediaType.APPLICATION_JSON : MediaType.APPLICATION_XML);
+    }
+
+    @Benchmark
+    public void parse(Blackhole blackhole) {
+        String accept = "application/" + format;
+        blackhole.consume(accept);
+        blackhole.consume(MediaType.parseMediaType(accept));
+    }
+
+    @Benchmark
+    public ResponseEntity<StreamingResponseBody> responseEntity() {
+        MediaType contentType = format.equals("json") ? MediaType.APPLICATION_JSON : MediaType.APPLICATION_XML;
+        return ResponseEntity.ok().contentType(contentType).body(BODY);
+    }
+}
@@ -0,0 +1,92 @@
+package org.billFarber.marklogicadminproxy;
+
+/**
+ * Interceptor chain that answers every request with the same body without any
+ * I/O, so a benchmark measures only the interceptor in front of it.
+ */
+
+import okhttp3.Call;
+import okhttp3.Connection;
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+
+import java.util.concurrent.TimeUnit;
+
+final class FixedResponseChain implements Interceptor.Chain {
+
+    private final Request request;
+    private final byte[] body;
+    private final String contentEncoding;
+
+    FixedResponseChain(Request request, byte[] body, String contentEncoding) {
+        this.request = request;
+        this.body = body;
+        this.contentEncoding = contentEncoding;
+    }
+
+    @Override
+    public Request request() {
+        return request;
+    }
+
+    @Override
+    public Response proceed(Request request) {
+        Response.Builder response = new Response.Builder()
+                .request(request)
+                .protocol(Protocol.HTTP_1_1)
+                .code(200)
+                .message("OK")
+                .header("Content-Type", "application/json")
+                .body(ResponseBody.create(new Buffer().write(body), MediaType.get("application/json"),
+                        body.length));
+        if (contentEncoding != null) {
+            response.header("Content-Encoding", contentEncoding);
+        }
+        return response.build();
+    }
+
+    @Override
+    public Connection connection() {
+        return null;
+    }
+
+    @Override
+    public Call call() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public int connectTimeoutMillis() {
+        return 0;
+    }
+
+    @Override
+    public Interceptor.Chain withConnectTimeout(int timeout, TimeUnit unit) {
+        return this;
+    }
+
+    @Override
+    public int readTimeoutMillis() {
+        return 0;
+    }
+
+    @Override
+    public Interceptor.Chain withReadTimeout(int timeout, TimeUnit unit) {
+        return this;
+    }
+
+    @Override
+    public int writeTimeoutMillis() {
+        return 0;
+    }
+
+    @Override
+    public Interceptor.Chain withWriteTimeout(int timeout, TimeUnit unit) {
+        return this;
+    }
+}
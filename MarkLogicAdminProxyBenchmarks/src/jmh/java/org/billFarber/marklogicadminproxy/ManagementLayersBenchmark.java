@@ -0,0 +1,148 @@
+package org.billFarber.marklogicadminproxy;
+
+/**
+ * Per-request CPU cost of the layers between the controllers and MarkLogic,
+ * with the network replaced by FixedResponseChain.
+ *
+ *   requestKey          ManagementRequestKey.of, paid by the cache and coalescer
+ *   cacheHit            ManagementResponseCache answering from memory
+ *   cacheMiss           ManagementResponseCache buffering and storing a response
+ *                       that expires at once, so every call is a miss
+ *   coalescerAlone      ManagementRequestCoalescer with no concurrent duplicate
+ *   etag                the SHA-256 ETag ProxyResponses computes
+ *   gzipInflate         reading a gzip body through GzipResponseBody
+ *   gzipPassThrough     reading the same body's compressed bytes as they are
+ *   acceptsGzip         parsing a browser's Accept-Encoding header
+ */
+
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import okio.Buffer;
+import okio.GzipSink;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ManagementLayersBenchmark {
+
+    private static final Request REQUEST = new Request.Builder()
+            .url("http://marklogic.example.com:8002/manage/v2/forests?view=status&format=json&database-id=Documents")
+            .header("Accept", "application/json")
+            .build();
+
+    @Param({ "4096", "262144" })
+    public int size;
+
+    private byte[] payload;
+    private byte[] compressed;
+
+    private ManagementResponseCache cache;
+    private ManagementResponseCache uncachedCache;
+    private ManagementRequestCoalescer coalescer;
+    private FixedResponseChain chain;
+    private FixedResponseChain gzipChain;
+
+    @Setup
+    public void setUp() throws IOException {
+        payload = BenchmarkPayloads.json(size).getBytes(StandardCharsets.UTF_8);
+        Buffer gzip = new Buffer();
+        try (GzipSink sink = new GzipSink(gzip)) {
+            sink.write(new Buffer().write(payload), payload.length);
+        }
+        compressed = gzip.readByteArray();
+
+        ManagementProperties.Cache cached = new ManagementProperties.Cache();
+        cached.setStatusTtl(Duration.ofHours(1));
+        cache = new ManagementResponseCache(cached);
+
+        // Entries expire as soon as they are stored, so every call misses
+        ManagementProperties.Cache expiring = new ManagementProperties.Cache();
+        expiring.getEndpointTtls().put("forests", Duration.ofNanos(1));
+        uncachedCache = new ManagementResponseCache(expiring);
+
+        coalescer = new ManagementRequestCoalescer(new ManagementProperties.Coalescing());
+        chain = new FixedResponseChain(REQUEST, payload, null);
+        gzipChain = new FixedResponseChain(REQUEST, compressed, "gzip");
+
+        // Warm the cache for cacheHit
+        cache.intercept(chain).close();
+    }
+
+    @Benchmark
+    public String requestKey() {
+        return ManagementRequestKey.of(REQUEST);
+    }
+
+    @Benchmark
+    public void cacheHit(Blackhole blackhole) throws IOException {
+        try (Response response = cache.intercept(chain)) {
+            blackhole.consume(response.body().source().readByteString());
+        }
+    }
+
+    @Benchmark
+    public void cacheMiss(Blackhole blackhole) throws IOException {
+        try (Response response = uncachedCache.intercept(chain)) {
+            blackhole.consume(response.body().source().readByteString());
+        }
+    }
+
+    @Benchmark
+    public void coalescerAlone(Blackhole blackhole) throws IOException {
+        try (Response response = coalescer.intercept(chain)) {
+            blackhole.consume(response.body().source().readByteString());
+        }
+    }
+
+    @Benchmark
+    public String etag() throws IOException {
+        try (Response response = chain.proceed(REQUEST)) {
+            return ProxyResponses.etag(response);
+        }
+    }
+
+    @Benchmark
+    public void gzipInflate(Blackhole blackhole) throws IOException {
+        try (Response response = gzipResponse()) {
+            blackhole.consume(response.body().source().readByteString());
+        }
+    }
+
+    @Benchmark
+    public void gzipPassThrough(Blackhole blackhole) throws IOException {
+        try (Response response = gzipResponse()) {
+            blackhole.consume(((GzipResponseBody) response.body()).compressedSource().readByteString());
+        }
+    }
+
+    @Benchmark
+    public boolean acceptsGzip() {
+        return ProxyResponses.acceptsGzip("gzip, deflate, br, zstd");
+    }
+
+    private Response gzipResponse() throws IOException {
+        Response upstream = gzipChain.proceed(REQUEST);
+        return new Response.Builder()
+                .request(REQUEST)
+                .protocol(Protocol.HTTP_1_1)
+                .code(200)
+                .message("OK")
+                .body(new GzipResponseBody(upstream.body()))
+                .build();
+    }
+}
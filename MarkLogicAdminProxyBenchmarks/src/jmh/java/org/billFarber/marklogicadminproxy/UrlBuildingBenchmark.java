@@ -0,0 +1,60 @@
+package org.billFarber.marklogicadminproxy;
+
+/**
+ * Cost of building the upstream Management API request.
+ *
+ * The controllers parse the scheme, host and port again on every request
+ * (HttpUrl.parse(...).newBuilder()). parsePerRequest measures that;
+ * prebuiltBase starts from an HttpUrl parsed once, for comparison.
+ */
+
+import okhttp3.HttpUrl;
+import okhttp3.Request;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class UrlBuildingBenchmark {
+
+    private final String marklogicSchema = "http";
+    private final String marklogicHost = "marklogic.example.com";
+    private final String idOrName = "Documents";
+    private final HttpUrl managementBase = HttpUrl.get("http://marklogic.example.com:8002/manage/v2");
+
+    @Benchmark
+    public HttpUrl parsePerRequest() {
+        HttpUrl.Builder urlBuilder = HttpUrl
+                .parse(marklogicSchema + "://" + marklogicHost + ":8002/manage/v2/databases/" + idOrName
+                        + "/properties")
+                .newBuilder();
+        urlBuilder.addQueryParameter("format", "json");
+        return urlBuilder.build();
+    }
+
+    @Benchmark
+    public HttpUrl prebuiltBase() {
+        return managementBase.newBuilder()
+                .addPathSegment("databases")
+                .addPathSegment(idOrName)
+                .addPathSegment("properties")
+                .addQueryParameter("format", "json")
+                .build();
+    }
+
+    @Benchmark
+    public Request parsePerRequestWithRequest() {
+        return new Request.Builder()
+                .url(parsePerRequest())
+                .get()
+                .addHeader("Accept", "application/json")
+                .build();
+    }
+}
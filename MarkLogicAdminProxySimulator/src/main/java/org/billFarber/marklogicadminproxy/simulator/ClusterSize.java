@@ -0,0 +1,98 @@
+package org.billFarber.marklogicadminproxy.simulator;
+
+/**
+ * How many of each resource the simulated cluster has. Defaults match a small
+ * single-group development cluster.
+ */
+
+public class ClusterSize {
+
+    private int hosts = 3;
+
+    private int groups = 1;
+
+    private int databases = 10;
+
+    /**
+     * Forests are spread round-robin over the databases and hosts.
+     */
+    private int forests = 12;
+
+    /**
+     * App servers are spread round-robin over the groups.
+     */
+    private int servers = 8;
+
+    private int users = 10;
+
+    private int roles = 60;
+
+    /**
+     * Lines in each simulated log file.
+     */
+    private int logLines = 2_000;
+
+    public int getHosts() {
+        return hosts;
+    }
+
+    public void setHosts(int hosts) {
+        this.hosts = hosts;
+    }
+
+    public int getGroups() {
+        return groups;
+    }
+
+    public void setGroups(int groups) {
+        this.groups = groups;
+    }
+
+    public int getDatabases() {
+        return databases;
+    }
+
+    public void setDatabases(int databases) {
+        this.databases = databases;
+    }
+
+    public int getForests() {
+        return forests;
+    }
+
+    public void setForests(int forests) {
+        this.forests = forests;
+    }
+
+    public int getServers() {
+        return servers;
+    }
+
+    public void setServers(int servers) {
+        this.servers = servers;
+    }
+
+    public int getUsers() {
+        return users;
+    }
+
+    public void setUsers(int users) {
+        this.users = users;
+    }
+
+    public int getRoles() {
+        return roles;
+    }
+
+    public void setRoles(int roles) {
+        this.roles = roles;
+    }
+
+    public int getLogLines() {
+        return logLines;
+    }
+
+    public void setLogLines(int logLines) {
+        this.logLines = logLines;
+    }
+}
@@ -0,0 +1,86 @@
+package org.billFarber.marklogicadminproxy.simulator;
+
+/**
+ * Latency and failures the simulator injects into its responses.
+ *
+ * Each response is delayed by latency plus a uniformly random share of jitter
+ * before its headers are sent; resourceLatency replaces latency for one
+ * resource, e.g. forests: 200ms to model a slow view=storage. A fraction
+ * errorRate of requests fail with errorStatus, or have their connection
+ * dropped when errorStatus is 0. throttleBytesPerSecond, when positive, limits
+ * how fast bodies are written, as over a slow VPN.
+ */
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+public class FaultProfile {
+
+    private Duration latency = Duration.ZERO;
+
+    private Duration jitter = Duration.ZERO;
+
+    private Map<String, Duration> resourceLatency = new HashMap<>();
+
+    private double errorRate;
+
+    private int errorStatus = 503;
+
+    private long throttleBytesPerSecond;
+
+    public Duration getLatency() {
+        return latency;
+    }
+
+    public void setLatency(Duration latency) {
+        this.latency = latency;
+    }
+
+    public Duration getJitter() {
+        return jitter;
+    }
+
+    public void setJitter(Duration jitter) {
+        this.jitter = jitter;
+    }
+
+    public Map<String, Duration> getResourceLatency() {
+        return resourceLatency;
+    }
+
+    public void setResourceLatency(Map<String, Duration> resourceLatency) {
+        this.resourceLatency = resourceLatency;
+    }
+
+    public double getErrorRate() {
+        return errorRate;
+    }
+
+    public void setErrorRate(double errorRate) {
+        this.errorRate = errorRate;
+    }
+
+    public int getErrorStatus() {
+        return errorStatus;
+    }
+
+    public void setErrorStatus(int errorStatus) {
+        this.errorStatus = errorStatus;
+    }
+
+    public long getThrottleBytesPerSecond() {
+        return throttleBytesPerSecond;
+    }
+
+    public void setThrottleBytesPerSecond(long throttleBytesPerSecond) {
+        this.throttleBytesPerSecond = throttleBytesPerSecond;
+    }
+
+    /**
+     * @return the base latency for a resource, before jitter
+     */
+    Duration latencyFor(String resource) {
+        return resourceLatency.getOrDefault(resource, latency);
+    }
+}
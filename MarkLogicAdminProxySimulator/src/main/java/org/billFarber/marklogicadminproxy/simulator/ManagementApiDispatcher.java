@@ -0,0 +1,296 @@
+package org.billFarber.marklogicadminproxy.simulator;
+
+/**
+ * MockWebServer dispatcher that answers the Management API routes the proxy
+ * calls from a SimulatedCluster and SimulatedLogs:
+ *
+ *   GET /manage/v2/{resource}                  list, with view and the
+ *                                              database-id, host-id and
+ *                                              group-id filters
+ *   GET /manage/v2/{resource}/{id|name}        item, with view
+ *   GET /manage/v2/{resource}/{id|name}/properties
+ *   GET /manage/v2/logs                        file list, or one file with
+ *                                              filename, host, start, end
+ *                                              and regex
+ *
+ * for databases, forests, hosts, servers, groups, users and roles. Servers
+ * need group-id for items and properties, as in MarkLogic. The format
+ * parameter (json, xml, text or html) wins over the Accept header; resources
+ * default to JSON and log files to text.
+ *
+ * The current FaultProfile is applied to every response and can be replaced
+ * while the server runs. Requests are counted per endpoint, e.g. "databases",
+ * "databases/{id}", "databases/properties" and "logs".
+ */
+
+import okhttp3.HttpUrl;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.RecordedRequest;
+import okhttp3.mockwebserver.SocketPolicy;
+import okio.Buffer;
+import okio.GzipSink;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+public class ManagementApiDispatcher extends Dispatcher {
+    private static final List<String> LIST_FILTERS = List.of("database-id", "host-id", "group-id");
+
+    private final SimulatedCluster cluster;
+    private final SimulatedLogs logs;
+    private final Map<String, LongAdder> requests = new ConcurrentHashMap<>();
+
+    private volatile FaultProfile faults;
+    private volatile boolean gzip;
+
+    public ManagementApiDispatcher(SimulatedCluster cluster, SimulatedLogs logs, FaultProfile faults) {
+        this.cluster = cluster;
+        this.logs = logs;
+        this.faults = faults;
+    }
+
+    public FaultProfile getFaults() {
+        return faults;
+    }
+
+    /**
+     * Replaces the fault profile for requests that arrive from now on.
+     */
+    public void setFaults(FaultProfile faults) {
+        this.faults = faults;
+    }
+
+    public boolean isGzip() {
+        return gzip;
+    }
+
+    /**
+     * Whether to gzip bodies for requests that send Accept-Encoding: gzip.
+     */
+    public void setGzip(boolean gzip) {
+        this.gzip = gzip;
+    }
+
+    public long requestCount(String endpoint) {
+        LongAdder count = requests.get(endpoint);
+        return count == null ? 0 : count.sum();
+    }
+
+    /**
+     * @return requests so far by endpoint, sorted by name
+     */
+    public Map<String, Long> requestCounts() {
+        Map<String, Long> counts = new TreeMap<>();
+        requests.forEach((endpoint, count) -> counts.put(endpoint, count.sum()));
+        return counts;
+    }
+
+    @Override
+    public MockResponse dispatch(RecordedRequest request) {
+        HttpUrl url = request.getRequestUrl();
+        List<String> segments = url.pathSegments();
+        String resource = segments.size() > 2 ? segments.get(2) : "";
+        requests.computeIfAbsent(endpoint(segments), e -> new LongAdder()).increment();
+
+        FaultProfile faults = this.faults;
+        MockResponse response;
+        if (faults.getErrorRate() > 0 && ThreadLocalRandom.current().nextDouble() < faults.getErrorRate()) {
+            response = faults.getErrorStatus() == 0
+                    ? new MockResponse().setSocketPolicy(SocketPolicy.DISCONNECT_AFTER_REQUEST)
+                    : error(faults.getErrorStatus(), "XDMP-SIMULATED", "Simulated failure");
+        } else {
+            response = route(request, url, segments);
+        }
+
+        long delay = faults.latencyFor(resource).toMillis();
+        if (faults.getJitter().toMillis() > 0) {
+            delay += ThreadLocalRandom.current().nextLong(faults.getJitter().toMillis() + 1);
+        }
+        if (delay > 0) {
+            response.setHeadersDelay(delay, TimeUnit.MILLISECONDS);
+        }
+        if (faults.getThrottleBytesPerSecond() > 0) {
+            response.throttleBody(Math.max(1, faults.getThrottleBytesPerSecond() / 10), 100, TimeUnit.MILLISECONDS);
+        }
+        return response;
+    }
+
+    private MockResponse route(RecordedRequest request, HttpUrl url, List<String> segments) {
+        if (!"GET".equals(request.getMethod())) {
+            return error(405, "MANAGE-UNSUPPORTEDMETHOD", "Method not supported: " + request.getMethod());
+        }
+        if (segments.size() < 3 || !segments.get(0).equals("manage") || !segments.get(1).equals("v2")) {
+            return error(404, "MANAGE-INVALIDRESOURCE", "No such resource: " + url.encodedPath());
+        }
+        String resource = segments.get(2);
+        if (resource.equals("logs") && segments.size() == 3) {
+            return logs(request, url);
+        }
+        if (!SimulatedCluster.RESOURCES.contains(resource) || segments.size() > 5
+                || (segments.size() == 5 && !segments.get(4).equals("properties"))) {
+            return error(404, "MANAGE-INVALIDRESOURCE", "No such resource: " + url.encodedPath());
+        }
+
+        String format = format(request, url, "json");
+        if (segments.size() == 3) {
+            Map<String, String> filters = new TreeMap<>();
+            for (String filter : LIST_FILTERS) {
+                if (url.queryParameter(filter) != null) {
+                    filters.put(filter, url.queryParameter(filter));
+                }
+            }
+            return document(request, format, cluster.list(resource, url.queryParameter("view"), filters));
+        }
+
+        int index = cluster.indexOf(resource, segments.get(3));
+        if (index < 0) {
+            return error(404, "MANAGE-INVALIDNAME", "No such " + SimulatedCluster.singular(resource) + ": "
+                    + segments.get(3));
+        }
+        if (resource.equals("servers")) {
+            String group = url.queryParameter("group-id");
+            if (group == null) {
+                return error(400, "MANAGE-INVALIDQUERY", "group-id is required for servers");
+            }
+            if (cluster.indexOf("groups", group) != cluster.groupOf(resource, index)) {
+                return error(404, "MANAGE-INVALIDNAME", "No such server in group " + group + ": " + segments.get(3));
+            }
+        }
+        byte[] document = segments.size() == 5
+                ? cluster.properties(resource, index)
+                : cluster.item(resource, index, url.queryParameter("view"));
+        return document(request, format, document);
+    }
+
+    private MockResponse logs(RecordedRequest request, HttpUrl url) {
+        String filename = url.queryParameter("filename");
+        String host = url.queryParameter("host");
+        if (filename == null || filename.isBlank()) {
+            return document(request, format(request, url, "json"), logs.list(host));
+        }
+        int hostIndex = host == null ? 0 : cluster.indexOf("hosts", host);
+        if (hostIndex < 0 || cluster.count("hosts") == 0) {
+            return error(404, "MANAGE-INVALIDNAME", "No such host: " + host);
+        }
+        if (!SimulatedLogs.FILES.contains(filename)) {
+            return error(404, "MANAGE-FILENOTFOUND", "No such log file: " + filename);
+        }
+        String start = url.queryParameter("start");
+        String end = url.queryParameter("end");
+        String regex = url.queryParameter("regex");
+        if (!SimulatedLogs.isErrorLog(filename) && (start != null || end != null || regex != null)) {
+            return error(400, "MANAGE-INVALIDQUERY", "start, end and regex are only supported for error logs");
+        }
+
+        List<SimulatedLogs.Line> lines;
+        try {
+            lines = SimulatedLogs.filter(logs.lines(hostIndex, filename), start, end, regex);
+        } catch (IllegalArgumentException e) {
+            return error(400, "MANAGE-INVALIDQUERY", e.getMessage());
+        }
+        String format = format(request, url, "text");
+        return body(request, contentType(format), SimulatedLogs.render(lines, format));
+    }
+
+    private MockResponse document(RecordedRequest request, String format, byte[] json) {
+        if (format.equals("xml")) {
+            return body(request, contentType(format), ManagementXml.fromJson(json));
+        }
+        return body(request, contentType("json"), json);
+    }
+
+    private MockResponse body(RecordedRequest request, String contentType, byte[] bytes) {
+        Buffer body = new Buffer().write(bytes);
+        MockResponse response = new MockResponse().setHeader("Content-Type", contentType);
+        String acceptEncoding = request.getHeader("Accept-Encoding");
+        if (gzip && acceptEncoding != null && acceptEncoding.contains("gzip")) {
+            Buffer compressed = new Buffer();
+            try (GzipSink sink = new GzipSink(compressed)) {
+                sink.write(body, body.size());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            response.setHeader("Content-Encoding", "gzip");
+            body = compressed;
+        }
+        return response.setBody(body);
+    }
+
+    /**
+     * An error in the shape MarkLogic's Management API returns.
+     */
+    static MockResponse error(int status, String messageCode, String message) {
+        byte[] body = SimulatedCluster.json(json -> {
+            json.writeStartObject();
+            json.writeObjectFieldStart("errorResponse");
+            json.writeNumberField("statusCode", status);
+            json.writeStringField("status", reason(status));
+            json.writeStringField("messageCode", messageCode);
+            json.writeStringField("message", messageCode + ": " + message);
+            json.writeEndObject();
+            json.writeEndObject();
+        });
+        return new MockResponse()
+                .setResponseCode(status)
+                .setHeader("Content-Type", "application/json; charset=UTF-8")
+                .setBody(new String(body, StandardCharsets.UTF_8));
+    }
+
+    private static String format(RecordedRequest request, HttpUrl url, String defaultFormat) {
+        String format = url.queryParameter("format");
+        if (format != null) {
+            return format;
+        }
+        String accept = request.getHeader("Accept");
+        if (accept != null && accept.contains("json")) {
+            return "json";
+        }
+        if (accept != null && accept.contains("xml")) {
+            return "xml";
+        }
+        return defaultFormat;
+    }
+
+    private static String contentType(String format) {
+        return switch (format) {
+            case "json" -> "application/json; charset=UTF-8";
+            case "xml" -> "application/xml; charset=UTF-8";
+            case "html" -> "text/html; charset=UTF-8";
+            default -> "text/plain; charset=UTF-8";
+        };
+    }
+
+    private static String reason(int status) {
+        return switch (status) {
+            case 400 -> "Bad Request";
+            case 401 -> "Unauthorized";
+            case 404 -> "Not Found";
+            case 405 -> "Method Not Allowed";
+            case 500 -> "Internal Server Error";
+            case 502 -> "Bad Gateway";
+            case 503 -> "Service Unavailable";
+            case 504 -> "Gateway Timeout";
+            default -> "Error";
+        };
+    }
+
+    private static String endpoint(List<String> segments) {
+        if (segments.size() < 3) {
+            return "other";
+        }
+        String resource = segments.get(2);
+        if (segments.size() == 3) {
+            return resource;
+        }
+        return segments.size() == 5 ? resource + "/properties" : resource + "/{id}";
+    }
+}
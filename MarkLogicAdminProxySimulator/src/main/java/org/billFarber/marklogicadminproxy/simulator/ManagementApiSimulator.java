@@ -0,0 +1,234 @@
+package org.billFarber.marklogicadminproxy.simulator;
+
+/**
+ * A simulated MarkLogic Management API (port 8002) on a MockWebServer, for
+ * running the proxy, its tests and load tests without a MarkLogic cluster.
+ *
+ * From a test:
+ *
+ *   ClusterSize size = new ClusterSize();
+ *   size.setHosts(200);
+ *   size.setForests(5000);
+ *   try (ManagementApiSimulator simulator = new ManagementApiSimulator(size, new FaultProfile())) {
+ *       simulator.start();
+ *       ... call simulator.url("/manage/v2/forests") ...
+ *   }
+ *
+ * From the command line (see main for all options):
+ *
+ *   ./gradlew :MarkLogicAdminProxySimulator:run --args='--port=8002 --hosts=200 --latency=20ms'
+ *
+ * MockWebServer keeps every request it receives for takeRequest; the
+ * simulator discards them as they arrive so a long load test does not run out
+ * of memory, and counts requests per endpoint instead. It also leaves Nagle's
+ * algorithm on, which with a delayed response adds up to 40 ms of delayed-ACK
+ * wait to requests on pooled connections, so the simulator turns it off.
+ */
+
+import okhttp3.HttpUrl;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+import javax.net.ServerSocketFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+public class ManagementApiSimulator implements Closeable {
+
+    private final MockWebServer server = new MockWebServer();
+    private final SimulatedCluster cluster;
+    private final ManagementApiDispatcher dispatcher;
+
+    public ManagementApiSimulator(ClusterSize size, FaultProfile faults) {
+        this(size, faults, Instant.now().truncatedTo(ChronoUnit.SECONDS));
+    }
+
+    /**
+     * @param logsEnd time of the newest simulated log line
+     */
+    public ManagementApiSimulator(ClusterSize size, FaultProfile faults, Instant logsEnd) {
+        this.cluster = new SimulatedCluster(size);
+        this.dispatcher = new ManagementApiDispatcher(cluster, new SimulatedLogs(cluster, logsEnd), faults);
+        server.setServerSocketFactory(new NoDelayServerSocketFactory());
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                server.takeRequest(0, TimeUnit.MILLISECONDS);
+                return dispatcher.dispatch(request);
+            }
+        });
+    }
+
+    public void start() throws IOException {
+        server.start();
+    }
+
+    public void start(int port) throws IOException {
+        server.start(port);
+    }
+
+    public HttpUrl url(String path) {
+        return server.url(path);
+    }
+
+    public int getPort() {
+        return server.getPort();
+    }
+
+    public SimulatedCluster getCluster() {
+        return cluster;
+    }
+
+    public ManagementApiDispatcher getDispatcher() {
+        return dispatcher;
+    }
+
+    /**
+     * Replaces the fault profile for requests that arrive from now on.
+     */
+    public void setFaults(FaultProfile faults) {
+        dispatcher.setFaults(faults);
+    }
+
+    public long requestCount() {
+        return server.getRequestCount();
+    }
+
+    public long requestCount(String endpoint) {
+        return dispatcher.requestCount(endpoint);
+    }
+
+    @Override
+    public void close() throws IOException {
+        server.shutdown();
+    }
+
+    private static final class NoDelayServerSocketFactory extends ServerSocketFactory {
+
+        @Override
+        public ServerSocket createServerSocket() throws IOException {
+            return new ServerSocket() {
+                @Override
+                public Socket accept() throws IOException {
+                    Socket socket = super.accept();
+                    socket.setTcpNoDelay(true);
+                    return socket;
+                }
+            };
+        }
+
+        @Override
+        public ServerSocket createServerSocket(int port) throws IOException {
+            return createServerSocket(port, 0, null);
+        }
+
+        @Override
+        public ServerSocket createServerSocket(int port, int backlog) throws IOException {
+            return createServerSocket(port, backlog, null);
+        }
+
+        @Override
+        public ServerSocket createServerSocket(int port, int backlog, InetAddress address) throws IOException {
+            // A null address binds to all interfaces and a backlog below 1 uses the default, as in ServerSocket
+            ServerSocket socket = createServerSocket();
+            try {
+                socket.bind(new InetSocketAddress(address, port), backlog);
+            } catch (IOException | RuntimeException e) {
+                socket.close();
+                throw e;
+            }
+            return socket;
+        }
+    }
+
+    /**
+     * Runs the simulator until the process is stopped. Options, all optional:
+     *
+     *   --port=8002
+     *   --hosts=3 --groups=1 --databases=10 --forests=12 --servers=8
+     *   --users=10 --roles=60 --log-lines=2000
+     *   --latency=20ms --jitter=10ms --latency.forests=200ms
+     *   --error-rate=0.01 --error-status=503   (0 drops the connection)
+     *   --throttle=1000000                     (body bytes per second)
+     *   --gzip=true
+     */
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new LinkedHashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                throw new IllegalArgumentException("Expected --name=value: " + arg);
+            }
+            options.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+        }
+
+        ClusterSize size = new ClusterSize();
+        FaultProfile faults = new FaultProfile();
+        int port = 8002;
+        boolean gzip = false;
+        for (Map.Entry<String, String> option : options.entrySet()) {
+            String value = option.getValue();
+            switch (option.getKey()) {
+                case "port" -> port = Integer.parseInt(value);
+                case "hosts" -> size.setHosts(Integer.parseInt(value));
+                case "groups" -> size.setGroups(Integer.parseInt(value));
+                case "databases" -> size.setDatabases(Integer.parseInt(value));
+                case "forests" -> size.setForests(Integer.parseInt(value));
+                case "servers" -> size.setServers(Integer.parseInt(value));
+                case "users" -> size.setUsers(Integer.parseInt(value));
+                case "roles" -> size.setRoles(Integer.parseInt(value));
+                case "log-lines" -> size.setLogLines(Integer.parseInt(value));
+                case "latency" -> faults.setLatency(duration(value));
+                case "jitter" -> faults.setJitter(duration(value));
+                case "error-rate" -> faults.setErrorRate(Double.parseDouble(value));
+                case "error-status" -> faults.setErrorStatus(Integer.parseInt(value));
+                case "throttle" -> faults.setThrottleBytesPerSecond(Long.parseLong(value));
+                case "gzip" -> gzip = Boolean.parseBoolean(value);
+                default -> {
+                    if (!option.getKey().startsWith("latency.")) {
+                        throw new IllegalArgumentException("Unknown option: --" + option.getKey());
+                    }
+                    faults.getResourceLatency().put(option.getKey().substring("latency.".length()), duration(value));
+                }
+            }
+        }
+
+        ManagementApiSimulator simulator = new ManagementApiSimulator(size, faults);
+        simulator.getDispatcher().setGzip(gzip);
+        simulator.start(port);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                simulator.close();
+            } catch (IOException e) {
+                // Exiting anyway
+            }
+        }));
+        System.out.println("Management API simulator listening on " + simulator.url("/manage/v2"));
+        Thread.currentThread().join();
+    }
+
+    /**
+     * Parses 250ms, 2s or an ISO-8601 duration such as PT0.5S.
+     */
+    public static Duration duration(String value) {
+        if (value.endsWith("ms")) {
+            return Duration.ofMillis(Long.parseLong(value.substring(0, value.length() - 2)));
+        }
+        if (value.endsWith("s") && !value.startsWith("P")) {
+            return Duration.ofSeconds(Long.parseLong(value.substring(0, value.length() - 1)));
+        }
+        return Duration.parse(value);
+    }
+}
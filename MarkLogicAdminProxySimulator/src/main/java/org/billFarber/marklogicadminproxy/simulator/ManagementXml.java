@@ -0,0 +1,71 @@
+package org.billFarber.marklogicadminproxy.simulator;
+
+/**
+ * Minimal format=xml for the simulated resources: the JSON document written as
+ * elements in the http://marklogic.com/manage namespace, with array items
+ * repeated under the array's name. Enough for clients that only check the
+ * content type and root element; not the exact MarkLogic XML schema.
+ */
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+final class ManagementXml {
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private ManagementXml() {
+    }
+
+    static byte[] fromJson(byte[] json) {
+        JsonNode root;
+        try {
+            root = MAPPER.readTree(json);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        StringBuilder xml = new StringBuilder(json.length * 2);
+        Map.Entry<String, JsonNode> top = root.properties().iterator().next();
+        if (top.getValue().isObject()) {
+            xml.append('<').append(top.getKey()).append(" xmlns=\"http://marklogic.com/manage\">");
+            writeChildren(xml, top.getValue());
+            xml.append("</").append(top.getKey()).append('>');
+        } else {
+            // Flat properties documents have no single root
+            xml.append("<properties xmlns=\"http://marklogic.com/manage\">");
+            writeChildren(xml, root);
+            xml.append("</properties>");
+        }
+        return xml.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    static String escape(String text) {
+        return text.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;");
+    }
+
+    private static void writeChildren(StringBuilder xml, JsonNode node) {
+        for (Map.Entry<String, JsonNode> field : node.properties()) {
+            if (field.getValue().isArray()) {
+                for (JsonNode item : field.getValue()) {
+                    writeElement(xml, field.getKey(), item);
+                }
+            } else {
+                writeElement(xml, field.getKey(), field.getValue());
+            }
+        }
+    }
+
+    private static void writeElement(StringBuilder xml, String name, JsonNode value) {
+        xml.append('<').append(name).append('>');
+        if (value.isObject()) {
+            writeChildren(xml, value);
+        } else {
+            xml.append(escape(value.asText()));
+        }
+        xml.append("</").append(name).append('>');
+    }
+}
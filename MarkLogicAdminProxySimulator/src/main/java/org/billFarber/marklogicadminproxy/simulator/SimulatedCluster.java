@@ -0,0 +1,360 @@
+package org.billFarber.marklogicadminproxy.simulator;
+
+/**
+ * Deterministic Management API documents for a cluster of a given size.
+ *
+ * Every resource has a stable name and a 19-digit id derived from its index,
+ * so two simulators with the same ClusterSize serve identical documents.
+ * Resource i of a kind is named from a list of the standard MarkLogic names
+ * first (Documents, Security, ... for databases) and then kind-i. Forest i
+ * belongs to database i % databases and host i % hosts; hosts and servers are
+ * spread over the groups the same way.
+ *
+ * List documents are built once per distinct request and kept, since a
+ * 100,000 user list is several megabytes; item and properties documents are
+ * small and built on every call.
+ */
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntPredicate;
+
+public class SimulatedCluster {
+    static final List<String> RESOURCES = List.of("databases", "forests", "hosts", "servers", "groups", "users",
+            "roles");
+
+    private static final JsonFactory JSON = new JsonFactory();
+
+    private static final Map<String, List<String>> STANDARD_NAMES = Map.of(
+            "databases", List.of("Documents", "Security", "Schemas", "Triggers", "Modules", "App-Services", "Meters",
+                    "Fab", "Extensions", "Last-Login"),
+            "servers", List.of("App-Services", "Admin", "Manage", "HealthCheck"),
+            "groups", List.of("Default"),
+            "users", List.of("admin", "healthcheck", "nobody", "infostudio-admin"),
+            "roles", List.of("admin", "manage-admin", "manage-user", "security", "rest-reader", "rest-writer",
+                    "rest-admin", "app-user", "harmonized-reader", "qconsole-user"));
+
+    private final ClusterSize size;
+    private final Map<String, Map<String, Integer>> indexes = new ConcurrentHashMap<>();
+    private final Map<String, byte[]> lists = new ConcurrentHashMap<>();
+
+    public SimulatedCluster(ClusterSize size) {
+        this.size = size;
+    }
+
+    public ClusterSize getSize() {
+        return size;
+    }
+
+    public int count(String resource) {
+        return switch (resource) {
+            case "databases" -> size.getDatabases();
+            case "forests" -> size.getForests();
+            case "hosts" -> size.getHosts();
+            case "servers" -> size.getServers();
+            case "groups" -> Math.max(1, size.getGroups());
+            case "users" -> size.getUsers();
+            case "roles" -> size.getRoles();
+            default -> 0;
+        };
+    }
+
+    public String name(String resource, int index) {
+        if (resource.equals("hosts")) {
+            return "host-" + (index + 1) + ".cluster.local";
+        }
+        List<String> standard = STANDARD_NAMES.getOrDefault(resource, List.of());
+        if (index < standard.size()) {
+            return standard.get(index);
+        }
+        return singular(resource) + "-" + (index + 1);
+    }
+
+    public String id(String resource, int index) {
+        long seed = (RESOURCES.indexOf(resource) + 1L) << 32 | index;
+        return Long.toUnsignedString(mix(seed) % 9_000_000_000_000_000_000L + 1_000_000_000_000_000_000L);
+    }
+
+    /**
+     * @return the index of the resource with this id or name, or -1
+     */
+    public int indexOf(String resource, String idOrName) {
+        Map<String, Integer> index = indexes.computeIfAbsent(resource, r -> {
+            Map<String, Integer> byKey = new HashMap<>();
+            for (int i = 0; i < count(r); i++) {
+                byKey.put(id(r, i), i);
+                byKey.put(name(r, i), i);
+            }
+            return byKey;
+        });
+        return index.getOrDefault(idOrName, -1);
+    }
+
+    int databaseOfForest(int forest) {
+        return forest % Math.max(1, size.getDatabases());
+    }
+
+    int hostOfForest(int forest) {
+        return forest % Math.max(1, size.getHosts());
+    }
+
+    int groupOf(String resource, int index) {
+        return index % count("groups");
+    }
+
+    /**
+     * GET /manage/v2/{resource}, optionally filtered by the database-id, host-id
+     * or group-id parameters the proxy passes through.
+     */
+    public byte[] list(String resource, String view, Map<String, String> filters) {
+        String key = resource + "?" + view + "&" + filters;
+        byte[] cached = lists.get(key);
+        if (cached != null) {
+            return cached;
+        }
+        IntPredicate filter = filter(resource, filters);
+        byte[] document = json(json -> writeList(json, resource, view, filter));
+        lists.putIfAbsent(key, document);
+        return document;
+    }
+
+    /**
+     * GET /manage/v2/{resource}/{id|name}
+     */
+    public byte[] item(String resource, int index, String view) {
+        return json(json -> {
+            json.writeStartObject();
+            json.writeObjectFieldStart(singular(resource) + "-" + (view == null ? "default" : view));
+            json.writeStringField("id", id(resource, index));
+            json.writeStringField("name", name(resource, index));
+            writeMeta(json, "/manage/v2/" + resource + "/" + id(resource, index));
+            json.writeObjectFieldStart("relations");
+            json.writeArrayFieldStart("relation-group");
+            writeRelations(json, resource, index);
+            json.writeEndArray();
+            json.writeEndObject();
+            if ("status".equals(view)) {
+                json.writeObjectFieldStart("status-properties");
+                json.writeObjectFieldStart("state");
+                json.writeStringField("units", "enum");
+                json.writeStringField("value", "available");
+                json.writeEndObject();
+                json.writeEndObject();
+            }
+            json.writeEndObject();
+            json.writeEndObject();
+        });
+    }
+
+    /**
+     * GET /manage/v2/{resource}/{id|name}/properties
+     */
+    public byte[] properties(String resource, int index) {
+        String name = name(resource, index);
+        return json(json -> {
+            json.writeStartObject();
+            json.writeStringField(singular(resource) + "-name", name);
+            switch (resource) {
+                case "databases" -> {
+                    json.writeBooleanField("enabled", true);
+                    json.writeStringField("security-database", "Security");
+                    json.writeStringField("schema-database", "Schemas");
+                    json.writeStringField("triggers-database", "Triggers");
+                    json.writeArrayFieldStart("forest");
+                    for (int f = index; f < size.getForests(); f += Math.max(1, size.getDatabases())) {
+                        json.writeString(name("forests", f));
+                    }
+                    json.writeEndArray();
+                    json.writeStringField("language", "en");
+                    json.writeBooleanField("stemmed-searches", true);
+                    json.writeBooleanField("word-searches", false);
+                    json.writeBooleanField("collection-lexicon", index % 2 == 0);
+                    json.writeBooleanField("uri-lexicon", true);
+                    json.writeNumberField("in-memory-limit", 262144);
+                    json.writeNumberField("journal-size", 682);
+                }
+                case "forests" -> {
+                    json.writeBooleanField("enabled", true);
+                    json.writeStringField("host", name("hosts", hostOfForest(index)));
+                    json.writeStringField("database", name("databases", databaseOfForest(index)));
+                    json.writeStringField("data-directory", "");
+                    json.writeStringField("updates-allowed", "all");
+                    json.writeStringField("availability", "online");
+                    json.writeBooleanField("rebalancer-enable", true);
+                }
+                case "hosts" -> {
+                    json.writeStringField("group", name("groups", groupOf(resource, index)));
+                    json.writeNumberField("bind-port", 7999);
+                    json.writeNumberField("foreign-bind-port", 7998);
+                    json.writeStringField("zone", "zone-" + (index % 3 + 1));
+                    json.writeBooleanField("bootstrap-host", index == 0);
+                }
+                case "servers" -> {
+                    json.writeStringField("group-name", name("groups", groupOf(resource, index)));
+                    json.writeStringField("server-type", "http");
+                    json.writeBooleanField("enabled", true);
+                    json.writeNumberField("port", 8000 + index);
+                    json.writeStringField("root", "/");
+                    json.writeStringField("content-database",
+                            name("databases", index % Math.max(1, size.getDatabases())));
+                    json.writeStringField("modules-database", "Modules");
+                    json.writeStringField("authentication", "digest");
+                    json.writeNumberField("threads", 32);
+                    json.writeNumberField("request-timeout", 30);
+                }
+                case "groups" -> {
+                    json.writeNumberField("list-cache-size", 3072);
+                    json.writeNumberField("compressed-tree-cache-size", 1024);
+                    json.writeNumberField("expanded-tree-cache-size", 2048);
+                    json.writeStringField("file-log-level", "info");
+                    json.writeNumberField("keep-log-files", 7);
+                    json.writeBooleanField("metering-enabled", true);
+                }
+                case "users" -> {
+                    json.writeStringField("description", "Simulated user " + name);
+                    json.writeArrayFieldStart("role");
+                    json.writeString(name("roles", index % Math.max(1, size.getRoles())));
+                    json.writeEndArray();
+                }
+                case "roles" -> {
+                    json.writeStringField("description", "Simulated role " + name);
+                    json.writeArrayFieldStart("privilege");
+                    json.writeStartObject();
+                    json.writeStringField("privilege-name", "xdmp:eval");
+                    json.writeStringField("action", "http://marklogic.com/xdmp/privileges/xdmp-eval");
+                    json.writeStringField("kind", "execute");
+                    json.writeEndObject();
+                    json.writeEndArray();
+                }
+                default -> {
+                }
+            }
+            json.writeEndObject();
+        });
+    }
+
+    private void writeList(JsonGenerator json, String resource, String view, IntPredicate filter) throws IOException {
+        String singular = singular(resource);
+        int count = 0;
+        for (int i = 0; i < count(resource); i++) {
+            if (filter.test(i)) {
+                count++;
+            }
+        }
+        json.writeStartObject();
+        json.writeObjectFieldStart(singular + "-" + (view == null ? "default" : view) + "-list");
+        writeMeta(json, "/manage/v2/" + resource);
+        json.writeObjectFieldStart("list-items");
+        json.writeObjectFieldStart("list-count");
+        json.writeStringField("units", "quantity");
+        json.writeNumberField("value", count);
+        json.writeEndObject();
+        json.writeArrayFieldStart("list-item");
+        for (int i = 0; i < count(resource); i++) {
+            if (!filter.test(i)) {
+                continue;
+            }
+            json.writeStartObject();
+            json.writeStringField("uriref", "/manage/v2/" + resource + "/" + id(resource, i));
+            json.writeStringField("idref", id(resource, i));
+            json.writeStringField("nameref", name(resource, i));
+            if (resource.equals("servers") || resource.equals("hosts")) {
+                json.writeStringField("groupnameref", name("groups", groupOf(resource, i)));
+            }
+            if ("storage".equals(view) && resource.equals("forests")) {
+                json.writeStringField("hostnameref", name("hosts", hostOfForest(i)));
+                json.writeNumberField("disk-size", 1024L * (i % 97 + 1));
+                json.writeNumberField("device-space", 512_000L);
+                json.writeNumberField("fast-data-size", 0);
+            } else if (view != null) {
+                json.writeStringField("state", "available");
+            }
+            json.writeEndObject();
+        }
+        json.writeEndArray();
+        json.writeEndObject();
+        json.writeEndObject();
+        json.writeEndObject();
+    }
+
+    private IntPredicate filter(String resource, Map<String, String> filters) {
+        IntPredicate filter = i -> true;
+        String database = filters.get("database-id");
+        if (database != null && resource.equals("forests")) {
+            int target = indexOf("databases", database);
+            filter = filter.and(i -> databaseOfForest(i) == target);
+        }
+        String host = filters.get("host-id");
+        if (host != null && resource.equals("forests")) {
+            int target = indexOf("hosts", host);
+            filter = filter.and(i -> hostOfForest(i) == target);
+        }
+        String group = filters.get("group-id");
+        if (group != null && (resource.equals("servers") || resource.equals("hosts"))) {
+            int target = indexOf("groups", group);
+            filter = filter.and(i -> groupOf(resource, i) == target);
+        }
+        return filter;
+    }
+
+    private void writeRelations(JsonGenerator json, String resource, int index) throws IOException {
+        if (resource.equals("forests")) {
+            writeRelation(json, "databases", databaseOfForest(index));
+            writeRelation(json, "hosts", hostOfForest(index));
+        } else if (resource.equals("servers") || resource.equals("hosts")) {
+            writeRelation(json, "groups", groupOf(resource, index));
+        }
+    }
+
+    private void writeRelation(JsonGenerator json, String resource, int index) throws IOException {
+        json.writeStartObject();
+        json.writeStringField("typeref", resource);
+        json.writeObjectFieldStart("relation");
+        json.writeStringField("uriref", "/manage/v2/" + resource + "/" + id(resource, index));
+        json.writeStringField("idref", id(resource, index));
+        json.writeStringField("nameref", name(resource, index));
+        json.writeEndObject();
+        json.writeEndObject();
+    }
+
+    private static void writeMeta(JsonGenerator json, String uri) throws IOException {
+        json.writeObjectFieldStart("meta");
+        json.writeStringField("uri", uri);
+        json.writeStringField("current-time", "2025-01-01T00:00:00Z");
+        json.writeStringField("elapsed-time", "PT0.001S");
+        json.writeEndObject();
+    }
+
+    static String singular(String resource) {
+        return resource.endsWith("s") ? resource.substring(0, resource.length() - 1) : resource;
+    }
+
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return (z ^ (z >>> 31)) & Long.MAX_VALUE;
+    }
+
+    static byte[] json(JsonWriter writer) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        try (JsonGenerator json = JSON.createGenerator(bytes)) {
+            writer.write(json);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    @FunctionalInterface
+    interface JsonWriter {
+        void write(JsonGenerator json) throws IOException;
+    }
+}
@@ -0,0 +1,254 @@
+package org.billFarber.marklogicadminproxy.simulator;
+
+/**
+ * Deterministic log files for every host of a SimulatedCluster.
+ *
+ * Each host has ErrorLog.txt and an access log per standard app server port
+ * (8000_AccessLog.txt, 8001_AccessLog.txt, 8002_AccessLog.txt), each with
+ * ClusterSize.logLines lines spread evenly over the 24 hours before the
+ * simulator's end time, oldest first. Error log lines have MarkLogic's
+ * "2025-01-01 10:15:30.123 Info: message" shape; access log lines use the
+ * combined log format. Lines are generated on every call from a seed made of
+ * the host and file, so nothing is held in memory for large clusters.
+ */
+
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+public class SimulatedLogs {
+    static final List<String> FILES = List.of("ErrorLog.txt", "8000_AccessLog.txt", "8001_AccessLog.txt",
+            "8002_AccessLog.txt");
+
+    private static final DateTimeFormatter ERROR_LOG_TIME = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS");
+    private static final DateTimeFormatter ACCESS_LOG_TIME = DateTimeFormatter
+            .ofPattern("dd/MMM/yyyy:HH:mm:ss Z", Locale.ENGLISH);
+    private static final Duration SPAN = Duration.ofHours(24);
+
+    private static final String[] LEVELS = { "Info", "Info", "Info", "Info", "Info", "Info", "Debug", "Notice",
+            "Warning", "Error" };
+    private static final String[] MESSAGES = {
+            "Merging %d MB from /var/opt/MarkLogic/Forests/%s/0000%03d to /var/opt/MarkLogic/Forests/%s/0000%03d",
+            "Saving /var/opt/MarkLogic/Forests/%s/0000%03d, timestamp=%d",
+            "Deleted %d MB at %d MB/sec /var/opt/MarkLogic/Forests/%s/0000%03d",
+            "Slow send 10.0.%d.%d:8002-10.0.%d.%d:%d, %d KB in %d.%03d sec",
+            "Memory %d%% phys=%d size=%d rss=%d huge=0 anon=%d file=%d forest=%d",
+            "Hung %d.%03d sec on %s",
+            "Forest %s state changed from open to open replicating",
+            "XDMP-EXTIME: Time limit exceeded in %s",
+    };
+    private static final String[] PATHS = { "/manage/v2/databases?format=json", "/manage/v2/forests?format=json",
+            "/manage/v2/hosts?format=json", "/manage/v2/servers?format=json", "/v1/search?q=marklogic",
+            "/v1/documents?uri=/doc/%d.json", "/qconsole/", "/manage/v2/logs?filename=ErrorLog.txt" };
+
+    private final SimulatedCluster cluster;
+    private final Instant end;
+
+    public SimulatedLogs(SimulatedCluster cluster, Instant end) {
+        this.cluster = cluster;
+        this.end = end;
+    }
+
+    /**
+     * One line of a log file. timestamp is UTC; level and message are null for
+     * access logs.
+     */
+    public record Line(LocalDateTime timestamp, String level, String message, String text) {
+    }
+
+    public static boolean isErrorLog(String filename) {
+        return filename.startsWith("ErrorLog");
+    }
+
+    /**
+     * GET /manage/v2/logs without a filename: the files on one host, or on
+     * every host when host is null.
+     */
+    public byte[] list(String host) {
+        return SimulatedCluster.json(json -> {
+            json.writeStartObject();
+            json.writeObjectFieldStart("log-default-list");
+            json.writeObjectFieldStart("list-items");
+            json.writeArrayFieldStart("list-item");
+            for (int h = 0; h < cluster.count("hosts"); h++) {
+                String hostName = cluster.name("hosts", h);
+                if (host != null && !host.equals(hostName) && !host.equals(cluster.id("hosts", h))) {
+                    continue;
+                }
+                for (String file : FILES) {
+                    json.writeStartObject();
+                    json.writeStringField("uriref", "/manage/v2/logs?filename=" + file + "&host=" + hostName);
+                    json.writeStringField("nameref", file);
+                    json.writeStringField("hostnameref", hostName);
+                    json.writeEndObject();
+                }
+            }
+            json.writeEndArray();
+            json.writeEndObject();
+            json.writeEndObject();
+            json.writeEndObject();
+        });
+    }
+
+    /**
+     * @return the lines of one file on one host, oldest first
+     */
+    public List<Line> lines(int host, String filename) {
+        int count = cluster.getSize().getLogLines();
+        List<Line> lines = new ArrayList<>(count);
+        Random random = new Random(31L * host + filename.hashCode());
+        LocalDateTime first = LocalDateTime.ofInstant(end.minus(SPAN), ZoneOffset.UTC);
+        long step = count == 0 ? 0 : SPAN.toMillis() / count;
+        boolean errorLog = isErrorLog(filename);
+        for (int i = 0; i < count; i++) {
+            long offset = i * step + random.nextInt((int) Math.max(1, step));
+            LocalDateTime timestamp = first.plusNanos(offset * 1_000_000L);
+            lines.add(errorLog ? errorLine(timestamp, random) : accessLine(timestamp, random, filename));
+        }
+        return lines;
+    }
+
+    /**
+     * Applies the error-log-only start, end and regex parameters.
+     *
+     * @throws IllegalArgumentException if a parameter is malformed
+     */
+    public static List<Line> filter(List<Line> lines, String start, String end, String regex) {
+        LocalDateTime from = start == null ? null : dateTime(start);
+        LocalDateTime to = end == null ? null : dateTime(end);
+        Pattern pattern = regex == null ? null : Pattern.compile(regex);
+        List<Line> matching = new ArrayList<>();
+        for (Line line : lines) {
+            if (from != null && line.timestamp().isBefore(from)) {
+                continue;
+            }
+            if (to != null && line.timestamp().isAfter(to)) {
+                continue;
+            }
+            if (pattern != null && !pattern.matcher(line.text()).find()) {
+                continue;
+            }
+            matching.add(line);
+        }
+        return matching;
+    }
+
+    /**
+     * Renders lines as format=text, json, xml or html.
+     */
+    public static byte[] render(List<Line> lines, String format) {
+        return switch (format) {
+            case "json" -> SimulatedCluster.json(json -> writeJson(json, lines));
+            case "xml" -> {
+                StringBuilder xml = new StringBuilder(
+                        "<log-file xmlns=\"http://marklogic.com/manage/logs\"><log-entries>");
+                for (Line line : lines) {
+                    xml.append("<log-entry><timestamp>").append(line.timestamp()).append("</timestamp>");
+                    if (line.level() != null) {
+                        xml.append("<level>").append(line.level().toLowerCase(Locale.ROOT)).append("</level>");
+                    }
+                    xml.append("<message>").append(ManagementXml.escape(message(line))).append("</message>")
+                            .append("</log-entry>");
+                }
+                yield xml.append("</log-entries></log-file>").toString().getBytes(StandardCharsets.UTF_8);
+            }
+            case "html" -> {
+                StringBuilder html = new StringBuilder("<html><body><pre>");
+                for (Line line : lines) {
+                    html.append(ManagementXml.escape(line.text())).append('\n');
+                }
+                yield html.append("</pre></body></html>").toString().getBytes(StandardCharsets.UTF_8);
+            }
+            default -> {
+                StringBuilder text = new StringBuilder(lines.size() * 96);
+                for (Line line : lines) {
+                    text.append(line.text()).append('\n');
+                }
+                yield text.toString().getBytes(StandardCharsets.UTF_8);
+            }
+        };
+    }
+
+    private static void writeJson(JsonGenerator json, List<Line> lines) throws IOException {
+        json.writeStartObject();
+        json.writeObjectFieldStart("logfile");
+        json.writeArrayFieldStart("log");
+        for (Line line : lines) {
+            json.writeStartObject();
+            json.writeStringField("timestamp", line.timestamp().toString());
+            if (line.level() != null) {
+                json.writeStringField("level", line.level().toLowerCase(Locale.ROOT));
+            }
+            json.writeStringField("message", message(line));
+            json.writeEndObject();
+        }
+        json.writeEndArray();
+        json.writeEndObject();
+        json.writeEndObject();
+    }
+
+    private static String message(Line line) {
+        return line.message() != null ? line.message() : line.text();
+    }
+
+    private Line errorLine(LocalDateTime timestamp, Random random) {
+        String level = LEVELS[random.nextInt(LEVELS.length)];
+        String forest = cluster.count("forests") == 0 ? "Documents"
+                : cluster.name("forests", random.nextInt(cluster.count("forests")));
+        int template = random.nextInt(MESSAGES.length);
+        String message = switch (template) {
+            case 0 -> String.format(MESSAGES[0], random.nextInt(512), forest, random.nextInt(999), forest,
+                    random.nextInt(999));
+            case 1 -> String.format(MESSAGES[1], forest, random.nextInt(999),
+                    17_000_000_000L + random.nextInt(1 << 30));
+            case 2 -> String.format(MESSAGES[2], random.nextInt(256), random.nextInt(2048), forest,
+                    random.nextInt(999));
+            case 3 -> String.format(MESSAGES[3], random.nextInt(255), random.nextInt(255), random.nextInt(255),
+                    random.nextInt(255), 40_000 + random.nextInt(20_000), random.nextInt(4096), random.nextInt(10),
+                    random.nextInt(1000));
+            case 4 -> String.format(MESSAGES[4], random.nextInt(100), 64_000, random.nextInt(32_000),
+                    random.nextInt(16_000), random.nextInt(8_000), random.nextInt(4_000), random.nextInt(2_000));
+            case 5 -> String.format(MESSAGES[5], random.nextInt(60), random.nextInt(1000),
+                    cluster.name("hosts", random.nextInt(Math.max(1, cluster.count("hosts")))));
+            case 6 -> String.format(MESSAGES[6], forest);
+            default -> String.format(MESSAGES[7], PATHS[random.nextInt(PATHS.length)]);
+        };
+        return new Line(timestamp, level, message, ERROR_LOG_TIME.format(timestamp) + " " + level + ": " + message);
+    }
+
+    private Line accessLine(LocalDateTime timestamp, Random random, String filename) {
+        String user = cluster.count("users") == 0 ? "-"
+                : cluster.name("users", random.nextInt(cluster.count("users")));
+        String path = String.format(PATHS[random.nextInt(PATHS.length)], random.nextInt(100_000));
+        int status = random.nextInt(20) == 0 ? 404 : 200;
+        String text = "10.0." + random.nextInt(255) + "." + random.nextInt(255) + " - " + user + " ["
+                + ACCESS_LOG_TIME.format(timestamp.atOffset(ZoneOffset.UTC)) + "] \"GET " + path + " HTTP/1.1\" "
+                + status + " " + random.nextInt(65_536) + " - \"Mozilla/5.0\"";
+        return new Line(timestamp, null, null, text);
+    }
+
+    private static LocalDateTime dateTime(String value) {
+        try {
+            return OffsetDateTime.parse(value).withOffsetSameInstant(ZoneOffset.UTC).toLocalDateTime();
+        } catch (DateTimeParseException e) {
+            try {
+                return LocalDateTime.parse(value);
+            } catch (DateTimeParseException invalid) {
+                throw new IllegalArgumentException("Invalid dateTime: " + value);
+            }
+        }
+    }
+}
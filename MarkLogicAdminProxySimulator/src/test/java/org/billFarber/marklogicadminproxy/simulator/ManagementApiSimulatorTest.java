@@ -0,0 +1,297 @@
+package org.billFarber.marklogicadminproxy.simulator;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okio.GzipSource;
+import okio.Okio;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Set;
+import java.util.HashSet;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ManagementApiSimulatorTest {
+
+    private static final Instant LOGS_END = Instant.parse("2025-01-02T00:00:00Z");
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final OkHttpClient client = new OkHttpClient.Builder().retryOnConnectionFailure(false).build();
+
+    private ManagementApiSimulator simulator;
+
+    @AfterEach
+    void tearDown() throws IOException {
+        if (simulator != null) {
+            simulator.close();
+        }
+    }
+
+    @Test
+    void listsHaveOneItemPerSimulatedResource() throws IOException {
+        // Arrange
+        ClusterSize size = new ClusterSize();
+        size.setHosts(200);
+        size.setForests(5000);
+        size.setUsers(100_000);
+        start(size, new FaultProfile());
+
+        // Act
+        JsonNode hosts = getJson("/manage/v2/hosts?format=json");
+        JsonNode forests = getJson("/manage/v2/forests?format=json");
+        JsonNode users = getJson("/manage/v2/users?format=json");
+
+        // Assert
+        assertEquals(200, hosts.at("/host-default-list/list-items/list-count/value").asInt());
+        assertEquals(200, hosts.at("/host-default-list/list-items/list-item").size());
+        assertEquals("Default", hosts.at("/host-default-list/list-items/list-item/0/groupnameref").asText());
+        assertEquals(5000, forests.at("/forest-default-list/list-items/list-item").size());
+        JsonNode userItems = users.at("/user-default-list/list-items/list-item");
+        assertEquals(100_000, userItems.size());
+        assertEquals("admin", userItems.get(0).path("nameref").asText());
+
+        Set<String> ids = new HashSet<>();
+        userItems.forEach(item -> ids.add(item.path("idref").asText()));
+        assertEquals(100_000, ids.size(), "ids are unique");
+    }
+
+    @Test
+    void propertiesAreFoundByNameOrId() throws IOException {
+        // Arrange
+        start(new ClusterSize(), new FaultProfile());
+        String id = simulator.getCluster().id("databases", 0);
+
+        // Act
+        JsonNode byName = getJson("/manage/v2/databases/Documents/properties?format=json");
+        JsonNode byId = getJson("/manage/v2/databases/" + id + "/properties?format=json");
+
+        // Assert
+        assertEquals("Documents", byName.path("database-name").asText());
+        assertEquals(byName, byId);
+        assertEquals(2, byName.path("forest").size(), "12 forests over 10 databases");
+    }
+
+    @Test
+    void unknownResourceIsNotFound() throws IOException {
+        // Arrange
+        start(new ClusterSize(), new FaultProfile());
+
+        // Act
+        try (Response response = get("/manage/v2/databases/Missing/properties?format=json")) {
+            // Assert
+            assertEquals(404, response.code());
+            JsonNode error = mapper.readTree(response.body().string());
+            assertEquals("MANAGE-INVALIDNAME", error.at("/errorResponse/messageCode").asText());
+        }
+    }
+
+    @Test
+    void forestsAreFilteredByDatabase() throws IOException {
+        // Arrange
+        start(new ClusterSize(), new FaultProfile());
+
+        // Act
+        JsonNode forests = getJson("/manage/v2/forests?format=json&database-id=Security");
+
+        // Assert
+        JsonNode items = forests.at("/forest-default-list/list-items/list-item");
+        assertEquals(2, items.size());
+        assertEquals("forest-2", items.get(0).path("nameref").asText());
+        assertEquals("forest-12", items.get(1).path("nameref").asText());
+    }
+
+    @Test
+    void serverPropertiesNeedTheServersGroup() throws IOException {
+        // Arrange
+        ClusterSize size = new ClusterSize();
+        size.setGroups(2);
+        start(size, new FaultProfile());
+
+        // Act and Assert
+        try (Response response = get("/manage/v2/servers/Admin/properties?format=json")) {
+            assertEquals(400, response.code());
+        }
+        try (Response response = get("/manage/v2/servers/Admin/properties?format=json&group-id=Default")) {
+            assertEquals(404, response.code(), "server 1 is in the second group");
+        }
+        JsonNode properties = getJson("/manage/v2/servers/Admin/properties?format=json&group-id=group-2");
+        assertEquals("group-2", properties.path("group-name").asText());
+    }
+
+    @Test
+    void xmlFormatUsesTheManageNamespace() throws IOException {
+        // Arrange
+        start(new ClusterSize(), new FaultProfile());
+
+        // Act
+        try (Response response = get("/manage/v2/groups?format=xml")) {
+            // Assert
+            assertEquals(200, response.code());
+            assertTrue(response.header("Content-Type").startsWith("application/xml"));
+            String body = response.body().string();
+            assertTrue(body.startsWith("<group-default-list xmlns=\"http://marklogic.com/manage\">"), body);
+            assertTrue(body.contains("<nameref>Default</nameref>"), body);
+        }
+    }
+
+    @Test
+    void injectsLatency() throws IOException {
+        // Arrange
+        FaultProfile faults = new FaultProfile();
+        faults.getResourceLatency().put("forests", Duration.ofMillis(300));
+        start(new ClusterSize(), faults);
+
+        // Act
+        long start = System.nanoTime();
+        getJson("/manage/v2/forests?format=json");
+        long forestsMillis = (System.nanoTime() - start) / 1_000_000;
+
+        // Assert
+        assertTrue(forestsMillis >= 300, "took " + forestsMillis + "ms");
+    }
+
+    @Test
+    void injectsErrorsAndDisconnects() throws IOException {
+        // Arrange
+        FaultProfile faults = new FaultProfile();
+        faults.setErrorRate(1.0);
+        start(new ClusterSize(), faults);
+
+        // Act and Assert
+        try (Response response = get("/manage/v2/databases?format=json")) {
+            assertEquals(503, response.code());
+            JsonNode error = mapper.readTree(response.body().string());
+            assertEquals(503, error.at("/errorResponse/statusCode").asInt());
+        }
+
+        FaultProfile disconnect = new FaultProfile();
+        disconnect.setErrorRate(1.0);
+        disconnect.setErrorStatus(0);
+        simulator.setFaults(disconnect);
+        assertThrows(IOException.class, () -> get("/manage/v2/databases?format=json").close());
+
+        simulator.setFaults(new FaultProfile());
+        try (Response response = get("/manage/v2/databases?format=json")) {
+            assertEquals(200, response.code());
+        }
+    }
+
+    @Test
+    void gzipsWhenEnabledAndAccepted() throws IOException {
+        // Arrange
+        start(new ClusterSize(), new FaultProfile());
+        simulator.getDispatcher().setGzip(true);
+        Request request = new Request.Builder()
+                .url(simulator.url("/manage/v2/roles?format=json"))
+                .header("Accept-Encoding", "gzip")
+                .build();
+
+        // Act
+        try (Response response = client.newCall(request).execute()) {
+            // Assert
+            assertEquals("gzip", response.header("Content-Encoding"));
+            JsonNode roles = mapper.readTree(Okio.buffer(new GzipSource(response.body().source())).readUtf8());
+            assertEquals(60, roles.at("/role-default-list/list-items/list-item").size());
+        }
+    }
+
+    @Test
+    void listsLogFilesPerHost() throws IOException {
+        // Arrange
+        start(new ClusterSize(), new FaultProfile());
+
+        // Act
+        JsonNode all = getJson("/manage/v2/logs?format=json");
+        JsonNode oneHost = getJson("/manage/v2/logs?format=json&host=host-2.cluster.local");
+
+        // Assert
+        assertEquals(12, all.at("/log-default-list/list-items/list-item").size());
+        JsonNode items = oneHost.at("/log-default-list/list-items/list-item");
+        assertEquals(4, items.size());
+        assertEquals("ErrorLog.txt", items.get(0).path("nameref").asText());
+    }
+
+    @Test
+    void errorLogSupportsTimeRangeAndRegex() throws IOException {
+        // Arrange
+        ClusterSize size = new ClusterSize();
+        size.setLogLines(240);
+        start(size, new FaultProfile());
+        String file = "/manage/v2/logs?format=json&filename=ErrorLog.txt&host=host-1.cluster.local";
+
+        // Act
+        JsonNode all = getJson(file);
+        JsonNode lastHour = getJson(file + "&start=2025-01-01T23:00:00Z");
+        JsonNode warnings = getJson(file + "&regex=Warning:");
+
+        // Assert
+        JsonNode lines = all.at("/logfile/log");
+        assertEquals(240, lines.size());
+        assertTrue(lines.get(0).path("timestamp").asText().startsWith("2025-01-01T00:"));
+        assertEquals(10, lastHour.at("/logfile/log").size());
+        assertTrue(warnings.at("/logfile/log").size() > 0);
+        warnings.at("/logfile/log").forEach(line -> assertEquals("warning", line.path("level").asText()));
+    }
+
+    @Test
+    void accessLogsRejectErrorLogParameters() throws IOException {
+        // Arrange
+        start(new ClusterSize(), new FaultProfile());
+
+        // Act and Assert
+        try (Response response = get("/manage/v2/logs?format=text&filename=8002_AccessLog.txt")) {
+            assertEquals(200, response.code());
+            assertTrue(response.header("Content-Type").startsWith("text/plain"));
+            assertEquals(2000, response.body().string().lines().count());
+        }
+        try (Response response = get("/manage/v2/logs?format=text&filename=8002_AccessLog.txt&regex=GET")) {
+            assertEquals(400, response.code());
+        }
+    }
+
+    @Test
+    void countsRequestsPerEndpoint() throws IOException {
+        // Arrange
+        start(new ClusterSize(), new FaultProfile());
+
+        // Act
+        getJson("/manage/v2/users?format=json");
+        getJson("/manage/v2/users/admin/properties?format=json");
+        getJson("/manage/v2/users/admin/properties?format=json");
+
+        // Assert
+        assertEquals(3, simulator.requestCount());
+        assertEquals(1, simulator.requestCount("users"));
+        assertEquals(2, simulator.requestCount("users/properties"));
+    }
+
+    @Test
+    void parsesDurations() {
+        assertEquals(Duration.ofMillis(250), ManagementApiSimulator.duration("250ms"));
+        assertEquals(Duration.ofSeconds(2), ManagementApiSimulator.duration("2s"));
+        assertEquals(Duration.ofMillis(500), ManagementApiSimulator.duration("PT0.5S"));
+    }
+
+    private void start(ClusterSize size, FaultProfile faults) throws IOException {
+        simulator = new ManagementApiSimulator(size, faults, LOGS_END);
+        simulator.start();
+    }
+
+    private Response get(String path) throws IOException {
+        return client.newCall(new Request.Builder().url(simulator.url(path)).build()).execute();
+    }
+
+    private JsonNode getJson(String path) throws IOException {
+        try (Response response = get(path)) {
+            assertEquals(200, response.code(), path);
+            return mapper.readTree(response.body().string());
+        }
+    }
+}